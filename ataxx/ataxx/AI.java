@@ -1,14 +1,25 @@
 package ataxx;
 
 
-import java.util.LinkedList;
-
 import static ataxx.PieceColor.*;
 import static java.lang.Math.min;
 import static java.lang.Math.max;
 
 
 /** A Player that computes its own moves.
+ *
+ *  The search is alpha-beta minimax over all legal moves, ordered by
+ *  their immediate gain in pieces, with two optional kinds of
+ *  selectivity.  Late move reductions search moves that come late in
+ *  that order to a reduced depth with a null window, and re-search them
+ *  fully only if they turn out to beat the current bound.  Null-move
+ *  pruning lets the side to move pass (Board.forcePass) and searches
+ *  the reply to a reduced depth: if the position is still good enough
+ *  to cause a cutoff after giving away a tempo, the node is pruned.
+ *  Passing is only tried where it is safe: when the opponent can move
+ *  (so the pass cannot end the game) and the static value already
+ *  exceeds the bound by a margin.  The counts in stats() show how much
+ *  work each one did and saved.
  *  @author Ze Martinho
  */
 class AI extends Player {
@@ -21,6 +32,22 @@ class AI extends Player {
     /** A magnitude greater than a normal value. */
     private static final int INFTY = Integer.MAX_VALUE;
 
+    /** Default number of moves at each node searched to full depth
+     *  before late move reductions apply. */
+    static final int LMR_FULL_MOVES = 4;
+    /** Default minimum remaining depth at which moves are reduced. */
+    static final int LMR_MIN_DEPTH = 3;
+    /** Default number of plies by which late moves are reduced. */
+    static final int LMR_REDUCTION = 2;
+    /** Default minimum remaining depth at which null moves are tried. */
+    static final int NULL_MIN_DEPTH = 3;
+    /** Default number of plies (besides the pass itself) by which the
+     *  reply to a null move is reduced. */
+    static final int NULL_REDUCTION = 1;
+    /** Default amount by which the static value must exceed the bound
+     *  before a null move is tried. */
+    static final int NULL_MARGIN = 2;
+
     /** A new AI for GAME that will play MYCOLOR. */
     AI(Game game, PieceColor myColor) {
         super(game, myColor);
@@ -39,15 +66,54 @@ class AI extends Player {
         }
     }
 
+    /** Set the depth of my searches to DEPTH > 0. */
+    void setDepth(int depth) {
+        _depth = depth;
+    }
+
+    /** Turn late move reductions on iff ON.  When on, all but the first
+     *  FULLMOVES moves at nodes with at least MINDEPTH plies left are
+     *  first searched REDUCTION plies shallower. */
+    void setLateMoveReductions(boolean on, int fullMoves, int minDepth,
+                               int reduction) {
+        _lmr = on;
+        _lmrFullMoves = fullMoves;
+        _lmrMinDepth = minDepth;
+        _lmrReduction = reduction;
+    }
+
+    /** Turn null-move pruning on iff ON.  When on, a pass is tried at
+     *  nodes with at least MINDEPTH plies left whose static value exceeds
+     *  the bound by at least MARGIN, and the reply is searched REDUCTION
+     *  plies shallower than the pass alone would require. */
+    void setNullMovePruning(boolean on, int minDepth, int reduction,
+                            int margin) {
+        _nullMove = on;
+        _nullMinDepth = minDepth;
+        _nullReduction = reduction;
+        _nullMargin = margin;
+    }
+
+    /** Return the statistics of my searches since creation or the last
+     *  resetStats. */
+    Stats stats() {
+        return _stats;
+    }
+
+    /** Reset stats() to zero. */
+    void resetStats() {
+        _stats = new Stats();
+    }
+
     /** Return a move for me from the current position, assuming there
      *  is a move. */
-    private Move findMove() {
+    Move findMove() {
         Board b = new Board(board());
+        b.setWhoseMove(myColor());
         if (myColor() == RED) {
-            findMove(b, MAX_DEPTH, true, 1, -INFTY, INFTY);
+            findMove(b, _depth, 0, true, 1, -INFTY, INFTY);
         } else {
-            b.setWhoseMove(BLUE);
-            findMove(b, MAX_DEPTH, true, -1, -INFTY, INFTY);
+            findMove(b, _depth, 0, true, -1, -INFTY, INFTY);
         }
         return _lastFoundMove;
     }
@@ -59,34 +125,67 @@ class AI extends Player {
      *  the move found in _lastFoundMove iff SAVEMOVE. The move
      *  should have maximal value or have value >= BETA if SENSE==1,
      *  and minimal value or value <= ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels before using a static estimate. */
-    private int findMove(Board board, int depth, boolean saveMove, int sense,
-                         int alpha, int beta) {
+     *  DEPTH levels before using a static estimate.  PLY is the
+     *  distance from the root. */
+    private int findMove(Board board, int depth, int ply, boolean saveMove,
+                         int sense, int alpha, int beta) {
+        _stats.nodes += 1;
+        if (!saveMove && (depth <= 0 || board.gameOver())) {
+            return staticScore(board);
+        }
+        PieceColor who = sense == 1 ? RED : BLUE;
+        Move[] moves = moveBuffer(ply);
+        int n = board.legalMoves(who, moves);
+        if (n == 0) {
+            board.forcePass();
+            int value = findMove(board, depth - 1, ply + 1, false, -sense,
+                                 alpha, beta);
+            board.undo();
+            if (saveMove) {
+                _lastFoundMove = Move.pass();
+            }
+            return value;
+        }
+
+        if (!saveMove && _nullMove && depth >= _nullMinDepth
+            && board.canMove(who.opposite())) {
+            int value = nullMoveValue(board, depth, ply, sense,
+                                      alpha, beta);
+            if (sense == 1 && value >= beta) {
+                _stats.nullCutoffs += 1;
+                return beta;
+            } else if (sense == -1 && value <= alpha) {
+                _stats.nullCutoffs += 1;
+                return alpha;
+            }
+        }
+
+        orderMoves(board, moves, n, sense, ply);
         int bestSoFar = -sense * INFTY;
         if (saveMove) {
-            _lastFoundMove = null;
-            if ((sense == 1 && board.canMove(RED))
-                    || (sense == -1 && board.canMove(BLUE))) {
-                _lastFoundMove = randomMove(sense, board);
-                board.makeMove(_lastFoundMove, true);
-            }
-            bestSoFar = staticScore(board);
-            board.undo();
-        } else if (board.gameOver() || depth == 0) {
-            return staticScore(board);
+            _lastFoundMove = moves[0];
         }
-        for (int i = 0; ((i < board.totalPossibleMoves(sense))
-                && (i < MOVELIMIT)); i += 1) {
-            Move move = null;
-            if ((sense == 1 && board.canMove(RED))
-                    || (sense == -1 && board.canMove(BLUE))) {
-                move = randomMove(sense, board);
+        for (int i = 0; i < n; i += 1) {
+            Move move = moves[i];
+            board.makeMove(move, false);
+            int response;
+            if (_lmr && !saveMove && i >= _lmrFullMoves
+                && depth >= _lmrMinDepth) {
+                _stats.lmrReductions += 1;
+                response = nullWindowSearch(board,
+                                            depth - 1 - _lmrReduction,
+                                            ply + 1, -sense, alpha, beta);
+                if ((sense == 1 && response > alpha)
+                    || (sense == -1 && response < beta)) {
+                    _stats.lmrResearches += 1;
+                    response = findMove(board, depth - 1, ply + 1, false,
+                                        -sense, alpha, beta);
+                }
             } else {
-                return staticScore(board);
+                response = findMove(board, depth - 1, ply + 1, false,
+                                    -sense, alpha, beta);
             }
-            board.makeMove(move, true);
-            int response = findMove(board,
-                    depth - 1, false, -sense, alpha, beta);
+            board.undo();
             if ((sense == 1 && bestSoFar < response)
                     || (sense == -1 && bestSoFar > response)) {
                 bestSoFar = response;
@@ -95,65 +194,114 @@ class AI extends Player {
                 }
                 if (sense == 1) {
                     alpha = max(alpha, response);
-                } else if (sense == -1) {
+                } else {
                     beta = min(beta, response);
                 }
                 if (alpha >= beta) {
-                    board.undo();
                     break;
                 }
             }
-            if (!board.allMoves().isEmpty()) {
-                board.undo();
-            }
         }
         return bestSoFar;
     }
-    /** A function to generate a random move for RED if sense equals 1,
-     * and blue if sense equals -1.
-     * @param sense indicates whether the move is for RED (-1) or BLUE (1)
-     * @param board indicates which board to assess for this move.
-     * @return a move for player sense on board board.
-     * */
-    Move randomMove(int sense, Board board) {
-        Move randMove;
-        PieceColor who = null;
+
+    /** Return the value of BOARD, where SENSE is to move, after SENSE
+     *  passes, or a value that cannot cause a cutoff if a null move is
+     *  not worth trying. DEPTH, PLY, ALPHA, and BETA are as for
+     *  findMove. */
+    private int nullMoveValue(Board board, int depth, int ply, int sense,
+                              int alpha, int beta) {
+        int reply = depth - 1 - _nullReduction;
+        int value;
         if (sense == 1) {
-            who = RED;
-        } else if (sense == -1) {
-            who = BLUE;
+            if (beta >= WINNING_VALUE
+                || staticScore(board) < (long) beta + _nullMargin) {
+                return -INFTY;
+            }
+            _stats.nullTries += 1;
+            board.forcePass();
+            value = findMove(board, reply, ply + 1, false, -1,
+                             beta - 1, beta);
+        } else {
+            if (alpha <= -WINNING_VALUE
+                || staticScore(board) > (long) alpha - _nullMargin) {
+                return INFTY;
+            }
+            _stats.nullTries += 1;
+            board.forcePass();
+            value = findMove(board, reply, ply + 1, false, 1,
+                             alpha, alpha + 1);
         }
-        int col = game().nextRandom(7);
-        int row = game().nextRandom(7);
-        char c = (char) ('a' + (char) col);
-        char r = (char) ('1' + (char) row);
-        if (board.get(c, r) == who) {
-            int coin = game().nextRandom(2);
-            if (coin == 1) {
-                for (char i = (char) (c - 1); i <= (char) (c + 1); i += 1) {
-                    for (char j = (char) (r - 1); j <= (char) (r + 1); j += 1) {
-                        randMove = Move.move(c, r, i, j);
-                        if (randMove != null && board.legalMove(randMove)) {
-                            return randMove;
-                        }
-                    }
-                }
-            } else {
-                for (char i = (char) (c - 2); i <= (char) (c + 2); i += 1) {
-                    for (char j = (char) (r - 2); j <= (char) (r + 2); j += 1) {
-                        randMove = Move.move(c, r, i , j);
-                        if (randMove != null && board.legalMove(randMove)) {
-                            return randMove;
-                        }
+        board.undo();
+        return value;
+    }
+
+    /** Search BOARD to DEPTH at PLY with SENSE to move, using a window
+     *  of width one just above ALPHA if SENSE == -1 (the parent
+     *  maximizes) or just below BETA if SENSE == 1, to test whether a
+     *  move improves on the parent's bound. */
+    private int nullWindowSearch(Board board, int depth, int ply, int sense,
+                                 int alpha, int beta) {
+        if (sense == -1) {
+            return findMove(board, depth, ply, false, sense,
+                            alpha, alpha + 1);
+        } else {
+            return findMove(board, depth, ply, false, sense,
+                            beta - 1, beta);
+        }
+    }
+
+    /** Sort the first N MOVES on BOARD for SENSE into decreasing order
+     *  of immediate gain in piece difference, using the ordering key
+     *  buffer for PLY. */
+    private void orderMoves(Board board, Move[] moves, int n, int sense,
+                            int ply) {
+        PieceColor opponent = sense == 1 ? BLUE : RED;
+        int[] keys = _keys[ply];
+        for (int i = 0; i < n; i += 1) {
+            Move move = moves[i];
+            int gain = move.isExtend() ? 1 : 0;
+            int to = move.toIndex();
+            for (int dc = -1; dc <= 1; dc += 1) {
+                for (int dr = -1; dr <= 1; dr += 1) {
+                    if (board.get(Board.neighbor(to, dc, dr)) == opponent) {
+                        gain += 2;
                     }
                 }
             }
+            int k = i;
+            while (k > 0 && keys[k - 1] < gain) {
+                keys[k] = keys[k - 1];
+                moves[k] = moves[k - 1];
+                k -= 1;
+            }
+            keys[k] = gain;
+            moves[k] = move;
         }
-        return randomMove(sense, board);
     }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
+    /** Return the move buffer for PLY, creating it if needed. */
+    private Move[] moveBuffer(int ply) {
+        if (ply >= _moves.length) {
+            int len = max(ply + 1, 2 * _moves.length);
+            Move[][] moves = new Move[len][];
+            int[][] keys = new int[len][];
+            System.arraycopy(_moves, 0, moves, 0, _moves.length);
+            System.arraycopy(_keys, 0, keys, 0, _keys.length);
+            _moves = moves;
+            _keys = keys;
+        }
+        if (_moves[ply] == null) {
+            _moves[ply] = new Move[Board.MAX_MOVES];
+            _keys[ply] = new int[Board.MAX_MOVES];
+        }
+        return _moves[ply];
+    }
+
+    /** Return a heuristic value for BOARD.  Uses the pattern tables of
+     *  my game's weights, if any were loaded, and otherwise piece count
+     *  plus mobility. */
+    int staticScore(Board board) {
         if (board.gameOver()) {
             if (board.numPieces(RED) > board.numPieces(BLUE)) {
                 return WINNING_VALUE;
@@ -162,6 +310,9 @@ class AI extends Player {
             } else {
                 return 0;
             }
+        } else if (game().weights() != null
+                   && game().weights().patterns() == board.patterns()) {
+            return game().weights().score(board);
         } else {
             return (board.numPieces(RED)
                     - board.numPieces(BLUE)
@@ -170,6 +321,48 @@ class AI extends Player {
         }
     }
 
-    /** The maximum number of moves to consider in the AI. */
-    private static final int MOVELIMIT = 50;
+    /** Counts of the work done by searches. */
+    static class Stats {
+        /** Number of positions visited. */
+        long nodes;
+        /** Number of null moves searched. */
+        long nullTries;
+        /** Number of nodes pruned by null moves. */
+        long nullCutoffs;
+        /** Number of moves searched to reduced depth. */
+        long lmrReductions;
+        /** Number of reduced moves that had to be searched again. */
+        long lmrResearches;
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes; null moves: %d tried, %d cut;"
+                                 + " late moves: %d reduced, %d re-searched",
+                                 nodes, nullTries, nullCutoffs,
+                                 lmrReductions, lmrResearches);
+        }
+    }
+
+    /** Search depth. */
+    private int _depth = MAX_DEPTH;
+
+    /** True iff late move reductions are enabled. */
+    private boolean _lmr = true;
+    /** Parameters for late move reductions (see setLateMoveReductions). */
+    private int _lmrFullMoves = LMR_FULL_MOVES, _lmrMinDepth = LMR_MIN_DEPTH,
+        _lmrReduction = LMR_REDUCTION;
+
+    /** True iff null-move pruning is enabled. */
+    private boolean _nullMove = true;
+    /** Parameters for null-move pruning (see setNullMovePruning). */
+    private int _nullMinDepth = NULL_MIN_DEPTH,
+        _nullReduction = NULL_REDUCTION, _nullMargin = NULL_MARGIN;
+
+    /** Search statistics. */
+    private Stats _stats = new Stats();
+
+    /** Move buffers and ordering keys for each ply of search. */
+    private Move[][] _moves = new Move[MAX_DEPTH + 2][];
+    /** Ordering keys for the moves in _moves. */
+    private int[][] _keys = new int[MAX_DEPTH + 2][];
 }
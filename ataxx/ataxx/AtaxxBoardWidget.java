@@ -2,37 +2,30 @@ package ataxx;
 
 import ucb.gui2.Pad;
 
-import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.BasicStroke;
+import java.awt.Rectangle;
 import java.util.Observer;
 import java.util.Observable;
 
 import java.awt.event.MouseEvent;
 
-import static ataxx.PieceColor.*;
+import javax.swing.Timer;
 
-/** Widget for displaying an Ataxx board.
+/** Widget for displaying an Ataxx board.  Drawing is done by a
+ *  BoardRenderer, which keeps the current picture of the board.  Board
+ *  notifications are coalesced: after one arrives, the picture is
+ *  brought up to date at the next frame (at most MAX_FPS times a
+ *  second), and only the squares that changed are repainted.
  *  @author Ze Martinho
  */
 class AtaxxBoardWidget extends Pad implements Observer {
 
     /** Length of side of one square, in pixels. */
-    static final int SQDIM = 50;
-    /** Number of squares on a side. */
-    static final int SIDE = Board.SIDE;
+    static final int SQDIM = BoardRenderer.SQDIM;
     /** Radius of circle representing a piece. */
-    static final int PIECE_RADIUS = 15;
-
-    /** Color of red pieces. */
-    private static final Color RED_COLOR = Color.RED;
-    /** Color of blue pieces. */
-    private static final Color BLUE_COLOR = Color.BLUE;
-    /** Color of blank squares. */
-    private static final Color BLANK_COLOR = Color.WHITE;
-
-    /** Stroke for lines. */
-    private static final BasicStroke LINE_STROKE = new BasicStroke(1.0f);
+    static final int PIECE_RADIUS = BoardRenderer.PIECE_RADIUS;
+    /** Largest number of frames drawn per second. */
+    static final int MAX_FPS = 30;
 
     /** Model being displayed. */
     private static Board _model;
@@ -40,21 +33,19 @@ class AtaxxBoardWidget extends Pad implements Observer {
     /** A new widget displaying MODEL. */
     AtaxxBoardWidget(Board model) {
         _model = model;
+        _renderer = new BoardRenderer(model.side());
+        _frameTimer = new Timer(1000 / MAX_FPS, (e) -> nextFrame());
+        _frameTimer.setRepeats(false);
         setMouseHandler("click", this::readMove);
         _model.addObserver(this);
-        _dim = SQDIM * SIDE;
+        _dim = _renderer.dim();
+        _renderer.update(_model);
         setPreferredSize(_dim, _dim);
     }
 
     @Override
     public synchronized void paintComponent(Graphics2D g) {
-        g.setColor(BLANK_COLOR);
-        g.fillRect(0, 0, _dim, _dim);
-
-    }
-
-    /** Draw a block centered at (CX, CY) on G. */
-    void drawBlock(Graphics2D g, int cx, int cy) {
+        g.drawImage(_renderer.frame(), 0, 0, null);
     }
 
     /** Notify observers of mouse's current position from click event WHERE. */
@@ -63,22 +54,36 @@ class AtaxxBoardWidget extends Pad implements Observer {
         char mouseCol, mouseRow;
         if (where.getButton() == MouseEvent.BUTTON1) {
             mouseCol = (char) (x / SQDIM + 'a');
-            mouseRow = (char) ((SQDIM * SIDE - y) / SQDIM + '1');
-            if (mouseCol >= 'a' && mouseCol <= 'g'
-                && mouseRow >= '1' && mouseRow <= '7') {
+            mouseRow = (char) ((_dim - y) / SQDIM + '1');
+            if (mouseCol >= 'a' && mouseCol <= _model.lastCol()
+                && mouseRow >= '1' && mouseRow <= _model.lastRow()) {
                 setChanged();
-                notifyObservers("" + mouseCol + mouseRow);
+                notifyObservers("" + mouseCol + Board.rowName(mouseRow));
             }
         }
     }
 
     @Override
     public synchronized void update(Observable model, Object arg) {
-        repaint();
+        if (!_frameTimer.isRunning()) {
+            _frameTimer.restart();
+        }
+    }
+
+    /** Bring the picture up to date with the model and repaint the
+     *  squares that changed since the last frame. */
+    private synchronized void nextFrame() {
+        Rectangle dirty = _renderer.update(_model);
+        if (dirty != null) {
+            repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+        }
     }
 
     /** Dimension of current drawing surface in pixels. */
     private int _dim;
-
+    /** Draws and holds the picture of the board. */
+    private final BoardRenderer _renderer;
+    /** Fires once at the next frame after a change to the model. */
+    private final Timer _frameTimer;
 
 }
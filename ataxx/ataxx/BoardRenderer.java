@@ -0,0 +1,206 @@
+package ataxx;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static ataxx.PieceColor.*;
+
+/** Draws Boards into an image, redrawing only what changes.  The grid
+ *  and blocks are drawn once into a cached background image, which is
+ *  rebuilt only when the blocked squares change.  The current picture
+ *  (the frame) is the background with the pieces drawn over it; each
+ *  call to update redraws just the squares whose contents differ from
+ *  those last drawn and returns the region of the frame that changed.
+ *
+ *  Nothing here needs a display, so the same code serves the
+ *  AtaxxBoardWidget and snapshot export (see snapshot and writePng).
+ *  @author Ze Martinho
+ */
+class BoardRenderer {
+
+    /** Length of side of one square, in pixels. */
+    static final int SQDIM = 50;
+    /** Radius of circle representing a piece. */
+    static final int PIECE_RADIUS = 15;
+
+    /** Color of red pieces. */
+    private static final Color RED_COLOR = Color.RED;
+    /** Color of blue pieces. */
+    private static final Color BLUE_COLOR = Color.BLUE;
+    /** Color of blank squares. */
+    private static final Color BLANK_COLOR = Color.WHITE;
+    /** Color of blocks. */
+    private static final Color BLOCK_COLOR = Color.DARK_GRAY;
+    /** Color of grid lines. */
+    private static final Color LINE_COLOR = Color.BLACK;
+
+    /** Stroke for lines. */
+    private static final BasicStroke LINE_STROKE = new BasicStroke(1.0f);
+
+    /** A renderer for boards with SIDE squares on a side. */
+    BoardRenderer(int side) {
+        _side = side;
+        _dim = SQDIM * side;
+        _frame = new BufferedImage(_dim, _dim, BufferedImage.TYPE_INT_RGB);
+        _shown = new PieceColor[Board.NUM_SQUARES];
+    }
+
+    /** Return the size of a side of my images, in pixels. */
+    int dim() {
+        return _dim;
+    }
+
+    /** Return the current frame, as of the last update.  The caller must
+     *  not modify it, and it changes with each update. */
+    BufferedImage frame() {
+        return _frame;
+    }
+
+    /** Return the number of times the background has been drawn. */
+    int backgroundBuilds() {
+        return _backgroundBuilds;
+    }
+
+    /** Bring the frame up to date with BOARD (which must have my size),
+     *  returning the smallest rectangle containing every square redrawn,
+     *  or null if nothing changed. */
+    synchronized Rectangle update(Board board) {
+        boolean blocksChanged = _background == null;
+        for (char c = 'a'; c <= board.lastCol() && !blocksChanged; c += 1) {
+            for (char r = '1'; r <= board.lastRow(); r += 1) {
+                int sq = Board.index(c, r);
+                if ((board.get(sq) == BLOCKED) != (_shown[sq] == BLOCKED)) {
+                    blocksChanged = true;
+                    break;
+                }
+            }
+        }
+        if (blocksChanged) {
+            drawBackground(board);
+            Arrays.fill(_shown, null);
+        }
+
+        Graphics2D g = _frame.createGraphics();
+        Rectangle dirty = null;
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                               RenderingHints.VALUE_ANTIALIAS_ON);
+            for (char c = 'a'; c <= board.lastCol(); c += 1) {
+                for (char r = '1'; r <= board.lastRow(); r += 1) {
+                    int sq = Board.index(c, r);
+                    PieceColor piece = board.get(sq);
+                    if (piece == _shown[sq]) {
+                        continue;
+                    }
+                    Rectangle box = square(c, r);
+                    drawSquare(g, box, piece);
+                    _shown[sq] = piece;
+                    if (dirty == null) {
+                        dirty = box;
+                    } else {
+                        dirty.add(box);
+                    }
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return dirty;
+    }
+
+    /** Return a new image of BOARD. */
+    static BufferedImage snapshot(Board board) {
+        BoardRenderer renderer = new BoardRenderer(board.side());
+        renderer.update(board);
+        return renderer.frame();
+    }
+
+    /** Write an image of BOARD to FILE in PNG format. */
+    static void writePng(Board board, File file) throws IOException {
+        ImageIO.write(snapshot(board), "png", file);
+    }
+
+    /** Return the pixel rectangle occupied by square CR. */
+    Rectangle square(char c, char r) {
+        return new Rectangle((c - 'a') * SQDIM,
+                             (_side - 1 - (r - '1')) * SQDIM,
+                             SQDIM, SQDIM);
+    }
+
+    /** Redraw the square in BOX on G to show PIECE over the
+     *  background. */
+    private void drawSquare(Graphics2D g, Rectangle box, PieceColor piece) {
+        g.drawImage(_background, box.x, box.y, box.x + box.width,
+                    box.y + box.height, box.x, box.y, box.x + box.width,
+                    box.y + box.height, null);
+        if (piece == RED || piece == BLUE) {
+            g.setColor(piece == RED ? RED_COLOR : BLUE_COLOR);
+            int cx = box.x + box.width / 2, cy = box.y + box.height / 2;
+            g.fillOval(cx - PIECE_RADIUS, cy - PIECE_RADIUS,
+                       2 * PIECE_RADIUS, 2 * PIECE_RADIUS);
+        }
+    }
+
+    /** Draw the background (blank squares, grid, and blocks) of BOARD
+     *  into _background. */
+    private void drawBackground(Board board) {
+        if (_background == null) {
+            _background =
+                new BufferedImage(_dim, _dim, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g = _background.createGraphics();
+        try {
+            g.setColor(BLANK_COLOR);
+            g.fillRect(0, 0, _dim, _dim);
+            for (char c = 'a'; c <= board.lastCol(); c += 1) {
+                for (char r = '1'; r <= board.lastRow(); r += 1) {
+                    if (board.get(c, r) == BLOCKED) {
+                        Rectangle box = square(c, r);
+                        drawBlock(g, box.x + box.width / 2,
+                                  box.y + box.height / 2);
+                    }
+                }
+            }
+            g.setColor(LINE_COLOR);
+            g.setStroke(LINE_STROKE);
+            for (int k = 0; k <= _side; k += 1) {
+                int p = Math.min(k * SQDIM, _dim - 1);
+                g.drawLine(p, 0, p, _dim - 1);
+                g.drawLine(0, p, _dim - 1, p);
+            }
+        } finally {
+            g.dispose();
+        }
+        _backgroundBuilds += 1;
+    }
+
+    /** Draw a block centered at (CX, CY) on G. */
+    private void drawBlock(Graphics2D g, int cx, int cy) {
+        g.setColor(BLOCK_COLOR);
+        g.fillRect(cx - SQDIM / 2, cy - SQDIM / 2, SQDIM, SQDIM);
+    }
+
+    /** Number of squares on a side. */
+    private final int _side;
+    /** Size of a side of my images in pixels. */
+    private final int _dim;
+    /** The current picture. */
+    private final BufferedImage _frame;
+    /** The grid and blocks, or null if not yet drawn. */
+    private BufferedImage _background;
+    /** Contents of each square (by linearized index) as last drawn in
+     *  _frame, or null if not yet drawn. */
+    private final PieceColor[] _shown;
+    /** Number of times _background has been drawn. */
+    private int _backgroundBuilds;
+
+}
@@ -0,0 +1,111 @@
+package ataxx;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of BoardRenderer, which need no display.
+ *  @author Ze Martinho
+ */
+public class BoardRendererTest {
+
+    /** Return the color of the center of square CR in IMAGE as drawn by
+     *  RENDERER. */
+    private static Color center(BoardRenderer renderer, BufferedImage image,
+                                char c, char r) {
+        Rectangle box = renderer.square(c, r);
+        return new Color(image.getRGB(box.x + box.width / 2,
+                                      box.y + box.height / 2));
+    }
+
+    @Test public void testInitialFrame() {
+        Board b = new Board();
+        BoardRenderer renderer = new BoardRenderer(b.side());
+        Rectangle dirty = renderer.update(b);
+        assertEquals(new Rectangle(0, 0, renderer.dim(), renderer.dim()),
+                     dirty);
+        BufferedImage frame = renderer.frame();
+        assertEquals(7 * BoardRenderer.SQDIM, frame.getWidth());
+        assertEquals(Color.RED, center(renderer, frame, 'a', '7'));
+        assertEquals(Color.BLUE, center(renderer, frame, 'a', '1'));
+        assertEquals(Color.WHITE, center(renderer, frame, 'd', '4'));
+        assertNull("nothing changed", renderer.update(b));
+    }
+
+    @Test public void testDirtyRegion() {
+        Board b = new Board();
+        BoardRenderer renderer = new BoardRenderer(b.side());
+        renderer.update(b);
+        b.makeMove('a', '7', 'b', '6', false);
+        Rectangle dirty = renderer.update(b);
+        assertEquals(renderer.square('b', '6'), dirty);
+        assertEquals(Color.RED, center(renderer, renderer.frame(), 'b', '6'));
+        assertEquals(1, renderer.backgroundBuilds());
+
+        b.makeMove('a', '1', 'a', '3', false);
+        dirty = renderer.update(b);
+        assertTrue(dirty.contains(renderer.square('a', '1')));
+        assertFalse(dirty.intersects(renderer.square('d', '4')));
+        assertEquals(Color.WHITE,
+                     center(renderer, renderer.frame(), 'a', '1'));
+        assertEquals(1, renderer.backgroundBuilds());
+    }
+
+    @Test public void testBlocksRebuildBackground() {
+        Board b = new Board();
+        BoardRenderer renderer = new BoardRenderer(b.side());
+        renderer.update(b);
+        b.setBlock("c3");
+        renderer.update(b);
+        assertEquals(2, renderer.backgroundBuilds());
+        assertEquals(Color.DARK_GRAY,
+                     center(renderer, renderer.frame(), 'e', '5'));
+        assertEquals(Color.RED,
+                     center(renderer, renderer.frame(), 'a', '7'));
+        b.clear();
+        renderer.update(b);
+        assertEquals(3, renderer.backgroundBuilds());
+        assertEquals(Color.WHITE,
+                     center(renderer, renderer.frame(), 'e', '5'));
+    }
+
+    @Test public void testIncrementalMatchesSnapshot() {
+        Board b = new Board(9);
+        BoardRenderer renderer = new BoardRenderer(b.side());
+        renderer.update(b);
+        b.setBlock("d4");
+        Move[] moves = new Move[Board.MAX_MOVES];
+        for (int i = 0; i < 20; i += 1) {
+            int n = b.legalMoves(b.whoseMove(), moves);
+            b.makeMove(moves[(7 * i) % n], false);
+            renderer.update(b);
+        }
+        BufferedImage full = BoardRenderer.snapshot(b);
+        BufferedImage frame = renderer.frame();
+        for (int x = 0; x < full.getWidth(); x += 1) {
+            for (int y = 0; y < full.getHeight(); y += 1) {
+                assertEquals(full.getRGB(x, y), frame.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test public void testWritePng() throws IOException {
+        Board b = new Board();
+        File file = File.createTempFile("ataxx", ".png");
+        try {
+            BoardRenderer.writePng(b, file);
+            BufferedImage image = ImageIO.read(file);
+            assertEquals(7 * BoardRenderer.SQDIM, image.getHeight());
+        } finally {
+            file.delete();
+        }
+    }
+
+}
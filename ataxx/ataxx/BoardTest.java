@@ -4,6 +4,11 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import static ataxx.Move.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+
 /** Tests of the Board class.
  *  @author
  */
@@ -91,4 +96,246 @@ public class BoardTest {
         makeMoves(b0, GAME2);
         assertEquals("second pass failed to reach same position", b2, b0);
     }
+
+    private static void checkPatterns(String msg, Board b) {
+        Patterns pat = b.patterns();
+        for (int p = 0; p < pat.count(); p += 1) {
+            assertEquals(msg + " (pattern " + p + ")",
+                         pat.index(b, p), b.patternIndex(p));
+        }
+    }
+
+    @Test public void testPatternIndices() {
+        Board b0 = new Board();
+        checkPatterns("initial board", b0);
+        b0.setBlock("c3");
+        checkPatterns("after block", b0);
+        makeMoves(b0, GAME2);
+        checkPatterns("after moves", b0);
+        checkPatterns("copy", new Board(b0));
+        for (int i = 0; i < GAME2.length; i += 1) {
+            b0.undo();
+            checkPatterns("after undo", b0);
+        }
+        b0.clear();
+        checkPatterns("after clear", b0);
+    }
+
+    @Test public void testPatternIndexEncoding() {
+        Board b0 = new Board();
+        int corner = b0.patterns().count() - 1;
+        assertEquals(Patterns.CORNER, b0.patterns().patternClass(corner));
+        assertEquals(2, b0.patternIndex(corner));
+        b0.makeMove('a', '7', 'b', '7', false);
+        b0.makeMove('a', '1', 'b', '2', false);
+        assertEquals(2 + 2 * 3 * 3 * 3 * 3, b0.patternIndex(corner));
+    }
+
+    /** Return the weight that weightText gives index I of pattern
+     *  class C. */
+    private static int weight(int c, int i) {
+        return (c + 1) * (i % 5 - 2);
+    }
+
+    /** Return the contents of a weight file for PAT, with comments,
+     *  giving each index the weight chosen by weight. */
+    private static String weightText(Patterns pat) {
+        StringBuilder text = new StringBuilder("# Test weights 1 2 3\n");
+        for (int c = 0; c < Patterns.NUM_CLASSES; c += 1) {
+            text.append(Patterns.CLASS_NAMES[c]).append(" ")
+                .append(pat.classSize(c)).append("  # table ").append(c)
+                .append("\n");
+            for (int i = 0; i < pat.classSize(c); i += 1) {
+                text.append(weight(c, i)).append(i % 10 == 9 ? "\n" : " ");
+            }
+            text.append("# 4 5 6\n");
+        }
+        return text.toString();
+    }
+
+    /** Return the name of a new temporary file containing TEXT. */
+    private static String weightFile(String text) throws IOException {
+        File file = File.createTempFile("weights", ".txt");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), text);
+        return file.getPath();
+    }
+
+    /** Return the sum of the weights given by weight to the pattern
+     *  indices of B, computed from scratch. */
+    private static int expectedScore(Board b) {
+        Patterns pat = b.patterns();
+        int result = 0;
+        for (int p = 0; p < pat.count(); p += 1) {
+            result += weight(pat.patternClass(p), pat.index(b, p));
+        }
+        return result;
+    }
+
+    @Test public void testPatternWeights() throws IOException {
+        Board b0 = new Board();
+        PatternWeights weights =
+            PatternWeights.load(weightFile(weightText(b0.patterns())));
+        assertSame(b0.patterns(), weights.patterns());
+        assertEquals(expectedScore(b0), weights.score(b0));
+        makeMoves(b0, GAME2);
+        assertEquals(expectedScore(b0), weights.score(b0));
+        b0.setBlock("c3");
+        assertEquals(expectedScore(b0), weights.score(b0));
+
+        Game game = new Game(b0, new ReaderSource(new StringReader(""),
+                                                  false),
+                             new TextReporter());
+        AI ai = new AI(game, PieceColor.BLUE);
+        int heuristic = b0.numPieces(PieceColor.RED)
+            - b0.numPieces(PieceColor.BLUE)
+            + b0.totalPossibleMoves(PieceColor.RED)
+            - b0.totalPossibleMoves(PieceColor.BLUE);
+        assertEquals(heuristic, ai.staticScore(b0));
+        game.setWeights(weights);
+        assertEquals(weights.score(b0), ai.staticScore(b0));
+        assertEquals("weights for another board size were used",
+                     0, ai.staticScore(new Board(9)));
+    }
+
+    /** Check that loading the weight file TEXT for boards of side 7
+     *  fails. */
+    private static void checkBadWeights(String text) throws IOException {
+        String name = weightFile(text);
+        try {
+            PatternWeights.load(name);
+            fail("loaded bad weight file: " + text.substring(0, 40));
+        } catch (GameException excp) {
+            assertTrue(excp.getMessage(), excp.getMessage().contains(name));
+        }
+    }
+
+    @Test public void testBadPatternWeights() throws IOException {
+        String text = weightText(new Board().patterns());
+        checkBadWeights(text.substring(0, text.length() / 2));
+        checkBadWeights(text.substring(0, text.indexOf("corner")));
+        checkBadWeights(text.replaceFirst("\n-2 ", "\n-2x "));
+        checkBadWeights(text.replaceFirst("window 19683",
+                                          "window 19682"));
+        checkBadWeights(text.replaceFirst("edge", "edges"));
+        checkBadWeights("# nothing but a comment\n");
+        checkBadWeights(text + "corner 1 0\n");
+    }
+
+    @Test public void testLegalMoves() {
+        Board b0 = new Board();
+        Move[] moves = new Move[Board.MAX_MOVES];
+        assertEquals(16, b0.legalMoves(PieceColor.RED, moves));
+        b0.makeMove('a', '7', 'b', '7', false);
+        assertEquals(23, b0.legalMoves(PieceColor.RED, moves));
+        for (int i = 0; i < 23; i += 1) {
+            assertTrue(b0.legalMove(moves[i]));
+        }
+    }
+
+    @Test public void testForcePassAndJumpUndo() {
+        Board b0 = new Board();
+        b0.makeMove('a', '7', 'a', '5', false);
+        assertEquals(1, b0.numJumps());
+        b0.forcePass();
+        assertEquals(PieceColor.RED, b0.whoseMove());
+        b0.undo();
+        assertEquals(PieceColor.BLUE, b0.whoseMove());
+        b0.undo();
+        assertEquals(0, b0.numJumps());
+        assertEquals(PieceColor.RED, b0.whoseMove());
+    }
+
+    /** Check that the legal moves of WHO on B are those found by trying
+     *  every pair of squares with legalMove: every jump, and one extend
+     *  to each square that some extend reaches. */
+    private static void checkLegalMoves(Board b, PieceColor who) {
+        Move[] moves = new Move[Board.MAX_MOVES];
+        int n = b.legalMoves(who, moves);
+        int expected = 0;
+        for (char c1 = 'a'; c1 <= b.lastCol(); c1 += 1) {
+            for (char r1 = '1'; r1 <= b.lastRow(); r1 += 1) {
+                boolean extend = false;
+                for (char c0 = 'a'; c0 <= b.lastCol(); c0 += 1) {
+                    for (char r0 = '1'; r0 <= b.lastRow(); r0 += 1) {
+                        Move m = Move.move(c0, r0, c1, r1);
+                        if (b.get(c0, r0) != who || m == null
+                            || !b.legalMove(m)) {
+                            continue;
+                        } else if (m.isExtend()) {
+                            extend = true;
+                        } else {
+                            expected += 1;
+                        }
+                    }
+                }
+                if (extend) {
+                    expected += 1;
+                }
+            }
+        }
+        assertEquals(expected, n);
+        for (int i = 0; i < n; i += 1) {
+            assertTrue(b.legalMove(moves[i]));
+            assertEquals(who, b.get(moves[i].fromIndex()));
+        }
+        assertEquals(b.canMove(who), n > 0);
+    }
+
+    @Test public void testLargerBoards() {
+        for (int side = 5; side <= Board.MAX_SIDE; side += 2) {
+            Board b = new Board(side);
+            char last = b.lastCol();
+            assertEquals(side, b.side());
+            assertEquals(PieceColor.RED, b.get(last, '1'));
+            assertEquals(PieceColor.BLUE, b.get(last, b.lastRow()));
+            assertEquals(PieceColor.BLOCKED,
+                         b.get((char) (last + 1), '1'));
+            assertEquals(16, b.totalPossibleMoves(PieceColor.RED));
+            checkLegalMoves(b, PieceColor.RED);
+            b.setBlock("c3");
+            assertEquals(PieceColor.BLOCKED,
+                         b.get((char) (last - 2), (char) (b.lastRow() - 2)));
+            checkPatterns("blocked " + side, b);
+        }
+    }
+
+    @Test public void testLargeBoardGame() {
+        Board b = new Board(Board.MAX_SIDE);
+        Move[] moves = new Move[Board.MAX_MOVES];
+        java.util.Random random = new java.util.Random(3);
+        int made;
+        for (made = 0; made < 60; made += 1) {
+            PieceColor who = b.whoseMove();
+            checkLegalMoves(b, who);
+            int n = b.legalMoves(who, moves);
+            b.makeMove(moves[random.nextInt(n)], false);
+        }
+        checkPatterns("11x11 game", b);
+        Board copy = new Board(b);
+        for (; made > 0; made -= 1) {
+            b.undo();
+        }
+        checkPatterns("11x11 undone", b);
+        assertEquals(new Board(Board.MAX_SIDE), b);
+        assertNotEquals(copy, b);
+    }
+
+    @Test public void testRowNames() {
+        Board b = new Board(Board.MAX_SIDE);
+        assertEquals(':', Board.row("10"));
+        assertEquals("11", Board.rowName(b.lastRow()));
+        assertEquals("a11-a10.",
+                     Move.move('a', Board.row("11"), 'a', Board.row("10"))
+                     .toString());
+        assertTrue(b.toString(true).startsWith("11 r - "));
+        assertEquals(Command.Type.PIECEMOVE,
+                     Command.parseCommand("a11-b10", 11).commandType());
+        assertEquals(Command.Type.ERROR,
+                     Command.parseCommand("a11-b10").commandType());
+        assertEquals(Command.Type.ERROR,
+                     Command.parseCommand("h1-g1", 7).commandType());
+        assertEquals(Command.Type.BLOCK,
+                     Command.parseCommand("block h9", 9).commandType());
+    }
 }
@@ -17,13 +17,13 @@ class Command {
     static enum Type {
         /* Start-up state only. */
         AUTO("(?i)auto\\s+(red|blue)"),
-        BLOCK("(?i)block\\s+([a-g]{1}[1-7]{1})"),
+        BLOCK("(?i)block\\s+([a-k]{1}(?:1[01]|[1-9]))"),
         MANUAL("(?i)manual\\s+(red|blue)"),
         SEED("(?i)seed\\s+([0-9]+)"),
         START,
         /* Regular moves (set-up or play) */
         PASS("(?i)pass|[-]"),
-        PIECEMOVE("([a-g]{1})([1-7]{1})[-]([a-g]{1})([1-7]{1})"),
+        PIECEMOVE("([a-k]{1})(1[01]|[1-9])[-]([a-k]{1})(1[01]|[1-9])"),
         /* Valid at any time. */
         LOAD("(?i)load\\s+([[^\\s]]*[.][[^\\s]]*)"),
         QUIT, CLEAR, DUMP, HELP,
@@ -69,10 +69,42 @@ class Command {
         return _operands;
     }
 
-    /** Parse COMMAND, returning the command and its operands.
-     *  COMMAND is assumed to be trimmed of all leading and
+    /** Parse COMMAND for a standard board, returning the command and its
+     *  operands.  COMMAND is assumed to be trimmed of all leading and
      *  trailing whitespace.  */
     static Command parseCommand(String command) {
+        return parseCommand(command, Board.DEFAULT_SIDE);
+    }
+
+    /** Parse COMMAND for a board with SIDE squares on a side, returning
+     *  the command and its operands.  Squares off that board make the
+     *  command an ERROR.  Row operands are row numbers ("1" to "11"); see
+     *  Board.row.  COMMAND is assumed to be trimmed of all leading and
+     *  trailing whitespace.
+     *
+     *  This accepts exactly the language given by the patterns of the
+     *  Types (see matchCommand), but in a single pass that dispatches on
+     *  the first character and word, and allocates only the Command and
+     *  operands of commands that have operands. */
+    static Command parseCommand(String command, int side) {
+        if (command == null) {
+            return SIMPLE[Type.EOF.ordinal()];
+        }
+        command = command.trim();
+        Command result = scan(command, side);
+        if (result != null) {
+            return result;
+        } else if (hasLineTerminator(command)) {
+            throw new Error("Internal failure: error command did not match.");
+        }
+        return SIMPLE[Type.ERROR.ordinal()];
+    }
+
+    /** Parse COMMAND for a board with SIDE squares on a side as
+     *  parseCommand does, but by trying the pattern of each Type in
+     *  turn.  This is the definition of the command language, against
+     *  which parseCommand is tested. */
+    static Command matchCommand(String command, int side) {
         if (command == null) {
             return new Command(Type.EOF);
         }
@@ -84,12 +116,259 @@ class Command {
                 for (int i = 1; i <= operands.length; i += 1) {
                     operands[i - 1] = mat.group(i);
                 }
+                if (!onBoard(type, operands, side)) {
+                    return new Command(Type.ERROR);
+                }
                 return new Command(type, operands);
             }
         }
         throw new Error("Internal failure: error command did not match.");
     }
 
+    /** Return the Command (other than EOF and ERROR) denoted by the
+     *  trimmed text S on a board with SIDE squares on a side, an ERROR
+     *  command if it names a square off that board, or null if S is not
+     *  a command at all. */
+    private static Command scan(String s, int side) {
+        int n = s.length();
+        if (n == 0) {
+            return null;
+        }
+        char c = s.charAt(0);
+        if (c == '-') {
+            return n == 1 ? SIMPLE[Type.PASS.ordinal()] : null;
+        } else if (c >= 'a' && c <= 'k' && n > 1 && isDigit(s.charAt(1))) {
+            return scanMove(s, side);
+        }
+
+        int end = 0;
+        while (end < n && !isSpace(s.charAt(end))) {
+            end += 1;
+        }
+        int arg = end;
+        while (arg < n && isSpace(s.charAt(arg))) {
+            arg += 1;
+        }
+        boolean hasArg = end < n;
+        switch (end) {
+        case 4:
+            if (!hasArg) {
+                if (s.equals("quit")) {
+                    return SIMPLE[Type.QUIT.ordinal()];
+                } else if (s.equals("dump")) {
+                    return SIMPLE[Type.DUMP.ordinal()];
+                } else if (s.equals("help")) {
+                    return SIMPLE[Type.HELP.ordinal()];
+                } else if (wordAt(s, 0, "pass")) {
+                    return SIMPLE[Type.PASS.ordinal()];
+                }
+            } else if (wordAt(s, 0, "auto")) {
+                return color(Type.AUTO, s, arg);
+            } else if (wordAt(s, 0, "seed")) {
+                return seed(s, arg);
+            } else if (wordAt(s, 0, "load")) {
+                return load(s, arg);
+            }
+            return null;
+        case 5:
+            if (!hasArg) {
+                if (s.equals("start")) {
+                    return SIMPLE[Type.START.ordinal()];
+                } else if (s.equals("clear")) {
+                    return SIMPLE[Type.CLEAR.ordinal()];
+                }
+            } else if (wordAt(s, 0, "block")) {
+                return block(s, arg, side);
+            }
+            return null;
+        case 6:
+            if (hasArg && wordAt(s, 0, "manual")) {
+                return color(Type.MANUAL, s, arg);
+            }
+            return null;
+        default:
+            return null;
+        }
+    }
+
+    /** Return the PIECEMOVE command S (which starts with a column letter
+     *  and digit) on a board with SIDE squares on a side, an ERROR
+     *  command if it is off that board, or null if S is not a move. */
+    private static Command scanMove(String s, int side) {
+        int n = s.length();
+        int row0 = rowNumber(s, 1);
+        int k = row0 < 10 ? 2 : 3;
+        if (row0 == 0 || k + 2 >= n || s.charAt(k) != '-') {
+            return null;
+        }
+        char col1 = s.charAt(k + 1);
+        int row1 = rowNumber(s, k + 2);
+        int end = k + 2 + (row1 < 10 ? 1 : 2);
+        if (col1 < 'a' || col1 > 'k' || row1 == 0 || end != n) {
+            return null;
+        }
+        char col0 = s.charAt(0);
+        if (col0 - 'a' >= side || row0 > side
+            || col1 - 'a' >= side || row1 > side) {
+            return SIMPLE[Type.ERROR.ordinal()];
+        }
+        return new Command(Type.PIECEMOVE, COLUMN_NAMES[col0 - 'a'],
+                           ROW_NAMES[row0], COLUMN_NAMES[col1 - 'a'],
+                           ROW_NAMES[row1]);
+    }
+
+    /** Return the row number (1 to 11) at position K of S, or 0 if there
+     *  is none.  Row numbers are "1" followed by "0" or "1" if possible,
+     *  and otherwise a single non-zero digit. */
+    private static int rowNumber(String s, int k) {
+        if (k >= s.length()) {
+            return 0;
+        }
+        char d = s.charAt(k);
+        if (d == '1' && k + 1 < s.length()
+            && (s.charAt(k + 1) == '0' || s.charAt(k + 1) == '1')) {
+            return 10 + s.charAt(k + 1) - '0';
+        } else if (d >= '1' && d <= '9') {
+            return d - '0';
+        }
+        return 0;
+    }
+
+    /** Return the command of type TYPE whose operand, "red" or "blue" in
+     *  any case, starts at position ARG of S, or null if there is no such
+     *  operand. */
+    private static Command color(Type type, String s, int arg) {
+        int len = s.length() - arg;
+        if ((len == 3 && wordAt(s, arg, "red"))
+            || (len == 4 && wordAt(s, arg, "blue"))) {
+            return new Command(type, s.substring(arg));
+        }
+        return null;
+    }
+
+    /** Return the SEED command whose operand, a string of digits, starts
+     *  at position ARG of S, or null if there is none. */
+    private static Command seed(String s, int arg) {
+        for (int i = arg; i < s.length(); i += 1) {
+            if (!isDigit(s.charAt(i))) {
+                return null;
+            }
+        }
+        return new Command(Type.SEED, s.substring(arg));
+    }
+
+    /** Return the LOAD command whose operand, a word containing a '.',
+     *  starts at position ARG of S, or null if there is none. */
+    private static Command load(String s, int arg) {
+        boolean dot = false;
+        for (int i = arg; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (isSpace(c)) {
+                return null;
+            }
+            dot |= c == '.';
+        }
+        return dot ? new Command(Type.LOAD, s.substring(arg)) : null;
+    }
+
+    /** Return the BLOCK command whose operand, a square on a board with
+     *  SIDE squares on a side, starts at position ARG of S, an ERROR
+     *  command if it is off that board, or null if there is none.  The
+     *  column letter may be in either case. */
+    private static Command block(String s, int arg, int side) {
+        char col = lower(s.charAt(arg));
+        int row = rowNumber(s, arg + 1);
+        int end = arg + 1 + (row < 10 ? 1 : 2);
+        if (col < 'a' || col > 'k' || row == 0 || end != s.length()) {
+            return null;
+        } else if (col - 'a' >= side || row > side) {
+            return SIMPLE[Type.ERROR.ordinal()];
+        }
+        return new Command(Type.BLOCK, s.substring(arg));
+    }
+
+    /** Return true iff the characters of S starting at K are those of
+     *  the lower-case WORD, ignoring the case of ASCII letters only (as
+     *  do Patterns with the (?i) flag). */
+    private static boolean wordAt(String s, int k, String word) {
+        for (int i = 0; i < word.length(); i += 1) {
+            if (lower(s.charAt(k + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return C converted to lower case if it is an upper-case ASCII
+     *  letter, and otherwise C. */
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /** Return true iff C is an ASCII digit. */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Return true iff C is whitespace as matched by \s in a Pattern. */
+    private static boolean isSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /** Return true iff S contains a character that the pattern '.' does
+     *  not match, so that even the ERROR pattern fails on S. */
+    private static boolean hasLineTerminator(String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085'
+                || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff the squares named by OPERANDS of a command of type
+     *  TYPE are on a board with SIDE squares on a side. */
+    private static boolean onBoard(Type type, String[] operands, int side) {
+        switch (type) {
+        case BLOCK:
+            return onBoard(Character.toLowerCase(operands[0].charAt(0)),
+                           operands[0].substring(1), side);
+        case PIECEMOVE:
+            return onBoard(operands[0].charAt(0), operands[1], side)
+                && onBoard(operands[2].charAt(0), operands[3], side);
+        default:
+            return true;
+        }
+    }
+
+    /** Return true iff column COL and row ROW (a row number) are on a
+     *  board with SIDE squares on a side. */
+    private static boolean onBoard(char col, String row, int side) {
+        return col - 'a' < side && Integer.parseInt(row) <= side;
+    }
+
+    /** Commands with no operands, indexed by Type ordinal.  These are
+     *  shared, which is safe since their operand arrays are empty. */
+    private static final Command[] SIMPLE = new Command[Type.values().length];
+
+    /** Column operands, indexed by column number from 0. */
+    private static final String[] COLUMN_NAMES = new String[Board.MAX_SIDE];
+
+    /** Row operands, indexed by row number. */
+    private static final String[] ROW_NAMES = new String[Board.MAX_SIDE + 1];
+
+    static {
+        for (Type type : Type.values()) {
+            SIMPLE[type.ordinal()] = new Command(type);
+        }
+        for (int k = 0; k < Board.MAX_SIDE; k += 1) {
+            COLUMN_NAMES[k] = String.valueOf((char) ('a' + k));
+            ROW_NAMES[k + 1] = Integer.toString(k + 1);
+        }
+    }
+
     /** The command name. */
     private final Type _type;
     /** Command arguments. */
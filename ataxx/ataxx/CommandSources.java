@@ -8,8 +8,10 @@ import java.util.Stack;
 class CommandSources implements CommandSource {
 
     /** Read and return a line of input from the input stream,
-     *  removing comments and leading and trailing whitespace,
-     *  and skipping blank lines.  Returns null when input exhausted.
+     *  removing comments and leading and trailing whitespace (as
+     *  String.trim does), and skipping blank lines.  Allocates a new
+     *  string only when there is something to remove.  Returns null
+     *  when input exhausted.
      *  PROMPT suggests a prompt string that might be used, if
      *  appropriate to the input method. */
     public String getLine(String prompt) {
@@ -17,12 +19,20 @@ class CommandSources implements CommandSource {
             String line;
             line = _inputs.peek().getLine(prompt);
             if (line != null) {
-                if (line.indexOf('#') != -1) {
-                    line = line.substring(0, line.indexOf('#'));
+                int end = line.indexOf('#');
+                if (end == -1) {
+                    end = line.length();
                 }
-                line = line.trim();
-                if (line.length() > 0) {
-                    return line;
+                int start = 0;
+                while (start < end && line.charAt(start) <= ' ') {
+                    start += 1;
+                }
+                while (end > start && line.charAt(end - 1) <= ' ') {
+                    end -= 1;
+                }
+                if (start < end) {
+                    return start == 0 && end == line.length()
+                        ? line : line.substring(start, end);
                 }
             } else {
                 _inputs.pop();
@@ -2,6 +2,9 @@
 
 package ataxx;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -79,4 +82,84 @@ public class CommandTest {
         checkError("a7-a8");
     }
 
+    @Test public void testLargerBoards() {
+        assertEquals(PIECEMOVE,
+                     Command.parseCommand("k10-j11", 11).commandType());
+        assertArrayEquals(new String[] { "k", "10", "j", "11" },
+                          Command.parseCommand("k10-j11", 11).operands());
+        assertEquals(ERROR, Command.parseCommand("i9-h9", 8).commandType());
+        assertEquals(BLOCK, Command.parseCommand("BLOCK I9", 9).commandType());
+        assertEquals(ERROR, Command.parseCommand("block i9", 8).commandType());
+    }
+
+    /** Return a description of the result of parsing COMMAND for a board
+     *  with SIDE squares on a side, using the pattern-matching parser if
+     *  REFERENCE, and otherwise the fast one. */
+    private static String outcome(String command, int side,
+                                  boolean reference) {
+        try {
+            Command c = reference ? Command.matchCommand(command, side)
+                : Command.parseCommand(command, side);
+            return c.commandType() + " " + Arrays.toString(c.operands());
+        } catch (Error excp) {
+            return "Error: " + excp.getMessage();
+        }
+    }
+
+    /** Check that the fast and pattern-matching parsers agree on
+     *  COMMAND for all board sizes that matter to the commands. */
+    private static void checkSame(String command) {
+        for (int side = 7; side <= Board.MAX_SIDE; side += 2) {
+            assertEquals("parsing '" + command + "' on " + side + "x" + side,
+                         outcome(command, side, true),
+                         outcome(command, side, false));
+        }
+    }
+
+    /** Pieces from which testMatchesPatterns builds commands. */
+    private static final String[] FRAGMENTS = {
+        "auto", "AUTO", "Auto", "manual", "MANual", "block", "BLOCK",
+        "seed", "Seed", "start", "START", "pass", "PASS", "-", "load",
+        "LOAD", "quit", "clear", "dump", "help", "eof", "red", "Blue",
+        "bLUE", "green", " ", "  ", "\t", "\n", "\r", "\u000B", "\f",
+        "\u001C", "\u0085", "\u2028", "\u00A0", "\u017F", "\u212A",
+        "a", "b", "k", "l", "z", "A", "K", "0", "1", "10", "11", "12", "9",
+        "7", "8", ".", "x.y", "#", "foo", "a1", "b10", "-b2", "k11", "e",
+        "\u00E9", "--", "1-", "a7-", "-a"
+    };
+
+    @Test public void testMatchesPatterns() {
+        String[] fixed = {
+            "", "a1-b2", "a10-b11", "a11-a10", "k11-k9", "a1-b12",
+            "a1-b1 ", "a01-b1", "a1--b1", "a1-b", "a1-", "a1", "l1-k1",
+            "auto red", "auto\tBLUE", "auto  red", "auto\u00A0red",
+            "Manual Blue", "block A1", "block k11", "block a0", "block\na3",
+            "block a1x", "block  c3", "seed 0", "seed 0123456789",
+            "seed -1", "load a.b", "load .", "load a", "load a.b c",
+            "load\u2028x.y", "pass", "PaSs", "-", "eof", "EOF", "quit",
+            "Quit", "start ", " start", "dump", "help", "clear",
+            "x\u2028y", "\u0085", "\u017Feed 1", "pa\u017F\u017F",
+            "a1\u2028-b2"
+        };
+        for (String command : fixed) {
+            checkSame(command);
+        }
+        Random random = new Random(61);
+        StringBuilder command = new StringBuilder();
+        for (int i = 0; i < 20000; i += 1) {
+            command.setLength(0);
+            for (int k = random.nextInt(4); k >= 0; k -= 1) {
+                command.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            checkSame(command.toString());
+        }
+        for (char c0 = 'a' - 1; c0 <= 'l'; c0 += 1) {
+            for (int r0 = 0; r0 <= 12; r0 += 1) {
+                checkSame(c0 + "" + r0 + "-k" + (12 - r0));
+                checkSame("block " + c0 + r0);
+            }
+        }
+        checkSame(null);
+    }
+
 }
@@ -95,7 +95,8 @@ class Game {
     void doCommand() {
         try {
             Command cmnd =
-                    Command.parseCommand(_inputs.getLine("ataxx: "));
+                    Command.parseCommand(_inputs.getLine("ataxx: "),
+                                         _board.side());
             _commands.get(cmnd.commandType()).accept(cmnd.operands());
         } catch (GameException excp) {
             _reporter.errMsg(excp.getMessage());
@@ -112,7 +113,8 @@ class Game {
     Command getMoveCmnd(String prompt) {
         while (_state == PLAYING) {
             try {
-                Command cmnd = Command.parseCommand(_inputs.getLine(prompt));
+                Command cmnd = Command.parseCommand(_inputs.getLine(prompt),
+                                                    _board.side());
                 if (cmnd.commandType() == PIECEMOVE) {
                     return cmnd;
                 } else {
@@ -125,6 +127,22 @@ class Game {
         return null;
     }
 
+    /**
+     * Return the pattern weights used by AIs in static evaluation, or
+     * null if AIs should use their default heuristic.
+     */
+    PatternWeights weights() {
+        return _weights;
+    }
+
+    /**
+     * Use WEIGHTS for static evaluation by AIs (null for the default
+     * heuristic).
+     */
+    void setWeights(PatternWeights weights) {
+        _weights = weights;
+    }
+
     /**
      * Return random integer between 0 (inclusive) and MAX>0 (exclusive).
      */
@@ -199,7 +217,7 @@ class Game {
             String command = bReader.readLine();
             while (command != null) {
                 Command cmnd =
-                        Command.parseCommand(command);
+                        Command.parseCommand(command, _board.side());
                 _commands.get(cmnd.commandType()).accept(cmnd.operands());
                 command = bReader.readLine();
             }
@@ -239,8 +257,8 @@ class Game {
      * Perform the move OPERANDS[0].
      */
     void doMove(String[] operands) {
-        _board.makeMove(operands[0].charAt(0), operands[1].charAt(0),
-                operands[2].charAt(0), operands[3].charAt(0),
+        _board.makeMove(operands[0].charAt(0), Board.row(operands[1]),
+                operands[2].charAt(0), Board.row(operands[3]),
                 false);
     }
 
@@ -382,6 +400,11 @@ class Game {
      */
     private Random _randoms = new Random();
 
+    /**
+     * Pattern weights for AI evaluation, or null.
+     */
+    private PatternWeights _weights;
+
     /** Player object for the PiecColor RED.
      * */
     private Player red;
@@ -11,15 +11,41 @@ import java.awt.HeadlessException;
  */
 public class Main {
 
-    /** Run Ataxx game.  Use display if ARGS[k] is '--display'. */
+    /** Run Ataxx game.  Use display if ARGS[k] is '--display'.  If
+     *  ARGS[k] is '--weights', ARGS[k+1] names a file of pattern weights
+     *  for the AI's evaluation (see PatternWeights).  If ARGS[k] is
+     *  '--size', ARGS[k+1] is the number of squares on a side of the
+     *  board (7 by default). */
     public static void main(String[] args) {
         boolean useGUI;
+        String weightsFile;
+        int side;
         useGUI = false;
+        weightsFile = null;
+        side = Board.DEFAULT_SIDE;
         for (int i = 0; i < args.length; i += 1) {
             switch (args[i]) {
             case "--display":
                 useGUI = true;
                 break;
+            case "--weights":
+                if (i + 1 == args.length) {
+                    usage();
+                }
+                i += 1;
+                weightsFile = args[i];
+                break;
+            case "--size":
+                if (i + 1 == args.length) {
+                    usage();
+                }
+                i += 1;
+                try {
+                    side = Integer.parseInt(args[i]);
+                } catch (NumberFormatException excp) {
+                    usage();
+                }
+                break;
             default:
                 usage();
                 break;
@@ -27,7 +53,13 @@ public class Main {
         }
 
         Game game;
-        Board board = new Board();
+        Board board = null;
+        try {
+            board = new Board(side);
+        } catch (GameException excp) {
+            System.err.printf("%s%n", excp.getMessage());
+            System.exit(1);
+        }
 
         game = null;
         if (useGUI) {
@@ -55,13 +87,22 @@ public class Main {
                                              true),
                             new TextReporter());
         }
+        if (weightsFile != null) {
+            try {
+                game.setWeights(PatternWeights.load(weightsFile,
+                                                    board.patterns()));
+            } catch (GameException excp) {
+                System.err.printf("%s%n", excp.getMessage());
+                System.exit(1);
+            }
+        }
         game.process(false);
     }
 
     /** Give usage message and exit. */
     static void usage() {
         System.err.println("Usage: java ataxx.Main [--display] [--timing]"
-                           + " [--strict]");
+                           + " [--strict] [--weights FILE] [--size N]");
         System.exit(1);
     }
 
@@ -21,8 +21,8 @@ class Manual extends Player {
             setMoveArray(game().getMoveCmnd("Blue: ").operands());
         }
         Move move = Move.move(moveArray[0].charAt(0),
-                moveArray[1].charAt(0), moveArray[2].charAt(0),
-                moveArray[3].charAt(0));
+                Board.row(moveArray[1]), moveArray[2].charAt(0),
+                Board.row(moveArray[3]));
         if (move != null && board().legalMove(move)) {
             return move;
         } else {
@@ -44,6 +44,15 @@ class Move {
             [col1 - 'a' + 2][row1 - '1' + 2];
     }
 
+    /** A factory method that returns the Move from the square with
+     *  linearized index FROM to the one with linearized index TO, which
+     *  must be within two rows and columns of it.  Equivalent to
+     *  move(col0, row0, col1, row1) on the columns and rows of FROM and
+     *  TO. */
+    static Move move(int from, int to) {
+        return BY_INDEX[from][to - from + MAX_OFFSET];
+    }
+
     /** Returns a pass. */
     static Move pass() {
         return PASS;
@@ -111,14 +120,19 @@ class Move {
         if (isPass()) {
             return "-";
         }
-        return "" + _col0 + _row0 + "-" + _col1 + _row1 + ".";
+        return "" + _col0 + Board.rowName(_row0) + "-"
+            + _col1 + Board.rowName(_row1) + ".";
     }
 
-    /** Size of a side of the board. */
-    static final int SIDE = 7;
+    /** Size of a side of the largest board. */
+    static final int SIDE = Board.MAX_SIDE;
 
-    /** Size of side of a board plus 2-deep boundary. */
-    static final int EXTENDED_SIDE = SIDE + 4;
+    /** Size of side of the largest board plus 2-deep boundary. */
+    static final int EXTENDED_SIDE = Board.EXTENDED_SIDE;
+
+    /** Largest difference between the linearized indices of the from and
+     *  to squares of a move. */
+    private static final int MAX_OFFSET = 2 * EXTENDED_SIDE + 2;
 
     /** The pass. */
     static final Move PASS = new Move();
@@ -134,6 +148,11 @@ class Move {
     private static final Move[][][][] ALL_MOVES =
         new Move[EXTENDED_SIDE][EXTENDED_SIDE][EXTENDED_SIDE][EXTENDED_SIDE];
 
+    /** The same Moves, indexed by linearized from index and by the
+     *  difference between the to and from indices (plus MAX_OFFSET). */
+    private static final Move[][] BY_INDEX =
+        new Move[EXTENDED_SIDE * EXTENDED_SIDE][2 * MAX_OFFSET + 1];
+
     /* A "static initializer".  These code sections are run when the class
      * is initialized and are intended to initialize static variables. */
     static {
@@ -142,8 +161,10 @@ class Move {
                 for (int dc = -2; dc <= 2; dc += 1) {
                     for (int dr = -2; dr <= 2; dr += 1) {
                         if (dc != 0 || dr != 0) {
-                            ALL_MOVES[c][r][c + dc][r + dr] =
-                                new Move(c, r, c + dc, r + dr);
+                            Move m = new Move(c, r, c + dc, r + dr);
+                            ALL_MOVES[c][r][c + dc][r + dr] = m;
+                            BY_INDEX[m._fromIndex]
+                                [m._toIndex - m._fromIndex + MAX_OFFSET] = m;
                         }
                     }
                 }
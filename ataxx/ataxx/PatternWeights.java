@@ -0,0 +1,111 @@
+package ataxx;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static ataxx.GameException.error;
+
+/** Trained weight tables for pattern-table evaluation.  A weight file
+ *  is a text file containing, for each pattern class, a line with the
+ *  class name (see Patterns.CLASS_NAMES) and its number of entries,
+ *  followed by that many integer weights, in order of pattern index.
+ *  The size of the edge table depends on the size of the board.
+ *  Weights are from Red's point of view.  A '#' starts a comment,
+ *  which runs to the end of its line, whether the line begins with it
+ *  or it follows a class name or weight.
+ *  @author Ze Martinho
+ */
+class PatternWeights {
+
+    /** Weights for PATTERNS, WEIGHTS[C][I], where C is a pattern class
+     *  and I an index of that class. */
+    private PatternWeights(Patterns patterns, int[][] weights) {
+        _patterns = patterns;
+        _weights = weights;
+    }
+
+    /** Return the weights for the standard board size read from the file
+     *  named NAME. */
+    static PatternWeights load(String name) {
+        return load(name, Patterns.forSide(Board.DEFAULT_SIDE));
+    }
+
+    /** Return the weights for PATTERNS read from the file named NAME. */
+    static PatternWeights load(String name, Patterns patterns) {
+        Scanner inp;
+        try {
+            inp = new Scanner(new File(name));
+        } catch (FileNotFoundException excp) {
+            throw error("Cannot open weight file %s", name);
+        }
+        int[][] weights = new int[Patterns.NUM_CLASSES][];
+        try {
+            inp.useDelimiter("(\\s|#.*)+");
+            while (inp.hasNext()) {
+                String className = inp.next();
+                int c = classNumber(className);
+                int size = inp.nextInt();
+                if (c == -1 || weights[c] != null
+                    || size != patterns.classSize(c)) {
+                    throw error("bad pattern table '%s %d' in %s",
+                                className, size, name);
+                }
+                weights[c] = new int[size];
+                for (int i = 0; i < size; i += 1) {
+                    weights[c][i] = inp.nextInt();
+                }
+            }
+        } catch (InputMismatchException excp) {
+            throw error("non-integer weight in %s", name);
+        } catch (NoSuchElementException excp) {
+            throw error("weight file %s truncated", name);
+        } finally {
+            inp.close();
+        }
+        for (int c = 0; c < weights.length; c += 1) {
+            if (weights[c] == null) {
+                throw error("weight file %s has no %s table", name,
+                            Patterns.CLASS_NAMES[c]);
+            }
+        }
+        return new PatternWeights(patterns, weights);
+    }
+
+    /** Return the patterns these weights are for. */
+    Patterns patterns() {
+        return _patterns;
+    }
+
+    /** Return the pattern-table value of BOARD (positive favors red),
+     *  which must have the size of patterns().  Uses only the pattern
+     *  indices that BOARD maintains as it changes. */
+    int score(Board board) {
+        int result = 0;
+        for (int p = 0; p < _patterns.count(); p += 1) {
+            result +=
+                _weights[_patterns.patternClass(p)][board.patternIndex(p)];
+        }
+        return result;
+    }
+
+    /** Return the number of the pattern class named NAME, or -1 if
+     *  there is none. */
+    private static int classNumber(String name) {
+        for (int c = 0; c < Patterns.NUM_CLASSES; c += 1) {
+            if (Patterns.CLASS_NAMES[c].equals(name)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** The patterns weighted. */
+    private final Patterns _patterns;
+
+    /** The weight tables, indexed by pattern class and pattern index. */
+    private final int[][] _weights;
+
+}
@@ -0,0 +1,213 @@
+package ataxx;
+
+import static ataxx.PieceColor.*;
+
+/** Description of the local patterns used by pattern-table evaluation
+ *  on boards of one size.  A pattern instance is a fixed, ordered list
+ *  of squares (a 3x3 window, a board edge, or a corner region).  Its
+ *  index is the base-3 number whose k-th digit describes the k-th
+ *  square: 0 for an empty or blocked square, 1 for red, and 2 for
+ *  blue.
+ *
+ *  All instances of the same class share one weight table, so the
+ *  squares of edge and corner instances are listed in a normalized
+ *  orientation (clockwise along each edge, outward from each corner).
+ *  Board keeps the index of every instance up to date as squares change,
+ *  using the per-square tables below.  There is one (immutable) Patterns
+ *  object for each board size, shared by all boards of that size.
+ *  @author Ze Martinho
+ */
+class Patterns {
+
+    /** Pattern classes: 3x3 windows, full edges, and 3x3 corner regions. */
+    static final int WINDOW = 0, EDGE = 1, CORNER = 2;
+
+    /** Number of pattern classes. */
+    static final int NUM_CLASSES = 3;
+
+    /** Names of the pattern classes, as used in weight files. */
+    static final String[] CLASS_NAMES = { "window", "edge", "corner" };
+
+    /** Return the patterns of boards with SIDE squares on a side. */
+    static synchronized Patterns forSide(int side) {
+        if (ALL[side] == null) {
+            ALL[side] = new Patterns(side);
+        }
+        return ALL[side];
+    }
+
+    /** Return the pattern digit of square contents C (which may be null
+     *  for squares that have never been set). */
+    static int digit(PieceColor c) {
+        return c == null ? 0 : DIGITS[c.ordinal()];
+    }
+
+    /** Return the number of squares on a side of my boards. */
+    int side() {
+        return _side;
+    }
+
+    /** Return the total number of pattern instances on the board. */
+    int count() {
+        return _patternClass.length;
+    }
+
+    /** Return the class of pattern instance P. */
+    int patternClass(int p) {
+        return _patternClass[p];
+    }
+
+    /** Return the number of distinct indices of class C
+     *  (3 ** the number of squares in an instance of C). */
+    int classSize(int c) {
+        return _classSizes[c];
+    }
+
+    /** Return the instances that contain the square with linearized
+     *  index SQ.  The caller must not modify the result. */
+    int[] squarePatterns(int sq) {
+        return _squarePatterns[sq];
+    }
+
+    /** Return the place values (powers of 3) of the square with
+     *  linearized index SQ in each of squarePatterns(SQ), in the same
+     *  order.  The caller must not modify the result. */
+    int[] squarePowers(int sq) {
+        return _squarePowers[sq];
+    }
+
+    /** Return the index of instance P on BOARD, computed from scratch
+     *  rather than from the incrementally maintained value. */
+    int index(Board board, int p) {
+        int result = 0;
+        int[] cells = _cells[p];
+        for (int k = cells.length - 1; k >= 0; k -= 1) {
+            result = 3 * result + digit(board.get(cells[k]));
+        }
+        return result;
+    }
+
+    /** The patterns of boards with SIDE squares on a side. */
+    private Patterns(int side) {
+        _side = side;
+        int[] classCells = { 9, side, 9 };
+        _classSizes = new int[NUM_CLASSES];
+        for (int c = 0; c < NUM_CLASSES; c += 1) {
+            int size = 1;
+            for (int k = 0; k < classCells[c]; k += 1) {
+                size *= 3;
+            }
+            _classSizes[c] = size;
+        }
+
+        int last = side - 1;
+        int windows = (side - 2) * (side - 2);
+        int count = windows + 4 + 4;
+        _patternClass = new int[count];
+        _cells = new int[count][];
+
+        int p = 0;
+        for (int r = 1; r < last; r += 1) {
+            for (int c = 1; c < last; c += 1) {
+                int[] cells = new int[9];
+                int k = 0;
+                for (int dr = 1; dr >= -1; dr -= 1) {
+                    for (int dc = -1; dc <= 1; dc += 1) {
+                        cells[k] = square(c + dc, r + dr);
+                        k += 1;
+                    }
+                }
+                _patternClass[p] = WINDOW;
+                _cells[p] = cells;
+                p += 1;
+            }
+        }
+
+        int[][] corners = { { 0, last, 1, -1 }, { last, last, -1, -1 },
+                            { last, 0, -1, 1 }, { 0, 0, 1, 1 } };
+        for (int[] e : corners) {
+            int[] cells = new int[side];
+            for (int k = 0; k < side; k += 1) {
+                if (e[2] == e[3]) {
+                    cells[k] = square(e[0], e[1] + k * e[3]);
+                } else {
+                    cells[k] = square(e[0] + k * e[2], e[1]);
+                }
+            }
+            _patternClass[p] = EDGE;
+            _cells[p] = cells;
+            p += 1;
+        }
+
+        for (int[] e : corners) {
+            int[] cells = new int[9];
+            int k = 0;
+            for (int i = 0; i < 3; i += 1) {
+                for (int j = 0; j < 3; j += 1) {
+                    cells[k] = square(e[0] + j * e[2], e[1] + i * e[3]);
+                    k += 1;
+                }
+            }
+            _patternClass[p] = CORNER;
+            _cells[p] = cells;
+            p += 1;
+        }
+
+        int[] counts = new int[Board.NUM_SQUARES];
+        for (int[] cells : _cells) {
+            for (int sq : cells) {
+                counts[sq] += 1;
+            }
+        }
+        _squarePatterns = new int[Board.NUM_SQUARES][];
+        _squarePowers = new int[Board.NUM_SQUARES][];
+        for (int sq = 0; sq < Board.NUM_SQUARES; sq += 1) {
+            _squarePatterns[sq] = new int[counts[sq]];
+            _squarePowers[sq] = new int[counts[sq]];
+            counts[sq] = 0;
+        }
+        for (p = 0; p < count; p += 1) {
+            int power = 1;
+            for (int sq : _cells[p]) {
+                _squarePatterns[sq][counts[sq]] = p;
+                _squarePowers[sq][counts[sq]] = power;
+                counts[sq] += 1;
+                power *= 3;
+            }
+        }
+    }
+
+    /** Return the linearized index of the square in column C and row R,
+     *  both numbered from 0. */
+    private static int square(int c, int r) {
+        return Board.index((char) ('a' + c), (char) ('1' + r));
+    }
+
+    /** Pattern digits indexed by PieceColor ordinal. */
+    private static final int[] DIGITS = new int[PieceColor.values().length];
+
+    static {
+        DIGITS[RED.ordinal()] = 1;
+        DIGITS[BLUE.ordinal()] = 2;
+    }
+
+    /** The Patterns for each board size, created as needed. */
+    private static final Patterns[] ALL = new Patterns[Board.MAX_SIDE + 1];
+
+    /** Number of squares on a side. */
+    private final int _side;
+
+    /** Number of distinct indices of each class. */
+    private final int[] _classSizes;
+
+    /** _patternClass[P] is the class of pattern instance P. */
+    private final int[] _patternClass;
+
+    /** _cells[P] lists the linearized squares of instance P in digit
+     *  order. */
+    private final int[][] _cells;
+
+    /** See squarePatterns and squarePowers. */
+    private final int[][] _squarePatterns, _squarePowers;
+
+}
@@ -0,0 +1,127 @@
+package ataxx;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Measures the cost of the board operations used by search for each
+ *  board size: move generation, making and undoing moves, and the two
+ *  static evaluations (piece count plus mobility, and pattern tables
+ *  with all weights 0).  Costs are reported per call and per square of
+ *  the board, over positions taken from random games.
+ *
+ *  Usage: java ataxx.BoardBench [ROUNDS]
+ *  @author Ze Martinho
+ */
+public class BoardBench {
+
+    /** Run the measurements described by ARGS (see class comment). */
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        System.out.printf("%-5s %-10s %10s %12s%n", "size", "operation",
+                          "ns/call", "ns/square");
+        for (int side = Board.DEFAULT_SIDE; side <= Board.MAX_SIDE;
+             side += 2) {
+            ArrayList<Board> positions = positions(side, 200, side);
+            int squares = side * side;
+            for (int pass = 0; pass < 2; pass += 1) {
+                double gen = time(positions, rounds, BoardBench::generate);
+                double make = time(positions, rounds, BoardBench::makeUndo);
+                double mob = time(positions, rounds, BoardBench::mobility);
+                double pat = time(positions, rounds, BoardBench::patterns);
+                if (pass == 1) {
+                    report(side, "legalMoves", gen, squares);
+                    report(side, "make+undo", make, squares);
+                    report(side, "mobility", mob, squares);
+                    report(side, "patterns", pat, squares);
+                }
+            }
+        }
+        System.out.printf("(checksum %d)%n", _sink);
+    }
+
+    /** An operation on a board, returning a value to keep it live. */
+    private interface Op {
+        /** Perform the operation on B, using MOVES as scratch space. */
+        long apply(Board b, Move[] moves);
+    }
+
+    /** Return the average time in nanoseconds of OP on each of POSITIONS,
+     *  repeated ROUNDS times. */
+    private static double time(ArrayList<Board> positions, int rounds,
+                               Op op) {
+        Move[] moves = new Move[Board.MAX_MOVES];
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r += 1) {
+            for (Board b : positions) {
+                _sink += op.apply(b, moves);
+            }
+        }
+        return (double) (System.nanoTime() - start)
+            / ((long) rounds * positions.size());
+    }
+
+    /** Print one line of results. */
+    private static void report(int side, String op, double ns, int squares) {
+        System.out.printf("%2dx%-2d %-10s %10.1f %12.2f%n", side, side, op,
+                          ns, ns / squares);
+    }
+
+    /** Generate the moves of the player to move on B. */
+    private static long generate(Board b, Move[] moves) {
+        return b.legalMoves(b.whoseMove(), moves);
+    }
+
+    /** Make and undo each of the first few moves of the player to move
+     *  on B. */
+    private static long makeUndo(Board b, Move[] moves) {
+        int n = Math.min(4, b.legalMoves(b.whoseMove(), moves));
+        for (int i = 0; i < n; i += 1) {
+            b.makeMove(moves[i], false);
+            b.undo();
+        }
+        return n;
+    }
+
+    /** Return the piece count and mobility evaluation of B. */
+    private static long mobility(Board b, Move[] unused) {
+        return b.numPieces(PieceColor.RED) - b.numPieces(PieceColor.BLUE)
+            + b.totalPossibleMoves(PieceColor.RED)
+            - b.totalPossibleMoves(PieceColor.BLUE);
+    }
+
+    /** Return the sum of the pattern indices of B, which costs the same
+     *  as a pattern-table evaluation without needing weights. */
+    private static long patterns(Board b, Move[] unused) {
+        long result = 0;
+        for (int p = b.patterns().count() - 1; p >= 0; p -= 1) {
+            result += b.patternIndex(p);
+        }
+        return result;
+    }
+
+    /** Return N positions on SIDExSIDE boards taken from random games,
+     *  using SEED. */
+    private static ArrayList<Board> positions(int side, int n, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Board> result = new ArrayList<>();
+        Move[] moves = new Move[Board.MAX_MOVES];
+        while (result.size() < n) {
+            Board b = new Board(side);
+            for (int i = 0; i < side * side && result.size() < n; i += 1) {
+                int k = b.legalMoves(b.whoseMove(), moves);
+                if (k == 0) {
+                    break;
+                }
+                b.makeMove(moves[random.nextInt(k)], false);
+                if (i % 5 == 4) {
+                    result.add(new Board(b));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Accumulates results so that no work is optimized away. */
+    private static long _sink;
+
+}
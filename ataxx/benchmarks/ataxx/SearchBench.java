@@ -0,0 +1,185 @@
+package ataxx;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static ataxx.PieceColor.*;
+
+/** Compares the selective search options of AI against plain
+ *  alpha-beta search.  For a set of positions taken from reproducible
+ *  games, it reports the nodes and time each configuration needs and
+ *  how often it picks the same move as the plain search.  It then plays
+ *  each selective configuration against the plain one, alternating
+ *  colors, to check that playing strength is unchanged.
+ *
+ *  Usage: java ataxx.SearchBench [DEPTH [POSITIONS [GAMES]]]
+ *  @author Ze Martinho
+ */
+public class SearchBench {
+
+    /** Names of the configurations compared. */
+    private static final String[] CONFIGS = {
+        "plain", "lmr", "null-move", "lmr+null-move"
+    };
+
+    /** Run the comparison described by ARGS (see class comment). */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int numPositions = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int numGames = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ArrayList<Board> positions = positions(numPositions, 1);
+        System.out.printf("Depth %d, %d positions%n", depth,
+                          positions.size());
+        Move[] plainMoves = new Move[positions.size()];
+        long plainNodes = 0;
+        for (int c = 0; c < CONFIGS.length; c += 1) {
+            long nodes, time;
+            int same;
+            nodes = time = 0;
+            same = 0;
+            AI.Stats total = new AI.Stats();
+            for (int i = 0; i < positions.size(); i += 1) {
+                Board b = positions.get(i);
+                AI ai = configure(new AI(newGame(b), b.whoseMove()),
+                                  depth, c);
+                long start = System.nanoTime();
+                Move move = ai.findMove();
+                time += System.nanoTime() - start;
+                add(total, ai.stats());
+                if (c == 0) {
+                    plainMoves[i] = move;
+                } else if (move == plainMoves[i]) {
+                    same += 1;
+                }
+            }
+            if (c == 0) {
+                plainNodes = total.nodes;
+            }
+            System.out.printf("%-14s %10d nodes (%5.1f%% of plain)"
+                              + " %8.1f ms  same move: %3d%%%n  %s%n",
+                              CONFIGS[c], total.nodes,
+                              100.0 * total.nodes / plainNodes,
+                              time / 1e6,
+                              c == 0 ? 100 : 100 * same / positions.size(),
+                              total);
+        }
+
+        for (int c = 1; c < CONFIGS.length && numGames > 0; c += 1) {
+            int wins, losses, draws;
+            wins = losses = draws = 0;
+            for (int g = 0; g < numGames; g += 1) {
+                PieceColor selectiveColor = g % 2 == 0 ? RED : BLUE;
+                int result = play(depth, c, selectiveColor, g);
+                if (result > 0) {
+                    wins += 1;
+                } else if (result < 0) {
+                    losses += 1;
+                } else {
+                    draws += 1;
+                }
+            }
+            System.out.printf("%s vs plain: %d wins, %d losses, %d draws%n",
+                              CONFIGS[c], wins, losses, draws);
+        }
+    }
+
+    /** Return AI, searching to DEPTH with the options of configuration
+     *  number CONFIG. */
+    private static AI configure(AI ai, int depth, int config) {
+        ai.setDepth(depth);
+        ai.setLateMoveReductions((config & 1) != 0, AI.LMR_FULL_MOVES,
+                                 AI.LMR_MIN_DEPTH, AI.LMR_REDUCTION);
+        ai.setNullMovePruning((config & 2) != 0, AI.NULL_MIN_DEPTH,
+                              AI.NULL_REDUCTION, AI.NULL_MARGIN);
+        return ai;
+    }
+
+    /** Return a Game on BOARD that has no input and reports nothing. */
+    private static Game newGame(Board board) {
+        return new Game(board, (prompt) -> null, new Reporter() {
+            @Override
+            public void errMsg(String format, Object... args) {
+            }
+
+            @Override
+            public void outcomeMsg(String format, Object... args) {
+            }
+
+            @Override
+            public void moveMsg(String format, Object... args) {
+            }
+        });
+    }
+
+    /** Return N positions sampled from games between shallow searchers
+     *  that make random moves one time in four, using SEED. */
+    private static ArrayList<Board> positions(int n, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Board> result = new ArrayList<>();
+        Move[] moves = new Move[Board.MAX_MOVES];
+        while (result.size() < n) {
+            Board b = new Board();
+            while (!b.gameOver() && result.size() < n) {
+                PieceColor who = b.whoseMove();
+                int k = b.legalMoves(who, moves);
+                if (k == 0) {
+                    b.setWhoseMove(who.opposite());
+                    continue;
+                }
+                Move move;
+                if (random.nextInt(4) == 0) {
+                    move = moves[random.nextInt(k)];
+                } else {
+                    move = configure(new AI(newGame(b), who), 1, 0)
+                        .findMove();
+                }
+                b.makeMove(move, false);
+                if (b.numMoves() % 3 == 0 && !b.gameOver()) {
+                    result.add(new Board(b));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Play a game at DEPTH between an AI using configuration CONFIG,
+     *  playing SELECTIVE, and a plain AI, starting from a position after
+     *  a few random moves chosen using SEED.  Return 1 if the selective
+     *  player wins, -1 if it loses, and 0 for a draw. */
+    private static int play(int depth, int config, PieceColor selective,
+                            long seed) {
+        Board b = new Board();
+        Random random = new Random(seed);
+        Move[] moves = new Move[Board.MAX_MOVES];
+        for (int i = 0; i < 4; i += 1) {
+            int k = b.legalMoves(b.whoseMove(), moves);
+            b.makeMove(moves[random.nextInt(k)], false);
+        }
+        Game game = newGame(b);
+        AI red = configure(new AI(game, RED), depth,
+                           selective == RED ? config : 0);
+        AI blue = configure(new AI(game, BLUE), depth,
+                            selective == BLUE ? config : 0);
+        while (!b.gameOver()) {
+            AI player = b.whoseMove() == RED ? red : blue;
+            if (!b.canMove(b.whoseMove())) {
+                b.setWhoseMove(b.whoseMove().opposite());
+            } else {
+                b.makeMove(player.findMove(), false);
+            }
+        }
+        int diff = b.numPieces(selective) - b.numPieces(selective.opposite());
+        return Integer.signum(diff);
+    }
+
+    /** Add the counts in STATS to TOTAL. */
+    private static void add(AI.Stats total, AI.Stats stats) {
+        total.nodes += stats.nodes;
+        total.nullTries += stats.nullTries;
+        total.nullCutoffs += stats.nullCutoffs;
+        total.lmrReductions += stats.lmrReductions;
+        total.lmrResearches += stats.lmrResearches;
+    }
+
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Compares the number of messages per second converted by a loop over
+ *  machines, one message at a time, with the number converted by
+ *  enigma.Lanes, all in lockstep, by its scalar engine and by the one
+ *  returned by Lanes.create (its vector engine, if run with
+ *  --add-modules jdk.incubator.vector and ../simd compiled and on the
+ *  class path, as the lanes target of the Makefile does).  Each of
+ *  MESSAGES messages of LENGTH random letters has its own random key
+ *  (order of rotors from CONFIG, setting, and ten plugboard pairs); the
+ *  keys are set up beforehand, and each pass only resets the settings
+ *  and converts, from arrays of characters for the machines and a
+ *  transposed array of indices for the lanes.  The results of each
+ *  engine are checked against the machines'.
+ *
+ *  Usage: java enigma.LanesBench CONFIG [MESSAGES [LENGTH]]
+ *  @author Ze Martinho
+ */
+public class LanesBench {
+
+    /** Run the comparison described by ARGS (see class comment). */
+    public static void main(String[] args) {
+        CompiledConfig config = Main.loadConfig(args[0], null);
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int length = args.length > 2 ? Integer.parseInt(args[2]) : 250;
+        Random random = new Random(42);
+        List<String[]> orders = new KeySpace(config).orders();
+        String[] msgs = new String[messages], settings = new String[messages];
+        Machine[] machines = new Machine[messages];
+        Lanes scalar = new Lanes(config, messages);
+        Lanes created = Lanes.create(config, messages);
+        for (int m = 0; m < messages; m += 1) {
+            char[] msg = new char[length];
+            for (int i = 0; i < length; i += 1) {
+                msg[i] = (char) ('A' + random.nextInt(26));
+            }
+            msgs[m] = new String(msg);
+            String[] order = orders.get(random.nextInt(orders.size()));
+            char[] setting = new char[config.numRotors() - 1];
+            for (int k = 0; k < setting.length; k += 1) {
+                setting[k] = (char) ('A' + random.nextInt(26));
+            }
+            settings[m] = new String(setting);
+            Permutation plugboard = plugboard(random, config.alphabet());
+            machines[m] = config.newMachine();
+            machines[m].insertRotors(order);
+            machines[m].setPlugboard(plugboard);
+            for (Lanes lanes : new Lanes[] { scalar, created }) {
+                lanes.insertRotors(m, order);
+                lanes.setPlugboard(m, plugboard);
+            }
+        }
+        int[] text = new int[length * messages], lengths = new int[messages];
+        for (int m = 0; m < messages; m += 1) {
+            lengths[m] = length;
+            for (int i = 0; i < length; i += 1) {
+                text[i * messages + m] =
+                    config.alphabet().toInt(msgs[m].charAt(i));
+            }
+        }
+        int[] fromScalar = new int[text.length], fromCreated;
+        fromCreated = new int[text.length];
+        char[][] chars = new char[messages][], expected = new char[messages][];
+        for (int m = 0; m < messages; m += 1) {
+            chars[m] = msgs[m].toCharArray();
+            expected[m] = new char[length];
+        }
+        System.out.printf("%d messages of %d letters; created engine: %s%n",
+                          messages, length, created.engine());
+        for (int pass = 0; pass < 10; pass += 1) {
+            long t0 = System.nanoTime();
+            for (int m = 0; m < messages; m += 1) {
+                machines[m].setRotors(settings[m]);
+                machines[m].convert(chars[m], 0, length, expected[m], 0);
+            }
+            long t1 = System.nanoTime();
+            convert(scalar, settings, text, fromScalar, lengths);
+            long t2 = System.nanoTime();
+            convert(created, settings, text, fromCreated, lengths);
+            long t3 = System.nanoTime();
+            for (int m = 0; m < messages; m += 1) {
+                for (int i = 0; i < length; i += 1) {
+                    int c = config.alphabet().toInt(expected[m][i]);
+                    if (c != fromScalar[i * messages + m]
+                        || c != fromCreated[i * messages + m]) {
+                        throw new AssertionError("conversions disagree");
+                    }
+                }
+            }
+            System.out.printf("pass %d:  machines %.0f msgs/s,"
+                              + "  scalar lanes %.0f msgs/s,"
+                              + "  %s %.0f msgs/s%n", pass,
+                              messages / ((t1 - t0) / 1e9),
+                              messages / ((t2 - t1) / 1e9),
+                              created.engine(),
+                              messages / ((t3 - t2) / 1e9));
+        }
+    }
+
+    /** Set the rotors of each lane of LANES to SETTINGS, and convert
+     *  TEXT (as held for Lanes.convert), with lengths LENGTHS, into
+     *  OUT. */
+    private static void convert(Lanes lanes, String[] settings, int[] text,
+                                int[] out, int[] lengths) {
+        for (int m = 0; m < settings.length; m += 1) {
+            lanes.setRotors(m, settings[m]);
+        }
+        System.arraycopy(text, 0, out, 0, text.length);
+        lanes.convert(out, text.length / settings.length, lengths);
+    }
+
+    /** Return a random plugboard of ten pairs of ALPHA, chosen with
+     *  RANDOM. */
+    private static Permutation plugboard(Random random, Alphabet alpha) {
+        ArrayList<Character> letters = new ArrayList<>();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            letters.add(alpha.toChar(i));
+        }
+        StringBuilder cycles = new StringBuilder();
+        for (int k = 0; k < 10 && letters.size() >= 2; k += 1) {
+            cycles.append('(')
+                .append(letters.remove(random.nextInt(letters.size())))
+                .append(letters.remove(random.nextInt(letters.size())))
+                .append(')');
+        }
+        return new Permutation(cycles.toString(), alpha);
+    }
+
+}
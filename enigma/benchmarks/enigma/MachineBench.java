@@ -0,0 +1,84 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Compares the per-letter cost of converting a long message on an M4
+ *  machine (B BETA I III VIII, with three plugboard pairs) stepping its
+ *  rotors through every rotor for each letter (unfolded), stepping them
+ *  with the inner segment folded (as usual), and in compiled mode.  The
+ *  time to build the compiled tables is reported separately.
+ *
+ *  Usage: java enigma.MachineBench [LETTERS]
+ *  @author Ze Martinho
+ */
+public class MachineBench {
+
+    /** Run the comparison described by ARGS (see class comment). */
+    public static void main(String[] args) {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        Random random = new Random(42);
+        char[] msg = new char[letters];
+        for (int i = 0; i < letters; i += 1) {
+            msg[i] = (char) ('A' + random.nextInt(26));
+        }
+        char[] plainOut = new char[letters], compiledOut = new char[letters];
+        char[] unfoldedOut = new char[letters];
+
+        Machine unfolded = newMachine();
+        unfolded.setFolded(false);
+        Machine plain = newMachine();
+        Machine compiled = newMachine();
+        compiled.setCompiled(true);
+        long start = System.nanoTime();
+        compiled.convert(msg, 0, 0, compiledOut, 0);
+        System.out.printf("compile: %.2f ms%n",
+                          (System.nanoTime() - start) / 1e6);
+
+        for (int pass = 0; pass < 3; pass += 1) {
+            unfolded.setRotors("AAAA");
+            plain.setRotors("AAAA");
+            compiled.setRotors("AAAA");
+            long t0 = System.nanoTime();
+            unfolded.convert(msg, 0, letters, unfoldedOut, 0);
+            long t1 = System.nanoTime();
+            plain.convert(msg, 0, letters, plainOut, 0);
+            long t2 = System.nanoTime();
+            compiled.convert(msg, 0, letters, compiledOut, 0);
+            long t3 = System.nanoTime();
+            if (!new String(plainOut).equals(new String(compiledOut))
+                || !new String(plainOut).equals(new String(unfoldedOut))) {
+                throw new AssertionError("conversions disagree");
+            }
+            System.out.printf("pass %d:  unfolded %.2f ns/letter,"
+                              + "  folded %.2f ns/letter,"
+                              + "  compiled %.2f ns/letter%n", pass,
+                              (double) (t1 - t0) / letters,
+                              (double) (t2 - t1) / letters,
+                              (double) (t3 - t2) / letters);
+        }
+    }
+
+    /** Return a new machine set up as described in the class comment. */
+    private static Machine newMachine() {
+        Alphabet alpha = new UpperCaseAlphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)",
+            alpha)));
+        rotors.add(new FixedRotor("BETA", new Permutation(
+            "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", alpha)));
+        rotors.add(new MovingRotor("I", new Permutation(
+            "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)", alpha), "Q"));
+        rotors.add(new MovingRotor("III", new Permutation(
+            "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)", alpha), "V"));
+        rotors.add(new MovingRotor("VIII", new Permutation(
+            "(AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)", alpha), "ZM"));
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "I", "III", "VIII"});
+        machine.setPlugboard(new Permutation("(HJ) (OK) (RL)", alpha));
+        machine.setRotors("AAAA");
+        return machine;
+    }
+
+}
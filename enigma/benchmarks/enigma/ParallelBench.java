@@ -0,0 +1,85 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/** Reports the throughput of Machine.convertParallel on a long message
+ *  for pools of 1, 2, 4, ... threads up to the number of processors,
+ *  against sequential conversion, checking that the results agree.  The
+ *  machine is an M4 (B BETA VI VIII IV, with three plugboard pairs),
+ *  run both stepping its rotors and in compiled mode.
+ *
+ *  Usage: java enigma.ParallelBench [LETTERS]
+ *  @author Ze Martinho
+ */
+public class ParallelBench {
+
+    /** Run the comparison described by ARGS (see class comment). */
+    public static void main(String[] args) {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+        Random random = new Random(42);
+        char[] msg = new char[letters];
+        for (int i = 0; i < letters; i += 1) {
+            msg[i] = (char) ('A' + random.nextInt(26));
+        }
+        char[] expected = new char[letters], out = new char[letters];
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d processors%n", cores);
+
+        for (boolean compiled : new boolean[] { false, true }) {
+            Machine machine = newMachine();
+            machine.setCompiled(compiled);
+            double sequential = Double.MAX_VALUE;
+            for (int pass = 0; pass < 3; pass += 1) {
+                machine.setRotors("AAAA");
+                long t0 = System.nanoTime();
+                machine.convert(msg, 0, letters, expected, 0);
+                sequential = Math.min(sequential, System.nanoTime() - t0);
+            }
+            System.out.printf("%s sequential: %.1f M letters/s%n",
+                              compiled ? "compiled" : "stepping",
+                              letters / sequential * 1e3);
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                double best = Double.MAX_VALUE;
+                for (int pass = 0; pass < 3; pass += 1) {
+                    machine.setRotors("AAAA");
+                    long t0 = System.nanoTime();
+                    machine.convertParallel(msg, 0, letters, out, 0, pool);
+                    best = Math.min(best, System.nanoTime() - t0);
+                    if (!new String(out).equals(new String(expected))) {
+                        throw new AssertionError("conversions disagree");
+                    }
+                }
+                pool.shutdown();
+                System.out.printf("  %2d threads: %.1f M letters/s"
+                                  + " (%.2fx sequential)%n", threads,
+                                  letters / best * 1e3, sequential / best);
+            }
+        }
+    }
+
+    /** Return a new machine set up as described in the class comment. */
+    private static Machine newMachine() {
+        Alphabet alpha = new UpperCaseAlphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(
+            "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)",
+            alpha)));
+        rotors.add(new FixedRotor("BETA", new Permutation(
+            "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)", alpha)));
+        rotors.add(new MovingRotor("VI", new Permutation(
+            "(AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)", alpha), "ZM"));
+        rotors.add(new MovingRotor("VIII", new Permutation(
+            "(AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)", alpha), "ZM"));
+        rotors.add(new MovingRotor("IV", new Permutation(
+            "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)", alpha), "J"));
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "VI", "VIII", "IV"});
+        machine.setPlugboard(new Permutation("(HJ) (OK) (RL)", alpha));
+        machine.setRotors("AAAA");
+        return machine;
+    }
+
+}
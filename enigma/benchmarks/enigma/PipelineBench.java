@@ -0,0 +1,177 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Reports the lines per second that enigma.Main processes on a large
+ *  generated input, against the line-at-a-time Scanner and PrintStream
+ *  loop Main formerly used.  The input has a settings line every 10000
+ *  lines, and mixed-case message lines of 0 to 120 characters.  Output
+ *  goes to /dev/null.
+ *
+ *  Usage: java enigma.PipelineBench CONFIG [MEGABYTES [FILE]]
+ *  where CONFIG is a configuration file (such as
+ *  ../testing/correct/default.conf), and FILE names the input file to
+ *  use, which is generated if it does not exist.
+ *  @author Ze Martinho
+ */
+public class PipelineBench {
+
+    /** Run the comparison described by ARGS (see class comment). */
+    public static void main(String[] args) throws IOException {
+        String config = args[0];
+        long megabytes = args.length > 1 ? Long.parseLong(args[1]) : 1024;
+        File input = args.length > 2 ? new File(args[2])
+            : new File(System.getProperty("java.io.tmpdir"),
+                       "enigma-bench-" + megabytes + ".inp");
+        long lines = input.exists() ? countLines(input)
+            : generate(input, megabytes << 20);
+        System.out.printf("%s: %d MB, %d lines%n", input,
+                          input.length() >> 20, lines);
+
+        for (int pass = 0; pass < 2; pass += 1) {
+            long t0 = System.nanoTime();
+            Main.main(config, input.getPath(), "/dev/null");
+            long t1 = System.nanoTime();
+            legacy(config, input);
+            long t2 = System.nanoTime();
+            System.out.printf("pass %d:  pipeline %.0f lines/s (%.0f MB/s),"
+                              + "  scanner %.0f lines/s (%.0f MB/s)%n",
+                              pass, lines / ((t1 - t0) / 1e9),
+                              input.length() / 1048576.0 / ((t1 - t0) / 1e9),
+                              lines / ((t2 - t1) / 1e9),
+                              input.length() / 1048576.0 / ((t2 - t1) / 1e9));
+        }
+    }
+
+    /** Write about SIZE bytes of input as described in the class comment
+     *  to FILE, returning the number of lines. */
+    private static long generate(File file, long size) throws IOException {
+        Random random = new Random(42);
+        String text = "the quick brown FOX jumps, over the lazy dog. ";
+        long lines = 0, written = 0;
+        try (OutputStream out =
+             new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            StringBuilder line = new StringBuilder();
+            while (written < size) {
+                line.setLength(0);
+                if (lines % 10000 == 0) {
+                    line.append("* B BETA I III VIII ")
+                        .append((char) ('A' + random.nextInt(26)))
+                        .append("AAA (HJ) (OK)");
+                } else {
+                    int n = random.nextInt(121);
+                    for (int i = 0; i < n; i += 1) {
+                        line.append(text.charAt(
+                                        random.nextInt(text.length())));
+                    }
+                }
+                line.append('\n');
+                byte[] bytes = line.toString().getBytes();
+                out.write(bytes);
+                written += bytes.length;
+                lines += 1;
+            }
+        }
+        return lines;
+    }
+
+    /** Return the number of lines in FILE. */
+    private static long countLines(File file) throws IOException {
+        long lines = 0;
+        try (Scanner scan = new Scanner(file)) {
+            while (scan.hasNextLine()) {
+                scan.nextLine();
+                lines += 1;
+            }
+        }
+        return lines;
+    }
+
+    /** Process INPUT with the configuration in CONFIG as Main formerly
+     *  did, printing to /dev/null. */
+    private static void legacy(String config, File input)
+        throws IOException {
+        Machine machine = readConfig(config);
+        Alphabet alpha = new UpperCaseAlphabet();
+        try (Scanner scan = new Scanner(input);
+             PrintStream out = new PrintStream(new File("/dev/null"))) {
+            while (scan.hasNextLine()) {
+                String line = scan.nextLine();
+                if (!machine.setUp() || line.startsWith("*")) {
+                    Scanner settings = new Scanner(line);
+                    settings.next();
+                    String[] rotors = new String[machine.numRotors()];
+                    for (int i = 0; i < rotors.length; i += 1) {
+                        rotors[i] = settings.next();
+                    }
+                    machine.insertRotors(rotors);
+                    machine.setRotors(settings.next());
+                    String plugs = "";
+                    while (settings.hasNext()) {
+                        plugs += settings.next();
+                    }
+                    machine.setPlugboard(new Permutation(plugs, alpha));
+                    continue;
+                }
+                char[] msg = machine.convert(line.toUpperCase()).toCharArray();
+                for (int i = 0; i < msg.length; i += 1) {
+                    out.print(msg[i]);
+                    if (i % 5 == 4 && msg.length > 5) {
+                        out.print(" ");
+                    }
+                }
+                if (msg.length > 5 && msg.length % 5 != 0) {
+                    out.print(" ");
+                }
+                out.println();
+            }
+        }
+    }
+
+    /** Return a machine with the rotors of the configuration file
+     *  CONFIG, which is in the simple format of default.conf: one rotor
+     *  description per line, or continued on following lines that start
+     *  with '('. */
+    private static Machine readConfig(String config) throws IOException {
+        Alphabet alpha = new UpperCaseAlphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        try (Scanner scan = new Scanner(new File(config))) {
+            scan.nextLine();
+            Scanner counts = new Scanner(scan.nextLine());
+            int slots = counts.nextInt(), pawls = counts.nextInt();
+            ArrayList<String> descriptions = new ArrayList<>();
+            while (scan.hasNextLine()) {
+                String line = scan.nextLine().trim();
+                if (line.startsWith("(")) {
+                    int last = descriptions.size() - 1;
+                    descriptions.set(last, descriptions.get(last) + line);
+                } else if (!line.isEmpty()) {
+                    descriptions.add(line);
+                }
+            }
+            for (String desc : descriptions) {
+                Scanner words = new Scanner(desc);
+                String name = words.next(), type = words.next();
+                String cycles = words.hasNextLine() ? words.nextLine() : "";
+                Permutation perm = new Permutation(cycles, alpha);
+                if (type.equals("R")) {
+                    rotors.add(new Reflector(name, perm));
+                } else if (type.equals("N")) {
+                    rotors.add(new FixedRotor(name, perm));
+                } else {
+                    rotors.add(new MovingRotor(name, perm, type.substring(1)));
+                }
+            }
+            return new Machine(alpha, slots, pawls, rotors);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import java.util.Random;
+
+/** Compares the per-letter cost of rotor conversion done three ways:
+ *  with the modular arithmetic Rotor used to do on each call (add the
+ *  setting, permute, subtract the setting, reduce modulo the alphabet
+ *  size), in the memory-bounded mode, and with per-setting tables.  Each
+ *  letter passes forward and backward through a rotor at a setting that
+ *  changes with every letter, as in a machine.
+ *
+ *  Usage: java enigma.RotorBench [LETTERS]
+ *  @author Ze Martinho
+ */
+public class RotorBench {
+
+    /** Run the comparison described by ARGS (see class comment). */
+    public static void main(String[] args) {
+        int letters = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        Alphabet alpha = new UpperCaseAlphabet();
+        Permutation perm =
+            new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+                            alpha);
+        Rotor bounded = new Rotor("I", perm);
+        bounded.useFullTables(false);
+        Rotor full = new Rotor("I", perm);
+
+        Random random = new Random(42);
+        int[] input = new int[letters];
+        for (int i = 0; i < letters; i += 1) {
+            input[i] = random.nextInt(alpha.size());
+        }
+
+        for (int pass = 0; pass < 3; pass += 1) {
+            long t0 = System.nanoTime();
+            long modulo = runModulo(perm, input);
+            long t1 = System.nanoTime();
+            long boundedSum = run(bounded, input);
+            long t2 = System.nanoTime();
+            long fullSum = run(full, input);
+            long t3 = System.nanoTime();
+            if (modulo != boundedSum || modulo != fullSum) {
+                throw new AssertionError("conversions disagree");
+            }
+            System.out.printf("pass %d:  modulo %.2f ns/letter,"
+                              + "  bounded %.2f ns/letter,"
+                              + "  tables %.2f ns/letter%n", pass,
+                              (double) (t1 - t0) / letters,
+                              (double) (t2 - t1) / letters,
+                              (double) (t3 - t2) / letters);
+        }
+    }
+
+    /** Return the sum of converting each of INPUT forward and backward
+     *  through ROTOR, advancing its setting after each letter. */
+    private static long run(Rotor rotor, int[] input) {
+        long sum = 0;
+        int n = rotor.size();
+        int setting = 0;
+        for (int c : input) {
+            rotor.set(setting);
+            sum += rotor.convertBackward(rotor.convertForward(c) ^ 1);
+            setting = setting == n - 1 ? 0 : setting + 1;
+        }
+        return sum;
+    }
+
+    /** Return the same sum as run on a rotor with permutation PERM and
+     *  INPUT, computing each conversion as Rotor formerly did. */
+    private static long runModulo(Permutation perm, int[] input) {
+        long sum = 0;
+        int n = perm.size();
+        int setting = 0;
+        for (int c : input) {
+            int f = perm.permute(c + setting) - setting;
+            f = f >= 0 ? f % n : n + f % n;
+            int b = perm.invert((f ^ 1) + setting) - setting;
+            b = b >= 0 ? b % n : n + b % n;
+            sum += b;
+            setting = setting == n - 1 ? 0 : setting + 1;
+        }
+        return sum;
+    }
+
+}
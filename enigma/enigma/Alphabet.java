@@ -2,40 +2,135 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/* Extra Credit Only */
+import java.util.Arrays;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
+ *
+ *  Any characters may be used.  Both directions of the mapping take
+ *  constant time: index to character is an array access, and character
+ *  to index is either an access to a dense table covering the range
+ *  from the smallest to the largest character (when that range is at
+ *  most DENSE_RANGE characters, as for letters, digits, and punctuation),
+ *  or a lookup in an open-addressed hash table (for alphabets of
+ *  characters scattered across the Basic Multilingual Plane).
  *  @author Ze Martinho
  */
 class Alphabet {
-    /*  A new alphabet containing CHARS.  Character number #k has index
-     *  K (numbering from 0). No character may be duplicated. */
 
-    /** I didn't do the extra credit, so the Alphabet class
-     *  is unchanged.
-     *  @param chars */
+    /** Largest range of character codes covered by a dense table. */
+    static final int DENSE_RANGE = 1 << 12;
+
+    /** A new alphabet containing CHARS.  Character number #k has index
+     *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
+        if (chars.isEmpty()) {
+            throw error("empty alphabet");
+        }
+        _chars = chars.toCharArray();
+        char min = Character.MAX_VALUE, max = Character.MIN_VALUE;
+        for (char c : _chars) {
+            min = (char) Math.min(min, c);
+            max = (char) Math.max(max, c);
+        }
+        if (max - min < DENSE_RANGE) {
+            _min = min;
+            _dense = new int[max - min + 1];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < _chars.length; i += 1) {
+                if (_dense[_chars[i] - min] != -1) {
+                    throw error("character %c repeated in alphabet",
+                                _chars[i]);
+                }
+                _dense[_chars[i] - min] = i;
+            }
+            _keys = _values = null;
+            _shift = 0;
+        } else {
+            int bits = 32 - Integer.numberOfLeadingZeros(2 * _chars.length);
+            _min = 0;
+            _dense = null;
+            _keys = new int[1 << bits];
+            _values = new int[1 << bits];
+            _shift = 32 - bits;
+            Arrays.fill(_keys, -1);
+            for (int i = 0; i < _chars.length; i += 1) {
+                int h = slot(_chars[i]);
+                if (_keys[h] != -1) {
+                    throw error("character %c repeated in alphabet",
+                                _chars[i]);
+                }
+                _keys[h] = _chars[i];
+                _values[h] = i;
+            }
+        }
     }
 
     /** Returns the size of the alphabet. */
     int size() {
-        return 0;
+        return _chars.length;
     }
 
     /** Returns true if C is in this alphabet. */
     boolean contains(char c) {
-        return false;
+        return index(c) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return 'A';
+        if (index < 0 || index >= _chars.length) {
+            throw error("character index out of range");
+        }
+        return _chars[index];
     }
 
     /** Returns the index of character C, which must be in the alphabet. */
     int toInt(char c) {
-        return 0;
+        int result = index(c);
+        if (result < 0) {
+            throw error("character not in alphabet");
+        }
+        return result;
+    }
+
+    /** Return the index of C, or -1 if C is not in the alphabet. */
+    private int index(char c) {
+        if (_dense != null) {
+            int i = c - _min;
+            return i >= 0 && i < _dense.length ? _dense[i] : -1;
+        }
+        int h = slot(c);
+        return _keys[h] == c ? _values[h] : -1;
+    }
+
+    /** Return the slot of _keys that holds C, or the empty slot where C
+     *  would go. */
+    private int slot(char c) {
+        int h = (c * 0x9E3779B1) >>> _shift;
+        while (_keys[h] != -1 && _keys[h] != c) {
+            h = (h + 1) & (_keys.length - 1);
+        }
+        return h;
     }
+
+    /** The characters of the alphabet, in order. */
+    private final char[] _chars;
+
+    /** If not null, _dense[C - _min] is the index of character C, or -1,
+     *  for _min <= C < _min + _dense.length. */
+    private final int[] _dense;
+
+    /** See _dense. */
+    private final int _min;
+
+    /** If not null, an open-addressed hash table with linear probing:
+     *  each character C of the alphabet is in _keys at the first slot
+     *  at or after slot(C) that was empty when it was added, and the
+     *  same slot of _values holds its index.  Empty slots hold -1. */
+    private final int[] _keys, _values;
+
+    /** The hash of C is the top 32 - _shift bits of C times a constant,
+     *  so that _keys has 1 << (32 - _shift) slots. */
+    private final int _shift;
 }
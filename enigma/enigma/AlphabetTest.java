@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet classes.
+ *  @author Ze Martinho
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Check that ALPHA consists of the characters of CHARS, in order,
+     *  and contains none of the characters of OTHERS. */
+    private void checkAlphabet(Alphabet alpha, String chars, String others) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            assertTrue(msg(chars, "missing %d", (int) c), alpha.contains(c));
+            assertEquals(i, alpha.toInt(c));
+            assertEquals(c, alpha.toChar(i));
+        }
+        for (int i = 0; i < others.length(); i += 1) {
+            assertFalse(msg(chars, "contains %d", (int) others.charAt(i)),
+                        alpha.contains(others.charAt(i)));
+        }
+    }
+
+    @Test
+    public void checkUpperCase() {
+        checkAlphabet(new Alphabet(UPPER_STRING), UPPER_STRING,
+                      "@[az0 \u00C0");
+        checkAlphabet(UPPER, UPPER_STRING, "@[az0 \u00C0");
+    }
+
+    @Test
+    public void checkDense() {
+        String chars = "0123456789.,?!-_ZYXWVUTSRQPONMLKJIHGFEDCBA";
+        checkAlphabet(new Alphabet(chars), chars, "/@ a\u0000\uFFFF");
+    }
+
+    @Test
+    public void checkSparse() {
+        String chars = "AZ\u00E9\u03A9\u0416\u4E2D\u6587\uAC00\uD7A3\uFFEE";
+        checkAlphabet(new Alphabet(chars), chars,
+                      "BY\u00E8\u03A8\u4E2E\uAC01\u0000\uFFFF");
+        StringBuilder many = new StringBuilder();
+        for (int c = 0x100; c < 0x10000 - 0x800; c += 7) {
+            many.append((char) c);
+        }
+        checkAlphabet(new Alphabet(many.toString()), many.toString(),
+                      "\u0101\u0102\u0103\u0104\u0105\u0106\u0108");
+    }
+
+    @Test
+    public void checkByteAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0; c < 256; c += 1) {
+            chars.append((char) c);
+        }
+        checkAlphabet(new ByteAlphabet(), chars.toString(),
+                      "\u0100\u4E2D\uFFFF");
+        checkAlphabet(new Alphabet(chars.toString()), chars.toString(),
+                      "\u0100\u4E2D\uFFFF");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedDense() {
+        new Alphabet("ABCDA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedSparse() {
+        new Alphabet("A\u4E2DB\u4E2D");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotInAlphabet() {
+        new Alphabet("A\u4E2DB").toInt('C');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkIndexOutOfRange() {
+        new Alphabet("0123").toChar(4);
+    }
+
+}
@@ -0,0 +1,521 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/** A bombe, after Turing and Welchman: a search for the rotors and
+ *  settings that could have produced a ciphertext containing a known
+ *  piece of plaintext (the crib) at a given offset.
+ *
+ *  The crib and the ciphertext under it give a menu: a graph on the
+ *  letters with an edge between crib letter P and ciphertext letter C
+ *  at each position I of the crib.  If the plugboard takes P to X, the
+ *  scrambler (the rotors and reflector, without the plugboard) at
+ *  position I must take X to the letter that the plugboard takes C to,
+ *  since the plugboard is an involution.  So for each key position (an
+ *  order of rotors and their settings at the start of the message), a
+ *  hypothesis that the plugboard takes the most connected menu letter,
+ *  the test letter, to some value implies values for the letters joined
+ *  to it, and so on.  The implications are followed, as the bombe's
+ *  diagonal board did, in both directions (plugboard pairs are
+ *  symmetric) until nothing new is implied.  A hypothesis that implies
+ *  two values for any letter is false, as are all those it implies; at
+ *  most key positions one closure implies every value of the test
+ *  letter, which rules out the position at once.  A position with a
+ *  consistent hypothesis is a stop, and its implied plugboard pairs are
+ *  checked by deciphering the crib.  Unlike the bombe, the search steps
+ *  the rotors exactly (including turnovers of the middle rotors within
+ *  the crib), and computes the scrambler only for the letters and
+ *  positions the implications reach (see Scrambler).
+ *
+ *  The key positions (every order of rotors allowed by the
+ *  configuration, times every setting of the rotors in slots 1 and up)
+ *  are numbered, and the range of numbers is divided among the threads
+ *  of a ForkJoinPool by recursive halving, so that idle threads steal
+ *  what remains of the others' ranges (see KeySpace).
+ *  @author Ze Martinho
+ */
+class Bombe {
+
+    /** Largest number of key positions tested by one task of run. */
+    static final int LEAF = 1 << 12;
+
+    /** Largest alphabet a bombe can handle (the values that may be
+     *  implied for a letter are kept as a bit set in a long). */
+    static final int MAX_ALPHABET = 64;
+
+    /** A bombe for the machines with configuration CONFIG, looking for
+     *  the plaintext CRIB at position OFFSET of the ciphertext CIPHER.
+     *  Characters of CIPHER that are not in the alphabet are ignored. */
+    Bombe(CompiledConfig config, String cipher, String crib, int offset) {
+        _config = config;
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        if (_size > MAX_ALPHABET) {
+            throw error("bombe needs an alphabet of at most %d characters",
+                        MAX_ALPHABET);
+        }
+        StringBuilder letters = new StringBuilder();
+        for (int i = 0; i < cipher.length(); i += 1) {
+            if (_alphabet.contains(cipher.charAt(i))) {
+                letters.append(cipher.charAt(i));
+            }
+        }
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        } else if (offset < 0 || offset + crib.length() > letters.length()) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        _cipher = letters.substring(0, offset + crib.length());
+        _crib = crib;
+        _offset = offset;
+        buildMenu();
+        _keys = new KeySpace(config);
+        ArrayList<String[]> orders = new ArrayList<String[]>();
+        for (String[] order : _keys.orders()) {
+            if (config.rotor(order[0]).permutation().involution()) {
+                orders.add(order);
+            }
+        }
+        _keys.setOrders(orders);
+    }
+
+    /** Set the edges of the menu and choose the test letter. */
+    private void buildMenu() {
+        int len = _crib.length();
+        int[] degree = new int[_size];
+        for (int i = 0; i < len; i += 1) {
+            int p = _alphabet.toInt(_crib.charAt(i)),
+                c = _alphabet.toInt(_cipher.charAt(_offset + i));
+            if (p == c) {
+                throw error("crib letter %c cannot encipher to itself at %d",
+                            _crib.charAt(i), _offset + i);
+            }
+            degree[p] += 1;
+            degree[c] += 1;
+        }
+        _edgeStart = new int[_size + 1];
+        for (int a = 0; a < _size; a += 1) {
+            _edgeStart[a + 1] = _edgeStart[a] + degree[a];
+            if (degree[a] > degree[_test]) {
+                _test = a;
+            }
+        }
+        _edgeTo = new int[2 * len];
+        _edgePos = new int[2 * len];
+        int[] next = Arrays.copyOf(_edgeStart, _size);
+        for (int i = 0; i < len; i += 1) {
+            int p = _alphabet.toInt(_crib.charAt(i)),
+                c = _alphabet.toInt(_cipher.charAt(_offset + i));
+            _edgeTo[next[p]] = c;
+            _edgePos[next[p]] = i;
+            next[p] += 1;
+            _edgeTo[next[c]] = p;
+            _edgePos[next[c]] = i;
+            next[c] += 1;
+        }
+    }
+
+    /** Return the orders of rotors I search, each an array of rotor
+     *  names as given to Machine.insertRotors.  Initially, these are all
+     *  the orders allowed by my configuration whose reflectors swap
+     *  pairs of letters. */
+    List<String[]> orders() {
+        return _keys.orders();
+    }
+
+    /** Search only the orders of rotors ORDERS. */
+    void setOrders(List<String[]> orders) {
+        for (String[] order : orders) {
+            if (order.length > 0
+                && !_config.rotor(order[0]).permutation().involution()) {
+                throw error("reflector %s does not swap pairs of letters",
+                            order[0]);
+            }
+        }
+        _keys.setOrders(orders);
+    }
+
+    /** Return the letter whose plugboard value is hypothesized. */
+    char testLetter() {
+        return _alphabet.toChar(_test);
+    }
+
+    /** Return the number of key positions I search. */
+    long size() {
+        return _keys.size();
+    }
+
+    /** Return the number of key positions tested so far by run. */
+    long tested() {
+        return _tested.get();
+    }
+
+    /** Test every key position, dividing the work among the threads of
+     *  POOL, and return the stops found, in order of key position.  Each
+     *  stop is also passed to FOUND (if not null) as soon as it is found,
+     *  from whichever thread found it. */
+    List<Stop> run(ForkJoinPool pool, Consumer<Stop> found) {
+        List<Stop> stops = Collections.synchronizedList(new ArrayList<Stop>());
+        _tested.set(0);
+        Consumer<Stop> collect = (stop) -> {
+            stops.add(stop);
+            if (found != null) {
+                found.accept(stop);
+            }
+        };
+        KeySpace.search(pool, 0, size(), LEAF, () -> new Worker(collect));
+        ArrayList<Stop> result = new ArrayList<Stop>(stops);
+        result.sort(Comparator.comparingLong((stop) -> stop._key));
+        return result;
+    }
+
+    /** The state of one thread's search of a range of key positions.
+     *  Nothing is allocated per key position except for stops. */
+    private class Worker implements KeySpace.Tester {
+
+        /** A worker passing the stops it finds to FOUND. */
+        Worker(Consumer<Stop> found) {
+            int len = _crib.length();
+            _found = found;
+            _start = new int[_config.numRotors()];
+            _scrambler = new Scrambler(_config, len);
+            _lit = new long[_size];
+            _stack = new int[_size * _size];
+            _full = _size == 64 ? -1L : (1L << _size) - 1;
+        }
+
+        @Override
+        public void test(long lo, long hi) {
+            int order = -1;
+            for (long key = lo; key < hi; key += 1) {
+                if (_keys.orderNumber(key) != order) {
+                    order = _keys.orderNumber(key);
+                    _scrambler.setOrder(_keys.order(key));
+                    _machine = _config.newMachine();
+                    _machine.insertRotors(_keys.order(key));
+                }
+                _keys.settings(key, _start);
+                _scrambler.setStart(_start, _offset);
+                testPosition(key);
+            }
+            _tested.addAndGet(hi - lo);
+        }
+
+        /** Test each class of hypotheses for the test letter at the key
+         *  position KEY. */
+        private void testPosition(long key) {
+            long untested = _full;
+            while (untested != 0) {
+                if (!close(Long.numberOfTrailingZeros(untested))) {
+                    return;
+                }
+                untested &= ~_lit[_test];
+                if (consistent()) {
+                    _found.accept(stop(key));
+                }
+            }
+        }
+
+        /** Set _lit to the closure of the hypothesis that the plugboard
+         *  takes the test letter to H.  Returns false (leaving the
+         *  closure incomplete) as soon as every value of the test
+         *  letter is implied. */
+        private boolean close(int h) {
+            long[] lit = _lit;
+            int[] stack = _stack;
+            Arrays.fill(lit, 0);
+            lit[_test] = 1L << h;
+            stack[0] = _test << 6 | h;
+            int top = 1;
+            while (top > 0) {
+                top -= 1;
+                int a = stack[top] >>> 6, x = stack[top] & 63;
+                if ((lit[x] & (1L << a)) == 0) {
+                    lit[x] |= 1L << a;
+                    stack[top] = x << 6 | a;
+                    top += 1;
+                }
+                for (int e = _edgeStart[a]; e < _edgeStart[a + 1]; e += 1) {
+                    int b = _edgeTo[e],
+                        y = _scrambler.convert(_edgePos[e], x);
+                    if ((lit[b] & (1L << y)) == 0) {
+                        lit[b] |= 1L << y;
+                        stack[top] = b << 6 | y;
+                        top += 1;
+                    }
+                }
+                if (lit[_test] == _full) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return true iff _lit implies at most one value for each
+         *  letter. */
+        private boolean consistent() {
+            for (long values : _lit) {
+                if ((values & (values - 1)) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return the stop at key position KEY with the plugboard pairs
+         *  implied by _lit. */
+        private Stop stop(long key) {
+            StringBuilder setting = new StringBuilder(),
+                plugboard = new StringBuilder();
+            for (int k = 1; k < _start.length; k += 1) {
+                setting.append(_alphabet.toChar(_start[k]));
+            }
+            for (int a = 0; a < _size; a += 1) {
+                int x = Long.numberOfTrailingZeros(_lit[a]);
+                if (_lit[a] != 0 && a < x) {
+                    plugboard.append(plugboard.length() == 0 ? "(" : " (")
+                        .append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(x)).append(')');
+                }
+            }
+            _machine.setRotors(setting.toString());
+            _machine.setPlugboard(new Permutation(plugboard.toString(),
+                                                  _alphabet));
+            String plain = _machine.convert(_cipher);
+            int score = 0;
+            for (int i = 0; i < _crib.length(); i += 1) {
+                if (plain.charAt(_offset + i) == _crib.charAt(i)) {
+                    score += 1;
+                }
+            }
+            return new Stop(key, _keys.order(key), setting.toString(),
+                            plugboard.toString(), score);
+        }
+
+        /** A machine with the current order of rotors, for checking
+         *  stops. */
+        private Machine _machine;
+        /** The settings of each slot at the start of the message. */
+        private final int[] _start;
+        /** The scrambler at each position of the crib. */
+        private final Scrambler _scrambler;
+        /** _lit[A] is the set of values implied for letter A. */
+        private final long[] _lit;
+        /** Implied letter-value pairs (A << 6 | X) not yet followed. */
+        private final int[] _stack;
+        /** The set of all values. */
+        private final long _full;
+        /** Receives the stops found. */
+        private final Consumer<Stop> _found;
+    }
+
+    /** A key position at which the crib is consistent with some
+     *  plugboard. */
+    static final class Stop {
+
+        /** A stop at key position KEY, with rotors ROTORS at settings
+         *  SETTING and the plugboard pairs PLUGBOARD, under which SCORE
+         *  letters of the crib decipher correctly. */
+        private Stop(long key, String[] rotors, String setting,
+                     String plugboard, int score) {
+            _key = key;
+            _rotors = rotors.clone();
+            _setting = setting;
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return the names of the rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the settings of the rotors in slots 1 and up at the
+         *  start of the message. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the implied plugboard pairs, as cycles.  Letters not
+         *  reached from the test letter are left unpaired. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the number of crib letters that decipher correctly
+         *  with my rotors, settings, and plugboard. */
+        int score() {
+            return _score;
+        }
+
+        /** Return a settings line for Main with my key. */
+        @Override
+        public String toString() {
+            return String.format("* %s %s%s", String.join(" ", _rotors),
+                                 _setting, _plugboard.isEmpty() ? ""
+                                 : " " + _plugboard);
+        }
+
+        /** My key position. */
+        private final long _key;
+        /** See rotors. */
+        private final String[] _rotors;
+        /** See setting. */
+        private final String _setting;
+        /** See plugboard. */
+        private final String _plugboard;
+        /** See score. */
+        private final int _score;
+    }
+
+    /** Search for the keys under which the ciphertext in a file
+     *  contains a crib.  ARGS are
+     *      [ --threads=N ] [ --order=R,S,... ] CONFIG CIPHER CRIB [ OFFSET ]
+     *  where CONFIG is a configuration file as for Main, CIPHER is a
+     *  file containing the ciphertext (characters not in the alphabet
+     *  are ignored), CRIB is the plaintext at position OFFSET
+     *  (default 0) of the ciphertext, --order limits the search to one
+     *  order of rotors (given by name, reflector first), and --threads
+     *  gives the number of threads (by default, one per processor).
+     *  The settings line of each stop under which the whole crib
+     *  deciphers correctly is printed on the standard output as it is
+     *  found.  Progress, the rate of the search, and a summary are
+     *  printed on the standard error. */
+    public static void main(String... args) {
+        try {
+            search(args);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Perform the search described by ARGS (see main). */
+    private static void search(String[] args) {
+        ArrayList<String> operands = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        String[] order = null;
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring(10));
+                } catch (NumberFormatException excp) {
+                    threads = 0;
+                }
+                if (threads <= 0) {
+                    throw error("bad thread count: %s", arg);
+                }
+            } else if (arg.startsWith("--order=")) {
+                order = arg.substring(8).toUpperCase().split(",");
+            } else if (arg.startsWith("--")) {
+                throw error("unknown option: %s", arg);
+            } else {
+                operands.add(arg);
+            }
+        }
+        if (operands.size() < 3 || operands.size() > 4) {
+            throw error("usage: java enigma.Bombe [--threads=N] "
+                        + "[--order=R,S,...] CONFIG CIPHER CRIB [OFFSET]");
+        }
+        String cipher;
+        try {
+            cipher = new String(Files.readAllBytes(Paths.get(operands.get(1))),
+                                "UTF-8");
+        } catch (IOException excp) {
+            throw error("could not read %s", operands.get(1));
+        }
+        int offset;
+        try {
+            offset = operands.size() > 3 ? Integer.parseInt(operands.get(3))
+                : 0;
+        } catch (NumberFormatException excp) {
+            throw error("bad offset: %s", operands.get(3));
+        }
+        Bombe bombe = new Bombe(Main.loadConfig(operands.get(0), null),
+                                cipher, operands.get(2), offset);
+        if (order != null) {
+            bombe.setOrders(Collections.singletonList(order));
+        }
+        report(bombe, new ForkJoinPool(threads));
+    }
+
+    /** Run BOMBE on POOL, printing stops as they are found and progress
+     *  about once a second. */
+    private static void report(Bombe bombe, ForkJoinPool pool) {
+        AtomicLong stops = new AtomicLong(), candidates = new AtomicLong();
+        int cribLength = bombe._crib.length();
+        long start = System.nanoTime();
+        ForkJoinTask<List<Stop>> task = pool.submit(() -> bombe.run(
+            pool, (stop) -> {
+                stops.incrementAndGet();
+                if (stop.score() == cribLength) {
+                    candidates.incrementAndGet();
+                    synchronized (System.out) {
+                        System.out.println(stop);
+                    }
+                }
+            }));
+        while (true) {
+            try {
+                task.get(1, TimeUnit.SECONDS);
+                break;
+            } catch (TimeoutException excp) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.err.printf("%d of %d positions (%.1f%%), %.0f"
+                                  + " positions/s, %d stops%n",
+                                  bombe.tested(), bombe.size(),
+                                  100.0 * bombe.tested() / bombe.size(),
+                                  bombe.tested() / seconds, stops.get());
+            } catch (InterruptedException | ExecutionException excp) {
+                throw error("search failed: %s", excp.getMessage());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d positions in %.2f s (%.0f positions/s) on"
+                          + " %d threads, test letter %c: %d stops, %d"
+                          + " deciphering the crib%n",
+                          bombe.size(), seconds, bombe.size() / seconds,
+                          pool.getParallelism(), bombe.testLetter(),
+                          stops.get(), candidates.get());
+    }
+
+    /** My configuration. */
+    private final CompiledConfig _config;
+    /** The alphabet of my configuration. */
+    private final Alphabet _alphabet;
+    /** The size of _alphabet. */
+    private final int _size;
+    /** The ciphertext up to the end of the crib. */
+    private final String _cipher;
+    /** The crib. */
+    private final String _crib;
+    /** The position of the crib in _cipher. */
+    private final int _offset;
+    /** The keys searched. */
+    private final KeySpace _keys;
+    /** The edges of the menu from letter A are numbers _edgeStart[A] ..
+     *  _edgeStart[A + 1] - 1.  Edge E joins A to letter _edgeTo[E] at
+     *  position _edgePos[E] of the crib. */
+    private int[] _edgeStart, _edgeTo, _edgePos;
+    /** The test letter, one of those with the most menu edges. */
+    private int _test;
+    /** The number of key positions tested by the current run. */
+    private final AtomicLong _tested = new AtomicLong();
+}
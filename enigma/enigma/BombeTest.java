@@ -0,0 +1,168 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Ze Martinho
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** A configuration with four slots and two pawls, with one reflector,
+     *  one fixed rotor, and three moving rotors. */
+    static CompiledConfig config() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        rotors.add(new MovingRotor("II", new Permutation(NAVALA.get("II"),
+                                                         UPPER), "E"));
+        rotors.add(new MovingRotor("III", new Permutation(NAVALA.get("III"),
+                                                          UPPER), "V"));
+        return new CompiledConfig(UPPER, 4, 2, rotors);
+    }
+
+    /** The rotors of the key used in these tests. */
+    private static final String[] ROTORS = { "B", "BETA", "III", "I" };
+
+    /** The settings of the key used in these tests. */
+    private static final String SETTING = "KDO";
+
+    /** The plugboard of the key used in these tests. */
+    private static final String PLUGBOARD =
+        "(AT) (BL) (CQ) (EW) (FK) (GS) (HZ) (MX)";
+
+    /** A message. */
+    private static final String PLAIN =
+        "WETTERVORHERSAGEBISKAYAHEUTEKEINREGENUNDWENIGWIND";
+
+    /** Return PLAIN enciphered with the key used in these tests. */
+    private static String cipher() {
+        Machine machine = config().newMachine();
+        machine.insertRotors(ROTORS);
+        machine.setRotors(SETTING);
+        machine.setPlugboard(new Permutation(PLUGBOARD, UPPER));
+        return machine.convert(PLAIN);
+    }
+
+    /** Return the position of the first run of LENGTH letters of PLAIN
+     *  that does not encipher any letter to itself. */
+    private static int cribOffset(String cipher, int length) {
+        int start = 0;
+        for (int i = 0; i < cipher.length(); i += 1) {
+            if (cipher.charAt(i) == PLAIN.charAt(i)) {
+                start = i + 1;
+            } else if (i + 1 - start == length) {
+                return start;
+            }
+        }
+        throw new AssertionError("no crib position");
+    }
+
+    /** Assert that STOP is the key used in these tests, with a plugboard
+     *  made of its pairs, and deciphers all of a crib of LENGTH
+     *  letters. */
+    private static void checkKey(Bombe.Stop stop, int length) {
+        assertArrayEquals(ROTORS, stop.rotors());
+        assertEquals(SETTING, stop.setting());
+        assertEquals(length, stop.score());
+        String pairs = PLUGBOARD.replace(" ", "");
+        for (String pair : stop.plugboard().split(" ")) {
+            assertTrue(msg("checkKey", "wrong pair %s", pair),
+                       pairs.contains(pair)
+                       || pairs.contains("(" + pair.charAt(2)
+                                         + pair.charAt(1) + ")"));
+        }
+    }
+
+    @Test
+    public void testFindsKey() {
+        String cipher = cipher();
+        int offset = cribOffset(cipher, 20);
+        Bombe bombe = new Bombe(config(), cipher,
+                                PLAIN.substring(offset, offset + 20), offset);
+        bombe.setOrders(Collections.singletonList(ROTORS));
+        assertEquals(26 * 26 * 26, bombe.size());
+        AtomicInteger found = new AtomicInteger();
+        List<Bombe.Stop> stops =
+            bombe.run(ForkJoinPool.commonPool(),
+                      (stop) -> found.incrementAndGet());
+        assertEquals(bombe.size(), bombe.tested());
+        assertEquals(stops.size(), found.get());
+        Bombe.Stop key = null;
+        for (Bombe.Stop stop : stops) {
+            if (stop.setting().equals(SETTING)) {
+                key = stop;
+            }
+        }
+        assertNotNull("key not found", key);
+        checkKey(key, 20);
+        assertTrue("too many stops", stops.size() < 100);
+    }
+
+    @Test
+    public void testAllOrders() {
+        String cipher = cipher();
+        int offset = cribOffset(cipher, 24);
+        Bombe bombe = new Bombe(config(), cipher,
+                                PLAIN.substring(offset, offset + 24), offset);
+        assertEquals(6, bombe.orders().size());
+        for (String[] order : bombe.orders()) {
+            assertEquals("B", order[0]);
+            assertEquals("BETA", order[1]);
+        }
+        ArrayList<Bombe.Stop> full = new ArrayList<Bombe.Stop>();
+        for (Bombe.Stop stop : bombe.run(new ForkJoinPool(3), null)) {
+            if (stop.score() == 24) {
+                full.add(stop);
+            }
+        }
+        assertEquals(1, full.size());
+        checkKey(full.get(0), 24);
+        assertEquals("* B BETA III I KDO " + full.get(0).plugboard(),
+                     full.get(0).toString());
+    }
+
+    @Test
+    public void testMenu() {
+        Bombe bombe = new Bombe(config(), "BCAB", "ABCA", 0);
+        assertEquals('A', bombe.testLetter());
+        bombe = new Bombe(config(), "XX BCAB", "ABCA", 2);
+        assertEquals('A', bombe.testLetter());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncipherment() {
+        new Bombe(config(), "ABCD", "XBYZ", 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribTooLong() {
+        new Bombe(config(), "ABCD", "XYZ", 2);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadOrder() {
+        Bombe bombe = new Bombe(config(), "ABCD", "BCDA", 0);
+        bombe.setOrders(Collections.singletonList(
+                            new String[] { "B", "III", "I", "II" }));
+    }
+
+}
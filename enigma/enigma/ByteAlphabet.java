@@ -0,0 +1,61 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The alphabet of the 256 byte values: character number K is the char
+ *  whose code is K, for 0 <= K < 256.  With it, a machine can convert
+ *  arbitrary binary data (see Machine.convert(byte[], int, int)).
+ *  @author Ze Martinho
+ */
+class ByteAlphabet extends Alphabet {
+
+    /** The size of my alphabet. */
+    static final int SIZE = 256;
+
+    /** A new alphabet containing the chars with codes 0 .. 255, in
+     *  order. */
+    ByteAlphabet() {
+        super(chars());
+    }
+
+    /** Return the characters of the alphabet, in order. */
+    private static String chars() {
+        char[] result = new char[SIZE];
+        for (int i = 0; i < SIZE; i += 1) {
+            result[i] = (char) i;
+        }
+        return new String(result);
+    }
+
+    /** Returns the size of the alphabet. */
+    @Override
+    final int size() {
+        return SIZE;
+    }
+
+    /** Returns true if C is in this alphabet. */
+    @Override
+    final boolean contains(char c) {
+        return c < SIZE;
+    }
+
+    /** Returns character number INDEX in the alphabet, where
+     *  0 <= INDEX < size(). */
+    @Override
+    final char toChar(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw error("character index out of range");
+        }
+        return (char) index;
+    }
+
+    /** Returns the index of character C, which must be in the alphabet. */
+    @Override
+    final int toInt(char c) {
+        if (c >= SIZE) {
+            throw error("character not in alphabet");
+        }
+        return c;
+    }
+
+}
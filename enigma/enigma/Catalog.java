@@ -0,0 +1,510 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/** A catalog of the cycle structures ("characteristics") of rotor keys.
+ *
+ *  Let A1, ..., A6 be the substitutions made by a machine at the first
+ *  six positions of a message.  When a key of three letters is sent
+ *  twice at the start of each message, as was once the practice, the
+ *  first and fourth letters of every indicator are related by A1 A4,
+ *  the second and fifth by A2 A5, and the third and sixth by A3 A6, and
+ *  enough messages on one key reveal these three permutations.  The
+ *  lengths of their cycles (the signature of the key) depend only on
+ *  the rotors and their settings: the plugboard conjugates each Ai, and
+ *  so each product, which leaves its cycle lengths unchanged.  The
+ *  catalog lists the signature of every rotor key (see KeySpace), so
+ *  that the keys with an observed signature can be looked up.
+ *
+ *  Building the catalog computes the signatures in parallel with a
+ *  Scrambler per thread.  Each key is recorded as one long: a hash of
+ *  its signature in the high bits and its number in the low bits.  The
+ *  entries are sorted, so that the keys with any signature are
+ *  consecutive, and written after a header to a file.  Opening the file
+ *  maps it into memory, and a lookup is a binary search of the mapped
+ *  entries, with each match checked by recomputing the key's signature,
+ *  which rules out keys whose signatures merely share a hash.
+ *
+ *  A catalog file consists of
+ *      MAGIC, VERSION, the checksum of the configuration, the number of
+ *      rotor slots, the number of key bits, the number of settings of
+ *      the rotors in slots 1 and up, the number of orders of rotors,
+ *      and the number of entries,
+ *  followed by each order of rotors, as the length and characters of
+ *  the name of each of its rotors, then padding to a multiple of 8
+ *  bytes, then the entries.  All numbers are big-endian.
+ *  @author Ze Martinho
+ */
+class Catalog {
+
+    /** The first four bytes of a catalog file ("ENGK"). */
+    static final int MAGIC = 0x454E474B;
+
+    /** The version of the catalog file format. */
+    static final int VERSION = 1;
+
+    /** The number of permutations whose cycles make a signature. */
+    static final int PRODUCTS = 3;
+
+    /** Largest number of rotor keys tried by one task of build. */
+    static final int LEAF = 1 << 12;
+
+    /** A catalog of the keys KEYS with entries ENTRIES, of which the
+     *  low KEYBITS bits are key numbers. */
+    private Catalog(KeySpace keys, int keyBits, LongBuffer entries) {
+        _keys = keys;
+        _keyBits = keyBits;
+        _entries = entries;
+    }
+
+    /** Return a catalog of the signatures of the keys KEYS, computing
+     *  them on the threads of POOL. */
+    static Catalog build(KeySpace keys, ForkJoinPool pool) {
+        long size = keys.size();
+        if (size > (Integer.MAX_VALUE - (1 << 20)) / 8) {
+            throw error("too many keys for a catalog: %d", size);
+        }
+        int keyBits = Math.max(1, 64 - Long.numberOfLeadingZeros(size - 1));
+        long[] entries = new long[(int) size];
+        KeySpace.search(pool, 0, size, LEAF, () -> {
+            Signer signer = new Signer(keys);
+            return (lo, hi) -> {
+                for (long key = lo; key < hi; key += 1) {
+                    signer.setKey(key);
+                    entries[(int) key] =
+                        hash(signer.counts(), keyBits) << keyBits | key;
+                }
+            };
+        });
+        pool.submit(() -> Arrays.parallelSort(entries)).join();
+        return new Catalog(keys, keyBits, LongBuffer.wrap(entries));
+    }
+
+    /** Computes the signatures of keys. */
+    private static class Signer {
+
+        /** A signer for the keys KEYS. */
+        Signer(KeySpace keys) {
+            _keys = keys;
+            int size = keys.config().alphabet().size();
+            _scrambler = new Scrambler(keys.config(), 2 * PRODUCTS);
+            _start = new int[keys.config().numRotors()];
+            _counts = new int[PRODUCTS][size + 1];
+            _seen = new boolean[size];
+        }
+
+        /** Use key KEY. */
+        void setKey(long key) {
+            if (_keys.orderNumber(key) != _order) {
+                _order = _keys.orderNumber(key);
+                _scrambler.setOrder(_keys.order(key));
+            }
+            _keys.settings(key, _start);
+            _scrambler.setStart(_start, 0);
+        }
+
+        /** Return the signature of my key, as the number of cycles of
+         *  each length L (at index L) in each product.  The result is
+         *  overwritten by the next call. */
+        int[][] counts() {
+            int size = _seen.length;
+            for (int k = 0; k < PRODUCTS; k += 1) {
+                int[] counts = _counts[k];
+                Arrays.fill(counts, 0);
+                Arrays.fill(_seen, false);
+                for (int x = 0; x < size; x += 1) {
+                    int len = 0;
+                    for (int y = x; !_seen[y];
+                         y = _scrambler.convert(k + PRODUCTS,
+                                                _scrambler.convert(k, y))) {
+                        _seen[y] = true;
+                        len += 1;
+                    }
+                    counts[len] += 1;
+                }
+                counts[0] = 0;
+            }
+            return _counts;
+        }
+
+        /** The keys signed. */
+        private final KeySpace _keys;
+        /** Gives the substitutions at the first positions of a
+         *  message. */
+        private final Scrambler _scrambler;
+        /** The settings of each slot for the current key. */
+        private final int[] _start;
+        /** The number of the current order of rotors, or -1. */
+        private int _order = -1;
+        /** See counts. */
+        private final int[][] _counts;
+        /** Marks the letters in cycles already counted. */
+        private final boolean[] _seen;
+    }
+
+    /** Return the hash of the signature COUNTS (as returned by
+     *  Signer.counts) in 63 - KEYBITS bits. */
+    private static long hash(int[][] counts, int keyBits) {
+        long h = 0;
+        for (int[] product : counts) {
+            for (int len = 1; len < product.length; len += 1) {
+                h = (h ^ product[len]) * 0x9E3779B97F4A7C15L;
+                h ^= h >>> 29;
+            }
+        }
+        return h >>> (keyBits + 1);
+    }
+
+    /** Return the signature COUNTS as the lengths of the cycles of each
+     *  product, longest first. */
+    private static int[][] lengths(int[][] counts) {
+        int[][] result = new int[counts.length][];
+        for (int k = 0; k < counts.length; k += 1) {
+            ArrayList<Integer> lengths = new ArrayList<Integer>();
+            for (int len = counts[k].length - 1; len > 0; len -= 1) {
+                for (int i = 0; i < counts[k][len]; i += 1) {
+                    lengths.add(len);
+                }
+            }
+            result[k] = lengths.stream().mapToInt((i) -> i).toArray();
+        }
+        return result;
+    }
+
+    /** Return the signature whose products have cycles of the lengths
+     *  in LENGTHS, as Signer.counts would, for an alphabet of SIZE. */
+    private static int[][] counts(int[][] lengths, int size) {
+        if (lengths.length != PRODUCTS) {
+            throw error("a signature has %d products", PRODUCTS);
+        }
+        int[][] result = new int[PRODUCTS][size + 1];
+        for (int k = 0; k < PRODUCTS; k += 1) {
+            int total = 0;
+            for (int len : lengths[k]) {
+                if (len <= 0 || len > size) {
+                    throw error("bad cycle length: %d", len);
+                }
+                result[k][len] += 1;
+                total += len;
+            }
+            if (total != size) {
+                throw error("cycle lengths do not add up to %d", size);
+            }
+        }
+        return result;
+    }
+
+    /** Return the signature of key KEY, as the lengths of the cycles of
+     *  each product, longest first. */
+    int[][] signature(long key) {
+        Signer signer = new Signer(_keys);
+        signer.setKey(key);
+        return lengths(signer.counts());
+    }
+
+    /** Return the numbers of the keys with signature SIGNATURE, given as
+     *  the lengths of the cycles of each product, in increasing
+     *  order. */
+    long[] lookup(int[][] signature) {
+        int[][] counts =
+            counts(signature, _keys.config().alphabet().size());
+        long lo = hash(counts, _keyBits) << _keyBits,
+            hi = lo + (1L << _keyBits);
+        ArrayList<Long> result = new ArrayList<Long>();
+        Signer signer = new Signer(_keys);
+        for (int i = firstAtLeast(lo); i < _entries.limit(); i += 1) {
+            long entry = _entries.get(i);
+            if (entry >= hi) {
+                break;
+            }
+            long key = entry & ((1L << _keyBits) - 1);
+            signer.setKey(key);
+            if (Arrays.deepEquals(signer.counts(), counts)) {
+                result.add(key);
+            }
+        }
+        Collections.sort(result);
+        return result.stream().mapToLong((k) -> k).toArray();
+    }
+
+    /** Return the index of the first entry that is at least VALUE. */
+    private int firstAtLeast(long value) {
+        int lo = 0, hi = _entries.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_entries.get(mid) < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the number of keys in the catalog. */
+    long size() {
+        return _entries.limit();
+    }
+
+    /** Return the order of rotors of key KEY. */
+    String[] order(long key) {
+        return _keys.order(key).clone();
+    }
+
+    /** Return the settings of the rotors in slots 1 and up for key
+     *  KEY. */
+    String setting(long key) {
+        return _keys.setting(key);
+    }
+
+    /** Write me to the file FILE.  The file is written under another
+     *  name and then renamed, so that a process opening FILE at the same
+     *  time sees either the old file or the complete new one. */
+    void save(Path file) throws IOException {
+        List<String[]> orders = _keys.orders();
+        int size = 40;
+        for (String[] order : orders) {
+            for (String name : order) {
+                size += 2 + 2 * name.length();
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate((size + 7) & ~7);
+        header.putInt(MAGIC).putInt(VERSION)
+            .putInt(_keys.config().checksum())
+            .putInt(_keys.config().numRotors()).putInt(_keyBits)
+            .putLong(_keys.positions()).putInt(orders.size())
+            .putLong(_entries.limit());
+        for (String[] order : orders) {
+            for (String name : order) {
+                header.putChar((char) name.length());
+                for (int i = 0; i < name.length(); i += 1) {
+                    header.putChar(name.charAt(i));
+                }
+            }
+        }
+        header.clear();
+        Path temp = file.resolveSibling(file.getFileName() + "."
+                                        + ProcessHandle.current().pid()
+                                        + ".tmp");
+        try {
+            try (FileChannel channel =
+                 FileChannel.open(temp, StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                ByteBuffer block = ByteBuffer.allocate(1 << 16);
+                LongBuffer entries = _entries.duplicate();
+                entries.clear();
+                while (entries.hasRemaining()) {
+                    block.clear();
+                    while (block.remaining() >= 8 && entries.hasRemaining()) {
+                        block.putLong(entries.get());
+                    }
+                    block.flip();
+                    while (block.hasRemaining()) {
+                        channel.write(block);
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Return the catalog in the file FILE, which must have been made
+     *  for configuration CONFIG. */
+    static Catalog open(Path file, CompiledConfig config)
+        throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw error("catalog %s is too large", file);
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                              channel.size());
+        }
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw error("%s is not a catalog of this version", file);
+            } else if (buf.getInt() != config.checksum()
+                       || buf.getInt() != config.numRotors()) {
+                throw error("catalog %s was made for another"
+                            + " configuration", file);
+            }
+            int keyBits = buf.getInt();
+            long positions = buf.getLong();
+            int numOrders = buf.getInt();
+            long count = buf.getLong();
+            ArrayList<String[]> orders = new ArrayList<String[]>();
+            for (int i = 0; i < numOrders; i += 1) {
+                String[] order = new String[config.numRotors()];
+                for (int k = 0; k < order.length; k += 1) {
+                    char[] name = new char[buf.getChar()];
+                    buf.asCharBuffer().get(name);
+                    buf.position(buf.position() + 2 * name.length);
+                    order[k] = new String(name);
+                }
+                orders.add(order);
+            }
+            buf.position((buf.position() + 7) & ~7);
+            KeySpace keys = new KeySpace(config);
+            keys.setOrders(orders);
+            if (keys.positions() != positions || keys.size() != count
+                || buf.remaining() != 8 * count) {
+                throw error("catalog %s is malformed", file);
+            }
+            return new Catalog(keys, keyBits, buf.asLongBuffer());
+        } catch (BufferUnderflowException excp) {
+            throw error("catalog %s is truncated", file);
+        }
+    }
+
+    /** Return the signature written in TEXT: the cycle lengths of each
+     *  product, separated by spaces, with the products separated by
+     *  '/', as in "13 13 / 10 10 3 3 / 12 12 1 1". */
+    static int[][] parseSignature(String text) {
+        String[] products = text.trim().split("\\s*/\\s*");
+        int[][] result = new int[products.length][];
+        try {
+            for (int k = 0; k < products.length; k += 1) {
+                result[k] = Arrays.stream(products[k].split("\\s+"))
+                    .mapToInt(Integer::parseInt).toArray();
+            }
+        } catch (NumberFormatException excp) {
+            throw error("bad signature: %s", text);
+        }
+        return result;
+    }
+
+    /** Return SIGNATURE in the form read by parseSignature. */
+    static String formatSignature(int[][] signature) {
+        StringBuilder result = new StringBuilder();
+        for (int[] product : signature) {
+            if (result.length() > 0) {
+                result.append(" / ");
+            }
+            for (int i = 0; i < product.length; i += 1) {
+                result.append(i == 0 ? "" : " ").append(product[i]);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Build or search a catalog.  ARGS are either
+     *      build [ --threads=N ] [ --order=R,S,... ] CONFIG CATALOG
+     *  to write a catalog of the keys of the machines with configuration
+     *  file CONFIG (all their orders of rotors, or only the one given by
+     *  --order) to the file CATALOG, using N threads (by default, one
+     *  per processor), or
+     *      lookup CONFIG CATALOG SIGNATURE
+     *  to print a settings line (without plugboard) for each key in
+     *  CATALOG with SIGNATURE (as read by parseSignature).  Timings are
+     *  printed on the standard error. */
+    public static void main(String... args) {
+        try {
+            if (args.length > 0 && args[0].equals("build")) {
+                build(Arrays.copyOfRange(args, 1, args.length));
+            } else if (args.length == 4 && args[0].equals("lookup")) {
+                lookup(args[1], args[2], args[3]);
+            } else {
+                throw error("usage: java enigma.Catalog build [--threads=N]"
+                            + " [--order=R,S,...] CONFIG CATALOG%n"
+                            + "       java enigma.Catalog lookup CONFIG"
+                            + " CATALOG SIGNATURE");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp);
+        }
+        System.exit(1);
+    }
+
+    /** Build a catalog as described by ARGS (see main). */
+    private static void build(String[] args) throws IOException {
+        ArrayList<String> operands = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        String[] order = null;
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring(10));
+                } catch (NumberFormatException excp) {
+                    threads = 0;
+                }
+                if (threads <= 0) {
+                    throw error("bad thread count: %s", arg);
+                }
+            } else if (arg.startsWith("--order=")) {
+                order = arg.substring(8).toUpperCase().split(",");
+            } else {
+                operands.add(arg);
+            }
+        }
+        if (operands.size() != 2) {
+            throw error("wrong number of arguments");
+        }
+        KeySpace keys = new KeySpace(Main.loadConfig(operands.get(0),
+                                                     null));
+        if (order != null) {
+            keys.setOrders(Collections.singletonList(order));
+        }
+        long start = System.nanoTime();
+        Catalog catalog = build(keys, new ForkJoinPool(threads));
+        long built = System.nanoTime();
+        catalog.save(Paths.get(operands.get(1)));
+        System.err.printf("%d keys catalogued in %.2f s (%.0f keys/s) on"
+                          + " %d threads, written in %.2f s%n",
+                          catalog.size(), (built - start) / 1e9,
+                          catalog.size() / ((built - start) / 1e9),
+                          threads, (System.nanoTime() - built) / 1e9);
+    }
+
+    /** Print the keys in the catalog in the file CATALOG for the
+     *  configuration in the file CONFIG with the signature SIGNATURE. */
+    private static void lookup(String config, String catalog,
+                               String signature) throws IOException {
+        long start = System.nanoTime();
+        Catalog opened = open(Paths.get(catalog),
+                              Main.loadConfig(config, null));
+        long found = System.nanoTime();
+        long[] keys = opened.lookup(parseSignature(signature));
+        long done = System.nanoTime();
+        for (long key : keys) {
+            System.out.printf("* %s %s%n", String.join(" ", opened.order(key)),
+                              opened.setting(key));
+        }
+        System.err.printf("%d keys of %d; opened in %.2f ms, looked up in"
+                          + " %.2f ms%n", keys.length, opened.size(),
+                          (found - start) / 1e6, (done - found) / 1e6);
+    }
+
+    /** The keys catalogued. */
+    private final KeySpace _keys;
+    /** The number of low bits of each entry that hold a key number. */
+    private final int _keyBits;
+    /** The entries, in increasing order. */
+    private final LongBuffer _entries;
+}
@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Catalog class.
+ *  @author Ze Martinho
+ */
+public class CatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** A directory for the files made by a test. */
+    private Path dir;
+    /** A catalog file in dir. */
+    private Path file;
+
+    @Before
+    public void makeDir() throws IOException {
+        dir = Files.createTempDirectory("enigma");
+        file = dir.resolve("test.catalog");
+    }
+
+    @After
+    public void removeFiles() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    /** A configuration with four slots and two pawls, with one reflector,
+     *  one fixed rotor, and three moving rotors, the first of which has
+     *  its notch at NOTCH. */
+    private static CompiledConfig config(String notch) {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        UPPER), notch));
+        rotors.add(new MovingRotor("II", new Permutation(NAVALA.get("II"),
+                                                         UPPER), "E"));
+        rotors.add(new MovingRotor("III", new Permutation(NAVALA.get("III"),
+                                                          UPPER), "V"));
+        return new CompiledConfig(UPPER, 4, 2, rotors);
+    }
+
+    /** The rotors of the key used in these tests. */
+    private static final String[] ROTORS = { "B", "BETA", "III", "I" };
+
+    /** The settings of the key used in these tests. */
+    private static final String SETTING = "KDO";
+
+    /** Return a catalog of the keys with the rotors ROTORS, saved to and
+     *  read back from file. */
+    private Catalog catalog() throws IOException {
+        KeySpace keys = new KeySpace(config("Q"));
+        keys.setOrders(Collections.singletonList(ROTORS));
+        Catalog built = Catalog.build(keys, new ForkJoinPool(2));
+        built.save(file);
+        return Catalog.open(file, config("Q"));
+    }
+
+    /** Return the number of the key with setting SETTING in CATALOG. */
+    private static long key(Catalog catalog) {
+        for (long key = 0; key < catalog.size(); key += 1) {
+            if (catalog.setting(key).equals(SETTING)) {
+                return key;
+            }
+        }
+        throw new AssertionError("no key " + SETTING);
+    }
+
+    /** Return the signature of the key used in these tests, with the
+     *  plugboard PLUGBOARD, found as it would be from messages sent on
+     *  it: by enciphering each letter six times. */
+    private static int[][] observed(String plugboard) {
+        int[][] at = new int[6][26];
+        for (int x = 0; x < 26; x += 1) {
+            Machine machine = config("Q").newMachine();
+            machine.insertRotors(ROTORS);
+            machine.setRotors(SETTING);
+            machine.setPlugboard(new Permutation(plugboard, UPPER));
+            String cipher =
+                machine.convert(String.valueOf(UPPER.toChar(x)).repeat(6));
+            for (int i = 0; i < 6; i += 1) {
+                at[i][x] = UPPER.toInt(cipher.charAt(i));
+            }
+        }
+        int[][] result = new int[3][];
+        for (int k = 0; k < 3; k += 1) {
+            ArrayList<Integer> lengths = new ArrayList<Integer>();
+            boolean[] seen = new boolean[26];
+            for (int x = 0; x < 26; x += 1) {
+                int len = 0;
+                for (int y = x; !seen[y]; y = at[k + 3][at[k][y]]) {
+                    seen[y] = true;
+                    len += 1;
+                }
+                if (len > 0) {
+                    lengths.add(len);
+                }
+            }
+            lengths.sort(Collections.reverseOrder());
+            result[k] = lengths.stream().mapToInt((i) -> i).toArray();
+        }
+        return result;
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        Catalog catalog = catalog();
+        assertEquals(26 * 26 * 26, catalog.size());
+        long key = key(catalog);
+        assertArrayEquals(ROTORS, catalog.order(key));
+        int[][] signature = catalog.signature(key);
+        long[] found = catalog.lookup(signature);
+        assertTrue(Arrays.stream(found).anyMatch((k) -> k == key));
+        for (long k : found) {
+            assertTrue(Arrays.deepEquals(signature, catalog.signature(k)));
+        }
+        assertEquals(0, catalog.lookup(new int[][] {
+                    { 26 }, { 26 }, { 26 } }).length);
+    }
+
+    @Test
+    public void testPlugboard() throws IOException {
+        Catalog catalog = catalog();
+        long key = key(catalog);
+        int[][] signature = catalog.signature(key);
+        assertTrue(Arrays.deepEquals(signature, observed("")));
+        int[][] plugged = observed("(AT) (BL) (CQ) (EW) (FK) (GS) (HZ)");
+        assertTrue(Arrays.deepEquals(signature, plugged));
+        assertTrue(Arrays.stream(catalog.lookup(plugged))
+                   .anyMatch((k) -> k == key));
+    }
+
+    @Test
+    public void testSignatureText() {
+        int[][] signature = { { 13, 13 }, { 10, 10, 3, 3 }, { 1, 1, 12, 12 } };
+        String text = "13 13 / 10 10 3 3 / 1 1 12 12";
+        assertEquals(text, Catalog.formatSignature(signature));
+        assertTrue(Arrays.deepEquals(signature,
+                                     Catalog.parseSignature(text)));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSignature() throws IOException {
+        catalog().lookup(new int[][] { { 13, 13 }, { 26 }, { 25 } });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOtherConfig() throws IOException {
+        catalog();
+        Catalog.open(file, config("R"));
+    }
+
+}
@@ -0,0 +1,267 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** A machine configuration (alphabet, numbers of slots and pawls, and
+ *  rotors) in a form that can be saved to and loaded from a binary
+ *  cache file, so that a configuration file need be parsed only once.
+ *
+ *  A cache file records the modification time and size of the text
+ *  configuration it was made from, and is used only while those still
+ *  match.  It consists of a header of HEADER_SIZE bytes, holding
+ *      MAGIC, VERSION, the configuration's modification time (in ms)
+ *      and size, the length of the body, and the CRC-32 of the body,
+ *  followed by a body, holding
+ *      the alphabet size N and its N characters, the numbers of slots
+ *      and of pawls, the number of rotors, and then, for each rotor,
+ *      its type ('R', 'N', or 'M'), the length and characters of its
+ *      name, its permutation as a table of N ints, and, for moving
+ *      rotors, its notches as a bit set of (N + 63) / 64 longs.
+ *  All numbers are big-endian.  Loading maps the file into memory and
+ *  rebuilds the rotors directly from their tables.
+ *  @author Ze Martinho
+ */
+class CompiledConfig {
+
+    /** The first four bytes of a cache file ("ENGC"). */
+    static final int MAGIC = 0x454E4743;
+
+    /** The version of the cache file format. */
+    static final int VERSION = 1;
+
+    /** Size of the header of a cache file, in bytes. */
+    static final int HEADER_SIZE = 32;
+
+    /** A configuration with alphabet ALPHABET, NUMROTORS slots, NUMPAWLS
+     *  pawls, and the available rotors ROTORS. */
+    CompiledConfig(Alphabet alphabet, int numRotors, int numPawls,
+                   List<Rotor> rotors) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _rotors = new ArrayList<Rotor>(rotors);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return my available rotors. */
+    ArrayList<Rotor> rotors() {
+        return _rotors;
+    }
+
+    /** Return my rotor named NAME (in any case). */
+    Rotor rotor(String name) {
+        for (Rotor rotor : _rotors) {
+            if (rotor.name().equalsIgnoreCase(name)) {
+                return rotor;
+            }
+        }
+        throw error("Not a real rotor: %s", name);
+    }
+
+    /** Return a new machine with my configuration. */
+    Machine newMachine() {
+        return new Machine(_alphabet, _numRotors, _numPawls, _rotors);
+    }
+
+    /** Return the configuration in the cache file CACHE if it was made
+     *  from the current contents of the text configuration file SOURCE,
+     *  and otherwise (including when CACHE does not exist, has another
+     *  format version, or is corrupt) null. */
+    static CompiledConfig load(Path cache, Path source) throws IOException {
+        BasicFileAttributes attrs =
+            Files.readAttributes(source, BasicFileAttributes.class);
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(cache)) {
+            if (channel.size() < HEADER_SIZE
+                || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                              channel.size());
+        } catch (NoSuchFileException excp) {
+            return null;
+        }
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+            || buf.getLong() != attrs.lastModifiedTime().toMillis()
+            || buf.getLong() != attrs.size()
+            || buf.getInt() != buf.capacity() - HEADER_SIZE) {
+            return null;
+        }
+        int checksum = buf.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        try {
+            return read(buf);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | NegativeArraySizeException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Return the configuration in the body of a cache file in BUF,
+     *  starting at its position. */
+    private static CompiledConfig read(ByteBuffer buf) {
+        char[] chars = new char[buf.getInt()];
+        buf.asCharBuffer().get(chars);
+        buf.position(buf.position() + 2 * chars.length);
+        String letters = new String(chars);
+        Alphabet alphabet = letters.equals(UPPER_CASE)
+            ? new UpperCaseAlphabet() : new Alphabet(letters);
+        int numRotors = buf.getInt(), numPawls = buf.getInt();
+        int count = buf.getInt();
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        int[] table = new int[chars.length];
+        long[] notches = new long[(chars.length + 63) / 64];
+        for (int i = 0; i < count; i += 1) {
+            byte type = buf.get();
+            char[] name = new char[buf.getChar()];
+            buf.asCharBuffer().get(name);
+            buf.position(buf.position() + 2 * name.length);
+            buf.asIntBuffer().get(table);
+            buf.position(buf.position() + 4 * table.length);
+            Permutation perm = Permutation.fromTable(table, alphabet);
+            switch (type) {
+            case 'R':
+                rotors.add(new Reflector(new String(name), perm));
+                break;
+            case 'N':
+                rotors.add(new FixedRotor(new String(name), perm));
+                break;
+            case 'M':
+                buf.asLongBuffer().get(notches);
+                buf.position(buf.position() + 8 * notches.length);
+                rotors.add(new MovingRotor(new String(name), perm,
+                                           notches));
+                break;
+            default:
+                return null;
+            }
+        }
+        return new CompiledConfig(alphabet, numRotors, numPawls, rotors);
+    }
+
+    /** Write me to the cache file CACHE, as made from the text
+     *  configuration file SOURCE.  The file is written under another
+     *  name and then renamed, so that a process loading CACHE at the
+     *  same time sees either the old file or the complete new one. */
+    void save(Path cache, Path source) throws IOException {
+        BasicFileAttributes attrs =
+            Files.readAttributes(source, BasicFileAttributes.class);
+        ByteBuffer body = body();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION)
+            .putLong(attrs.lastModifiedTime().toMillis())
+            .putLong(attrs.size())
+            .putInt(body.remaining()).putInt((int) crc.getValue());
+        header.flip();
+        Path temp = cache.resolveSibling(cache.getFileName() + "."
+                                         + ProcessHandle.current().pid()
+                                         + ".tmp");
+        try {
+            try (FileChannel channel =
+                 FileChannel.open(temp, StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    channel.write(new ByteBuffer[] { header, body });
+                }
+            }
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Return a checksum of my contents, so that files derived from a
+     *  configuration can be checked against it. */
+    int checksum() {
+        CRC32 crc = new CRC32();
+        crc.update(body());
+        return (int) crc.getValue();
+    }
+
+    /** Return the body of my cache file, ready to be written. */
+    private ByteBuffer body() {
+        int n = _alphabet.size();
+        int size = 16 + 2 * n;
+        for (Rotor rotor : _rotors) {
+            size += 3 + 2 * rotor.name().length() + 4 * n
+                + (rotor.rotates() ? 8 * ((n + 63) / 64) : 0);
+        }
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            body.putChar(_alphabet.toChar(i));
+        }
+        body.putInt(_numRotors).putInt(_numPawls).putInt(_rotors.size());
+        for (Rotor rotor : _rotors) {
+            body.put((byte) (rotor.reflecting() ? 'R'
+                             : rotor.rotates() ? 'M' : 'N'));
+            body.putChar((char) rotor.name().length());
+            for (int i = 0; i < rotor.name().length(); i += 1) {
+                body.putChar(rotor.name().charAt(i));
+            }
+            for (int i = 0; i < n; i += 1) {
+                body.putInt(rotor.permutation().permute(i));
+            }
+            if (rotor.rotates()) {
+                long[] notches = new long[(n + 63) / 64];
+                for (int s = 0; s < n; s += 1) {
+                    if (rotor.atNotch(s)) {
+                        notches[s >>> 6] |= 1L << s;
+                    }
+                }
+                for (long bits : notches) {
+                    body.putLong(bits);
+                }
+            }
+        }
+        body.flip();
+        return body;
+    }
+
+    /** The characters of UpperCaseAlphabet. */
+    private static final String UPPER_CASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** My numbers of rotor slots and pawls. */
+    private final int _numRotors, _numPawls;
+    /** My available rotors. */
+    private final ArrayList<Rotor> _rotors;
+}
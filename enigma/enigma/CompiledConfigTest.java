@@ -0,0 +1,175 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompiledConfig class.
+ *  @author Ze Martinho
+ */
+public class CompiledConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A directory for the files made by a test. */
+    private Path dir;
+    /** A text configuration file (whose contents do not matter). */
+    private Path source;
+    /** A cache file in dir. */
+    private Path cache;
+
+    @Before
+    public void makeFiles() throws IOException {
+        dir = Files.createTempDirectory("enigma");
+        source = dir.resolve("test.conf");
+        cache = dir.resolve("test.conf.cache");
+        Files.write(source, "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3".getBytes());
+    }
+
+    @After
+    public void removeFiles() throws IOException {
+        Files.deleteIfExists(cache);
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(dir);
+    }
+
+    /** Return a configuration of the naval rotors in ALPHA, a 26-letter
+     *  alphabet. */
+    private static CompiledConfig naval(Alphabet alpha) {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      alpha)));
+        rotors.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                                                          alpha)));
+        String[] moving = { "I", "II", "III", "IV", "V", "VI" };
+        for (int i = 0; i < moving.length; i += 1) {
+            rotors.add(new MovingRotor(moving[i],
+                                       new Permutation(NAVALA.get(moving[i]),
+                                                       alpha),
+                                       "QEVJZ".substring(i % 5,
+                                                         i % 5 + 1)));
+        }
+        return new CompiledConfig(alpha, 5, 3, rotors);
+    }
+
+    /** Return the conversion of MSG by a machine with CONFIG, set up
+     *  with the rotors B, BETA, III, V, and I at setting AXLE. */
+    private static String convert(CompiledConfig config, String msg) {
+        Machine machine = config.newMachine();
+        machine.insertRotors(new String[] { "B", "BETA", "III", "V", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        return machine.convert(msg);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CompiledConfig config = naval(UPPER);
+        config.save(cache, source);
+        CompiledConfig loaded = CompiledConfig.load(cache, source);
+        assertNotNull(loaded);
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.numPawls());
+        assertTrue(loaded.alphabet() instanceof UpperCaseAlphabet);
+        assertEquals(config.rotors().size(), loaded.rotors().size());
+        for (int i = 0; i < config.rotors().size(); i += 1) {
+            Rotor expected = config.rotors().get(i),
+                actual = loaded.rotors().get(i);
+            assertEquals(expected.name(), actual.name());
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.permutation(), actual.permutation());
+            for (int s = 0; s < 26; s += 1) {
+                assertEquals(expected.atNotch(s), actual.atNotch(s));
+            }
+        }
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        assertEquals(convert(config, msg), convert(loaded, msg));
+    }
+
+    @Test
+    public void testOtherAlphabet() throws IOException {
+        String chars = "0123456789.,?!-_\u00C4\u00D6\u00DC\u4E2D\u6587ABCDE";
+        Alphabet alpha = new Alphabet(chars);
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("R", new Permutation("(0A)(1B)(2C)(3D)"
+                                                      + "(4E)(5\u00C4)"
+                                                      + "(6\u00D6)(7\u00DC)"
+                                                      + "(8\u4E2D)(9\u6587)"
+                                                      + "(.,)(?!)(-_)",
+                                                      alpha)));
+        rotors.add(new MovingRotor("\u4E2D", new Permutation("(0123.?-)",
+                                                             alpha),
+                                   "7\u00C4"));
+        new CompiledConfig(alpha, 2, 1, rotors).save(cache, source);
+        CompiledConfig loaded = CompiledConfig.load(cache, source);
+        assertNotNull(loaded);
+        assertEquals(chars.length(), loaded.alphabet().size());
+        assertEquals(chars.indexOf('\u4E2D'),
+                     loaded.alphabet().toInt('\u4E2D'));
+        assertEquals("\u4E2D", loaded.rotors().get(1).name());
+        assertEquals(rotors.get(0).permutation(),
+                     loaded.rotors().get(0).permutation());
+        assertTrue(loaded.rotors().get(1).atNotch(chars.indexOf('7')));
+        assertFalse(loaded.rotors().get(1).atNotch(chars.indexOf('8')));
+    }
+
+    @Test
+    public void testMissing() throws IOException {
+        assertNull(CompiledConfig.load(cache, source));
+    }
+
+    @Test
+    public void testStale() throws IOException {
+        naval(UPPER).save(cache, source);
+        Files.setLastModifiedTime(
+            source, FileTime.fromMillis(
+                Files.getLastModifiedTime(source).toMillis() + 2000));
+        assertNull(CompiledConfig.load(cache, source));
+        naval(UPPER).save(cache, source);
+        assertNotNull(CompiledConfig.load(cache, source));
+    }
+
+    /** Change the byte at POSITION in the file FILE. */
+    private static void corrupt(Path file, long position)
+        throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(),
+                                                         "rw")) {
+            out.seek(position);
+            int b = out.read();
+            out.seek(position);
+            out.write(b ^ 0x10);
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        naval(UPPER).save(cache, source);
+        long size = Files.size(cache);
+        corrupt(cache, size - 100);
+        assertNull(CompiledConfig.load(cache, source));
+        naval(UPPER).save(cache, source);
+        corrupt(cache, 7);
+        assertNull("wrong version", CompiledConfig.load(cache, source));
+        naval(UPPER).save(cache, source);
+        try (RandomAccessFile out = new RandomAccessFile(cache.toFile(),
+                                                         "rw")) {
+            out.setLength(size - 1);
+        }
+        assertNull("truncated", CompiledConfig.load(cache, source));
+    }
+
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A channel of the encoding/decoding of the bytes of another channel
+ *  by a machine on a 256-character alphabet, such as ByteAlphabet, each
+ *  byte being the index of a character (see Machine.convert(byte[],
+ *  int, int)).  Every byte is converted, and the machine's rotors
+ *  advance with each, so that the machine is left as if it had
+ *  converted everything read so far in one call.
+ *
+ *  Bytes are read from the underlying channel into a heap buffer of a
+ *  fixed size, converted there in place, and copied to the buffer read
+ *  into, so that streams of any length are converted in constant
+ *  space.  Like Machine, this class is not safe for use by several
+ *  threads at once.
+ *  @author Ze Martinho
+ */
+class EnigmaChannel implements ReadableByteChannel {
+
+    /** Default size of my buffer, in bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A channel of the conversion by MACHINE of the bytes of IN, with a
+     *  buffer of BUFFER_SIZE bytes. */
+    EnigmaChannel(ReadableByteChannel in, Machine machine) {
+        this(in, machine, BUFFER_SIZE);
+    }
+
+    /** A channel of the conversion by MACHINE of the bytes of IN, with a
+     *  buffer of 0 < BUFFERSIZE bytes. */
+    EnigmaChannel(ReadableByteChannel in, Machine machine, int bufferSize) {
+        if (machine.alphabet().size() != ByteAlphabet.SIZE) {
+            throw error("alphabet does not have %d characters",
+                        ByteAlphabet.SIZE);
+        }
+        if (bufferSize <= 0) {
+            throw error("buffer size must be positive");
+        }
+        _in = in;
+        _machine = machine;
+        _buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        _buffer.clear().limit(Math.min(dst.remaining(), _buffer.capacity()));
+        int n = _in.read(_buffer);
+        if (n > 0) {
+            _machine.convert(_buffer.array(), 0, n);
+            dst.put(_buffer.flip());
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return _in.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** The channel whose bytes I convert. */
+    private final ReadableByteChannel _in;
+    /** The machine converting them. */
+    private final Machine _machine;
+    /** Holds the bytes of each read while they are converted. */
+    private final ByteBuffer _buffer;
+}
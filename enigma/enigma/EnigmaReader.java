@@ -0,0 +1,132 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A Reader of the encoding/decoding by a machine of the characters of
+ *  another Reader.  As with Machine.convert, characters not in the
+ *  machine's alphabet are dropped, and the machine's rotors advance
+ *  with each character converted, so that the machine is left as if it
+ *  had converted everything read so far in one call.  The machine may
+ *  be set up anew between reads.
+ *
+ *  Characters are read from the underlying Reader into a buffer of a
+ *  fixed size, so that streams of any length are converted in constant
+ *  space, but each is converted only when a read returns it.  Setting
+ *  the machine up anew thus takes effect for all characters read
+ *  afterwards.  Like Machine, this class is not safe for use by several
+ *  threads at once.
+ *  @author Ze Martinho
+ */
+class EnigmaReader extends Reader {
+
+    /** Default size of my buffer, in characters. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** A Reader of the conversion by MACHINE of the characters of IN,
+     *  with a buffer of BUFFER_SIZE characters. */
+    EnigmaReader(Reader in, Machine machine) {
+        this(in, machine, BUFFER_SIZE);
+    }
+
+    /** A Reader of the conversion by MACHINE of the characters of IN,
+     *  with a buffer of 0 < BUFFERSIZE characters. */
+    EnigmaReader(Reader in, Machine machine, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw error("buffer size must be positive");
+        }
+        _in = in;
+        _machine = machine;
+        _buffer = new char[bufferSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        Alphabet alpha = _machine.alphabet();
+        while (fill()) {
+            char c = _buffer[_pos];
+            _pos += 1;
+            if (alpha.contains(c)) {
+                return alpha.toChar(_machine.convert(alpha.toInt(c)));
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        while (fill()) {
+            int n = Math.min(len, _limit - _pos);
+            int converted =
+                _machine.convert(_buffer, _pos, _pos + n, cbuf, off);
+            _pos += n;
+            if (converted > 0) {
+                return converted;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true iff a read can return a character without reading
+     *  from the underlying Reader (which may hold only characters that
+     *  would be dropped). */
+    @Override
+    public boolean ready() throws IOException {
+        ensureOpen();
+        Alphabet alpha = _machine.alphabet();
+        for (int i = _pos; i < _limit; i += 1) {
+            if (alpha.contains(_buffer[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_in != null) {
+            _in.close();
+            _in = null;
+        }
+    }
+
+    /** Unless unread characters remain in my buffer, read more, until
+     *  some are left.  Returns false iff the underlying Reader ends
+     *  first. */
+    private boolean fill() throws IOException {
+        ensureOpen();
+        while (_pos == _limit) {
+            int n = _in.read(_buffer, 0, _buffer.length);
+            if (n < 0) {
+                return false;
+            }
+            _pos = 0;
+            _limit = n;
+        }
+        return true;
+    }
+
+    /** Throw an IOException if I have been closed. */
+    private void ensureOpen() throws IOException {
+        if (_in == null) {
+            throw new IOException("stream closed");
+        }
+    }
+
+    /** The Reader whose characters I convert, or null once closed. */
+    private Reader _in;
+    /** The machine converting them. */
+    private final Machine _machine;
+    /** Holds characters read from _in, not yet converted or dropped, in
+     *  _buffer[_pos .. _limit - 1]. */
+    private final char[] _buffer;
+    /** The bounds of the unread characters in _buffer. */
+    private int _pos, _limit;
+}
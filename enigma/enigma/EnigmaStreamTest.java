@@ -0,0 +1,217 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+/** Tests of EnigmaReader, EnigmaWriter, EnigmaChannel, and
+ *  Machine.convert(CharSequence, Appendable), against Machine.convert.
+ *  @author Ze Martinho
+ */
+public class EnigmaStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** The settings line of the machines used. */
+    private static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a machine set up with SETTINGS. */
+    private static Machine machine() {
+        Machine result = MessagePipelineTest.newMachine();
+        MessagePipelineTest.setUp(result, SETTINGS);
+        return result;
+    }
+
+    /** Return a machine on ByteAlphabet, always the same. */
+    private static Machine byteMachine() {
+        return MachineTest.byteMachine(new Random(5), "\u0001B\u00FE");
+    }
+
+    /** Return a random text of LENGTH characters chosen with RANDOM,
+     *  mostly letters, with some that are not in the alphabet. */
+    private static String text(Random random, int length) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            int k = random.nextInt(30);
+            result[i] = k < 26 ? (char) ('A' + k) : " a.\n".charAt(k - 26);
+        }
+        return new String(result);
+    }
+
+    @Test
+    public void testConvertAppendable() throws IOException {
+        String msg = text(new Random(1), 3 * Machine.STREAM_BUFFER + 17);
+        String expected = machine().convert(msg);
+        StringBuilder builder = new StringBuilder();
+        machine().convert(msg, builder);
+        assertEquals(expected, builder.toString());
+        StringWriter writer = new StringWriter();
+        machine().convert(new StringBuilder(msg), writer);
+        assertEquals(expected, writer.toString());
+        CharBuffer buffer = CharBuffer.allocate(msg.length());
+        machine().convert(CharBuffer.wrap(msg), buffer);
+        assertEquals(expected, buffer.flip().toString());
+        Machine m = machine();
+        StringBuilder pieces = new StringBuilder();
+        m.convert(msg.substring(0, 1000), pieces);
+        m.convert(msg.substring(1000), pieces);
+        assertEquals(expected, pieces.toString());
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        String msg = text(new Random(2), 5000);
+        String expected = machine().convert(msg);
+        for (int size : new int[] { 1, 7, 4096, EnigmaReader.BUFFER_SIZE }) {
+            Random random = new Random(size);
+            EnigmaReader reader =
+                new EnigmaReader(new StringReader(msg), machine(), size);
+            StringBuilder result = new StringBuilder();
+            char[] cbuf = new char[100];
+            while (true) {
+                if (random.nextBoolean()) {
+                    int c = reader.read();
+                    if (c < 0) {
+                        break;
+                    }
+                    result.append((char) c);
+                } else {
+                    int n = reader.read(cbuf, 3, 1 + random.nextInt(97));
+                    if (n < 0) {
+                        break;
+                    }
+                    assertTrue(n > 0);
+                    result.append(cbuf, 3, n);
+                }
+            }
+            assertEquals(expected, result.toString());
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReaderClosed() throws IOException {
+        EnigmaReader reader =
+            new EnigmaReader(new StringReader("ABC"), machine());
+        reader.close();
+        reader.read();
+    }
+
+    @Test
+    public void testWriter() throws IOException {
+        String msg = text(new Random(3), 5000);
+        String expected = machine().convert(msg);
+        for (int size : new int[] { 1, 7, 4096, EnigmaWriter.BUFFER_SIZE }) {
+            Random random = new Random(size);
+            StringWriter out = new StringWriter();
+            EnigmaWriter writer = new EnigmaWriter(out, machine(), size);
+            int i = 0;
+            while (i < msg.length()) {
+                int n = Math.min(msg.length() - i, random.nextInt(50));
+                switch (random.nextInt(4)) {
+                case 0:
+                    writer.write(msg.charAt(i));
+                    n = 1;
+                    break;
+                case 1:
+                    writer.write(msg.toCharArray(), i, n);
+                    break;
+                case 2:
+                    writer.write(msg, i, n);
+                    break;
+                default:
+                    writer.append(new StringBuilder(msg), i, i + n);
+                    break;
+                }
+                i += n;
+            }
+            writer.flush();
+            assertEquals(expected, out.toString());
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testWriterSetUpAgain() throws IOException {
+        Machine m = machine();
+        StringWriter out = new StringWriter();
+        EnigmaWriter writer = new EnigmaWriter(out, m);
+        writer.write("HELLO WORLD");
+        MessagePipelineTest.setUp(m, SETTINGS);
+        writer.write("HELLO WORLD");
+        writer.close();
+        String once = machine().convert("HELLOWORLD");
+        assertEquals(once + once, out.toString());
+    }
+
+    @Test
+    public void testReaderSetUpAgain() throws IOException {
+        Machine m = machine();
+        EnigmaReader reader =
+            new EnigmaReader(new StringReader("HELLO WORLD HELLO WORLD"), m);
+        char[] cbuf = new char[10];
+        assertEquals(5, reader.read(cbuf, 0, 5));
+        assertEquals(5, m.position());
+        for (int i = 5; i < 10; i += 1) {
+            cbuf[i] = (char) reader.read();
+        }
+        assertEquals(10, m.position());
+        String first = new String(cbuf);
+        MessagePipelineTest.setUp(m, SETTINGS);
+        StringBuilder second = new StringBuilder();
+        for (int c = reader.read(); c >= 0; c = reader.read()) {
+            second.append((char) c);
+        }
+        reader.close();
+        String once = machine().convert("HELLOWORLD");
+        assertEquals(once, first);
+        assertEquals(once, second.toString());
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        byte[] data = new byte[5000];
+        new Random(4).nextBytes(data);
+        byte[] expected = data.clone();
+        byteMachine().convert(expected, 0, expected.length);
+        for (int size : new int[] { 1, 7, 4096, EnigmaChannel.BUFFER_SIZE }) {
+            Random random = new Random(size);
+            EnigmaChannel channel = new EnigmaChannel(
+                Channels.newChannel(new ByteArrayInputStream(data)),
+                byteMachine(), size);
+            ByteBuffer result = ByteBuffer.allocate(data.length);
+            while (true) {
+                ByteBuffer dst = ByteBuffer.allocateDirect(
+                    1 + random.nextInt(300));
+                if (channel.read(dst) < 0) {
+                    break;
+                }
+                result.put(dst.flip());
+            }
+            assertArrayEquals(expected, result.array());
+            channel.close();
+            assertFalse(channel.isOpen());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testChannelNeedsByteAlphabet() {
+        new EnigmaChannel(
+            Channels.newChannel(new ByteArrayInputStream(new byte[1])),
+            machine());
+    }
+
+}
@@ -0,0 +1,157 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** A Writer that writes the encoding/decoding by a machine of the
+ *  characters written to it to another Writer.  As with
+ *  Machine.convert, characters not in the machine's alphabet are
+ *  dropped, and the machine's rotors advance with each character
+ *  converted, so that the machine is left as if it had converted
+ *  everything written so far in one call.
+ *
+ *  Characters are converted as they are written into a buffer of a
+ *  fixed size, which is written to the underlying Writer when full and
+ *  on flush or close; streams of any length are thus converted in
+ *  constant space.  Since the machine converts as characters are
+ *  written, setting it up anew takes effect only for those written
+ *  afterwards.  Like Machine, this class is not safe for use by several
+ *  threads at once.
+ *  @author Ze Martinho
+ */
+class EnigmaWriter extends Writer {
+
+    /** Default size of my buffer, in characters. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** A Writer of the conversion by MACHINE of the characters written to
+     *  it to OUT, with a buffer of BUFFER_SIZE characters. */
+    EnigmaWriter(Writer out, Machine machine) {
+        this(out, machine, BUFFER_SIZE);
+    }
+
+    /** A Writer of the conversion by MACHINE of the characters written to
+     *  it to OUT, with a buffer of 0 < BUFFERSIZE characters. */
+    EnigmaWriter(Writer out, Machine machine, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw error("buffer size must be positive");
+        }
+        _out = out;
+        _machine = machine;
+        _buffer = new char[bufferSize];
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _one[0] = (char) c;
+        write(_one, 0, 1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureOpen();
+        int end = off + len;
+        while (off < end) {
+            int n = room(end - off);
+            _count += _machine.convert(cbuf, off, off + n, _buffer, _count);
+            off += n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > str.length() - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        write((CharSequence) str, off, off + len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        CharSequence s = csq == null ? "null" : csq;
+        write(s, 0, s.length());
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end)
+        throws IOException {
+        CharSequence s = csq == null ? "null" : csq;
+        if (start < 0 || start > end || end > s.length()) {
+            throw new IndexOutOfBoundsException();
+        }
+        write(s, start, end);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_out != null) {
+            try {
+                flush();
+            } finally {
+                _out.close();
+                _out = null;
+            }
+        }
+    }
+
+    /** Convert CSQ[START .. END - 1] into my buffer, draining it as
+     *  needed. */
+    private void write(CharSequence csq, int start, int end)
+        throws IOException {
+        ensureOpen();
+        while (start < end) {
+            int n = room(end - start);
+            _count += _machine.convert(csq, start, start + n, _buffer,
+                                       _count);
+            start += n;
+        }
+    }
+
+    /** Return the number of characters, at most LEN, that may be
+     *  converted into my buffer next, draining it first if it is full. */
+    private int room(int len) throws IOException {
+        if (_count == _buffer.length) {
+            drain();
+        }
+        return Math.min(len, _buffer.length - _count);
+    }
+
+    /** Write the contents of my buffer to the underlying Writer. */
+    private void drain() throws IOException {
+        _out.write(_buffer, 0, _count);
+        _count = 0;
+    }
+
+    /** Throw an IOException if I have been closed. */
+    private void ensureOpen() throws IOException {
+        if (_out == null) {
+            throw new IOException("stream closed");
+        }
+    }
+
+    /** The Writer to which I write, or null once closed. */
+    private Writer _out;
+    /** The machine converting what is written to me. */
+    private final Machine _machine;
+    /** Holds converted characters not yet written, in
+     *  _buffer[0 .. _count - 1]. */
+    private final char[] _buffer;
+    /** The number of characters in _buffer. */
+    private int _count;
+    /** Holds the character written by write(int). */
+    private final char[] _one = new char[1];
+}
@@ -0,0 +1,618 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/** A ciphertext-only search for keys, by hill climbing.
+ *
+ *  The search has two phases.  First, every rotor key (see KeySpace)
+ *  is tried with no plugboard pairs, and the candidates number of keys
+ *  whose trial decryptions have the highest index of coincidence are
+ *  kept: with the right rotors, the plugboard leaves enough of the
+ *  plaintext's uneven letter frequencies to stand out.  Second, from
+ *  each candidate, a number of climbs (restarts) each start from a
+ *  different plugboard (none for the first, random pairs for the
+ *  others) and repeatedly try connecting or disconnecting each pair of
+ *  letters, keeping any change that improves the score of the trial
+ *  decryption: first the index of coincidence, then the n-gram score
+ *  of a LanguageModel.  Both phases divide their work among the threads
+ *  of a ForkJoinPool.
+ *
+ *  Each worker converts through a Scrambler for its rotor key, which
+ *  computes the rotors' part of the conversion at each position of the
+ *  message once, and keeps the plugboard as an array that is changed
+ *  in place.  A trial decryption is then two plugboard lookups and one
+ *  scrambler lookup per letter into a buffer that is reused, and
+ *  allocates nothing.
+ *  @author Ze Martinho
+ */
+class HillClimb {
+
+    /** Largest number of rotor keys tried by one task of the first
+     *  phase. */
+    static final int LEAF = 1 << 10;
+
+    /** Default number of rotor keys climbed from. */
+    static final int DEFAULT_CANDIDATES = 256;
+
+    /** Default number of climbs from each rotor key. */
+    static final int DEFAULT_RESTARTS = 4;
+
+    /** Default largest number of plugboard pairs. */
+    static final int DEFAULT_MAX_PAIRS = 10;
+
+    /** Number of results kept by run. */
+    static final int KEEP = 10;
+
+    /** A search for the key of the ciphertext CIPHER for machines with
+     *  configuration CONFIG, scoring trial decryptions with MODEL.
+     *  Characters of CIPHER that are not in the alphabet are ignored. */
+    HillClimb(CompiledConfig config, String cipher, LanguageModel model) {
+        _config = config;
+        _alphabet = config.alphabet();
+        _model = model;
+        if (model.alphabet().size() != _alphabet.size()) {
+            throw error("language model is for another alphabet");
+        }
+        int[] text = new int[cipher.length()];
+        int len = 0;
+        for (int i = 0; i < cipher.length(); i += 1) {
+            if (_alphabet.contains(cipher.charAt(i))) {
+                text[len] = _alphabet.toInt(cipher.charAt(i));
+                len += 1;
+            }
+        }
+        if (len < model.n()) {
+            throw error("ciphertext too short");
+        }
+        _cipher = Arrays.copyOf(text, len);
+        _keys = new KeySpace(config);
+        _maxPairs = Math.min(DEFAULT_MAX_PAIRS, _alphabet.size() / 2);
+    }
+
+    /** Return the orders of rotors I search (see KeySpace.orders). */
+    List<String[]> orders() {
+        return _keys.orders();
+    }
+
+    /** Search only the orders of rotors ORDERS. */
+    void setOrders(List<String[]> orders) {
+        _keys.setOrders(orders);
+    }
+
+    /** Climb from the best N rotor keys of the first phase. */
+    void setCandidates(int n) {
+        _candidates = n;
+    }
+
+    /** Make N climbs from each rotor key. */
+    void setRestarts(int n) {
+        _restarts = n;
+    }
+
+    /** Allow at most N plugboard pairs. */
+    void setMaxPairs(int n) {
+        _maxPairs = Math.min(n, _alphabet.size() / 2);
+    }
+
+    /** Use SEED to choose random plugboards. */
+    void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /** Return the number of rotor keys tried in the first phase. */
+    long size() {
+        return _keys.size();
+    }
+
+    /** Return the number of keys (rotor keys and plugboards) tried so
+     *  far by run. */
+    long keysTried() {
+        return _tried.sum();
+    }
+
+    /** Return the number of climbs finished so far by run. */
+    long climbsDone() {
+        return _climbs.sum();
+    }
+
+    /** Search, dividing the work among the threads of POOL, and return
+     *  the best KEEP keys found, best first.  Each key that is better
+     *  than all found before it is also passed to IMPROVED (if not null)
+     *  as soon as it is found, from whichever thread found it. */
+    List<Result> run(ForkJoinPool pool, Consumer<Result> improved) {
+        _tried.reset();
+        _climbs.reset();
+        _improved = improved;
+        _results = new ArrayList<Result>();
+        Best best = new Best(_candidates);
+        KeySpace.search(pool, 0, _keys.size(), LEAF, () -> {
+            Best local = new Best(_candidates);
+            Climber climber = new Climber();
+            return (lo, hi) -> {
+                for (long key = lo; key < hi; key += 1) {
+                    climber.setKey(key);
+                    local.offer(key, climber.score(false));
+                }
+                _tried.add(hi - lo);
+                best.offer(local);
+            };
+        });
+        long[] candidates = best.keys();
+        KeySpace.search(pool, 0, (long) candidates.length * _restarts, 1,
+                        () -> (lo, hi) -> {
+                Climber climber = new Climber();
+                for (long climb = lo; climb < hi; climb += 1) {
+                    climber.setKey(candidates[(int) (climb / _restarts)]);
+                    offer(climber.climb(climb));
+                    _climbs.increment();
+                }
+            });
+        synchronized (this) {
+            return new ArrayList<Result>(_results);
+        }
+    }
+
+    /** Add RESULT to _results if it is among the best KEEP, and report
+     *  it if it is the best (while holding the lock, so that the best
+     *  are reported in order). */
+    private void offer(Result result) {
+        synchronized (this) {
+            for (Result other : _results) {
+                if (other.toString().equals(result.toString())) {
+                    return;
+                }
+            }
+            int k = 0;
+            while (k < _results.size()
+                   && _results.get(k).score() >= result.score()) {
+                k += 1;
+            }
+            if (k >= KEEP) {
+                return;
+            }
+            _results.add(k, result);
+            if (_results.size() > KEEP) {
+                _results.remove(KEEP);
+            }
+            if (k == 0 && _improved != null) {
+                _improved.accept(result);
+            }
+        }
+    }
+
+    /** The keys with the highest scores offered, up to a fixed
+     *  number. */
+    private static class Best {
+
+        /** A record of the best N keys. */
+        Best(int n) {
+            _keys = new long[n];
+            _scores = new double[n];
+        }
+
+        /** Record KEY with score SCORE if it is among the best. */
+        void offer(long key, double score) {
+            if (_count < _keys.length) {
+                _keys[_count] = key;
+                _scores[_count] = score;
+                _count += 1;
+                return;
+            }
+            int worst = 0;
+            for (int i = 1; i < _count; i += 1) {
+                if (_scores[i] < _scores[worst]) {
+                    worst = i;
+                }
+            }
+            if (score > _scores[worst]) {
+                _keys[worst] = key;
+                _scores[worst] = score;
+            }
+        }
+
+        /** Record the keys of OTHER that are among the best. */
+        synchronized void offer(Best other) {
+            for (int i = 0; i < other._count; i += 1) {
+                offer(other._keys[i], other._scores[i]);
+            }
+        }
+
+        /** Return the keys recorded, best first. */
+        synchronized long[] keys() {
+            Integer[] index = new Integer[_count];
+            for (int i = 0; i < _count; i += 1) {
+                index[i] = i;
+            }
+            Arrays.sort(index,
+                        (a, b) -> Double.compare(_scores[b], _scores[a]));
+            long[] result = new long[_count];
+            for (int i = 0; i < _count; i += 1) {
+                result[i] = _keys[index[i]];
+            }
+            return result;
+        }
+
+        /** The keys recorded. */
+        private final long[] _keys;
+        /** Their scores. */
+        private final double[] _scores;
+        /** The number of keys recorded. */
+        private int _count;
+    }
+
+    /** The state of one thread's trial decryptions, for one rotor key at
+     *  a time.  Nothing is allocated per trial. */
+    private class Climber {
+
+        /** A climber with no key. */
+        Climber() {
+            int size = _alphabet.size();
+            _scrambler = new Scrambler(_config, _cipher.length);
+            _start = new int[_config.numRotors()];
+            _plug = new int[size];
+            _out = new int[_cipher.length];
+            _counts = new int[size];
+        }
+
+        /** Use rotor key KEY, with no plugboard pairs. */
+        void setKey(long key) {
+            if (_keys.orderNumber(key) != _order) {
+                _order = _keys.orderNumber(key);
+                _scrambler.setOrder(_keys.order(key));
+            }
+            if (key != _key) {
+                _key = key;
+                _keys.settings(key, _start);
+                _scrambler.setStart(_start, 0);
+            }
+            for (int c = 0; c < _plug.length; c += 1) {
+                _plug[c] = c;
+            }
+            _pairs = 0;
+        }
+
+        /** Decrypt the ciphertext into _out with my key and plugboard,
+         *  and return the n-gram score of the result if NGRAMS, and
+         *  otherwise its index of coincidence. */
+        double score(boolean ngrams) {
+            int[] cipher = _cipher, out = _out, plug = _plug;
+            Scrambler scrambler = _scrambler;
+            for (int i = 0; i < cipher.length; i += 1) {
+                out[i] = plug[scrambler.convert(i, plug[cipher[i]])];
+            }
+            return ngrams ? _model.score(out, out.length)
+                : LanguageModel.indexOfCoincidence(out, out.length,
+                                                   _counts);
+        }
+
+        /** Perform climb number CLIMB from my rotor key and return the
+         *  result. */
+        Result climb(long climb) {
+            if (climb % _restarts != 0) {
+                SplittableRandom random = new SplittableRandom(_seed + climb);
+                int pairs = random.nextInt(_maxPairs + 1);
+                for (int k = 0; k < pairs; k += 1) {
+                    int a = random.nextInt(_plug.length),
+                        b = random.nextInt(_plug.length);
+                    if (_plug[a] == a && _plug[b] == b && a != b) {
+                        _plug[a] = b;
+                        _plug[b] = a;
+                        _pairs += 1;
+                    }
+                }
+            }
+            climb(false);
+            double score = climb(true);
+            StringBuilder plugboard = new StringBuilder();
+            for (int a = 0; a < _plug.length; a += 1) {
+                if (a < _plug[a]) {
+                    plugboard.append(plugboard.length() == 0 ? "(" : " (")
+                        .append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_plug[a])).append(')');
+                }
+            }
+            return new Result(_keys.order(_key), _keys.setting(_key),
+                              plugboard.toString(),
+                              score / (_cipher.length - _model.n() + 1));
+        }
+
+        /** Change my plugboard one pair at a time while that improves
+         *  the score given by score(NGRAMS), and return the final
+         *  score. */
+        private double climb(boolean ngrams) {
+            int[] plug = _plug;
+            double best = score(ngrams);
+            long tried = 0;
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < plug.length; a += 1) {
+                    for (int b = a + 1; b < plug.length; b += 1) {
+                        int pa = plug[a], pb = plug[b];
+                        int pairs = _pairs;
+                        if (pa == b) {
+                            plug[a] = a;
+                            plug[b] = b;
+                            pairs -= 1;
+                        } else {
+                            pairs += 1 - (pa != a ? 1 : 0)
+                                - (pb != b ? 1 : 0);
+                            if (pairs > _maxPairs) {
+                                continue;
+                            }
+                            plug[pa] = pa;
+                            plug[pb] = pb;
+                            plug[a] = b;
+                            plug[b] = a;
+                        }
+                        tried += 1;
+                        double score = score(ngrams);
+                        if (score > best) {
+                            best = score;
+                            _pairs = pairs;
+                            improved = true;
+                        } else {
+                            plug[a] = pa;
+                            plug[pa] = a;
+                            plug[b] = pb;
+                            plug[pb] = b;
+                        }
+                    }
+                }
+            }
+            _tried.add(tried);
+            return best;
+        }
+
+        /** Computes the rotors' part of each conversion. */
+        private final Scrambler _scrambler;
+        /** The settings of each slot for the current rotor key. */
+        private final int[] _start;
+        /** The number of the current order of rotors, or -1. */
+        private int _order = -1;
+        /** The current rotor key, or -1. */
+        private long _key = -1;
+        /** My plugboard: _plug[C] is the letter C is connected to. */
+        private final int[] _plug;
+        /** The number of pairs in _plug. */
+        private int _pairs;
+        /** The current trial decryption. */
+        private final int[] _out;
+        /** Scratch space for the index of coincidence. */
+        private final int[] _counts;
+    }
+
+    /** A key found by a search. */
+    static final class Result {
+
+        /** A key with rotors ROTORS at settings SETTING and the plugboard
+         *  pairs PLUGBOARD, under which the decryption has the n-gram
+         *  score SCORE per n-gram. */
+        private Result(String[] rotors, String setting, String plugboard,
+                       double score) {
+            _rotors = rotors.clone();
+            _setting = setting;
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return the names of the rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the settings of the rotors in slots 1 and up. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the mean log probability of the n-grams of the
+         *  decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return a settings line for Main with my key. */
+        @Override
+        public String toString() {
+            return String.format("* %s %s%s", String.join(" ", _rotors),
+                                 _setting, _plugboard.isEmpty() ? ""
+                                 : " " + _plugboard);
+        }
+
+        /** See rotors. */
+        private final String[] _rotors;
+        /** See setting. */
+        private final String _setting;
+        /** See plugboard. */
+        private final String _plugboard;
+        /** See score. */
+        private final double _score;
+    }
+
+    /** Search for the key of the ciphertext in a file.  ARGS are
+     *      [ --threads=N ] [ --order=R,S,... ] [ --candidates=N ]
+     *      [ --restarts=N ] [ --pairs=N ] [ --ngrams=N ] CONFIG CIPHER
+     *      SAMPLE
+     *  where CONFIG is a configuration file as for Main, CIPHER is a
+     *  file containing the ciphertext (characters not in the alphabet
+     *  are ignored), and SAMPLE is a file of text in the language of the
+     *  plaintext, from which the n-gram statistics are taken.  --order
+     *  limits the search to one order of rotors (given by name,
+     *  reflector first), --candidates and --restarts give the number of
+     *  rotor keys climbed from and of climbs from each, --pairs the
+     *  largest number of plugboard pairs, --ngrams the length of the
+     *  n-grams (3 by default), and --threads the number of threads (by
+     *  default, one per processor).  The settings line of each key that
+     *  is better than those before it is printed on the standard output
+     *  as it is found.  Progress, keys tried per second, and the best
+     *  keys are printed on the standard error. */
+    public static void main(String... args) {
+        try {
+            search(args);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Perform the search described by ARGS (see main). */
+    private static void search(String[] args) {
+        ArrayList<String> operands = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int candidates = DEFAULT_CANDIDATES, restarts = DEFAULT_RESTARTS,
+            pairs = DEFAULT_MAX_PAIRS, ngrams = 3;
+        String[] order = null;
+        for (String arg : args) {
+            if (arg.startsWith("--order=")) {
+                order = arg.substring(8).toUpperCase().split(",");
+            } else if (arg.startsWith("--threads=")) {
+                threads = count(arg);
+            } else if (arg.startsWith("--candidates=")) {
+                candidates = count(arg);
+            } else if (arg.startsWith("--restarts=")) {
+                restarts = count(arg);
+            } else if (arg.startsWith("--pairs=")) {
+                pairs = count(arg);
+            } else if (arg.startsWith("--ngrams=")) {
+                ngrams = count(arg);
+            } else if (arg.startsWith("--")) {
+                throw error("unknown option: %s", arg);
+            } else {
+                operands.add(arg);
+            }
+        }
+        if (operands.size() != 3) {
+            throw error("usage: java enigma.HillClimb [--threads=N] "
+                        + "[--order=R,S,...] [--candidates=N] "
+                        + "[--restarts=N] [--pairs=N] [--ngrams=N] "
+                        + "CONFIG CIPHER SAMPLE");
+        }
+        CompiledConfig config = Main.loadConfig(operands.get(0), null);
+        HillClimb search =
+            new HillClimb(config, read(operands.get(1)),
+                          new LanguageModel(config.alphabet(), ngrams,
+                                            read(operands.get(2))));
+        if (order != null) {
+            search.setOrders(Collections.singletonList(order));
+        }
+        search.setCandidates(candidates);
+        search.setRestarts(restarts);
+        search.setMaxPairs(pairs);
+        search.setSeed(System.nanoTime());
+        report(search, new ForkJoinPool(threads));
+    }
+
+    /** Return the positive count N given by OPTION, which has the form
+     *  --NAME=N. */
+    private static int count(String option) {
+        try {
+            int n = Integer.parseInt(option.substring(option.indexOf('=')
+                                                      + 1));
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad count: %s", option);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private static String read(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)), "UTF-8");
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Run SEARCH on POOL, printing improved keys as they are found and
+     *  progress about once a second. */
+    private static void report(HillClimb search, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        ForkJoinTask<List<Result>> task = pool.submit(() -> search.run(
+            pool, (result) -> {
+                synchronized (System.out) {
+                    System.out.println(result);
+                    System.out.flush();
+                }
+                System.err.printf("best %.4f: %s%n", result.score(),
+                                  result);
+            }));
+        List<Result> results;
+        while (true) {
+            try {
+                results = task.get(1, TimeUnit.SECONDS);
+                break;
+            } catch (TimeoutException excp) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.err.printf("%d keys (%.0f keys/s), %d of %d"
+                                  + " climbs%n", search.keysTried(),
+                                  search.keysTried() / seconds,
+                                  search.climbsDone(),
+                                  (long) search._candidates
+                                  * search._restarts);
+            } catch (InterruptedException | ExecutionException excp) {
+                throw error("search failed: %s", excp.getMessage());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d keys in %.2f s (%.0f keys/s) on %d"
+                          + " threads; best keys:%n", search.keysTried(),
+                          seconds, search.keysTried() / seconds,
+                          pool.getParallelism());
+        for (Result result : results) {
+            System.err.printf("  %.4f %s%n", result.score(), result);
+        }
+    }
+
+    /** My configuration. */
+    private final CompiledConfig _config;
+    /** The alphabet of my configuration. */
+    private final Alphabet _alphabet;
+    /** Scores trial decryptions. */
+    private final LanguageModel _model;
+    /** The ciphertext, as character indices. */
+    private final int[] _cipher;
+    /** The rotor keys searched. */
+    private final KeySpace _keys;
+    /** See setCandidates. */
+    private int _candidates = DEFAULT_CANDIDATES;
+    /** See setRestarts. */
+    private int _restarts = DEFAULT_RESTARTS;
+    /** See setMaxPairs. */
+    private int _maxPairs;
+    /** See setSeed. */
+    private long _seed;
+    /** The number of keys tried by the current run. */
+    private final LongAdder _tried = new LongAdder();
+    /** The number of climbs finished by the current run. */
+    private final LongAdder _climbs = new LongAdder();
+    /** The best results of the current run, best first. */
+    private ArrayList<Result> _results;
+    /** Receives improved results in the current run, or null. */
+    private Consumer<Result> _improved;
+}
@@ -0,0 +1,142 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the HillClimb and LanguageModel
+ *  classes.
+ *  @author Ze Martinho
+ */
+public class HillClimbTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** A sample of English. */
+    private static final String SAMPLE =
+        "The weather station on the northern coast reported that the wind"
+        + " had turned to the east during the night and that the sea was"
+        + " running high along the whole of the channel. The convoy which"
+        + " had been expected at dawn was delayed until the afternoon, and"
+        + " the harbour master ordered that all of the smaller boats should"
+        + " remain at their moorings until further notice. In the town the"
+        + " people went about their business as usual, although there were"
+        + " fewer of them in the streets than there would have been on an"
+        + " ordinary day, and most of the shops closed early in the evening."
+        + " At the signal office the operators worked through the night,"
+        + " passing messages from the ships at sea to the headquarters in"
+        + " the city and back again, and when the morning came they were"
+        + " relieved by the next watch, who found the room cold and the"
+        + " stove nearly out. The officer in charge had written in the log"
+        + " that nothing of importance had happened, but that the traffic"
+        + " had been heavier than usual and that several of the messages"
+        + " had been repeated because the first copies were not clear."
+        + " There is always more to do than there is time to do it, he said"
+        + " to the young clerk who brought him his tea, and the clerk agreed"
+        + " with him, as he always did, and went back to his own desk by the"
+        + " window where he could watch the ships coming in to the harbour.";
+
+    /** A message. */
+    private static final String PLAIN =
+        "THECONVOYWILLARRIVEATTHEHARBOURTOMORROWMORNINGWITHTHEFIRSTLIGHT"
+        + "ANDALLOFTHESMALLERBOATSSHOULDBEREADYTOMEETITATTHEENTRANCETOTHE"
+        + "CHANNELTHEWEATHERISEXPECTEDTOREMAINCALMUNTILTHEEVENINGWHENTHE"
+        + "WINDWILLTURNTOTHEEASTANDTHESEAWILLRISEALONGTHEWHOLEOFTHECOAST"
+        + "THEOFFICERINCHARGEOFTHESIGNALSTATIONWILLREPORTTOTHEHARBOURMASTER";
+
+    /** Return the indices of the characters of S in UPPER. */
+    private static int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < s.length(); i += 1) {
+            result[i] = UPPER.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void testModel() {
+        LanguageModel model = new LanguageModel(UPPER, 3, SAMPLE);
+        assertEquals(3, model.n());
+        int[] english = indices(PLAIN);
+        int[] shuffled = new int[english.length];
+        for (int i = 0; i < shuffled.length; i += 1) {
+            shuffled[i] = english[(i * 7) % english.length];
+        }
+        assertTrue(model.score(english, english.length)
+                   > model.score(shuffled, shuffled.length) + 100);
+        int letters = SAMPLE.replaceAll("[^A-Za-z]", "").length();
+        double unseen = Math.log(LanguageModel.FLOOR / (letters - 2));
+        assertEquals(2 * unseen, model.score(indices("QQQQ"), 4), 1e-4);
+        assertEquals(0, model.score(english, 2), 0);
+    }
+
+    @Test
+    public void testIndexOfCoincidence() {
+        int[] counts = new int[26];
+        int[] english = indices(PLAIN);
+        double ioc =
+            LanguageModel.indexOfCoincidence(english, english.length,
+                                             counts);
+        assertTrue("English " + ioc, ioc > 0.06);
+        int[] flat = new int[26 * 10];
+        for (int i = 0; i < flat.length; i += 1) {
+            flat[i] = i % 26;
+        }
+        assertEquals(9.0 / 259, LanguageModel.indexOfCoincidence(
+                         flat, flat.length, counts), 1e-9);
+        assertEquals(1.0, LanguageModel.indexOfCoincidence(
+                         new int[] { 3, 3, 3 }, 3, counts), 1e-9);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortSample() {
+        new LanguageModel(UPPER, 3, "ab");
+    }
+
+    @Test
+    public void testRecoversKey() {
+        String[] rotors = { "B", "BETA", "II", "III" };
+        String plugboard = "(AQ) (DX) (HN) (KP) (RV)";
+        Machine machine = BombeTest.config().newMachine();
+        machine.insertRotors(rotors);
+        machine.setRotors("MGT");
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+        String cipher = machine.convert(PLAIN);
+        HillClimb search =
+            new HillClimb(BombeTest.config(), cipher,
+                          new LanguageModel(UPPER, 2, SAMPLE));
+        search.setOrders(Collections.singletonList(rotors));
+        search.setCandidates(8);
+        search.setRestarts(4);
+        search.setMaxPairs(6);
+        List<HillClimb.Result> improved = new ArrayList<HillClimb.Result>();
+        List<HillClimb.Result> results =
+            search.run(new ForkJoinPool(2), (result) -> {
+                    synchronized (improved) {
+                        improved.add(result);
+                    }
+                });
+        assertFalse(improved.isEmpty());
+        HillClimb.Result best = results.get(0);
+        assertEquals(best.toString(),
+                     improved.get(improved.size() - 1).toString());
+        assertEquals("* B BETA II III MGT " + plugboard, best.toString());
+        for (int k = 1; k < results.size(); k += 1) {
+            assertTrue(results.get(k - 1).score()
+                       >= results.get(k).score());
+        }
+        assertTrue(search.keysTried() > search.size());
+        assertEquals(32, search.climbsDone());
+    }
+
+}
@@ -0,0 +1,189 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/** The rotor keys of the machines with a given configuration, for
+ *  searches over them.  A key is an order of rotors (a reflector, then
+ *  rotors that do not rotate in the slots without pawls, then rotors
+ *  that do) together with the settings of the rotors in slots 1 and up
+ *  at the start of a message.  The keys are numbered from 0, by order
+ *  and then by settings, with the setting of the rightmost rotor
+ *  varying fastest, and ranges of key numbers can be searched in
+ *  parallel (see search).
+ *  @author Ze Martinho
+ */
+class KeySpace {
+
+    /** The keys of the machines with configuration CONFIG, using all
+     *  the orders of rotors it allows. */
+    KeySpace(CompiledConfig config) {
+        _config = config;
+        _size = config.alphabet().size();
+        _orders = new ArrayList<String[]>();
+        addOrders(new String[config.numRotors()], 0);
+        long positions = 1;
+        try {
+            for (int k = 1; k < config.numRotors(); k += 1) {
+                positions = Math.multiplyExact(positions, _size);
+            }
+        } catch (ArithmeticException excp) {
+            throw error("too many rotor settings to search");
+        }
+        _positions = positions;
+    }
+
+    /** Add to _orders each order of rotors that starts with the names in
+     *  ORDER[0 .. K - 1], using the remaining slots of ORDER as
+     *  scratch. */
+    private void addOrders(String[] order, int k) {
+        if (k == order.length) {
+            _orders.add(order.clone());
+            return;
+        }
+        int pawled = order.length - _config.numPawls();
+        for (Rotor rotor : _config.rotors()) {
+            String name = rotor.name().toUpperCase();
+            boolean fits =
+                k == 0 ? rotor.reflecting()
+                : k < pawled ? !rotor.reflecting() && !rotor.rotates()
+                : rotor.rotates();
+            if (fits && !Arrays.asList(order).subList(0, k).contains(name)) {
+                order[k] = name;
+                addOrders(order, k + 1);
+            }
+        }
+    }
+
+    /** Return my configuration. */
+    CompiledConfig config() {
+        return _config;
+    }
+
+    /** Return my orders of rotors, each an array of rotor names as given
+     *  to Machine.insertRotors. */
+    List<String[]> orders() {
+        return Collections.unmodifiableList(_orders);
+    }
+
+    /** Use only the orders of rotors ORDERS. */
+    void setOrders(List<String[]> orders) {
+        Machine machine = _config.newMachine();
+        for (String[] order : orders) {
+            if (order.length != _config.numRotors()) {
+                throw error("wrong number of rotors in %s",
+                            String.join(" ", order));
+            }
+            machine.insertRotors(order);
+        }
+        _orders = new ArrayList<String[]>();
+        for (String[] order : orders) {
+            _orders.add(order.clone());
+        }
+    }
+
+    /** Return the number of settings of the rotors in slots 1 and up. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _orders.size() * _positions;
+    }
+
+    /** Return the number of the order of rotors of key KEY. */
+    int orderNumber(long key) {
+        return (int) (key / _positions);
+    }
+
+    /** Return the order of rotors of key KEY. */
+    String[] order(long key) {
+        return _orders.get(orderNumber(key));
+    }
+
+    /** Set SETTINGS[1 ..] to the settings of the rotors in slots 1 and
+     *  up for key KEY, and SETTINGS[0] to 0. */
+    void settings(long key, int[] settings) {
+        long p = key % _positions;
+        for (int k = settings.length - 1; k > 0; k -= 1) {
+            settings[k] = (int) (p % _size);
+            p /= _size;
+        }
+        settings[0] = 0;
+    }
+
+    /** Return the settings of the rotors in slots 1 and up for key KEY,
+     *  as given to Machine.setRotors. */
+    String setting(long key) {
+        int[] settings = new int[_config.numRotors()];
+        settings(key, settings);
+        StringBuilder result = new StringBuilder();
+        for (int k = 1; k < settings.length; k += 1) {
+            result.append(_config.alphabet().toChar(settings[k]));
+        }
+        return result.toString();
+    }
+
+    /** Tests a range of keys. */
+    interface Tester {
+        /** Test keys LO .. HI - 1. */
+        void test(long lo, long hi);
+    }
+
+    /** Test keys LO .. HI - 1 in ranges of at most LEAF keys, each with
+     *  a tester from TESTERS, dividing the ranges among the threads of
+     *  POOL by recursive halving, so that idle threads steal what
+     *  remains of the others' ranges. */
+    static void search(ForkJoinPool pool, long lo, long hi, int leaf,
+                       Supplier<Tester> testers) {
+        pool.invoke(new Split(lo, hi, leaf, testers));
+    }
+
+    /** Divides a range of keys among the threads of a ForkJoinPool. */
+    private static class Split extends RecursiveAction {
+
+        /** Test keys LO .. HI - 1 as for search(POOL, LO, HI, LEAF,
+         *  TESTERS). */
+        Split(long lo, long hi, int leaf, Supplier<Tester> testers) {
+            _lo = lo;
+            _hi = hi;
+            _leaf = leaf;
+            _testers = testers;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= _leaf) {
+                _testers.get().test(_lo, _hi);
+            } else {
+                long mid = (_lo + _hi) >>> 1;
+                invokeAll(new Split(_lo, mid, _leaf, _testers),
+                          new Split(mid, _hi, _leaf, _testers));
+            }
+        }
+
+        /** The range of keys. */
+        private final long _lo, _hi;
+        /** The largest range tested by one tester. */
+        private final int _leaf;
+        /** Supplies the testers. */
+        private final Supplier<Tester> _testers;
+    }
+
+    /** My configuration. */
+    private final CompiledConfig _config;
+    /** The size of my configuration's alphabet. */
+    private final int _size;
+    /** My orders of rotors. */
+    private ArrayList<String[]> _orders;
+    /** The number of settings of the rotors in slots 1 and up. */
+    private final long _positions;
+}
@@ -0,0 +1,426 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A batch of machines with one configuration that convert independent
+ *  messages in lockstep, one "lane" per machine.  Each lane has its own
+ *  rotors, settings, and plugboard, set as for a Machine, and converts
+ *  exactly as a Machine set up the same way would.
+ *
+ *  The state of the lanes is kept structure-of-arrays style: for each
+ *  rotor slot, an array of the settings of that slot in every lane, and
+ *  one of the offsets of the rotor's table for that setting.  The
+ *  tables of every rotor of the configuration, forward and backward,
+ *  are concatenated into two arrays, so that converting a letter
+ *  through a rotor is one lookup at the lane's offset for its slot plus
+ *  the letter, whatever the rotor.  Much as in Machine, each lane
+ *  converts through its plugboard and last two rotors, its core (the
+ *  reflector and the other rotors, which rarely move, kept as a table
+ *  per lane), and back.  At most steps, only the last two rotors can
+ *  move, and they are advanced after looking up just their own
+ *  notches.  The other steps, at which a rotor of the core may move,
+ *  are done as Machine does them, rebuilding the lane's core.
+ *
+ *  Messages are held transposed, with the Ith characters of all the
+ *  lanes adjacent.  Apart from the rare steps that may move a rotor of
+ *  the core, each step does the same operations on every lane, which
+ *  VectorLanes (in ../simd, which needs the jdk.incubator.vector
+ *  module) does for several lanes at a time with vector gathers.  Use
+ *  create to get that engine when it is available, and this scalar one
+ *  otherwise.
+ *  @author Ze Martinho
+ */
+class Lanes {
+
+    /** Return lanes for LANES machines with configuration CONFIG, using
+     *  VectorLanes if it and the vector module are present. */
+    static Lanes create(CompiledConfig config, int lanes) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector")
+            .isPresent()) {
+            try {
+                return (Lanes) Class.forName("enigma.VectorLanes")
+                    .getDeclaredConstructor(CompiledConfig.class, int.class)
+                    .newInstance(config, lanes);
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                /* Use the scalar engine. */
+            }
+        }
+        return new Lanes(config, lanes);
+    }
+
+    /** Scalar lanes for LANES machines with configuration CONFIG.  No
+     *  lane has rotors until they are inserted. */
+    Lanes(CompiledConfig config, int lanes) {
+        if (lanes <= 0) {
+            throw error("bad number of lanes: %d", lanes);
+        }
+        _config = config;
+        _machine = config.newMachine();
+        _lanes = lanes;
+        _size = config.alphabet().size();
+        _slots = config.numRotors();
+        _coreSlots = Math.max(1, _slots - 2);
+        ArrayList<Rotor> rotors = config.rotors();
+        int n = _size;
+        _forward = new int[rotors.size() * n * n];
+        _backward = new int[rotors.size() * n * n];
+        _notch = new int[rotors.size() * n];
+        _pairs = new boolean[rotors.size()];
+        for (int r = 0; r < rotors.size(); r += 1) {
+            Rotor rotor = rotors.get(r);
+            _pairs[r] = rotor.permutation().involution();
+            for (int s = 0; s < n; s += 1) {
+                for (int x = 0; x < n; x += 1) {
+                    _forward[(r * n + s) * n + x] =
+                        rotor.convertForward(x, s);
+                    _backward[(r * n + s) * n + x] =
+                        rotor.convertBackward(x, s);
+                }
+                _notch[r * n + s] = rotor.atNotch(s) ? 1 : 0;
+            }
+        }
+        _setting = new int[_slots][lanes];
+        _offset = new int[_slots][lanes];
+        _notchBase = new int[_slots][lanes];
+        _rotates = new boolean[_slots][lanes];
+        _plug = new int[lanes * n];
+        _core = new int[lanes * n];
+        _laneBase = new int[lanes];
+        _coreNotched = new boolean[lanes];
+        _lanePairs = new boolean[lanes];
+        _folding = new int[_slots];
+        _ready = new boolean[lanes];
+        for (int lane = 0; lane < lanes; lane += 1) {
+            _laneBase[lane] = lane * n;
+            for (int x = 0; x < n; x += 1) {
+                _plug[lane * n + x] = x;
+            }
+        }
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return a description of how I convert. */
+    String engine() {
+        return "scalar";
+    }
+
+    /** Set the rotor slots of lane LANE to the rotors named ROTORS, as
+     *  Machine.insertRotors does, with all rotors at their 0
+     *  setting. */
+    void insertRotors(int lane, String[] rotors) {
+        checkLane(lane);
+        _machine.insertRotors(rotors);
+        ArrayList<Rotor> all = _config.rotors();
+        for (int k = 0; k < _slots; k += 1) {
+            int r = all.indexOf(_config.rotor(rotors[k]));
+            _setting[k][lane] = 0;
+            _offset[k][lane] = r * _size * _size;
+            _notchBase[k][lane] = r * _size;
+            _rotates[k][lane] = all.get(r).rotates();
+        }
+        _lanePairs[lane] = _pairs[_notchBase[0][lane] / _size];
+        _ready[lane] = true;
+        refold(lane);
+    }
+
+    /** Set the rotors of lane LANE according to SETTING, as
+     *  Machine.setRotors does. */
+    void setRotors(int lane, String setting) {
+        checkLane(lane);
+        if (!_ready[lane]) {
+            throw error("no rotors inserted in lane %d", lane);
+        } else if (setting.length() != _slots - 1) {
+            throw error("Wrong number of rotor settings");
+        }
+        Alphabet alpha = _config.alphabet();
+        for (int k = 1; k < _slots; k += 1) {
+            if (!alpha.contains(setting.charAt(k - 1))) {
+                throw error("Wrong number of rotor settings");
+            }
+        }
+        for (int k = 1; k < _slots; k += 1) {
+            int s = alpha.toInt(setting.charAt(k - 1));
+            _offset[k][lane] += (s - _setting[k][lane]) * _size;
+            _setting[k][lane] = s;
+        }
+        refold(lane);
+    }
+
+    /** Set the plugboard of lane LANE to PLUGBOARD. */
+    void setPlugboard(int lane, Permutation plugboard) {
+        checkLane(lane);
+        for (int x = 0; x < _size; x += 1) {
+            _plug[lane * _size + x] = plugboard.permute(x);
+        }
+    }
+
+    /** Check that LANE is the number of one of my lanes. */
+    private void checkLane(int lane) {
+        if (lane < 0 || lane >= _lanes) {
+            throw error("no lane %d", lane);
+        }
+    }
+
+    /** Convert the first LENGTHS[L] characters of the message of each
+     *  lane L, for all L, in place, advancing each lane's rotors by its
+     *  number of characters.  The messages are held transposed in TEXT,
+     *  as character indices: character I of the message of lane L is
+     *  TEXT[I * lanes() + L].  No message has more than LENGTH
+     *  characters. */
+    void convert(int[] text, int length, int[] lengths) {
+        check(text, length, lengths);
+        convert(text, lengths, 0, _lanes);
+    }
+
+    /** Check the arguments of convert(TEXT, LENGTH, LENGTHS). */
+    final void check(int[] text, int length, int[] lengths) {
+        if (lengths.length != _lanes || text.length < length * _lanes) {
+            throw error("text and lengths do not fit my lanes");
+        }
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            if (lengths[lane] > length) {
+                throw error("message in lane %d is too long", lane);
+            } else if (lengths[lane] > 0 && !_ready[lane]) {
+                throw error("no rotors inserted in lane %d", lane);
+            }
+        }
+    }
+
+    /** Convert the messages of lanes FROM .. TO - 1 in TEXT (held as for
+     *  convert(TEXT, LENGTH, LENGTHS)), one lane at a time. */
+    final void convert(int[] text, int[] lengths, int from, int to) {
+        int n = _size, last = _slots - 1, mid = last - 1;
+        int[] forward = _forward, backward = _backward, core = _core;
+        int[] plug = _plug, notch = _notch;
+        boolean middle = _coreSlots < last;
+        for (int lane = from; lane < to; lane += 1) {
+            int base = _laneBase[lane];
+            int lastNotches = _notchBase[last][lane];
+            int midNotches = _notchBase[mid][lane];
+            boolean rotLast = _rotates[last][lane];
+            boolean rotMid = _rotates[mid][lane];
+            boolean rotLeft = _rotates[_coreSlots - 1][lane];
+            boolean coreNotched = _coreNotched[lane];
+            int s = _setting[last][lane], o = _offset[last][lane];
+            int sm = _setting[mid][lane], m = _offset[mid][lane];
+            for (int k = lane; k < lengths[lane] * _lanes; k += _lanes) {
+                if (coreNotched || rotLeft && notch[midNotches + sm] != 0) {
+                    _setting[last][lane] = s;
+                    _offset[last][lane] = o;
+                    _setting[mid][lane] = sm;
+                    _offset[mid][lane] = m;
+                    advance(lane);
+                    coreNotched = _coreNotched[lane];
+                    s = _setting[last][lane];
+                    o = _offset[last][lane];
+                    sm = _setting[mid][lane];
+                    m = _offset[mid][lane];
+                } else {
+                    if (rotMid && notch[lastNotches + s] != 0) {
+                        if (sm == n - 1) {
+                            sm = 0;
+                            m -= (n - 1) * n;
+                        } else {
+                            sm += 1;
+                            m += n;
+                        }
+                    }
+                    if (rotLast) {
+                        if (s == n - 1) {
+                            s = 0;
+                            o -= (n - 1) * n;
+                        } else {
+                            s += 1;
+                            o += n;
+                        }
+                    }
+                }
+                int x = forward[o + plug[base + text[k]]];
+                if (middle) {
+                    x = backward[m + core[base + forward[m + x]]];
+                } else {
+                    x = core[base + x];
+                }
+                text[k] = plug[base + backward[o + x]];
+            }
+            _setting[last][lane] = s;
+            _offset[last][lane] = o;
+            _setting[mid][lane] = sm;
+            _offset[mid][lane] = m;
+        }
+    }
+
+    /** Advance the rotors of lane LANE as Machine.advance does, and
+     *  update its core. */
+    final void advance(int lane) {
+        int n = _size, last = _slots - 1;
+        boolean notched = atNotch(1, lane), moved = false;
+        for (int j = 1; j <= last; j += 1) {
+            boolean nextNotched = j < last && atNotch(j + 1, lane);
+            if (_rotates[j][lane]
+                && (j == last || nextNotched
+                    || (notched && _rotates[j - 1][lane]))) {
+                if (_setting[j][lane] == n - 1) {
+                    _setting[j][lane] = 0;
+                    _offset[j][lane] -= (n - 1) * n;
+                } else {
+                    _setting[j][lane] += 1;
+                    _offset[j][lane] += n;
+                }
+                moved |= j < _coreSlots;
+            }
+            notched = nextNotched;
+        }
+        if (moved) {
+            refold(lane);
+        }
+    }
+
+    /** Return true iff the rotor in slot K of lane LANE is at a
+     *  notch. */
+    private boolean atNotch(int k, int lane) {
+        return _notch[_notchBase[k][lane] + _setting[k][lane]] != 0;
+    }
+
+    /** Set the core of lane LANE, and _coreNotched[LANE], for the
+     *  current settings of its rotors. */
+    private void refold(int lane) {
+        int base = _laneBase[lane];
+        int[] offset = _folding, forward = _forward, backward = _backward;
+        int[] core = _core;
+        for (int j = 0; j < _coreSlots; j += 1) {
+            offset[j] = _offset[j][lane];
+        }
+        boolean pairs = _lanePairs[lane];
+        if (pairs) {
+            Arrays.fill(core, base, base + _size, -1);
+        }
+        for (int p = 0; p < _size; p += 1) {
+            if (pairs && core[base + p] >= 0) {
+                continue;
+            }
+            int x = p;
+            for (int j = _coreSlots - 1; j >= 0; j -= 1) {
+                x = forward[offset[j] + x];
+            }
+            for (int j = 1; j < _coreSlots; j += 1) {
+                x = backward[offset[j] + x];
+            }
+            core[base + p] = x;
+            if (pairs) {
+                core[base + x] = p;
+            }
+        }
+        _coreNotched[lane] = false;
+        for (int j = 1; j < _coreSlots; j += 1) {
+            _coreNotched[lane] |=
+                atNotch(j, lane) && _rotates[j - 1][lane];
+        }
+    }
+
+    /** Return the conversions of MSGS, the message of lane L being
+     *  MSGS[L], as Machine.convert(String) would give them (dropping
+     *  characters not in my alphabet), updating the state of the lanes
+     *  accordingly.  Lanes beyond the last message are left alone. */
+    String[] convert(String... msgs) {
+        if (msgs.length > _lanes) {
+            throw error("more messages than lanes");
+        }
+        Alphabet alpha = _config.alphabet();
+        int[] lengths = new int[_lanes];
+        int length = 0;
+        for (int lane = 0; lane < msgs.length; lane += 1) {
+            for (int i = 0; i < msgs[lane].length(); i += 1) {
+                if (alpha.contains(msgs[lane].charAt(i))) {
+                    lengths[lane] += 1;
+                }
+            }
+            length = Math.max(length, lengths[lane]);
+        }
+        int[] text = new int[length * _lanes];
+        for (int lane = 0; lane < msgs.length; lane += 1) {
+            int k = lane;
+            for (int i = 0; i < msgs[lane].length(); i += 1) {
+                char c = msgs[lane].charAt(i);
+                if (alpha.contains(c)) {
+                    text[k] = alpha.toInt(c);
+                    k += _lanes;
+                }
+            }
+        }
+        convert(text, length, lengths);
+        String[] result = new String[msgs.length];
+        char[] buf = new char[length];
+        for (int lane = 0; lane < msgs.length; lane += 1) {
+            for (int i = 0; i < lengths[lane]; i += 1) {
+                buf[i] = alpha.toChar(text[i * _lanes + lane]);
+            }
+            result[lane] = new String(buf, 0, lengths[lane]);
+        }
+        return result;
+    }
+
+    /** My configuration. */
+    private final CompiledConfig _config;
+    /** A machine used to check orders of rotors. */
+    private final Machine _machine;
+    /** The number of lanes. */
+    final int _lanes;
+    /** The size of my configuration's alphabet. */
+    final int _size;
+    /** The number of rotor slots. */
+    final int _slots;
+    /** The number of slots in the core: all but the last two, or just
+     *  the reflector's if there are only two. */
+    final int _coreSlots;
+    /** The conversions by each rotor R of my configuration (numbered as
+     *  in its list of rotors) at each setting S, forward and backward,
+     *  starting at (R * _size + S) * _size. */
+    final int[] _forward, _backward;
+    /** _notch[R * _size + S] is 1 iff rotor R is at a notch at setting
+     *  S, and otherwise 0. */
+    final int[] _notch;
+    /** _pairs[R] is true iff rotor R's permutation swaps pairs of
+     *  letters, so that the core does too when R is the reflector. */
+    private final boolean[] _pairs;
+    /** _setting[K][L] is the setting of slot K in lane L. */
+    final int[][] _setting;
+    /** _offset[K][L] is the start of the tables (in _forward and
+     *  _backward) of the rotor in slot K of lane L at its setting. */
+    final int[][] _offset;
+    /** _notchBase[K][L] is the start of the entries in _notch of the
+     *  rotor in slot K of lane L. */
+    final int[][] _notchBase;
+    /** _rotates[K][L] is true iff the rotor in slot K of lane L
+     *  rotates. */
+    final boolean[][] _rotates;
+    /** _plug[L * _size + X] is the conversion of X by the plugboard of
+     *  lane L. */
+    final int[] _plug;
+    /** _core[L * _size + P] is the conversion of P by the core of lane
+     *  L: its rotors in the core's slots, from right to left and back, at
+     *  their current settings. */
+    final int[] _core;
+    /** _laneBase[L] is L * _size, the start of lane L's entries in _plug
+     *  and _core. */
+    final int[] _laneBase;
+    /** _coreNotched[L] is true iff, in lane L, a rotor of the core
+     *  (other than the reflector) whose left neighbour rotates is at a
+     *  notch, so that a rotor of the core may move at the next step
+     *  whatever the last two rotors do. */
+    final boolean[] _coreNotched;
+    /** _lanePairs[L] is true iff the reflector of lane L swaps pairs of
+     *  letters. */
+    private final boolean[] _lanePairs;
+    /** The offsets of the rotors of the lane being refolded. */
+    private final int[] _folding;
+    /** _ready[L] is true iff lane L has rotors. */
+    private final boolean[] _ready;
+}
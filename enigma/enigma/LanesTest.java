@@ -0,0 +1,191 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Lanes class.  The tests are
+ *  run on both the scalar lanes and those returned by Lanes.create,
+ *  which are VectorLanes when that class and the vector module are
+ *  available.
+ *  @author Ze Martinho
+ */
+public class LanesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** The names of the moving rotors of config(). */
+    private static final String[] MOVING = { "I", "II", "III", "IV", "V",
+                                             "VI", "VII", "VIII" };
+
+    /** A configuration of the naval rotors with five slots and three
+     *  pawls. */
+    static CompiledConfig config() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        rotors.add(new FixedRotor("Gamma",
+                                  new Permutation(NAVALA.get("Gamma"),
+                                                  UPPER)));
+        String[] notches = { "Q", "E", "V", "J", "Z", "ZM", "ZM", "ZM" };
+        for (int i = 0; i < MOVING.length; i += 1) {
+            rotors.add(new MovingRotor(MOVING[i],
+                                       new Permutation(NAVALA.get(MOVING[i]),
+                                                       UPPER),
+                                       notches[i]));
+        }
+        return new CompiledConfig(UPPER, 5, 3, rotors);
+    }
+
+    /** A random key: an order of rotors, a setting, and a plugboard. */
+    private static class Key {
+        /** A random key chosen with RANDOM. */
+        Key(Random random) {
+            ArrayList<String> moving = new ArrayList<String>();
+            for (String name : MOVING) {
+                moving.add(name);
+            }
+            rotors = new String[] {
+                random.nextBoolean() ? "B" : "C",
+                random.nextBoolean() ? "BETA" : "GAMMA",
+                moving.remove(random.nextInt(moving.size())),
+                moving.remove(random.nextInt(moving.size())),
+                moving.remove(random.nextInt(moving.size()))
+            };
+            StringBuilder s = new StringBuilder();
+            for (int k = 0; k < 4; k += 1) {
+                s.append((char) ('A' + random.nextInt(26)));
+            }
+            setting = s.toString();
+            ArrayList<Character> letters = new ArrayList<Character>();
+            for (char c = 'A'; c <= 'Z'; c += 1) {
+                letters.add(c);
+            }
+            StringBuilder p = new StringBuilder();
+            for (int k = random.nextInt(11); k > 0; k -= 1) {
+                p.append('(')
+                    .append(letters.remove(random.nextInt(letters.size())))
+                    .append(letters.remove(random.nextInt(letters.size())))
+                    .append(") ");
+            }
+            plugboard = p.toString();
+        }
+
+        /** Return a machine set up with me. */
+        Machine machine() {
+            Machine result = config().newMachine();
+            result.insertRotors(rotors);
+            result.setRotors(setting);
+            result.setPlugboard(new Permutation(plugboard, UPPER));
+            return result;
+        }
+
+        /** Set up lane LANE of LANES with me. */
+        void setUp(Lanes lanes, int lane) {
+            lanes.insertRotors(lane, rotors);
+            lanes.setRotors(lane, setting);
+            lanes.setPlugboard(lane, new Permutation(plugboard, UPPER));
+        }
+
+        /** The parts of the key. */
+        final String[] rotors;
+        /** The parts of the key. */
+        final String setting, plugboard;
+    }
+
+    /** Return a random message of at most MAX letters and a few other
+     *  characters, chosen with RANDOM. */
+    private static String message(Random random, int max) {
+        StringBuilder result = new StringBuilder();
+        for (int i = random.nextInt(max + 1); i > 0; i -= 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+            if (random.nextInt(20) == 0) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Check that LANES converts random messages as machines would,
+     *  twice in a row. */
+    private static void checkAgainstMachine(Lanes lanes) {
+        Random random = new Random(lanes.lanes());
+        Machine[] machines = new Machine[lanes.lanes()];
+        for (int lane = 0; lane < machines.length; lane += 1) {
+            Key key = new Key(random);
+            machines[lane] = key.machine();
+            key.setUp(lanes, lane);
+        }
+        for (int pass = 0; pass < 2; pass += 1) {
+            String[] msgs = new String[machines.length];
+            for (int lane = 0; lane < msgs.length; lane += 1) {
+                msgs[lane] = message(random, 700);
+            }
+            String[] result = lanes.convert(msgs);
+            for (int lane = 0; lane < msgs.length; lane += 1) {
+                assertEquals(lanes.engine() + " lane " + lane,
+                             machines[lane].convert(msgs[lane]),
+                             result[lane]);
+            }
+        }
+    }
+
+    @Test
+    public void testScalar() {
+        for (int n : new int[] { 1, 5, 64 }) {
+            checkAgainstMachine(new Lanes(config(), n));
+        }
+    }
+
+    @Test
+    public void testCreated() {
+        for (int n : new int[] { 1, 5, 19, 64 }) {
+            checkAgainstMachine(Lanes.create(config(), n));
+        }
+    }
+
+    @Test
+    public void testFewerMessages() {
+        Lanes lanes = Lanes.create(config(), 8);
+        Key key = new Key(new Random(1));
+        key.setUp(lanes, 3);
+        String[] result = lanes.convert("", "", "", "HELLO WORLD");
+        assertEquals(4, result.length);
+        assertEquals("", result[0]);
+        assertEquals(key.machine().convert("HELLOWORLD"), result[3]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoRotors() {
+        Lanes lanes = new Lanes(config(), 2);
+        new Key(new Random(2)).setUp(lanes, 0);
+        lanes.convert("ABC", "DEF");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSetting() {
+        Lanes lanes = new Lanes(config(), 2);
+        Key key = new Key(new Random(3));
+        lanes.insertRotors(1, key.rotors);
+        lanes.setRotors(1, "AB");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadRotors() {
+        Lanes lanes = new Lanes(config(), 2);
+        lanes.insertRotors(0, new String[] { "B", "I", "II", "III", "IV" });
+    }
+
+}
@@ -0,0 +1,132 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+import java.util.Arrays;
+
+/** A model of the language of plaintexts, for scoring trial
+ *  decryptions.  It holds the logarithm of the probability of each
+ *  N-gram (run of N characters of an alphabet), estimated from a sample
+ *  of the language, in one float array indexed by the N-gram read as a
+ *  base-S number, where S is the size of the alphabet.  N-grams that do
+ *  not occur in the sample are given a probability of FLOOR of one
+ *  occurrence.  Texts are scored as arrays of character indices, with
+ *  one table lookup per character and no allocation.
+ *  @author Ze Martinho
+ */
+class LanguageModel {
+
+    /** Largest number of entries in the table of a model. */
+    static final int MAX_TABLE = 1 << 24;
+
+    /** The fraction of one occurrence assumed for unseen N-grams. */
+    static final double FLOOR = 0.01;
+
+    /** A model of the N-grams of the characters of ALPHABET in SAMPLE.
+     *  Characters of SAMPLE that are not in ALPHABET are taken in upper
+     *  case if that is in ALPHABET, and otherwise skipped. */
+    LanguageModel(Alphabet alphabet, int n, CharSequence sample) {
+        _alphabet = alphabet;
+        _n = n;
+        if (n <= 0) {
+            throw error("bad n-gram length: %d", n);
+        }
+        int size = alphabet.size();
+        long entries = 1;
+        for (int k = 0; k < n; k += 1) {
+            entries *= size;
+            if (entries > MAX_TABLE) {
+                throw error("%d-gram table too large", n);
+            }
+        }
+        _high = (int) (entries / size);
+        int[] text = new int[sample.length()];
+        int len = 0;
+        for (int i = 0; i < sample.length(); i += 1) {
+            char c = sample.charAt(i);
+            if (!alphabet.contains(c)) {
+                c = Character.toUpperCase(c);
+            }
+            if (alphabet.contains(c)) {
+                text[len] = alphabet.toInt(c);
+                len += 1;
+            }
+        }
+        if (len < n) {
+            throw error("sample too short for %d-grams", n);
+        }
+        int[] counts = new int[(int) entries];
+        int gram = 0;
+        for (int i = 0; i < len; i += 1) {
+            gram = next(gram, i, text);
+            if (i >= n - 1) {
+                counts[gram] += 1;
+            }
+        }
+        double total = len - n + 1;
+        _logProb = new float[(int) entries];
+        for (int g = 0; g < entries; g += 1) {
+            _logProb[g] =
+                (float) Math.log(Math.max(counts[g], FLOOR) / total);
+        }
+    }
+
+    /** Return the N-gram ending at TEXT[I], given that GRAM is the one
+     *  ending at TEXT[I - 1] (or anything if I < N). */
+    private int next(int gram, int i, int[] text) {
+        if (i >= _n) {
+            gram -= text[i - _n] * _high;
+        }
+        return gram * _alphabet.size() + text[i];
+    }
+
+    /** Return the length of my N-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the sum of the logarithms of the probabilities of the
+     *  N-grams of TEXT[0 .. LEN - 1]. */
+    double score(int[] text, int len) {
+        float[] logProb = _logProb;
+        double result = 0;
+        int gram = 0;
+        for (int i = 0; i < len; i += 1) {
+            gram = next(gram, i, text);
+            if (i >= _n - 1) {
+                result += logProb[gram];
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of coincidence of TEXT[0 .. LEN - 1], the
+     *  probability that two of its characters chosen at random are the
+     *  same, using COUNTS, which must have an element for each character
+     *  index, as scratch. */
+    static double indexOfCoincidence(int[] text, int len, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < len; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long sum = 0;
+        for (int count : counts) {
+            sum += (long) count * (count - 1);
+        }
+        return len < 2 ? 0 : (double) sum / ((long) len * (len - 1));
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** The length of my N-grams. */
+    private final int _n;
+    /** The value of the first character of an N-gram: size ** (N - 1). */
+    private final int _high;
+    /** _logProb[G] is the logarithm of the probability of N-gram G. */
+    private final float[] _logProb;
+}
@@ -3,9 +3,65 @@ import java.util.Collection;
 
 import static enigma.EnigmaException.*;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /** Class that represents a complete enigma machine.
+ *
+ *  The Rotor objects are used only as unchanging descriptions of
+ *  wiring and notches, and are never set or advanced, so that any number
+ *  of machines may be made from one collection of rotors and used
+ *  concurrently.  Once rotors are inserted, the machine keeps its state
+ *  in primitive arrays of its own: the setting of each slot, whether
+ *  each slot's rotor rotates, and each rotor's notches as a bit set.
+ *  Stepping and conversion work on those arrays alone and allocate
+ *  nothing per character.  Copying a machine (see copy) clones its
+ *  settings and shares everything else.
+ *
+ *  Between steps of any rotor but the rightmost, the reflector and the
+ *  rotors in the other slots act as one fixed permutation, the inner
+ *  segment.  Unless folding is turned off (see setFolded), the machine
+ *  converts each letter through the plugboard and rightmost rotor (for
+ *  alphabets of at most Rotor.FULL_TABLE_MAX_SIZE characters, one
+ *  lookup in a table for each setting of that rotor), the inner
+ *  segment, and back, caching the inner segment's value for each
+ *  letter it is applied to until one of its rotors moves.  Being
+ *  conjugate to the reflector, the inner segment is an involution when
+ *  the reflector is, so that each value computed then gives two.
+ *  Likewise, while no rotor of the inner segment is at a notch, only
+ *  the rightmost rotor's notch is examined at each step.
+ *
+ *  In compiled mode (see setCompiled), the machine instead precomputes,
+ *  for every combination of settings of its rotating rotors (a "state"),
+ *  the state that follows it and the complete substitution (plugboard,
+ *  rotors, reflector, rotors, plugboard) made in it, as one byte per
+ *  letter.  Converting a letter is then one lookup for the next state
+ *  and one for the result.  The tables depend on the rotors, the
+ *  settings of the non-rotating rotors, and the plugboard, and are
+ *  rebuilt lazily when those change.  If they would not fit in the
+ *  memory budget, or the alphabet has more than 256 characters, the
+ *  machine silently converts as usual.
+ *
+ *  The machine counts the characters converted since its rotors were
+ *  last set (its position), and can seek to any position.  Because the
+ *  stepping of the rotors is a function of their settings alone, the
+ *  sequence of settings from any start consists of a (possibly empty)
+ *  tail followed by a cycle.  The machine finds the tail and cycle
+ *  lengths once per start, using Brent's algorithm in constant space,
+ *  so that seeking never needs more steps than one tail and one cycle.
+ *  When it fits in the compile budget, it also records the state at
+ *  each position of the tail and first cycle, so that seeking is a
+ *  single lookup.
+ *
+ *  Seeking is what lets convertParallel split a long message into
+ *  chunks: once the number of convertible characters before each chunk
+ *  is known, each chunk can start from the settings at its own
+ *  position, independently of the others.
  *  @author Ze Martinho
  */
 class Machine {
@@ -28,6 +84,65 @@ class Machine {
         }
     }
 
+    /** A machine in the same state as ORIGINAL, sharing its rotors,
+     *  plugboard, and compiled tables, none of which either machine
+     *  changes, and with its own copy of the settings. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allRotors = original._allRotors;
+        _plugboard = original._plugboard;
+        _setUp = original._setUp;
+        if (original._rotors != null) {
+            _usedRotors = new ArrayList<Rotor>(original._usedRotors);
+            _rotors = original._rotors;
+            _rotates = original._rotates;
+            _notches = original._notches;
+            _settings = original._settings.clone();
+            _origin = original._origin.clone();
+            _fold = new int[_alphabet.size()];
+            _foldStamps = new int[_alphabet.size()];
+        }
+        _folding = original._folding;
+        _foldPairs = original._foldPairs;
+        _quiet = original._quiet;
+        _position = original._position;
+        _tail = original._tail;
+        _period = original._period;
+        _path = original._path;
+        _compileMode = original._compileMode;
+        _compileBudget = original._compileBudget;
+        _compileFailed = original._compileFailed;
+        _inTable = original._inTable;
+        _state = original._state;
+        _table = original._table;
+        _next = original._next;
+        _width = original._width;
+    }
+
+    /** Return a new machine with my rotors, plugboard, settings, and
+     *  position, which converts independently of me.  This is cheap:
+     *  only the settings are copied. */
+    Machine copy() {
+        return new Machine(this);
+    }
+
+    /** Size of the buffer of convert(CharSequence, Appendable), in
+     *  characters. */
+    static final int STREAM_BUFFER = 1 << 13;
+
+    /** Number of characters in each chunk of convertParallel. */
+    static final int PARALLEL_CHUNK = 1 << 18;
+
+    /** Default memory budget for compiled tables, in bytes. */
+    static final long DEFAULT_COMPILE_BUDGET = 64L << 20;
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -42,6 +157,9 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        leaveTable();
+        _table = null;
+        _compileFailed = false;
         _usedRotors = new ArrayList<Rotor>();
         Object[] allRotorsArr = _allRotors.toArray();
         ArrayList<String> rotorNames = new ArrayList<String>();
@@ -74,82 +192,733 @@ class Machine {
         } else if (_usedRotors.get(1).rotates()) {
             throw new EnigmaException("Missing fixed rotor.");
         }
+        int n = _usedRotors.size();
+        _rotors = _usedRotors.toArray(new Rotor[n]);
+        _settings = new int[n];
+        _rotates = new boolean[n];
+        _notches = new long[n][(_alphabet.size() + 63) / 64];
+        for (int k = 0; k < n; k += 1) {
+            _rotates[k] = _rotors[k].rotates();
+            for (int s = 0; s < _alphabet.size(); s += 1) {
+                if (_rotors[k].atNotch(s)) {
+                    _notches[k][s >>> 6] |= 1L << s;
+                }
+            }
+        }
+        _fold = new int[_alphabet.size()];
+        _foldStamps = new int[_alphabet.size()];
+        _outerIn = _outerOut = null;
+        _foldPairs = _rotors[0].permutation().involution();
+        refold();
+        setOrigin();
     }
 
     /** Set my rotors according to SETTING, which must be a string of four
      *  upper-case letters. The first letter refers to the leftmost
      *  rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        leaveTable();
         try {
             char[] settingArray = setting.toCharArray();
             if (settingArray.length != _numRotors - 1) {
                 throw new EnigmaException("Wrong number of settings");
             }
-            for (int i = 1; i < _usedRotors.size(); i += 1) {
-                _usedRotors.get(i).set(_alphabet.toInt(settingArray[i - 1]));
+            for (int i = 1; i < _rotors.length; i += 1) {
+                int posn = _alphabet.toInt(settingArray[i - 1]);
+                if (!_rotates[i] && _settings[i] != posn) {
+                    _table = null;
+                    _compileFailed = false;
+                }
+                _settings[i] = posn;
             }
         } catch (EnigmaException excp) {
             throw error("Wrong number of rotor settings");
+        } finally {
+            refold();
+        }
+        setOrigin();
+    }
+
+    /** Return the setting of the rotor in slot K (0 for the
+     *  reflector). */
+    int setting(int k) {
+        leaveTable();
+        return _settings[k];
+    }
+
+    /** Make the current settings position 0. */
+    private void setOrigin() {
+        _origin = _settings.clone();
+        _position = 0;
+        _tail = -1;
+        _path = null;
+    }
+
+    /** Return the number of characters I have converted since my rotors
+     *  were last inserted or set (as adjusted by seek and restore). */
+    long position() {
+        return _position;
+    }
+
+    /** Set my rotors to the settings they would have after converting
+     *  OFFSET >= 0 characters from the settings given to them when they
+     *  were last inserted or set, and make OFFSET my position. */
+    void seek(long offset) {
+        if (offset < 0) {
+            throw error("negative offset: %d", offset);
+        }
+        leaveTable();
+        settingsAt(offset, _settings);
+        refold();
+        _position = offset;
+    }
+
+    /** Set SETTINGS to the settings of each slot at position
+     *  OFFSET >= 0. */
+    private void settingsAt(long offset, int[] settings) {
+        if (_tail < 0) {
+            findCycle();
+        }
+        long steps = offset;
+        if (offset >= _tail + _period) {
+            steps = _tail + (offset - _tail) % _period;
+        }
+        System.arraycopy(_origin, 0, settings, 0, settings.length);
+        if (_path != null) {
+            decode(_path[(int) steps], settings);
+        } else {
+            for (long i = 0; i < steps; i += 1) {
+                advance(settings);
+            }
+        }
+    }
+
+    /** Return a record of my rotor settings and position, which may be
+     *  passed to restore. */
+    Snapshot snapshot() {
+        leaveTable();
+        return new Snapshot(_origin, _settings, _position);
+    }
+
+    /** Return my rotors' settings and my position to those recorded in
+     *  SNAPSHOT, which must have been made by a machine with the same
+     *  rotors. */
+    void restore(Snapshot snapshot) {
+        if (snapshot._settings.length != _settings.length) {
+            throw error("snapshot is of a different machine");
+        }
+        leaveTable();
+        if (!Arrays.equals(snapshot._origin, _origin)) {
+            _origin = snapshot._origin.clone();
+            _tail = -1;
+            _path = null;
         }
+        for (int k = 1; k < _settings.length; k += 1) {
+            if (!_rotates[k] && _settings[k] != snapshot._settings[k]) {
+                _table = null;
+                _compileFailed = false;
+            }
+        }
+        System.arraycopy(snapshot._settings, 0, _settings, 0,
+                         _settings.length);
+        refold();
+        _position = snapshot._position;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        leaveTable();
+        _table = null;
+        _compileFailed = false;
         _plugboard = plugboard;
+        _outerIn = _outerOut = null;
         _setUp = true;
     }
 
+    /** Use compiled mode iff ON, with the default memory budget. */
+    void setCompiled(boolean on) {
+        setCompiled(on, DEFAULT_COMPILE_BUDGET);
+    }
+
+    /** Use compiled mode iff ON, building tables only if they fit in
+     *  BUDGET bytes. */
+    void setCompiled(boolean on, long budget) {
+        leaveTable();
+        _table = null;
+        _compileFailed = false;
+        _compileMode = on;
+        _compileBudget = Math.min(budget, Integer.MAX_VALUE);
+    }
+
+    /** Convert through the folded inner segment (see the class comment)
+     *  iff ON, as by default.  Turning folding off makes me convert
+     *  through every rotor for each letter, as a check. */
+    void setFolded(boolean on) {
+        _folding = on;
+        refold();
+    }
+
+    /** Return true iff I am converting through compiled tables (which
+     *  are built at the first conversion after a change). */
+    boolean compiled() {
+        return _inTable;
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        int lastIndex = _usedRotors.size() - 1;
-        ArrayList<Rotor> advancingRotors = new ArrayList<Rotor>();
-        advancingRotors.add(_usedRotors.get(lastIndex));
-        for (int i = lastIndex; i > 0; i -= 1) {
-            Rotor currRotor = _usedRotors.get(i);
-            Rotor nextRotor = _usedRotors.get(i - 1);
-            if (currRotor.atNotch() && nextRotor.rotates()) {
-                advancingRotors.add(advancingRotors.size(), nextRotor);
-                if (!advancingRotors.contains(currRotor)) {
-                    advancingRotors.add(advancingRotors.size(), currRotor);
+        enterTable();
+        int result = step(c);
+        _position += 1;
+        return result;
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of
+     *  the rotors accordingly.  Characters not in my alphabet are
+     *  dropped. */
+    String convert(String msg) {
+        char[] result = new char[msg.length()];
+        int n = convert(msg, 0, msg.length(), result, 0);
+        return new String(result, 0, n);
+    }
+
+    /** Append to OUT the encoding/decoding of MSG, as convert(MSG)
+     *  returns it, updating the state of the rotors accordingly.  The
+     *  characters are converted STREAM_BUFFER at a time, so that MSG
+     *  need not be copied whole. */
+    void convert(CharSequence msg, Appendable out) throws IOException {
+        int end = msg.length();
+        char[] buf = new char[Math.min(end, STREAM_BUFFER)];
+        for (int i = 0; i < end; i += buf.length) {
+            int n = convert(msg, i, Math.min(end, i + buf.length), buf, 0);
+            if (out instanceof Writer) {
+                ((Writer) out).write(buf, 0, n);
+            } else if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(buf, 0, n);
+            } else {
+                for (int k = 0; k < n; k += 1) {
+                    out.append(buf[k]);
+                }
+            }
+        }
+    }
+
+    /** Convert the characters of MSG[START .. END - 1] that are in my
+     *  alphabet, skipping the others, into OUT, starting at OUT[OUTPOS].
+     *  Returns the number of characters stored.  OUT must have room for
+     *  END - START characters. */
+    int convert(CharSequence msg, int start, int end, char[] out,
+                int outPos) {
+        enterTable();
+        int k = outPos;
+        for (int i = start; i < end; i += 1) {
+            char c = msg.charAt(i);
+            if (_alphabet.contains(c)) {
+                out[k] = _alphabet.toChar(step(_alphabet.toInt(c)));
+                k += 1;
+            }
+        }
+        _position += k - outPos;
+        return k - outPos;
+    }
+
+    /** Convert the characters of MSG[START .. END - 1] that are in my
+     *  alphabet, skipping the others, into OUT, starting at OUT[OUTPOS].
+     *  Returns the number of characters stored.  OUT must have room for
+     *  END - START characters; it may be MSG itself if OUTPOS <= START. */
+    int convert(char[] msg, int start, int end, char[] out, int outPos) {
+        enterTable();
+        int k = outPos;
+        for (int i = start; i < end; i += 1) {
+            char c = msg[i];
+            if (_alphabet.contains(c)) {
+                out[k] = _alphabet.toChar(step(_alphabet.toInt(c)));
+                k += 1;
+            }
+        }
+        _position += k - outPos;
+        return k - outPos;
+    }
+
+    /** Convert BYTES[START .. END - 1] in place, treating each byte as
+     *  the index (0 .. 255) of a character.  My alphabet must have 256
+     *  characters, as ByteAlphabet does, so that every byte is
+     *  converted and binary data can be enciphered without decoding. */
+    void convert(byte[] bytes, int start, int end) {
+        if (_alphabet.size() != ByteAlphabet.SIZE) {
+            throw error("alphabet does not have %d characters",
+                        ByteAlphabet.SIZE);
+        }
+        enterTable();
+        for (int i = start; i < end; i += 1) {
+            bytes[i] = (byte) step(bytes[i] & 0xFF);
+        }
+        _position += end - start;
+    }
+
+    /** Convert the characters of MSG[START .. END - 1] as
+     *  convert(MSG, START, END, OUT, OUTPOS) does, dividing them into
+     *  chunks of PARALLEL_CHUNK characters that are converted
+     *  concurrently on POOL.  OUT must not overlap MSG[START .. END - 1].
+     *  The result and my state afterwards are the same as for convert. */
+    int convertParallel(char[] msg, int start, int end, char[] out,
+                        int outPos, ForkJoinPool pool) {
+        return convertParallel(msg, start, end, out, outPos, pool,
+                               PARALLEL_CHUNK);
+    }
+
+    /** Convert the characters of MSG[START .. END - 1] as
+     *  convertParallel(MSG, START, END, OUT, OUTPOS, POOL) does, using
+     *  chunks of CHUNK characters. */
+    int convertParallel(char[] msg, int start, int end, char[] out,
+                        int outPos, ForkJoinPool pool, int chunk) {
+        int chunks = (int) (((long) end - start + chunk - 1) / chunk);
+        if (chunks <= 1) {
+            return convert(msg, start, end, out, outPos);
+        }
+        enterTable();
+        leaveTable();
+        if (_tail < 0) {
+            findCycle();
+        }
+        int[] before = new int[chunks + 1];
+        pool.invoke(new Chunks(0, chunks, (i) -> {
+            int n = 0;
+            for (int j = chunkStart(start, chunk, i);
+                 j < chunkStart(start, chunk, i + 1) && j < end; j += 1) {
+                if (_alphabet.contains(msg[j])) {
+                    n += 1;
+                }
+            }
+            before[i + 1] = n;
+        }));
+        for (int i = 0; i < chunks; i += 1) {
+            before[i + 1] += before[i];
+        }
+        long base = _position;
+        pool.invoke(new Chunks(0, chunks, (i) -> {
+            int[] settings = new int[_settings.length];
+            settingsAt(base + before[i], settings);
+            convertFrom(settings, msg, chunkStart(start, chunk, i),
+                        Math.min(end, chunkStart(start, chunk, i + 1)),
+                        out, outPos + before[i]);
+        }));
+        _position = base + before[chunks];
+        settingsAt(_position, _settings);
+        refold();
+        return before[chunks];
+    }
+
+    /** Return the index of the start of chunk I of CHUNK characters from
+     *  index START, or Integer.MAX_VALUE if past that. */
+    private static int chunkStart(int start, int chunk, int i) {
+        return (int) Math.min(Integer.MAX_VALUE, start + (long) chunk * i);
+    }
+
+    /** Convert the characters of MSG[START .. END - 1] that are in my
+     *  alphabet into OUT as convert does, starting with the slot
+     *  settings SETTINGS, which are updated.  Uses my compiled tables if
+     *  they are built, and changes none of my own state, so that calls
+     *  with distinct SETTINGS and OUT may run concurrently.  Returns the
+     *  number of characters stored. */
+    private int convertFrom(int[] settings, char[] msg, int start, int end,
+                            char[] out, int outPos) {
+        int k = outPos;
+        if (_table != null) {
+            byte[] table = _table;
+            int[] next = _next;
+            int state = encode(settings);
+            for (int i = start; i < end; i += 1) {
+                char c = msg[i];
+                if (_alphabet.contains(c)) {
+                    state = next[state];
+                    int r = table[state * _width + _alphabet.toInt(c)];
+                    out[k] = _alphabet.toChar(r & 0xFF);
+                    k += 1;
+                }
+            }
+            decode(state, settings);
+        } else {
+            for (int i = start; i < end; i += 1) {
+                char c = msg[i];
+                if (_alphabet.contains(c)) {
+                    advance(settings);
+                    int r = substitute(_alphabet.toInt(c), settings);
+                    out[k] = _alphabet.toChar(r);
+                    k += 1;
                 }
             }
         }
-        for (Rotor advancesRotor : advancingRotors) {
-            advancesRotor.advance();
+        return k - outPos;
+    }
+
+    /** Applies an action to each of a range of chunk numbers, dividing
+     *  the range among the threads of a ForkJoinPool. */
+    private static class Chunks extends RecursiveAction {
+
+        /** Apply BODY to each of LO .. HI - 1. */
+        Chunks(int lo, int hi, IntConsumer body) {
+            _lo = lo;
+            _hi = hi;
+            _body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                _body.accept(_lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Chunks(_lo, mid, _body),
+                          new Chunks(mid, _hi, _body));
+            }
+        }
+
+        /** The range of chunks. */
+        private final int _lo, _hi;
+        /** The action applied to each chunk. */
+        private final IntConsumer _body;
+    }
+
+    /** Advance the machine and return the conversion of C (as an index
+     *  in the range 0..alphabet size - 1), without updating my
+     *  position. */
+    private int step(int c) {
+        if (_inTable) {
+            _state = _next[_state];
+            return _table[_state * _width + c] & 0xFF;
+        }
+        if (!_folding) {
+            advance(_settings);
+            return substitute(c, _settings);
+        }
+        int last = _settings.length - 1;
+        if (_quiet && !atNotch(last, _settings)) {
+            _settings[last] =
+                _settings[last] == _alphabet.size() - 1 ? 0
+                : _settings[last] + 1;
+        } else if (advance(_settings)) {
+            refold();
+        }
+        int s = _settings[last];
+        int p = inner(outerIn(c, s), _settings, _fold, _foldStamps, 0,
+                      _foldStamp);
+        return outerOut(p, s);
+    }
+
+    /** Return the conversion of P by the inner segment at SETTINGS, as
+     *  for inner(P, SETTINGS), caching it in CACHE.  CACHE[BASE + Q]
+     *  holds the conversion of Q if STAMPS[BASE + Q] is STAMP.  When my
+     *  reflector is an involution, the conversion of the result is
+     *  cached too.  Changes none of my state. */
+    int inner(int p, int[] settings, int[] cache, int[] stamps, int base,
+              int stamp) {
+        if (stamps[base + p] != stamp) {
+            int q = inner(p, settings);
+            cache[base + p] = q;
+            stamps[base + p] = stamp;
+            if (_foldPairs) {
+                cache[base + q] = p;
+                stamps[base + q] = stamp;
+            }
+        }
+        return cache[base + p];
+    }
+
+    /** Return the stamp following STAMP for a cache whose entries are
+     *  valid while their stamps in STAMPS equal it (see inner), first
+     *  clearing STAMPS when the stamp wraps around to 0. */
+    static int nextStamp(int stamp, int[] stamps) {
+        stamp += 1;
+        if (stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    /** Return the conversion of C by my plugboard and then my rightmost
+     *  rotor at setting S. */
+    int outerIn(int c, int s) {
+        if (_outerIn == null && !buildOuter()) {
+            return _rotors[_rotors.length - 1]
+                .convertForward(_plugboard.permute(c), s);
+        }
+        return _outerIn[s * _alphabet.size() + c];
+    }
+
+    /** Return the conversion of P by my rightmost rotor backward at
+     *  setting S and then my plugboard. */
+    int outerOut(int p, int s) {
+        if (_outerOut == null && !buildOuter()) {
+            return _plugboard.permute(
+                _rotors[_rotors.length - 1].convertBackward(p, s));
+        }
+        return _outerOut[s * _alphabet.size() + p];
+    }
+
+    /** Set _outerIn and _outerOut for my plugboard and rightmost rotor,
+     *  and return true, unless my alphabet has more than
+     *  Rotor.FULL_TABLE_MAX_SIZE characters, in which case return
+     *  false. */
+    private boolean buildOuter() {
+        int n = _alphabet.size(), last = _rotors.length - 1;
+        if (n > Rotor.FULL_TABLE_MAX_SIZE) {
+            return false;
+        }
+        int[] in = new int[n * n], out = new int[n * n];
+        for (int s = 0; s < n; s += 1) {
+            for (int c = 0; c < n; c += 1) {
+                in[s * n + c] =
+                    _rotors[last].convertForward(_plugboard.permute(c), s);
+                out[s * n + c] =
+                    _plugboard.permute(_rotors[last].convertBackward(c, s));
+            }
+        }
+        _outerIn = in;
+        _outerOut = out;
+        return true;
+    }
+
+    /** Forget the cached values of the inner segment, and note whether
+     *  any of its rotors is at a notch. */
+    private void refold() {
+        if (_rotors != null) {
+            _foldStamp = nextStamp(_foldStamp, _foldStamps);
+            int last = _rotors.length - 1;
+            _quiet = _rotates[last];
+            for (int k = 1; k < last; k += 1) {
+                _quiet &= !atNotch(k, _settings);
+            }
+        }
+    }
+
+    /** Return the conversion of P by the inner segment: the rotors in
+     *  every slot but the last, from right to left and back, when the
+     *  settings of each slot are SETTINGS.  Changes none of my
+     *  state. */
+    int inner(int p, int[] settings) {
+        Rotor[] rotors = _rotors;
+        int last = rotors.length - 1;
+        for (int j = last - 1; j >= 0; j -= 1) {
+            p = rotors[j].convertForward(p, settings[j]);
+        }
+        for (int k = 1; k < last; k += 1) {
+            p = rotors[k].convertBackward(p, settings[k]);
         }
+        return p;
+    }
+
+    /** Return the conversion of C (as an index in the range 0..alphabet
+     *  size - 1) when the settings of each slot are SETTINGS, passing
+     *  through every rotor. */
+    private int substitute(int c, int[] settings) {
+        Rotor[] rotors = _rotors;
+        int last = rotors.length - 1;
         int result = _plugboard.permute(c);
-        for (int j = lastIndex; j >= 0; j -= 1) {
-            Rotor forwardRot = _usedRotors.get(j);
-            result = forwardRot.convertForward(result);
+        for (int j = last; j >= 0; j -= 1) {
+            result = rotors[j].convertForward(result, settings[j]);
         }
-        for (int k = 1; k < lastIndex + 1; k += 1) {
-            Rotor backwardRot = _usedRotors.get(k);
-            result = backwardRot.convertBackward(result);
+        for (int k = 1; k <= last; k += 1) {
+            result = rotors[k].convertBackward(result, settings[k]);
         }
         return _plugboard.permute(result);
     }
 
-    /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
-    String convert(String msg) {
-        char[] msgArray = msg.toCharArray();
-        ArrayList<Character> resultList = new ArrayList<Character>();
-        for (int i = 0; i < msgArray.length; i += 1) {
-            if (_alphabet.contains(msgArray[i])) {
-                char addedChar = _alphabet.toChar(
-                    convert(_alphabet.toInt(msgArray[i])));
-                resultList.add(addedChar);
+    /** Advance the rotors that move before a character is converted.
+     *  The rightmost rotor always advances.  Any other rotor that
+     *  rotates advances if the rotor to its right is at a notch, or if
+     *  it is itself at a notch and the rotor to its left rotates (the
+     *  "double step").  All notches are examined before any rotor
+     *  moves.  SETTINGS holds the settings of each slot, and is
+     *  updated.  Returns true iff a rotor other than the rightmost
+     *  moved.  Changes none of my state, so that calls with distinct
+     *  SETTINGS may run concurrently. */
+    boolean advance(int[] settings) {
+        int last = settings.length - 1;
+        int size = _alphabet.size();
+        boolean notched = atNotch(1, settings), moved = false;
+        for (int j = 1; j <= last; j += 1) {
+            boolean nextNotched = j < last && atNotch(j + 1, settings);
+            if (_rotates[j]
+                && (j == last || nextNotched
+                    || (notched && _rotates[j - 1]))) {
+                settings[j] = settings[j] == size - 1 ? 0 : settings[j] + 1;
+                moved |= j < last;
             }
+            notched = nextNotched;
         }
-        String result = "";
-        for (char letter : resultList) {
-            result += letter;
+        return moved;
+    }
+
+    /** Return true iff the rotor in slot K is at a notch when the
+     *  settings of each slot are SETTINGS. */
+    private boolean atNotch(int k, int[] settings) {
+        int s = settings[k];
+        return (_notches[k][s >>> 6] & (1L << s)) != 0;
+    }
+
+    /** If in compiled mode, start converting through the tables,
+     *  building them if needed and possible. */
+    private void enterTable() {
+        if (_inTable || !_compileMode || _compileFailed) {
+            return;
+        } else if (_table == null) {
+            compile();
+            if (_table == null) {
+                return;
+            }
+        }
+        _state = encode(_settings);
+        _inTable = true;
+    }
+
+    /** If converting through the tables, stop, bringing _settings up to
+     *  date. */
+    private void leaveTable() {
+        if (_inTable) {
+            decode(_state, _settings);
+            refold();
+            _inTable = false;
+        }
+    }
+
+    /** Build the compiled tables for my current rotors, non-rotating
+     *  rotor settings, and plugboard, or note that they exceed the
+     *  budget. */
+    private void compile() {
+        int size = _alphabet.size();
+        long states = stateCount();
+        if (size > 256 || states > _compileBudget / (size + 4)) {
+            _compileFailed = true;
+            return;
+        }
+        int n = (int) states;
+        int[] saved = _settings.clone();
+        byte[] table = new byte[n * size];
+        int[] next = new int[n];
+        for (int state = 0; state < n; state += 1) {
+            decode(state, _settings);
+            for (int c = 0; c < size; c += 1) {
+                table[state * size + c] = (byte) substitute(c, _settings);
+            }
+            advance(_settings);
+            next[state] = encode(_settings);
+        }
+        System.arraycopy(saved, 0, _settings, 0, saved.length);
+        _table = table;
+        _next = next;
+        _width = size;
+    }
+
+    /** Return the number of combinations of settings of my rotating
+     *  rotors, or Long.MAX_VALUE if that exceeds Integer.MAX_VALUE. */
+    private long stateCount() {
+        long states = 1;
+        for (int k = 0; k < _rotates.length; k += 1) {
+            if (_rotates[k]) {
+                states *= _alphabet.size();
+                if (states > Integer.MAX_VALUE) {
+                    return Long.MAX_VALUE;
+                }
+            }
+        }
+        return states;
+    }
+
+    /** Set _tail and _period to the number of positions before the
+     *  settings from _origin first repeat and the length of the cycle
+     *  they then repeat, and set _path if it fits in the budget.  Leaves
+     *  _settings unchanged. */
+    private void findCycle() {
+        int[] tortoise = _origin.clone(), hare = _origin.clone();
+        long power = 1, period = 1;
+        advance(hare);
+        while (!Arrays.equals(tortoise, hare)) {
+            if (power == period) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                period = 0;
+            }
+            advance(hare);
+            period += 1;
+        }
+        System.arraycopy(_origin, 0, tortoise, 0, hare.length);
+        System.arraycopy(_origin, 0, hare, 0, hare.length);
+        for (long i = 0; i < period; i += 1) {
+            advance(hare);
+        }
+        long tail = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            advance(tortoise);
+            advance(hare);
+            tail += 1;
+        }
+        _tail = tail;
+        _period = period;
+
+        if (stateCount() != Long.MAX_VALUE
+            && tail + period <= _compileBudget / 4) {
+            int[] path = new int[(int) (tail + period)];
+            int[] settings = _origin.clone();
+            for (int i = 0; i < path.length; i += 1) {
+                path[i] = encode(settings);
+                advance(settings);
+            }
+            _path = path;
+        }
+    }
+
+    /** Return the number of the state given by the settings of my
+     *  rotating rotors in SETTINGS, with the rightmost least
+     *  significant. */
+    private int encode(int[] settings) {
+        int result = 0;
+        for (int k = 0; k < settings.length; k += 1) {
+            if (_rotates[k]) {
+                result = result * _alphabet.size() + settings[k];
+            }
         }
         return result;
     }
 
+    /** Set the settings of my rotating rotors in SETTINGS to those of
+     *  STATE (see encode). */
+    private void decode(int state, int[] settings) {
+        for (int k = settings.length - 1; k >= 0; k -= 1) {
+            if (_rotates[k]) {
+                settings[k] = state % _alphabet.size();
+                state /= _alphabet.size();
+            }
+        }
+    }
+
+    /** A record of the settings and position of a machine (see
+     *  snapshot). */
+    static final class Snapshot {
+
+        /** A record of settings SETTINGS at position POSITION from
+         *  settings ORIGIN.  The arrays are copied. */
+        private Snapshot(int[] origin, int[] settings, long position) {
+            _origin = origin.clone();
+            _settings = settings.clone();
+            _position = position;
+        }
+
+        /** Return the recorded position. */
+        long position() {
+            return _position;
+        }
+
+        /** The settings at position 0. */
+        private final int[] _origin;
+        /** The recorded settings of each slot. */
+        private final int[] _settings;
+        /** The recorded position. */
+        private final long _position;
+    }
+
     /** A simple boolean instance variable
      *  to determine whether or not the machine
      *  has been set up.
@@ -187,6 +956,92 @@ class Machine {
      *  order to be used. */
     private ArrayList<Rotor> _usedRotors;
 
+    /** The rotors in _usedRotors, as an array. */
+    private Rotor[] _rotors;
+
+    /** _settings[K] is the setting of the rotor in slot K. */
+    private int[] _settings;
+
+    /** _rotates[K] is true iff the rotor in slot K rotates. */
+    private boolean[] _rotates;
+
+    /** The notches of the rotor in slot K, as a bit set: bit S % 64 of
+     *  _notches[K][S / 64] is set iff it has a notch at setting S. */
+    private long[][] _notches;
+
+    /** The settings of each slot at position 0. */
+    private int[] _origin;
+
+    /** The number of characters converted since _origin. */
+    private long _position;
+
+    /** The number of positions from _origin before the settings first
+     *  reach a cycle, or -1 if not yet found. */
+    private long _tail = -1;
+
+    /** The length of the cycle of settings reached from _origin. */
+    private long _period;
+
+    /** If not null, _path[P] is the state (see encode) at position P,
+     *  for all P < _tail + _period. */
+    private int[] _path;
+
+    /** True iff converting through the folded inner segment. */
+    private boolean _folding = true;
+
+    /** _fold[P] is the conversion of P by the inner segment at the
+     *  current settings, if _foldStamps[P] == _foldStamp. */
+    private int[] _fold, _foldStamps;
+
+    /** See _fold.  Incremented to forget all of _fold at once. */
+    private int _foldStamp = 1;
+
+    /** If not null, _outerIn[S * N + C] is the conversion of C by the
+     *  plugboard and then the rightmost rotor at setting S, and
+     *  _outerOut[S * N + C] that of C by the rightmost rotor backward
+     *  and then the plugboard, for an alphabet of N characters.  Always
+     *  null when N exceeds Rotor.FULL_TABLE_MAX_SIZE, so that the
+     *  tables stay small. */
+    private int[] _outerIn, _outerOut;
+
+    /** True iff the rightmost rotor rotates and no other rotor is at a
+     *  notch, so that only the rightmost can move at the next step
+     *  (unless it is itself at a notch). */
+    private boolean _quiet;
+
+    /** True iff my reflector, and so the inner segment, is an
+     *  involution. */
+    private boolean _foldPairs;
+
+    /** True iff compiled mode is on. */
+    private boolean _compileMode;
+
+    /** Memory budget for compiled tables, in bytes. */
+    private long _compileBudget = DEFAULT_COMPILE_BUDGET;
+
+    /** True iff the compiled tables for the current configuration would
+     *  exceed the budget. */
+    private boolean _compileFailed;
+
+    /** True iff converting through the compiled tables, in which case
+     *  _state, rather than _settings, holds the rotating rotors'
+     *  settings. */
+    private boolean _inTable;
+
+    /** The current state number (see encode) when _inTable. */
+    private int _state;
+
+    /** Compiled tables, or null if not built: _next[S] is the state
+     *  after state S, and _table[S * size + C] is the conversion of C
+     *  in state S, for an alphabet of size characters. */
+    private byte[] _table;
+
+    /** See _table. */
+    private int[] _next;
+
+    /** The alphabet size for which _table was built. */
+    private int _width;
+
     /** A collection of all rotors read from
      *  the .conf file. */
     private Collection<Rotor> _allRotors;
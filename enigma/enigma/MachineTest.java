@@ -6,6 +6,8 @@ import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.TestUtils.*;
 
@@ -78,16 +80,57 @@ public class MachineTest {
               new String[]{"B", "BETA", "I", "III", "VIII"});
         String setting = "GLEX";
         machine.setRotors(setting);
-        assertEquals(allRotors.get(2).setting(),
-            UPPER.toInt(setting.charAt(0)));
-        assertEquals(allRotors.get(0).setting(),
-            UPPER.toInt(setting.charAt(1)));
-        assertEquals(allRotors.get(5).setting(),
-            UPPER.toInt(setting.charAt(2)));
-        assertEquals(allRotors.get(6).setting(),
-            UPPER.toInt(setting.charAt(3)));
-        assertEquals(allRotors.get(1).setting(), 0);
+        assertEquals(0, machine.setting(0));
+        for (int k = 1; k < 5; k += 1) {
+            assertEquals(UPPER.toInt(setting.charAt(k - 1)),
+                         machine.setting(k));
+        }
+        for (Rotor rotor : allRotors) {
+            assertEquals("shared rotor " + rotor.name() + " was set",
+                         0, rotor.setting());
+        }
     }
+
+    @Test
+    public void checkMachinesShareRotors() {
+        startMachine();
+        Machine other = new Machine(UPPER, 5, 3, allRotors);
+        other.setPlugboard(new Permutation("", UPPER));
+        other.insertRotors(new String[]{"B", "BETA", "I", "III", "VIII"});
+        machine.insertRotors(new String[]{"B", "BETA", "III", "I", "IV"});
+        other.setRotors("JJJJ");
+        machine.setRotors("AAAA");
+        machine.convert("ABCDEFGHIJKLMNOP");
+        assertEquals("XKDZZBSEXZWKFYB", other.convert("HAHALMAOROFLLOL"));
+        assertEquals(0, allRotors.get(0).setting());
+    }
+
+    @Test
+    public void checkCopy() {
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        String[] config = { "B", "BETA", "I", "III", "VIII" };
+        for (boolean compiled : new boolean[] { false, true }) {
+            Machine original = setUpMachine(config, "AYZL", plugboard);
+            original.setCompiled(compiled);
+            String first = original.convert("HELLOWORLD");
+            Machine copy = original.copy();
+            assertEquals(10, copy.position());
+            assertEquals(original.convert("GOODBYEMOON"),
+                         copy.convert("GOODBYEMOON"));
+            int[] settings = new int[5];
+            for (int k = 0; k < 5; k += 1) {
+                assertEquals(original.setting(k), copy.setting(k));
+                settings[k] = original.setting(k);
+            }
+            copy.setRotors("AYZL");
+            assertEquals(first, copy.convert("HELLOWORLD"));
+            for (int k = 0; k < 5; k += 1) {
+                assertEquals(settings[k], original.setting(k));
+            }
+            assertEquals(21, original.position());
+        }
+    }
+
     @Test
     /** Used http://enigma.louisedade.co.uk/enigma.html enigma machine
      *  for testing convert machine method and integration tests. */
@@ -118,6 +161,439 @@ public class MachineTest {
         assertTrue(machine.convert(
               "HAHALMAOROFLLOL").equals("XKDZZBSEXZWKFYB"));
     }
+    /** Convert C on a machine whose rotors, from the reflector on, are
+     *  ROTORS and whose plugboard is PLUGBOARD, by stepping the Rotor
+     *  objects themselves (as Machine once did), and return the result. */
+    private static int referenceConvert(ArrayList<Rotor> rotors,
+                                        Permutation plugboard, int c) {
+        int lastIndex = rotors.size() - 1;
+        ArrayList<Rotor> advancing = new ArrayList<Rotor>();
+        advancing.add(rotors.get(lastIndex));
+        for (int i = lastIndex; i > 0; i -= 1) {
+            Rotor curr = rotors.get(i), next = rotors.get(i - 1);
+            if (curr.atNotch() && next.rotates()) {
+                advancing.add(next);
+                if (!advancing.contains(curr)) {
+                    advancing.add(curr);
+                }
+            }
+        }
+        for (Rotor r : advancing) {
+            r.advance();
+        }
+        int result = plugboard.permute(c);
+        for (int j = lastIndex; j >= 0; j -= 1) {
+            result = rotors.get(j).convertForward(result);
+        }
+        for (int k = 1; k <= lastIndex; k += 1) {
+            result = rotors.get(k).convertBackward(result);
+        }
+        return plugboard.permute(result);
+    }
+
+    @Test
+    public void checkSteppingMatchesReference() {
+        String[][] configs = {
+            { "B", "BETA", "I", "III", "VIII" },
+            { "B", "BETA", "VI", "VIII", "IV" },
+            { "B", "BETA", "VIII", "VI", "III" },
+        };
+        String[] settings = { "AAUV", "AYZL", "AMZY", "QZZZ" };
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        Random random = new Random(33);
+        for (String[] config : configs) {
+            for (String setting : settings) {
+                startMachine();
+                machine.insertRotors(config);
+                machine.setRotors(setting);
+                machine.setPlugboard(plugboard);
+                Machine tested = machine;
+                startMachine();
+                ArrayList<Rotor> reference = new ArrayList<>();
+                for (String name : config) {
+                    for (Rotor r : allRotors) {
+                        if (r.name().equals(name)) {
+                            reference.add(r);
+                        }
+                    }
+                }
+                for (int k = 1; k < reference.size(); k += 1) {
+                    reference.get(k).set(setting.charAt(k - 1) - 'A');
+                }
+                char[] msg = new char[200];
+                for (int round = 0; round < 100; round += 1) {
+                    for (int i = 0; i < msg.length; i += 1) {
+                        msg[i] = (char) ('A' + random.nextInt(26));
+                    }
+                    char[] out = new char[msg.length];
+                    assertEquals(msg.length,
+                                 tested.convert(msg, 0, msg.length, out, 0));
+                    for (int i = 0; i < msg.length; i += 1) {
+                        int expected =
+                            referenceConvert(reference, plugboard,
+                                             msg[i] - 'A');
+                        assertEquals(setting + " letter " + i,
+                                     (char) ('A' + expected), out[i]);
+                    }
+                }
+                for (int k = 1; k < reference.size(); k += 1) {
+                    assertEquals(reference.get(k).setting(),
+                                 tested.setting(k));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkConvertIntoBuffer() {
+        startMachine();
+        machine.insertRotors(
+              new String[]{"B", "BETA", "I", "III", "VIII"});
+        machine.setRotors("JJJJ");
+        char[] buf = "HA HA-LMAO ROFL!LOL".toCharArray();
+        int n = machine.convert(buf, 0, buf.length, buf, 0);
+        assertEquals("XKDZZBSEXZWKFYB", new String(buf, 0, n));
+        machine.setRotors("JJJJ");
+        StringBuilder msg = new StringBuilder("HAHALMAOROFLLOL");
+        char[] out = new char[msg.length() + 2];
+        assertEquals(15, machine.convert(msg, 0, msg.length(), out, 2));
+        assertEquals("XKDZZBSEXZWKFYB", new String(out, 2, 15));
+    }
+
+    /** Return a machine made by startMachine with rotors CONFIG, at
+     *  SETTING, and with plugboard PLUGBOARD. */
+    private Machine setUpMachine(String[] config, String setting,
+                                 Permutation plugboard) {
+        startMachine();
+        machine.insertRotors(config);
+        machine.setRotors(setting);
+        machine.setPlugboard(plugboard);
+        return machine;
+    }
+
+    /** Check that PLAIN and COMPILED give the same conversions of random
+     *  messages drawn from RANDOM. */
+    private void checkSameConversions(Machine plain, Machine compiled,
+                                      Random random) {
+        char[] msg = new char[300];
+        for (int round = 0; round < 5; round += 1) {
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = (char) ('A' + random.nextInt(26));
+            }
+            String text = new String(msg);
+            assertEquals(plain.convert(text), compiled.convert(text));
+            assertEquals(plain.convert(msg[round] - 'A'),
+                         compiled.convert(msg[round] - 'A'));
+        }
+    }
+
+    @Test
+    public void checkFoldedMatchesUnfolded() {
+        String[][] configs = {
+            { "B", "BETA", "I", "III", "VIII" },
+            { "B", "BETA", "VI", "VIII", "IV" },
+            { "ODD", "BETA", "VIII", "VI", "III" },
+        };
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        Random random = new Random(35);
+        for (String[] config : configs) {
+            startMachine();
+            allRotors.add(new Reflector("ODD", new Permutation(
+                "(ABC) (DE) (FGHIJKLMNOPQRSTUVWXYZ)", UPPER)));
+            Machine folded = machine;
+            folded.insertRotors(config);
+            folded.setRotors("AYZL");
+            folded.setPlugboard(plugboard);
+            Machine unfolded = folded.copy();
+            unfolded.setFolded(false);
+            checkSameConversions(unfolded, folded, random);
+            folded.seek(1000);
+            unfolded.seek(1000);
+            checkSameConversions(unfolded, folded, random);
+            Machine.Snapshot snapshot = folded.snapshot();
+            folded.setRotors("ZZZZ");
+            unfolded.setRotors("ZZZZ");
+            checkSameConversions(unfolded.copy(), folded.copy(), random);
+            folded.restore(snapshot);
+            unfolded.restore(snapshot);
+            checkSameConversions(unfolded, folded, random);
+        }
+
+        Machine wide = wideMachine(random, 8000);
+        Machine unfolded = wide.copy();
+        unfolded.setFolded(false);
+        Alphabet alpha = wide.alphabet();
+        char[] msg = new char[3000];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        String text = new String(msg);
+        assertEquals(unfolded.convert(text), wide.convert(text));
+        assertEquals(unfolded.convert(text), wide.convert(text));
+    }
+
+    /** Return a four-slot machine on an alphabet of SIZE characters
+     *  from the CJK block, with randomly wired rotors drawn from RANDOM,
+     *  whose rightmost rotor reaches its notch within 1000 steps. */
+    private static Machine wideMachine(Random random, int size) {
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i += 1) {
+            chars[i] = (char) ('\u4E00' + i);
+        }
+        Alphabet alpha = new Alphabet(new String(chars));
+        int[] pairs = shuffled(size, random), reflector = new int[size];
+        for (int i = 0; i < size; i += 2) {
+            reflector[pairs[i]] = pairs[i + 1];
+            reflector[pairs[i + 1]] = pairs[i];
+        }
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("R", Permutation.fromTable(reflector,
+                                                             alpha)));
+        rotors.add(new FixedRotor("F", Permutation.fromTable(
+                                            shuffled(size, random), alpha)));
+        rotors.add(new MovingRotor("M1", Permutation.fromTable(
+                                             shuffled(size, random), alpha),
+                                   new String(chars, 0, 3)));
+        rotors.add(new MovingRotor("M2", Permutation.fromTable(
+                                             shuffled(size, random), alpha),
+                                   new String(chars, 1000, 1)));
+        Machine result = new Machine(alpha, 4, 2, rotors);
+        result.insertRotors(new String[] { "R", "F", "M1", "M2" });
+        result.setRotors(new String(chars, 0, 3));
+        result.setPlugboard(new Permutation(
+            "(" + chars[5] + chars[7000] + ")", alpha));
+        return result;
+    }
+
+    @Test
+    public void checkCompiledMatchesNormal() {
+        String[][] configs = {
+            { "B", "BETA", "I", "III", "VIII" },
+            { "B", "BETA", "VI", "VIII", "IV" },
+        };
+        String[] settings = { "AAUV", "AYZL", "QZZZ" };
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        Random random = new Random(34);
+        for (String[] config : configs) {
+            for (String setting : settings) {
+                Machine plain = setUpMachine(config, setting, plugboard);
+                Machine compiled = setUpMachine(config, setting, plugboard);
+                compiled.setCompiled(true);
+                checkSameConversions(plain, compiled, random);
+                assertTrue(compiled.compiled());
+                assertEquals(plain.usedRotorsString(),
+                             compiled.usedRotorsString());
+
+                plain.setRotors("KMZV");
+                compiled.setRotors("KMZV");
+                checkSameConversions(plain, compiled, random);
+                Permutation other = new Permutation("(AZ) (QW)", UPPER);
+                plain.setPlugboard(other);
+                compiled.setPlugboard(other);
+                checkSameConversions(plain, compiled, random);
+            }
+        }
+    }
+
+    @Test
+    public void checkCompileBudget() {
+        String[] config = { "B", "BETA", "I", "III", "VIII" };
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        Machine plain = setUpMachine(config, "JJJJ", plugboard);
+        Machine bounded = setUpMachine(config, "JJJJ", plugboard);
+        bounded.setCompiled(true, 1000);
+        checkSameConversions(plain, bounded, new Random(35));
+        assertFalse(bounded.compiled());
+        bounded.setCompiled(true);
+        checkSameConversions(plain, bounded, new Random(36));
+        assertTrue(bounded.compiled());
+        bounded.setCompiled(false);
+        checkSameConversions(plain, bounded, new Random(37));
+        assertFalse(bounded.compiled());
+    }
+
+    @Test
+    public void checkSeekMatchesStepping() {
+        String[][] configs = {
+            { "B", "BETA", "I", "III", "VIII" },
+            { "B", "BETA", "VI", "VIII", "IV" },
+            { "B", "BETA", "VIII", "VI", "III" },
+            { "B", "BETA", "IV", "I", "VI" },
+        };
+        String[] settings = { "AAUV", "AMZY", "QZZZ" };
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        Random random = new Random(35);
+        String probe = "ENIGMAPROBEXYZQ";
+        for (String[] config : configs) {
+            for (String setting : settings) {
+                Machine stepped = setUpMachine(config, setting, plugboard);
+                Machine seeking = setUpMachine(config, setting, plugboard);
+                Machine walking = setUpMachine(config, setting, plugboard);
+                walking.setCompiled(false, 0);
+                int limit = 3 * 26 * 26 * 26 + 100;
+                for (int n = 0; n < limit; n += 1) {
+                    if (n < 100 || random.nextInt(300) == 0) {
+                        Machine.Snapshot snap = stepped.snapshot();
+                        String expected = stepped.convert(probe);
+                        stepped.restore(snap);
+                        seeking.seek(n);
+                        assertEquals(n, seeking.position());
+                        assertEquals(setting + " at " + n, expected,
+                                     seeking.convert(probe));
+                        if (n % 7 == 0) {
+                            walking.seek(n);
+                            assertEquals(expected, walking.convert(probe));
+                        }
+                    }
+                    stepped.convert(random.nextInt(26));
+                }
+                long far = 1000000000000L + random.nextInt(100000);
+                seeking.seek(far);
+                walking.seek(far);
+                assertEquals(walking.convert(probe), seeking.convert(probe));
+                assertEquals(far + probe.length(), seeking.position());
+            }
+        }
+    }
+
+    @Test
+    public void checkSnapshotRestore() {
+        String[] config = { "B", "BETA", "I", "III", "VIII" };
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        Machine m = setUpMachine(config, "AAAA", plugboard);
+        assertEquals(10, m.convert("HELLO, WORLD").length());
+        assertEquals(10, m.position());
+        Machine.Snapshot snap = m.snapshot();
+        assertEquals(10, snap.position());
+        String expected = m.convert("ATTACKATDAWN");
+        m.restore(snap);
+        assertEquals(expected, m.convert("ATTACKATDAWN"));
+        m.setRotors("BZQR");
+        m.convert("SOMETHINGELSE");
+        m.restore(snap);
+        assertEquals(10, m.position());
+        assertEquals(expected, m.convert("ATTACKATDAWN"));
+        m.seek(0);
+        Machine fresh = setUpMachine(config, "AAAA", plugboard);
+        assertEquals(fresh.convert("LOREMIPSUM"), m.convert("LOREMIPSUM"));
+        m.setCompiled(true);
+        m.restore(snap);
+        assertEquals(expected, m.convert("ATTACKATDAWN"));
+        assertTrue(m.compiled());
+        m.seek(10);
+        assertEquals(expected, m.convert("ATTACKATDAWN"));
+    }
+
+    @Test
+    public void checkParallelMatchesSequential() {
+        String[] config = { "B", "BETA", "VI", "VIII", "IV" };
+        Permutation plugboard = new Permutation("(HJ) (OK) (RL)", UPPER);
+        Random random = new Random(36);
+        char[] msg = new char[100000];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = random.nextInt(10) == 0 ? ' '
+                : (char) ('A' + random.nextInt(26));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int budget : new int[] { 0, 1 << 20 }) {
+                Machine sequential = setUpMachine(config, "AMZY", plugboard);
+                Machine parallel = setUpMachine(config, "AMZY", plugboard);
+                parallel.setCompiled(budget > 0, budget);
+                sequential.convert("PREFIX");
+                parallel.convert("PREFIX");
+                char[] expected = new char[msg.length];
+                char[] out = new char[msg.length + 3];
+                int n = sequential.convert(msg, 5, msg.length, expected, 0);
+                assertEquals(n, parallel.convertParallel(msg, 5, msg.length,
+                                                         out, 3, pool, 997));
+                assertEquals(new String(expected, 0, n),
+                             new String(out, 3, n));
+                assertEquals(sequential.position(), parallel.position());
+                assertEquals(sequential.convert("SUFFIX"),
+                             parallel.convert("SUFFIX"));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return a random permutation of 0 .. N - 1 drawn from RANDOM. */
+    private static int[] shuffled(int n, Random random) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return a machine on ByteAlphabet with randomly wired rotors drawn
+     *  from RANDOM, at SETTING. */
+    static Machine byteMachine(Random random, String setting) {
+        Alphabet bytes = new ByteAlphabet();
+        int[] pairs = shuffled(256, random), reflector = new int[256];
+        for (int i = 0; i < 256; i += 2) {
+            reflector[pairs[i]] = pairs[i + 1];
+            reflector[pairs[i + 1]] = pairs[i];
+        }
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("R", Permutation.fromTable(reflector,
+                                                             bytes)));
+        rotors.add(new FixedRotor("F", Permutation.fromTable(
+                                            shuffled(256, random), bytes)));
+        rotors.add(new MovingRotor("M1", Permutation.fromTable(
+                                             shuffled(256, random), bytes),
+                                   "()\u00FF"));
+        rotors.add(new MovingRotor("M2", Permutation.fromTable(
+                                             shuffled(256, random), bytes),
+                                   "\u0000Z"));
+        Machine result = new Machine(bytes, 4, 2, rotors);
+        result.insertRotors(new String[] { "R", "F", "M1", "M2" });
+        result.setRotors(setting);
+        int[] plugboard = new int[256];
+        for (int i = 0; i < 256; i += 1) {
+            plugboard[i] = i ^ 0x21;
+        }
+        result.setPlugboard(Permutation.fromTable(plugboard, bytes));
+        return result;
+    }
+
+    @Test
+    public void checkConvertBytes() {
+        String setting = "\u0007(\u00FE";
+        Random random = new Random(40);
+        byte[] data = new byte[5000];
+        random.nextBytes(data);
+        char[] chars = new char[data.length];
+        for (int i = 0; i < data.length; i += 1) {
+            chars[i] = (char) (data[i] & 0xFF);
+        }
+        for (boolean compiled : new boolean[] { false, true }) {
+            Machine machine = byteMachine(new Random(41), setting);
+            machine.setCompiled(compiled);
+            byte[] buf = data.clone();
+            machine.convert(buf, 0, buf.length);
+            assertEquals(data.length, machine.position());
+            Machine reference = byteMachine(new Random(41), setting);
+            String expected = reference.convert(new String(chars));
+            for (int i = 0; i < buf.length; i += 1) {
+                assertEquals(expected.charAt(i), (char) (buf[i] & 0xFF));
+            }
+            machine.setRotors(setting);
+            machine.convert(buf, 0, buf.length);
+            assertArrayEquals(data, buf);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkConvertBytesNeedsByteAlphabet() {
+        startMachine();
+        machine.insertRotors(new String[]{"B", "BETA", "I", "III", "VIII"});
+        machine.convert(new byte[] { 1, 2 }, 0, 2);
+    }
+
     @Test
     public void checkLongPlugboard() {
         startMachine();
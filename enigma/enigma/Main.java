@@ -1,12 +1,23 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.*;
 
@@ -23,7 +34,41 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options, which begin with "--", may appear anywhere in ARGS and
+     *  are not counted above:
+     *    --parallel[=N]  Convert long message lines in chunks on N
+     *                    threads (default: one per processor).  The
+     *                    output is unchanged.
+     *    --batch[=N]     Split the input into sessions, each a settings
+     *                    line and the messages after it, and convert
+     *                    them on N threads (default: one per
+     *                    processor), each with its own machine.  The
+     *                    output is unchanged, and the number of sessions
+     *                    per second is reported on the standard error.
+     *                    Overrides --parallel.
+     *    --cache[=FILE]  Load the configuration from the binary cache
+     *                    FILE (default: the configuration file's name
+     *                    followed by ".cache"), which is made or remade
+     *                    from the configuration file when it is missing,
+     *                    out of date, or corrupt (see CompiledConfig).
+     *    --startup-time  Report on the standard error how long reading
+     *                    the configuration took and when the first
+     *                    output was written.
+     *    --stats[=jfr]   Report on the standard error the wall time
+     *                    spent in each phase of the run (reading the
+     *                    configuration, reading and scanning input,
+     *                    setting up the machine, converting, formatting
+     *                    and writing output), the numbers of bytes,
+     *                    settings lines, messages, and letters
+     *                    processed, and letters per second (see
+     *                    PhaseStats).  With --batch, the times of the
+     *                    sessions are summed over the threads, and
+     *                    "other" is the rest of the time of the main
+     *                    thread.  With =jfr, also commit them as
+     *                    JFR events (enigma.Phase and enigma.Counts),
+     *                    recorded if a flight recording is running. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,22 +81,81 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        ArrayList<String> files = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                setOption(arg);
+            } else {
+                files.add(arg);
+            }
+        }
+        args = files.toArray(new String[files.size()]);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
+        _configName = args[0];
         _config = getInput(args[0]);
+        if (_cacheName != null && _cacheName.isEmpty()) {
+            _cacheName = _configName + ".cache";
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getInputChannel(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new FileInputStream(FileDescriptor.in).getChannel();
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = new FileOutputStream(FileDescriptor.out).getChannel();
+        }
+        if (_startupTime) {
+            _output = new FirstWriteChannel(_output);
+        }
+    }
+
+    /** Set the option given by OPTION (see comment on main). */
+    private void setOption(String option) {
+        if (option.equals("--parallel")) {
+            _pool = ForkJoinPool.commonPool();
+        } else if (option.startsWith("--parallel=")) {
+            _pool = new ForkJoinPool(threadCount(option));
+        } else if (option.equals("--batch")) {
+            _batchThreads = Runtime.getRuntime().availableProcessors();
+        } else if (option.startsWith("--batch=")) {
+            _batchThreads = threadCount(option);
+        } else if (option.equals("--cache")) {
+            _cacheName = "";
+        } else if (option.startsWith("--cache=")) {
+            _cacheName = option.substring("--cache=".length());
+            if (_cacheName.isEmpty()) {
+                throw error("empty cache file name");
+            }
+        } else if (option.equals("--startup-time")) {
+            _startupTime = true;
+        } else if (option.equals("--stats")) {
+            _stats = true;
+        } else if (option.equals("--stats=jfr")) {
+            _stats = _jfr = true;
+        } else {
+            throw error("unknown option: %s", option);
+        }
+    }
+
+    /** Return the thread count N given by OPTION, which has the form
+     *  --NAME=N. */
+    private int threadCount(String option) {
+        try {
+            int threads =
+                Integer.parseInt(option.substring(option.indexOf('=') + 1));
+            if (threads <= 0) {
+                throw error("bad thread count: %s", option);
+            }
+            return threads;
+        } catch (NumberFormatException excp) {
+            throw error("bad thread count: %s", option);
         }
     }
 
@@ -64,10 +168,23 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a channel reading from the file named NAME. */
+    private ReadableByteChannel getInputChannel(String name) {
         try {
-            return new PrintStream(new File(name));
+            return FileChannel.open(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME, which is
+     *  created or truncated. */
+    private WritableByteChannel getOutput(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.WRITE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -75,53 +192,180 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  The first line of _input, and each later one
+     *  that starts with '*', gives settings (see setUp).  Every other
+     *  line is a message, whose conversion is printed in groups of five
+     *  letters (see MessagePipeline). */
     private void process() {
+        PhaseStats stats =
+            _stats ? new PhaseStats(PhaseStats.CONFIG) : null;
         Machine usedMachine = readConfig();
-        String next = _input.nextLine();
-        while (true) {
-            if (!usedMachine.setUp()) {
-                String settings = next;
-                setUp(usedMachine, settings);
-                if (_input.hasNextLine()) {
-                    next = _input.nextLine();
-                } else {
-                    _input.close();
-                    break;
-                }
-            } else if (next.startsWith("*") && usedMachine.setUp()) {
-                String settings = next;
-                setUp(usedMachine, settings);
-                if (_input.hasNextLine()) {
-                    next = _input.nextLine();
-                } else {
-                    _input.close();
-                    break;
+        if (stats != null) {
+            stats.enter(PhaseStats.OTHER);
+        }
+        if (_batchThreads > 0) {
+            processBatch(stats);
+        } else {
+            processSessions(usedMachine, stats);
+        }
+        if (_startupTime) {
+            reportStartup();
+        }
+        if (stats != null) {
+            stats.report(System.err);
+            if (_jfr) {
+                stats.emit();
+            }
+        }
+    }
+
+    /** Process _input as for process, converting with USEDMACHINE, and
+     *  recording phases and counts in STATS (if not null). */
+    private void processSessions(Machine usedMachine, PhaseStats stats) {
+        MessagePipeline pipeline =
+            new MessagePipeline(usedMachine, _alphabet,
+                                (line) -> setUp(usedMachine, line),
+                                _input, _output);
+        pipeline.setPool(_pool);
+        pipeline.setStats(stats);
+        try {
+            if (pipeline.run() == 0) {
+                throw error("no settings line");
+            }
+            _input.close();
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Process _input as for process, as a batch of independent
+     *  sessions on _batchThreads threads (see SessionBatch), reporting
+     *  the rate on the standard error, and adding the phases and counts
+     *  of the sessions to STATS (if not null). */
+    private void processBatch(PhaseStats stats) {
+        SessionBatch batch =
+            new SessionBatch(this::newMachine, _alphabet, Main::setUp,
+                             _input, _output, _batchThreads);
+        batch.setStats(stats);
+        try {
+            long start = System.nanoTime();
+            long sessions = batch.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (sessions == 0) {
+                throw error("no settings line");
+            }
+            _input.close();
+            System.err.printf("%d sessions in %.3f s (%.0f sessions/s)"
+                              + " on %d threads%n", sessions, seconds,
+                              sessions / seconds, _batchThreads);
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Return a new machine with the rotors read by readConfig, which
+     *  must have been called.  Machines share those rotors, which they
+     *  never change. */
+    private Machine newMachine() {
+        return new Machine(_alphabet, _numRotors, _numPawls, _rotors);
+    }
+
+    /** Report the time taken by readConfig and the time of the first
+     *  output on the standard error. */
+    private void reportStartup() {
+        System.err.printf("config read from %s in %.2f ms%n",
+                          _configFromCache ? "cache" : "text",
+                          _configTime / 1e6);
+        FirstWriteChannel output = (FirstWriteChannel) _output;
+        if (output.firstWrite() == null) {
+            System.err.println("no output");
+            return;
+        }
+        System.err.printf("first output %.2f ms after start of main",
+                          (output.firstWriteNanos() - _started) / 1e6);
+        ProcessHandle.current().info().startInstant().ifPresent(
+            (start) -> System.err.printf(
+                ", %d ms after JVM start",
+                Duration.between(start, output.firstWrite()).toMillis()));
+        System.err.println();
+    }
+
+    /** Return the configuration in the configuration file CONFIGNAME,
+     *  read as by readConfig, using the cache file CACHENAME unless it
+     *  is null.  This lets other programs (such as Bombe) read the same
+     *  configuration files. */
+    static CompiledConfig loadConfig(String configName, String cacheName) {
+        Main main = new Main();
+        main._configName = configName;
+        main._cacheName = cacheName;
+        main._config = main.getInput(configName);
+        return main.compiledConfig();
+    }
+
+    /** A Main that is used only to read a configuration. */
+    private Main() {
+    }
+
+    /** Return an Enigma machine configured from the contents of
+     *  configuration file _config, or from the cache file _cacheName if
+     *  that is not null and was made from the current configuration
+     *  file.  If the cache file is not up to date, it is remade. */
+    private Machine readConfig() {
+        long start = System.nanoTime();
+        CompiledConfig config = compiledConfig();
+        _alphabet = config.alphabet();
+        _rotors = config.rotors();
+        _numRotors = config.numRotors();
+        _numPawls = config.numPawls();
+        _configTime = System.nanoTime() - start;
+        return config.newMachine();
+    }
+
+    /** Return the configuration read as for readConfig. */
+    private CompiledConfig compiledConfig() {
+        CompiledConfig config = null;
+        if (_cacheName != null) {
+            try {
+                config = CompiledConfig.load(Paths.get(_cacheName),
+                                             Paths.get(_configName));
+            } catch (IOException excp) {
+                config = null;
+            }
+        }
+        if (config != null) {
+            _configFromCache = true;
+            _config.close();
+        } else {
+            config = parseConfig();
+            if (_cacheName != null) {
+                try {
+                    config.save(Paths.get(_cacheName),
+                                Paths.get(_configName));
+                } catch (IOException excp) {
+                    System.err.printf("Warning: could not write %s: %s%n",
+                                      _cacheName, excp.getMessage());
                 }
-            } else if (!_input.hasNextLine()) {
-                printMessageLine(usedMachine.convert(next.toUpperCase()));
-                _input.close();
-                break;
-            } else {
-                printMessageLine(usedMachine.convert(next.toUpperCase()));
-                next = _input.nextLine();
             }
         }
+        return config;
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config.
+    /** Return the configuration in configuration file _config.
      *  Essentially, configure all ROTORS and make a ROTORS collection here.
      *  Then set up a machine with these rotors, and the correct number of pawls
      *  and rotors
      *  Use readRotors() method to set up rotors with their permutations.
      */
-    private Machine readConfig() {
+    private CompiledConfig parseConfig() {
 
         try {
             String alphab = _config.next();
-            if (!alphab.equals("ABCDEFGHIJKLMNOPQRSTUVWXYZ")) {
+            if (alphab.matches(".*[()*].*")) {
                 throw new EnigmaException("Wrong alphabet format.");
+            } else if (alphab.equals("ABCDEFGHIJKLMNOPQRSTUVWXYZ")) {
+                _alphabet = new UpperCaseAlphabet();
+            } else {
+                _alphabet = new Alphabet(alphab);
             }
             String stringRotors = _config.next();
             String stringPawls = _config.next();
@@ -154,8 +398,8 @@ public final class Main {
                     secondLine = _config.nextLine().trim();
                 }
             }
-            _alphabet = new UpperCaseAlphabet();
-            return new Machine(_alphabet, numRotors, numPawls, rotors);
+            return new CompiledConfig(_alphabet, numRotors, numPawls,
+                                      rotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         } catch (NumberFormatException e) {
@@ -217,65 +461,129 @@ public final class Main {
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment.
      *  Set up plugboard and rotors order here
-     *  Get SETTINGS from process
+     *  Get SETTINGS from process (or from a request to Server).
      */
-    private void setUp(Machine M, String settings) {
-        Scanner settingScan = new Scanner(settings);
-        if (!settingScan.next().equals("*")) {
-            _input.close();
-            throw new EnigmaException("Bad settings description");
-        } else {
-            String[] rotorsArray = new String[M.numRotors()];
-            for (int i = 0; i < M.numRotors(); i += 1) {
-                String newRotor = settingScan.next();
-                rotorsArray[i] = newRotor;
-            }
-            if (rotorsArray.length == 0) {
-                throw new EnigmaException("No rotors detected");
-            }
-            M.insertRotors(rotorsArray);
-            String rotorSetting = settingScan.next();
-            M.setRotors(rotorSetting);
-            String plugPerms = "";
-            while (settingScan.hasNext()) {
-                plugPerms += settingScan.next();
+    static void setUp(Machine M, String settings) {
+        try {
+            Scanner settingScan = new Scanner(settings);
+            if (!settingScan.next().equals("*")) {
+                throw new EnigmaException("Bad settings description");
+            } else {
+                String[] rotorsArray = new String[M.numRotors()];
+                for (int i = 0; i < M.numRotors(); i += 1) {
+                    String newRotor = settingScan.next();
+                    rotorsArray[i] = newRotor;
+                }
+                if (rotorsArray.length == 0) {
+                    throw new EnigmaException("No rotors detected");
+                }
+                M.insertRotors(rotorsArray);
+                String rotorSetting = settingScan.next();
+                M.setRotors(rotorSetting);
+                String plugPerms = "";
+                while (settingScan.hasNext()) {
+                    plugPerms += settingScan.next();
+                }
+                M.setPlugboard(new Permutation(plugPerms, M.alphabet()));
             }
-            M.setPlugboard(new Permutation(plugPerms, _alphabet));
+        } catch (NoSuchElementException excp) {
+            throw error("Bad settings description");
         }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        char[] msgArray = msg.toCharArray();
-        int totalChar = 0;
-        while (totalChar < msgArray.length) {
-            int charCount = 0;
-            while ((charCount < 5) && (totalChar < msgArray.length)) {
-                if (msgArray.equals(" ")) {
-                    totalChar += 1;
-                } else {
-                    _output.print(msgArray[totalChar]);
-                    charCount += 1;
-                    totalChar += 1;
-                }
-            }
-            if (charCount < msgArray.length) {
-                _output.print(" ");
+    /** A channel that passes writes on to another, noting when the
+     *  first one happens. */
+    private static class FirstWriteChannel implements WritableByteChannel {
+
+        /** A channel writing to OUTPUT. */
+        FirstWriteChannel(WritableByteChannel output) {
+            _output = output;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (_firstWrite == null && src.hasRemaining()) {
+                _firstWriteNanos = System.nanoTime();
+                _firstWrite = Instant.now();
             }
+            return _output.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _output.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _output.close();
+        }
+
+        /** Return the time of the first write, or null if none. */
+        Instant firstWrite() {
+            return _firstWrite;
+        }
+
+        /** Return the value of System.nanoTime at the first write. */
+        long firstWriteNanos() {
+            return _firstWriteNanos;
         }
-        _output.println();
+
+        /** The channel written to. */
+        private final WritableByteChannel _output;
+        /** The time of the first write, or null. */
+        private Instant _firstWrite;
+        /** See firstWriteNanos. */
+        private long _firstWriteNanos;
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet = new UpperCaseAlphabet();
 
     /** Source of input messages. */
-    private Scanner _input;
+    private ReadableByteChannel _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** The name of the configuration file. */
+    private String _configName;
+
+    /** The name of the configuration cache file, or null if the cache
+     *  is not used. */
+    private String _cacheName;
+
+    /** True iff the configuration came from the cache. */
+    private boolean _configFromCache;
+
+    /** True iff startup times are to be reported. */
+    private boolean _startupTime;
+
+    /** True iff phase times and counts are to be reported (see
+     *  PhaseStats), and iff they are also to be emitted as JFR
+     *  events. */
+    private boolean _stats, _jfr;
+
+    /** The value of System.nanoTime when I was created. */
+    private final long _started = System.nanoTime();
+
+    /** The time taken by readConfig, in nanoseconds. */
+    private long _configTime;
+
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private WritableByteChannel _output;
+
+    /** Pool on which long message lines are converted, or null if they
+     *  are converted sequentially. */
+    private ForkJoinPool _pool;
+
+    /** Number of threads for batch mode, or 0 if not in batch mode. */
+    private int _batchThreads;
+
+    /** The rotors read from the configuration. */
+    private ArrayList<Rotor> _rotors;
+
+    /** The numbers of rotor slots and pawls read from the
+     *  configuration. */
+    private int _numRotors, _numPawls;
 }
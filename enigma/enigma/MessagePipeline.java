@@ -0,0 +1,454 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/** Converts the lines of an input channel, in the format read by Main,
+ *  to an output channel.  The first line, and each later line that
+ *  starts with '*', is a settings line, which is passed to a handler
+ *  that sets up the machine.  Every other line is a message, whose
+ *  characters are converted to upper case and those in the machine's
+ *  alphabet converted by the machine and written in groups of five
+ *  separated by blanks (see flushLetters and endLine).
+ *
+ *  The input is read into a large direct buffer, and handled a byte at
+ *  a time.  ASCII bytes of message lines are upper-cased and filtered
+ *  through a table; the letters are collected into a batch that the
+ *  machine converts in place, and the results written into a reusable
+ *  output buffer that is flushed to the output channel when full.
+ *  Message lines of any length are handled in constant space.
+ *
+ *  The result is exactly as if the input were read a line at a time
+ *  with a Scanner, each message line converted with toUpperCase, and
+ *  the result printed with a line separator: lines end at "\r\n", '\n',
+ *  '\r', U+0085, U+2028, or U+2029; input is decoded with the default
+ *  charset, which must be UTF-8 or a single-byte extension of ASCII,
+ *  and malformed input reads as U+FFFD; and characters outside ASCII
+ *  are upper-cased (as by toUpperCase on that character alone, so that,
+ *  for example, U+00DF, sharp s, becomes "SS").
+ *  @author Ze Martinho
+ */
+class MessagePipeline {
+
+    /** Default size of the input and output buffers, in bytes. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** Number of letters converted at a time, sequentially. */
+    static final int BATCH = 1 << 16;
+
+    /** A pipeline converting the lines of INPUT with MACHINE, whose
+     *  alphabet is ALPHABET, and writing them to OUTPUT, with buffers of
+     *  BUFFERSIZE bytes.  SETUP is applied to each settings line. */
+    MessagePipeline(Machine machine, Alphabet alphabet,
+                    Consumer<String> setUp, ReadableByteChannel input,
+                    WritableByteChannel output, int bufferSize) {
+        _machine = machine;
+        _alphabet = alphabet;
+        _setUp = setUp;
+        _input = input;
+        _output = output;
+        _in = ByteBuffer.allocateDirect(bufferSize);
+        _out = ByteBuffer.allocateDirect(bufferSize);
+        _letters = new char[Math.min(BATCH, bufferSize)];
+        for (int b = 0; b < 128; b += 1) {
+            if (ASCII_UPPER[b] != 0 && alphabet.contains(ASCII_UPPER[b])) {
+                _upper[b] = (byte) ASCII_UPPER[b];
+            }
+        }
+    }
+
+    /** A pipeline as for MessagePipeline(MACHINE, ALPHABET, SETUP, INPUT,
+     *  OUTPUT, BUFFER_SIZE). */
+    MessagePipeline(Machine machine, Alphabet alphabet,
+                    Consumer<String> setUp, ReadableByteChannel input,
+                    WritableByteChannel output) {
+        this(machine, alphabet, setUp, input, output, BUFFER_SIZE);
+    }
+
+    /** Convert batches of message letters on POOL (if not null), in
+     *  chunks as by Machine.convertParallel. */
+    void setPool(ForkJoinPool pool) {
+        _pool = pool;
+        int size = pool == null ? BATCH : 4 * Machine.PARALLEL_CHUNK;
+        _letters = new char[size];
+        _converted = pool == null ? null : new char[size];
+    }
+
+    /** Record the time spent in each phase of run, and its counts, in
+     *  STATS (if not null). */
+    void setStats(PhaseStats stats) {
+        _stats = stats;
+    }
+
+    /** Convert all the lines of my input, writing the results to my
+     *  output.  Returns the number of lines read.  Output up to the
+     *  point of any exception is written. */
+    long run() throws IOException {
+        int phase = _stats == null ? 0 : _stats.enter(PhaseStats.SCAN);
+        try {
+            ByteBuffer in = _in;
+            byte[] upper = _upper;
+            while (read(in) >= 0) {
+                int n = in.position();
+                _bytesIn += n;
+                for (int i = 0; i < n; i += 1) {
+                    byte b = in.get(i);
+                    if (_kind == MESSAGE && b >= 0 && _need == 0) {
+                        byte u = upper[b];
+                        if (u != 0) {
+                            if (_batched == _letters.length) {
+                                flushLetters();
+                            }
+                            _letters[_batched] = (char) u;
+                            _batched += 1;
+                            _pendingCR = false;
+                            continue;
+                        } else if (b != '\n' && b != '\r') {
+                            _pendingCR = false;
+                            continue;
+                        }
+                    }
+                    decode(b);
+                }
+                in.clear();
+            }
+            if (_need > 0) {
+                _need = 0;
+                codePoint(REPLACEMENT);
+            }
+            if (_kind != START) {
+                endLine();
+            }
+        } finally {
+            drain();
+            if (_stats != null) {
+                _stats.enter(phase);
+                _stats.count(_bytesIn, _settingsLines,
+                             _lines - _settingsLines, _lettersConverted,
+                             _bytesOut);
+            }
+        }
+        return _lines;
+    }
+
+    /** Read from my input into IN, returning the number of bytes read,
+     *  or -1 at its end. */
+    private int read(ByteBuffer in) throws IOException {
+        if (_stats == null) {
+            return _input.read(in);
+        }
+        int phase = _stats.enter(PhaseStats.READ);
+        try {
+            return _input.read(in);
+        } finally {
+            _stats.enter(phase);
+        }
+    }
+
+    /** Handle the input byte B, decoding UTF-8 sequences. */
+    private void decode(byte b) {
+        int v = b & 0xFF;
+        if (_need > 0) {
+            if ((v & 0xC0) == 0x80) {
+                _codePoint = (_codePoint << 6) | (v & 0x3F);
+                _need -= 1;
+                if (_need == 0) {
+                    int cp = _codePoint;
+                    boolean valid = cp >= _min
+                        && cp <= Character.MAX_CODE_POINT
+                        && (cp < Character.MIN_SURROGATE
+                            || cp > Character.MAX_SURROGATE);
+                    codePoint(valid ? cp : REPLACEMENT);
+                }
+                return;
+            }
+            _need = 0;
+            codePoint(REPLACEMENT);
+        }
+        if (v < 0x80) {
+            codePoint(v);
+        } else if (HIGH != null) {
+            codePoint(HIGH[v - 0x80]);
+        } else if (v >= 0xC2 && v <= 0xDF) {
+            startSequence(v & 0x1F, 1, 0x80);
+        } else if (v >= 0xE0 && v <= 0xEF) {
+            startSequence(v & 0x0F, 2, 0x800);
+        } else if (v >= 0xF0 && v <= 0xF4) {
+            startSequence(v & 0x07, 3, 0x10000);
+        } else {
+            codePoint(REPLACEMENT);
+        }
+    }
+
+    /** Start a UTF-8 sequence whose lead byte contributes BITS, with
+     *  NEED continuation bytes, encoding a code point of at least MIN. */
+    private void startSequence(int bits, int need, int min) {
+        _codePoint = bits;
+        _need = need;
+        _min = min;
+    }
+
+    /** Handle the input character whose code point is CP. */
+    private void codePoint(int cp) {
+        boolean afterCR = _pendingCR;
+        _pendingCR = false;
+        if (cp == '\n') {
+            if (!afterCR) {
+                endLine();
+            }
+            return;
+        } else if (cp == '\r') {
+            endLine();
+            _pendingCR = true;
+            return;
+        } else if (cp == NEXT_LINE || cp == LINE_SEPARATOR
+                   || cp == PARAGRAPH_SEPARATOR) {
+            endLine();
+            return;
+        }
+        if (_kind == START) {
+            _kind = cp == '*' || !_machine.setUp() ? SETTINGS : MESSAGE;
+        }
+        if (_kind == SETTINGS) {
+            _settings.appendCodePoint(cp);
+        } else if (cp < 128) {
+            if (_upper[cp] != 0) {
+                addLetter((char) _upper[cp]);
+            }
+        } else {
+            for (char c : upperCase(cp)) {
+                addLetter(c);
+            }
+        }
+    }
+
+    /** Return the characters of my alphabet in the upper case of the
+     *  character whose code point is CP. */
+    private char[] upperCase(int cp) {
+        char[] result = _upperCases.get(cp);
+        if (result == null) {
+            String upper = new String(Character.toChars(cp)).toUpperCase();
+            StringBuilder letters = new StringBuilder();
+            for (int i = 0; i < upper.length(); i += 1) {
+                if (_alphabet.contains(upper.charAt(i))) {
+                    letters.append(upper.charAt(i));
+                }
+            }
+            result = letters.toString().toCharArray();
+            _upperCases.put(cp, result);
+        }
+        return result;
+    }
+
+    /** Add the message letter C to the current batch. */
+    private void addLetter(char c) {
+        if (_batched == _letters.length) {
+            flushLetters();
+        }
+        _letters[_batched] = c;
+        _batched += 1;
+    }
+
+    /** Finish the current line. */
+    private void endLine() {
+        _lines += 1;
+        if (_kind == START) {
+            _kind = _machine.setUp() ? MESSAGE : SETTINGS;
+        }
+        if (_kind == SETTINGS) {
+            String settings = _settings.toString();
+            _settings.setLength(0);
+            _kind = START;
+            _settingsLines += 1;
+            if (_stats == null) {
+                _setUp.accept(settings);
+            } else {
+                int phase = _stats.enter(PhaseStats.SETUP);
+                try {
+                    _setUp.accept(settings);
+                } finally {
+                    _stats.enter(phase);
+                }
+            }
+            return;
+        }
+        flushLetters();
+        if (_lineLetters > 5) {
+            put((byte) ' ');
+        }
+        for (byte b : _newline) {
+            put(b);
+        }
+        _lineLetters = 0;
+        _kind = START;
+    }
+
+    /** Convert the current batch of letters and write them to the
+     *  output buffer, grouped in fives.  Groups are separated by a
+     *  blank, and when the line has more than five letters, its last
+     *  group is followed by one as well (see endLine). */
+    private void flushLetters() {
+        int n = _batched;
+        if (n == 0) {
+            return;
+        }
+        int phase = _stats == null ? 0 : _stats.enter(PhaseStats.CONVERT);
+        char[] result;
+        if (_pool != null && n >= 2 * Machine.PARALLEL_CHUNK) {
+            _machine.convertParallel(_letters, 0, n, _converted, 0, _pool);
+            result = _converted;
+        } else {
+            _machine.convert(_letters, 0, n, _letters, 0);
+            result = _letters;
+        }
+        _lettersConverted += n;
+        if (_stats != null) {
+            _stats.enter(PhaseStats.FORMAT);
+        }
+        long count = _lineLetters;
+        for (int i = 0; i < n; i += 1) {
+            if (count > 0 && count % 5 == 0) {
+                put((byte) ' ');
+            }
+            put((byte) result[i]);
+            count += 1;
+        }
+        _lineLetters = count;
+        _batched = 0;
+        if (_stats != null) {
+            _stats.enter(phase);
+        }
+    }
+
+    /** Add B to the output buffer, flushing it if it is full. */
+    private void put(byte b) {
+        if (!_out.hasRemaining()) {
+            drain();
+        }
+        _out.put(b);
+    }
+
+    /** Write the contents of the output buffer to my output and empty
+     *  it. */
+    private void drain() {
+        int phase = _stats == null ? 0 : _stats.enter(PhaseStats.WRITE);
+        _out.flip();
+        _bytesOut += _out.remaining();
+        try {
+            while (_out.hasRemaining()) {
+                _output.write(_out);
+            }
+        } catch (IOException excp) {
+            throw new EnigmaException("could not write output: "
+                                      + excp.getMessage());
+        } finally {
+            if (_stats != null) {
+                _stats.enter(phase);
+            }
+        }
+        _out.clear();
+    }
+
+    /** Kinds of line: not yet known (nothing read yet). */
+    private static final int START = 0;
+    /** Kinds of line: settings. */
+    private static final int SETTINGS = 1;
+    /** Kinds of line: message. */
+    private static final int MESSAGE = 2;
+
+    /** Line-ending code points other than '\r' and '\n'. */
+    private static final int NEXT_LINE = 0x85, LINE_SEPARATOR = 0x2028,
+        PARAGRAPH_SEPARATOR = 0x2029;
+
+    /** The code point read for malformed input. */
+    private static final int REPLACEMENT = 0xFFFD;
+
+    /** ASCII_UPPER[B] is the upper case of the ASCII character B, if
+     *  that is a single ASCII character, and otherwise 0. */
+    private static final char[] ASCII_UPPER = new char[128];
+
+    /** If not null, the default charset is not UTF-8, and HIGH[B] is
+     *  the code point of the byte B + 128 in it. */
+    private static final int[] HIGH;
+
+    static {
+        for (int b = 0; b < 128; b += 1) {
+            String upper = String.valueOf((char) b).toUpperCase();
+            if (upper.length() == 1 && upper.charAt(0) < 128) {
+                ASCII_UPPER[b] = upper.charAt(0);
+            }
+        }
+        Charset charset = Charset.defaultCharset();
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            HIGH = null;
+        } else {
+            HIGH = new int[128];
+            for (int b = 0; b < 128; b += 1) {
+                byte[] bytes = { (byte) (b + 128) };
+                String decoded = new String(bytes, charset);
+                HIGH[b] = decoded.length() == 1 ? decoded.charAt(0)
+                    : REPLACEMENT;
+            }
+        }
+    }
+
+    /** The machine that converts messages. */
+    private final Machine _machine;
+    /** The machine's alphabet. */
+    private final Alphabet _alphabet;
+    /** Handler for settings lines. */
+    private final Consumer<String> _setUp;
+    /** Source of lines. */
+    private final ReadableByteChannel _input;
+    /** Destination of converted lines. */
+    private final WritableByteChannel _output;
+    /** Input buffer. */
+    private final ByteBuffer _in;
+    /** Output buffer. */
+    private final ByteBuffer _out;
+    /** The line separator, as bytes. */
+    private final byte[] _newline = System.lineSeparator().getBytes();
+    /** _upper[B] is the upper case of the ASCII character B if that is
+     *  in the alphabet, and otherwise 0. */
+    private final byte[] _upper = new byte[128];
+    /** Letters of the upper cases of non-ASCII code points, as
+     *  computed so far (see upperCase). */
+    private final HashMap<Integer, char[]> _upperCases = new HashMap<>();
+    /** Pool for parallel conversion, or null. */
+    private ForkJoinPool _pool;
+
+    /** The kind of the current line. */
+    private int _kind = START;
+    /** The current settings line, as read so far. */
+    private final StringBuilder _settings = new StringBuilder();
+    /** The current batch of message letters is _letters[0 .. _batched - 1],
+     *  converted in place unless converted in parallel into _converted. */
+    private char[] _letters, _converted;
+    /** See _letters. */
+    private int _batched;
+    /** The number of letters written for the current message line. */
+    private long _lineLetters;
+    /** True iff the last character read was '\r'. */
+    private boolean _pendingCR;
+    /** The bits of the UTF-8 sequence being decoded. */
+    private int _codePoint;
+    /** The number of continuation bytes still needed by the UTF-8
+     *  sequence being decoded, or 0 if none. */
+    private int _need;
+    /** The smallest code point the current UTF-8 sequence may encode. */
+    private int _min;
+    /** The number of lines read. */
+    private long _lines;
+    /** The numbers of settings lines read, bytes read and written, and
+     *  letters converted. */
+    private long _settingsLines, _bytesIn, _bytesOut, _lettersConverted;
+    /** Where the times and counts of run are recorded, or null. */
+    private PhaseStats _stats;
+}
@@ -0,0 +1,217 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** Tests of MessagePipeline against the line-at-a-time processing that
+ *  Main formerly did.
+ *  @author Ze Martinho
+ */
+public class MessagePipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a new five-slot machine with some of the naval rotors. */
+    static Machine newMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("BETA", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        String[][] moving = {
+            { "I", "Q" }, { "III", "V" }, { "IV", "J" }, { "VI", "ZM" },
+            { "VIII", "ZM" },
+        };
+        for (String[] r : moving) {
+            rotors.add(new MovingRotor(r[0], new Permutation(NAVALA.get(r[0]),
+                                                             UPPER), r[1]));
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Set up M from the settings line SETTINGS, as Main does. */
+    static void setUp(Machine m, String settings) {
+        Scanner scan = new Scanner(settings);
+        if (!scan.hasNext() || !scan.next().equals("*")) {
+            throw new EnigmaException("Bad settings description");
+        }
+        String[] rotors = new String[m.numRotors()];
+        for (int i = 0; i < rotors.length; i += 1) {
+            rotors[i] = scan.next();
+        }
+        m.insertRotors(rotors);
+        m.setRotors(scan.next());
+        String plugs = "";
+        while (scan.hasNext()) {
+            plugs += scan.next();
+        }
+        m.setPlugboard(new Permutation(plugs, UPPER));
+    }
+
+    /** Return the output of processing INPUT as Main formerly did:
+     *  reading lines with Scanner.nextLine, converting each message
+     *  line's toUpperCase, and printing it in groups of five. */
+    private static String reference(byte[] input) {
+        Machine m = newMachine();
+        StringBuilder out = new StringBuilder();
+        Scanner lines = new Scanner(new ByteArrayInputStream(input));
+        while (lines.hasNextLine()) {
+            String line = lines.nextLine();
+            if (!m.setUp() || line.startsWith("*")) {
+                setUp(m, line);
+                continue;
+            }
+            String msg = m.convert(line.toUpperCase());
+            for (int i = 0; i < msg.length(); i += 1) {
+                if (i > 0 && i % 5 == 0) {
+                    out.append(' ');
+                }
+                out.append(msg.charAt(i));
+            }
+            if (msg.length() > 5) {
+                out.append(' ');
+            }
+            out.append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    /** Return the output of a MessagePipeline with buffers of BUFFERSIZE
+     *  bytes on INPUT. */
+    private static String pipeline(byte[] input, int bufferSize)
+        throws IOException {
+        Machine m = newMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessagePipeline pipeline =
+            new MessagePipeline(m, UPPER, (line) -> setUp(m, line),
+                                Channels.newChannel(
+                                    new ByteArrayInputStream(input)),
+                                Channels.newChannel(out), bufferSize);
+        pipeline.run();
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    /** Check that the pipeline matches reference on TEXT, encoded as
+     *  ENCODED, for several buffer sizes. */
+    private static void check(byte[] encoded) throws IOException {
+        String expected = reference(encoded);
+        for (int size : new int[] { 1, 2, 3, 7, 64, 4096 }) {
+            assertEquals("buffer size " + size, expected,
+                         pipeline(encoded, size));
+        }
+    }
+
+    /** Check as for check(byte[]) on TEXT encoded in UTF-8. */
+    private static void check(String text) throws IOException {
+        check(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSimple() throws IOException {
+        check("* B BETA I III VIII AAAA (HJ) (OK)\nHello world\n\n"
+              + "abcde\nabcdef\n* B BETA IV VI VIII ZZZZ\n"
+              + "The quick brown fox jumps over the lazy dog.\n");
+        check("* B BETA I III VIII AAAA\nno final newline");
+        check("* B BETA I III VIII AAAA\n \t*star in message\nx*y\n");
+    }
+
+    @Test
+    public void testLineEnds() throws IOException {
+        check("* B BETA I III VIII AAAA\r\nDOS lines\r\nhere\r\n\r\nend");
+        check("* B BETA I III VIII AAAA\rold mac\r\rlines\r");
+        check("* B BETA I III VIII AAAA\n\r\n\n\r\rmixed\r\n\n");
+        check("* B BETA I III VIII AAAA\nA\u2028B\u2029C\u0085D\u2028");
+    }
+
+    @Test
+    public void testNonAscii() throws IOException {
+        check("* B BETA I III VIII AAAA\nStra\u00dfe \u017fo \u0131t "
+              + "\ufb03x caf\u00e9 \u00e9t\u00e9 \ud83d\ude00ok\n");
+        byte[] malformed = {
+            '*', ' ', 'B', ' ', 'B', 'E', 'T', 'A', ' ', 'I', ' ',
+            'I', 'I', 'I', ' ', 'V', 'I', 'I', 'I', ' ', 'A', 'A', 'A',
+            'A', '\n', 'a', (byte) 0xC3, 'b', (byte) 0xE2, (byte) 0x80,
+            'c', (byte) 0xC0, (byte) 0x81, 'd', (byte) 0xFF, '\n',
+            (byte) 0xE2, (byte) 0x80, (byte) 0xA8, 'e', (byte) 0xC2,
+        };
+        check(malformed);
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        Random random = new Random(37);
+        String pieces = "abcXYZ  .,-!\n\n\r\u00df\u00e9";
+        for (int round = 0; round < 20; round += 1) {
+            StringBuilder text =
+                new StringBuilder("* B BETA VI VIII IV AMZY (AB) (CD)\n");
+            int n = random.nextInt(400);
+            for (int i = 0; i < n; i += 1) {
+                if (random.nextInt(50) == 0) {
+                    text.append("\n* B BETA I III VIII QZZZ\n");
+                } else {
+                    text.append(pieces.charAt(
+                                    random.nextInt(pieces.length())));
+                }
+            }
+            check(text.toString());
+        }
+    }
+
+    @Test
+    public void testLongLine() throws IOException {
+        StringBuilder text = new StringBuilder("* B BETA I III VIII AAAA\n");
+        Random random = new Random(38);
+        for (int i = 0; i < 3 * MessagePipeline.BATCH + 17; i += 1) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        text.append("\nshort\n");
+        byte[] input = text.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(reference(input), pipeline(input, 1000));
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        byte[] input = ("* B BETA I III VIII AAAA (HJ) (OK)\nHello world\n\n"
+                        + "* B BETA IV VI VIII ZZZZ\nabcdef\n")
+            .getBytes(StandardCharsets.UTF_8);
+        Machine m = newMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessagePipeline pipeline =
+            new MessagePipeline(m, UPPER, (line) -> setUp(m, line),
+                                Channels.newChannel(
+                                    new ByteArrayInputStream(input)),
+                                Channels.newChannel(out), 16);
+        PhaseStats stats = new PhaseStats(PhaseStats.OTHER);
+        pipeline.setStats(stats);
+        pipeline.run();
+        assertArrayEquals(new long[] { input.length, 2, 3, 16, out.size() },
+                          stats.counts());
+        assertTrue(stats.nanos(PhaseStats.SETUP) > 0);
+        assertTrue(stats.nanos(PhaseStats.CONVERT) > 0);
+        assertTrue(stats.nanos(PhaseStats.WRITE) > 0);
+        assertEquals(pipeline(input, 16),
+                     new String(out.toByteArray(),
+                                StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissingSettings() throws IOException {
+        pipeline("HELLO\n".getBytes(StandardCharsets.UTF_8), 64);
+    }
+
+}
@@ -2,6 +2,8 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
+import java.util.Arrays;
+
 /** Class that represents a rotating rotor in the enigma machine.
  *  @author Ze Martinho
  */
@@ -14,7 +16,20 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches.toCharArray();
+        _notches = new long[(perm.size() + 63) / 64];
+        for (int i = 0; i < notches.length(); i += 1) {
+            int k = alphabet().toInt(notches.charAt(i));
+            _notches[k >>> 6] |= 1L << k;
+        }
+    }
+
+    /** A rotor named NAME whose permutation in its default setting is
+     *  PERM, and whose notches are given by NOTCHES, a bit set: bit K % 64
+     *  of NOTCHES[K / 64] is set iff there is a notch at setting K.
+     *  NOTCHES is copied. */
+    MovingRotor(String name, Permutation perm, long[] notches) {
+        super(name, perm);
+        _notches = Arrays.copyOf(notches, (perm.size() + 63) / 64);
     }
 
     @Override
@@ -32,16 +47,12 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length; i += 1) {
-            if (setting() == alphabet().toInt(_notches[i])) {
-                return true;
-            }
-        }
-        return false;
+    boolean atNotch(int setting) {
+        return (_notches[setting >>> 6] & (1L << setting)) != 0;
     }
 
-    /** An array of characters where the notches are.
+    /** The settings at which I have notches, as a bit set: bit K % 64 of
+     *  _notches[K / 64] is set iff I have a notch at setting K.
      */
-    private char[] _notches;
+    private final long[] _notches;
 }
@@ -71,6 +71,35 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkBoundedMode() {
+        for (String name : NAVALA.keySet()) {
+            setRotor(name, NAVALA, "");
+            Rotor full = rotor;
+            setRotor(name, NAVALA, "");
+            rotor.useFullTables(false);
+            assertTrue(full.fullTables());
+            assertFalse(rotor.fullTables());
+            for (int k = 0; k < 26; k += 1) {
+                full.set(k);
+                rotor.set(k);
+                for (int p = 0; p < 26; p += 1) {
+                    assertEquals(msg(name, "forward %d at %d", p, k),
+                                 full.convertForward(p),
+                                 rotor.convertForward(p));
+                    assertEquals(msg(name, "backward %d at %d", p, k),
+                                 full.convertBackward(p),
+                                 rotor.convertBackward(p));
+                }
+            }
+        }
+        setRotor("I", NAVALA, "");
+        rotor.useFullTables(false);
+        rotor.set(25);
+        checkRotor("Rotor I set (bounded)", UPPER_STRING,
+                   NAVALZ_MAP.get("I"));
+    }
+
     @Test
     public void checkRotorSetNegative() {
         setRotor("I", NAVALA, "");
@@ -2,9 +2,13 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The permutation and its inverse are
+ *  kept as tables indexed by character index, so that applying either one
+ *  is a single array access.  The algebraic operations (compose, inverse,
+ *  power, rotated) return new Permutations and leave this one unchanged.
  *  @author Ze Martinho
  */
 class Permutation {
@@ -12,39 +16,93 @@ class Permutation {
     /** Set this Permutation to that specified by CYCLES, a string in the
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters not
-     *  included in any cycle map to themselves. Whitespace is ignored. */
+     *  included in any cycle map to themselves. Whitespace is ignored.
+     *  No character may appear more than once. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
-        _cyclesList = new ArrayList<ArrayList<Character>>();
-        char[] cyclesChar = _cycles.toCharArray();
+        _forward = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = i;
+        }
+        boolean[] seen = new boolean[_forward.length];
         int i = 0;
-        while (i < cyclesChar.length) {
-            if (cyclesChar[i] == '(') {
-                int k = i + 1;
-                for ( ; cyclesChar[k] != ')'; k += 1) {
-                    if (!alphabet.contains(cyclesChar[k])) {
-                        throw new EnigmaException("Permutation not closed.");
-                    }
+        while (i < cycles.length()) {
+            if (cycles.charAt(i) == '(') {
+                int k = cycles.indexOf(')', i);
+                if (k == -1) {
+                    throw error("Permutation not closed.");
                 }
-                char[] cycle = new char[k - i - 1];
-                System.arraycopy(cyclesChar, i + 1, cycle, 0, k - i - 1);
-                addCycle(new String(cycle));
-                i = k;
+                addCycle(cycles.substring(i + 1, k), seen);
+                i = k + 1;
             } else {
                 i += 1;
             }
         }
+        _inverse = invertTable(_forward);
+    }
+
+    /** A permutation of ALPHABET whose table is FORWARD, which must be a
+     *  permutation of 0 .. ALPHABET.size() - 1.  FORWARD becomes owned by
+     *  the result. */
+    private Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = invertTable(forward);
+    }
+
+    /** Return the permutation of ALPHABET that maps each index P to
+     *  TABLE[P].  TABLE must contain each of 0 .. ALPHABET.size() - 1
+     *  exactly once, and is copied.  Unlike cycle notation, this can
+     *  describe permutations of alphabets containing '(' and ')', such
+     *  as ByteAlphabet. */
+    static Permutation fromTable(int[] table, Alphabet alphabet) {
+        if (table.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        boolean[] seen = new boolean[table.length];
+        for (int p : table) {
+            if (p < 0 || p >= table.length || seen[p]) {
+                throw error("table is not a permutation");
+            }
+            seen[p] = true;
+        }
+        return new Permutation(table.clone(), alphabet);
     }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        char[] chars = cycle.toCharArray();
-        ArrayList<Character> entry = new ArrayList<Character>();
-        for (int i = 0; i < chars.length; i += 1) {
-            entry.add(chars[i]);
+     *  c0c1...cm.  SEEN marks the indices of the characters that have
+     *  appeared in earlier cycles, and is updated. */
+    private void addCycle(String cycle, boolean[] seen) {
+        int first = -1, prev = -1;
+        for (int k = 0; k < cycle.length(); k += 1) {
+            char c = cycle.charAt(k);
+            if (!_alphabet.contains(c)) {
+                throw error("Permutation not closed.");
+            }
+            int p = _alphabet.toInt(c);
+            if (seen[p]) {
+                throw error("character %c repeated in permutation", c);
+            }
+            seen[p] = true;
+            if (prev == -1) {
+                first = p;
+            } else {
+                _forward[prev] = p;
+            }
+            prev = p;
+        }
+        if (prev != -1) {
+            _forward[prev] = first;
+        }
+    }
+
+    /** Return the inverse of the permutation table TABLE. */
+    private static int[] invertTable(int[] table) {
+        int[] result = new int[table.length];
+        for (int i = 0; i < table.length; i += 1) {
+            result[table[i]] = i;
         }
-        _cyclesList.add(_cyclesList.size(), entry);
+        return result;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -58,80 +116,36 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int remainder;
-        if (p >= 0) {
-            remainder = p % size();
-        } else {
-            remainder = size() + (p % size());
+        if (p < 0 || p >= _forward.length) {
+            p = wrap(p);
         }
-        char permuted = permute(_alphabet.toChar(remainder));
-        return _alphabet.toInt(permuted);
+        return _forward[p];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int remainder;
-        if (c >= 0) {
-            remainder = c % size();
-        } else {
-            remainder = size() + (c % size());
+        if (c < 0 || c >= _inverse.length) {
+            c = wrap(c);
         }
-        char inverted = invert(_alphabet.toChar(remainder));
-        return _alphabet.toInt(inverted);
+        return _inverse[c];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        int index = -1;
-        ArrayList<Character> correctList = new ArrayList<Character>();
-        int i = 0;
-        while (i < _cyclesList.size()) {
-            index = _cyclesList.get(i).indexOf(p);
-            if (index != -1) {
-                correctList = _cyclesList.get(i);
-                break;
-            } else {
-                i += 1;
-            }
-        }
-        if (index == -1) {
-            return p;
-        } else if (index == correctList.size() - 1) {
-            return correctList.get(0);
-        } else {
-            return correctList.get(index + 1);
-        }
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        int index = -1;
-        ArrayList<Character> correctList = new ArrayList<Character>();
-        int i = 0;
-        while (i < _cyclesList.size()) {
-            index = _cyclesList.get(i).indexOf(c);
-            if (index != -1) {
-                correctList = _cyclesList.get(i);
-                break;
-            } else {
-                i += 1;
-            }
-        }
-        if (index == -1) {
-            return c;
-        } else if (index == 0) {
-            return correctList.get(correctList.size() - 1);
-        } else {
-            return correctList.get(index - 1);
-        }
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -142,24 +156,136 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (ArrayList<Character> list : _cyclesList) {
-            for (int i = 0; i < list.size(); i += 1) {
-                if (permute(list.get(i)) == list.get(i)) {
-                    return false;
-                }
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff I am an involution (i.e., consist of cycles of at
+     *  most two values, so that I am my own inverse). */
+    boolean involution() {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[_forward[i]] != i) {
+                return false;
             }
         }
         return true;
     }
 
+    /** Return the permutation that applies me and then OTHER, which must
+     *  have the same alphabet size. */
+    Permutation compose(Permutation other) {
+        if (other.size() != size()) {
+            throw error("cannot compose permutations of different sizes");
+        }
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = other._forward[_forward[i]];
+        }
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_inverse.clone(), _alphabet);
+    }
+
+    /** Return me applied N times (my inverse applied -N times if N is
+     *  negative). */
+    Permutation power(long n) {
+        int[] result = new int[size()];
+        for (int[] cycle : cycles()) {
+            int len = cycle.length;
+            int shift = (int) Math.floorMod(n, (long) len);
+            for (int k = 0; k < len; k += 1) {
+                result[cycle[k]] = cycle[(k + shift) % len];
+            }
+        }
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return my conjugate by a rotation of the alphabet by K positions:
+     *  the permutation that takes P to permute(P + K) - K (modulo the
+     *  alphabet size).  This is how a rotor whose permutation is mine
+     *  acts when at setting K. */
+    Permutation rotated(int k) {
+        int n = size();
+        k = wrap(k);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = i + k < n ? i + k : i + k - n;
+            int v = _forward[j] - k;
+            result[i] = v < 0 ? v + n : v;
+        }
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return my cycle decomposition, including cycles of length 1.  Each
+     *  cycle lists indices in the order I map them, starting at its
+     *  smallest index, and the cycles are in increasing order of their
+     *  first indices. */
+    int[][] cycles() {
+        ArrayList<int[]> result = new ArrayList<>();
+        boolean[] done = new boolean[size()];
+        int[] cycle = new int[size()];
+        for (int start = 0; start < size(); start += 1) {
+            if (done[start]) {
+                continue;
+            }
+            int len = 0;
+            for (int p = start; !done[p]; p = _forward[p]) {
+                done[p] = true;
+                cycle[len] = p;
+                len += 1;
+            }
+            result.add(Arrays.copyOf(cycle, len));
+        }
+        return result.toArray(new int[result.size()][]);
+    }
+
+    /** Return true iff OBJ is a Permutation of the same size that maps
+     *  every index as I do. */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Permutation
+            && Arrays.equals(_forward, ((Permutation) obj)._forward);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
+    }
+
+    /** Return me in cycle notation, omitting cycles of length 1, in the
+     *  order given by cycles(). */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int[] cycle : cycles()) {
+            if (cycle.length == 1) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int p : cycle) {
+                result.append(_alphabet.toChar(p));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
 
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
 
-    /** A two-dimensional ArrayList that stores permutations. */
-    private ArrayList<ArrayList<Character>> _cyclesList;
+    /** _forward[P] is the index to which I map P. */
+    private final int[] _forward;
 
-    /** The string of many permutations. */
-    private String _cycles;
+    /** _inverse[C] is the index that I map to C. */
+    private final int[] _inverse;
 }
-
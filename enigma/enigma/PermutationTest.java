@@ -63,6 +63,93 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, "CBADELGJIKUPMNOYQRSTHVWXZF");
     }
 
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedCharacter() {
+        new Permutation("(AB) (CDA)", UPPER);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedInCycle() {
+        new Permutation("(ABCA)", UPPER);
+    }
+
+    @Test
+    public void checkWrap() {
+        perm = new Permutation("(AELTPHQXRU) (BKNW)", UPPER);
+        assertEquals(perm.permute(1), perm.permute(27));
+        assertEquals(perm.permute(25), perm.permute(-1));
+        assertEquals(perm.invert(0), perm.invert(-26));
+    }
+
+    @Test
+    public void checkDerangement() {
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).derangement());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).derangement());
+        assertFalse(new Permutation("(AB)", UPPER).derangement());
+    }
+
+    @Test
+    public void checkInvolution() {
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).involution());
+        assertTrue(new Permutation("(AB) (CD)", UPPER).involution());
+        assertTrue(new Permutation("", UPPER).involution());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).involution());
+        assertFalse(new Permutation("(AB) (CDE)", UPPER).involution());
+    }
+
+    @Test
+    public void checkInverseAndCompose() {
+        Permutation p = new Permutation(NAVALA.get("IV"), UPPER);
+        Permutation id = new Permutation("", UPPER);
+        perm = p.inverse();
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(i, perm.permute(p.permute(i)));
+        }
+        assertEquals(id, p.compose(p.inverse()));
+        Permutation q = new Permutation(NAVALA.get("II"), UPPER);
+        perm = p.compose(q);
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(q.permute(p.permute(i)), perm.permute(i));
+        }
+    }
+
+    @Test
+    public void checkPower() {
+        Permutation p = new Permutation(NAVALA.get("I"), UPPER);
+        assertEquals(p, p.power(1));
+        assertEquals(p.compose(p).compose(p), p.power(3));
+        assertEquals(p.inverse(), p.power(-1));
+        assertEquals(new Permutation("", UPPER), p.power(0));
+        assertEquals(new Permutation("", UPPER), p.power(10 * 4 * 4 * 3));
+        assertEquals(p.power(7), p.power(7 + 2 * 10 * 4 * 4 * 3));
+    }
+
+    @Test
+    public void checkRotated() {
+        for (String name : NAVALA.keySet()) {
+            Permutation p = new Permutation(NAVALA.get(name), UPPER);
+            assertEquals(name + " at B", new Permutation(NAVALB.get(name),
+                                                         UPPER),
+                         p.rotated(1));
+            assertEquals(name + " at Z", new Permutation(NAVALZ.get(name),
+                                                         UPPER),
+                         p.rotated(25));
+            assertEquals(name + " rotated back", p,
+                         p.rotated(25).rotated(1));
+        }
+    }
+
+    @Test
+    public void checkCycles() {
+        perm = new Permutation("(CA) (UHJK) (ZFLPY)", UPPER);
+        int[][] cycles = perm.cycles();
+        assertEquals(26 - 11 + 3, cycles.length);
+        assertArrayEquals(new int[] { 0, 2 }, cycles[0]);
+        assertArrayEquals(new int[] { 1 }, cycles[1]);
+        assertEquals("(AC) (FLPYZ) (HJKU)", perm.toString());
+        assertEquals(perm, new Permutation(perm.toString(), UPPER));
+    }
+
     public static void main(String[] args) {
         System.exit(ucb.junit.textui.runClasses(PermutationTest.class));
     }
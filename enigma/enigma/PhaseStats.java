@@ -0,0 +1,198 @@
+package enigma;
+
+import java.io.PrintStream;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** The wall time spent in each phase of a run of Main, and counts of
+ *  what it processed, as reported by its --stats option.  Time is
+ *  charged to one phase at a time: enter(PHASE) charges the time since
+ *  the last change of phase to the phase being left, and returns it, so
+ *  that a phase entered within another (writing output while formatting
+ *  it, for instance) is charged only its own time once the outer phase
+ *  is entered again.
+ *
+ *  Phases change once per buffer of input or output, batch of letters,
+ *  or settings line, never per character.  A run without --stats has no
+ *  PhaseStats at all (MessagePipeline tests for null at each of those
+ *  points), so the counters cost nothing to speak of when disabled.
+ *  The counts are kept by MessagePipeline in any case and added here
+ *  when it finishes.
+ *  @author Ze Martinho
+ */
+class PhaseStats {
+
+    /** Phases: reading the configuration. */
+    static final int CONFIG = 0;
+    /** Phases: scanning input for letters, line ends, and settings. */
+    static final int SCAN = 1;
+    /** Phases: reading input. */
+    static final int READ = 2;
+    /** Phases: setting up the machine from a settings line. */
+    static final int SETUP = 3;
+    /** Phases: converting letters with the machine. */
+    static final int CONVERT = 4;
+    /** Phases: grouping converted letters into the output buffer. */
+    static final int FORMAT = 5;
+    /** Phases: writing output. */
+    static final int WRITE = 6;
+    /** Phases: anything else (such as waiting for other threads). */
+    static final int OTHER = 7;
+
+    /** The names of the phases, by number. */
+    static final String[] PHASES = {
+        "config", "scan", "read", "setup", "convert", "format", "write",
+        "other"
+    };
+
+    /** Statistics whose clock starts now, in PHASE. */
+    PhaseStats(int phase) {
+        _phase = phase;
+        _since = System.nanoTime();
+    }
+
+    /** Charge the time since the last change of phase to the current
+     *  phase, make PHASE current, and return the phase left. */
+    int enter(int phase) {
+        long now = System.nanoTime();
+        int result = _phase;
+        _nanos[result] += now - _since;
+        _since = now;
+        _phase = phase;
+        return result;
+    }
+
+    /** Add the counts of a run that read BYTESIN bytes of input,
+     *  consisting of SETTINGS settings lines and MESSAGES message lines,
+     *  converted LETTERS letters, and wrote BYTESOUT bytes. */
+    synchronized void count(long bytesIn, long settings, long messages,
+                            long letters, long bytesOut) {
+        _bytesIn += bytesIn;
+        _settings += settings;
+        _messages += messages;
+        _letters += letters;
+        _bytesOut += bytesOut;
+    }
+
+    /** Add the times and counts of OTHER, which must no longer be in
+     *  use, to mine, except for its time in phase OTHER. */
+    synchronized void add(PhaseStats other) {
+        other.enter(OTHER);
+        for (int p = 0; p < OTHER; p += 1) {
+            _nanos[p] += other._nanos[p];
+        }
+        count(other._bytesIn, other._settings, other._messages,
+              other._letters, other._bytesOut);
+    }
+
+    /** Return the time charged to PHASE so far, in nanoseconds. */
+    synchronized long nanos(int phase) {
+        return _nanos[phase];
+    }
+
+    /** Return the numbers of input bytes, settings lines, message lines,
+     *  letters, and output bytes counted, in that order. */
+    synchronized long[] counts() {
+        return new long[] {
+            _bytesIn, _settings, _messages, _letters, _bytesOut
+        };
+    }
+
+    /** Print a report of my times and counts on OUT, charging the time
+     *  since the last change of phase first. */
+    synchronized void report(PrintStream out) {
+        enter(_phase);
+        long total = 0;
+        for (long nanos : _nanos) {
+            total += nanos;
+        }
+        out.printf("%-8s %10s %7s%n", "phase", "time (ms)", "share");
+        for (int p = 0; p < PHASES.length; p += 1) {
+            out.printf("%-8s %10.2f %6.1f%%%n", PHASES[p], _nanos[p] / 1e6,
+                       total == 0 ? 0 : 100.0 * _nanos[p] / total);
+        }
+        out.printf("%-8s %10.2f%n", "total", total / 1e6);
+        out.printf("%d bytes in, %d settings lines, %d messages,"
+                   + " %d letters, %d bytes out%n", _bytesIn, _settings,
+                   _messages, _letters, _bytesOut);
+        out.printf("%.0f letters/s overall, %.0f letters/s converting%n",
+                   perSecond(_letters, total),
+                   perSecond(_letters, _nanos[CONVERT]));
+    }
+
+    /** Commit a JFR event for each phase and one for the counts, which
+     *  are recorded if a flight recording is running. */
+    synchronized void emit() {
+        enter(_phase);
+        for (int p = 0; p < PHASES.length; p += 1) {
+            PhaseEvent event = new PhaseEvent();
+            event.phase = PHASES[p];
+            event.time = _nanos[p];
+            event.commit();
+        }
+        CountsEvent event = new CountsEvent();
+        event.bytesIn = _bytesIn;
+        event.settingsLines = _settings;
+        event.messages = _messages;
+        event.letters = _letters;
+        event.bytesOut = _bytesOut;
+        event.commit();
+    }
+
+    /** Return the rate of COUNT per NANOS nanoseconds, per second. */
+    private static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count / (nanos / 1e9);
+    }
+
+    /** The JFR event for the time spent in one phase. */
+    @Name("enigma.Phase")
+    @Label("Enigma Phase")
+    @Category("Enigma")
+    @Description("Wall time spent in one phase of a run of enigma.Main")
+    static class PhaseEvent extends Event {
+        /** The name of the phase. */
+        @Label("Phase")
+        String phase;
+        /** The time spent in it, in nanoseconds. */
+        @Label("Time")
+        @Timespan
+        long time;
+    }
+
+    /** The JFR event for the counts of a run. */
+    @Name("enigma.Counts")
+    @Label("Enigma Counts")
+    @Category("Enigma")
+    @Description("What a run of enigma.Main read, converted, and wrote")
+    static class CountsEvent extends Event {
+        /** The counts, as for PhaseStats.count. */
+        @Label("Bytes In")
+        long bytesIn;
+        /** The counts, as for PhaseStats.count. */
+        @Label("Settings Lines")
+        long settingsLines;
+        /** The counts, as for PhaseStats.count. */
+        @Label("Messages")
+        long messages;
+        /** The counts, as for PhaseStats.count. */
+        @Label("Letters")
+        long letters;
+        /** The counts, as for PhaseStats.count. */
+        @Label("Bytes Out")
+        long bytesOut;
+    }
+
+    /** The current phase. */
+    private int _phase;
+    /** The value of System.nanoTime when _phase was entered. */
+    private long _since;
+    /** The time charged to each phase, in nanoseconds. */
+    private final long[] _nanos = new long[PHASES.length];
+    /** The counts, as for count. */
+    private long _bytesIn, _settings, _messages, _letters, _bytesOut;
+}
@@ -3,14 +3,66 @@ package enigma;
 import static enigma.EnigmaException.*;
 
 /** Superclass that represents a rotor in the enigma machine.
+ *
+ *  A rotor at setting K acts as its permutation conjugated by a rotation
+ *  of K positions (see Permutation.rotated).  For alphabets of at most
+ *  FULL_TABLE_MAX_SIZE characters, a rotor precomputes that substitution
+ *  and its inverse for every setting, so that each conversion is a
+ *  single array access.  Larger alphabets use a memory-bounded mode
+ *  that keeps one table of twice the alphabet size for each direction
+ *  and converts with an addition, a subtraction, and a comparison (no
+ *  division).  useFullTables switches between the two.
+ *
+ *  Apart from its setting, a rotor does not change once made (other
+ *  than by useFullTables), and the methods that take an explicit
+ *  setting do not use its own.  Machines use only those, keeping the
+ *  settings of their rotors themselves, so that any number of machines
+ *  may share one set of rotors, even concurrently.  The setting a rotor
+ *  holds is for using it on its own.
  *  @author Ze Martinho
  */
 class Rotor {
 
+    /** Largest alphabet size for which rotors build per-setting tables
+     *  by default. */
+    static final int FULL_TABLE_MAX_SIZE = 64;
+
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        int n = perm.size();
+        _forward = new int[2 * n];
+        _backward = new int[2 * n];
+        for (int i = 0; i < 2 * n; i += 1) {
+            _forward[i] = perm.permute(i);
+            _backward[i] = perm.invert(i);
+        }
+        useFullTables(n <= FULL_TABLE_MAX_SIZE);
+    }
+
+    /** If FULL, use per-setting substitution tables (building them if
+     *  needed), and otherwise the memory-bounded mode. */
+    void useFullTables(boolean full) {
+        if (!full) {
+            _forwardTables = _backwardTables = null;
+        } else if (_forwardTables == null) {
+            int n = size();
+            _forwardTables = new int[n][n];
+            _backwardTables = new int[n][n];
+            for (int k = 0; k < n; k += 1) {
+                Permutation rotated = _permutation.rotated(k);
+                for (int p = 0; p < n; p += 1) {
+                    _forwardTables[k][p] = rotated.permute(p);
+                    _backwardTables[k][p] = rotated.invert(p);
+                }
+            }
+        }
+    }
+
+    /** Return true iff I use per-setting substitution tables. */
+    boolean fullTables() {
+        return _forwardTables != null;
     }
 
     /** Return my name. */
@@ -48,9 +100,9 @@ class Rotor {
         return _currentSetting;
     }
 
-    /** Set setting() to POSN.  */
+    /** Set setting() to POSN (modulo size()).  */
     void set(int posn) {
-        _currentSetting = posn;
+        _currentSetting = _permutation.wrap(posn);
     }
 
     /** Set setting() to character CPOSN. */
@@ -61,30 +113,47 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int positionInside = _permutation.permute(
-            p + _currentSetting) - _currentSetting;
-        if (positionInside >= 0) {
-            return positionInside % _permutation.size();
-        } else {
-            return _permutation.size() + (positionInside % _permutation.size());
+        return convertForward(p, _currentSetting);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when I am at SETTING (also in the
+     *  range 0..size()-1), regardless of my current setting. */
+    final int convertForward(int p, int setting) {
+        if (_forwardTables != null) {
+            return _forwardTables[setting][p];
         }
+        int result = _forward[p + setting] - setting;
+        return result < 0 ? result + _forward.length / 2 : result;
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int positionInside = _permutation.invert(
-            e + _currentSetting) - _currentSetting;
-        if (positionInside >= 0) {
-            return positionInside % _permutation.size();
-        } else {
-            return _permutation.size() + (positionInside % _permutation.size());
+        return convertBackward(e, _currentSetting);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when I am at SETTING
+     *  (also in the range 0..size()-1), regardless of my current
+     *  setting. */
+    final int convertBackward(int e, int setting) {
+        if (_backwardTables != null) {
+            return _backwardTables[setting][e];
         }
+        int result = _backward[e + setting] - setting;
+        return result < 0 ? result + _backward.length / 2 : result;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(_currentSetting);
+    }
+
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  when at SETTING.  By default, never. */
+    boolean atNotch(int setting) {
         return false;
     }
 
@@ -101,10 +170,19 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
     /** An instance variable that provide the current int of the alphabet
      *  that the rotor is set to. */
     private int _currentSetting;
 
+    /** _forward[I] and _backward[I] are my permutation and its inverse
+     *  applied to I modulo size(), for 0 <= I < 2 * size(). */
+    private final int[] _forward, _backward;
+
+    /** _forwardTables[K][P] and _backwardTables[K][P] are
+     *  convertForward(P) and convertBackward(P) at setting K, or null
+     *  in the memory-bounded mode. */
+    private int[][] _forwardTables, _backwardTables;
+
 }
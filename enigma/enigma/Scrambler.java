@@ -0,0 +1,107 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The scrambler (the rotors and reflector, without the plugboard) of
+ *  a machine at each of a run of positions of a message, for searches
+ *  that try many keys.  Given an order of rotors and their settings at
+ *  the start of the message, convert(I, X) is the conversion of X at
+ *  the Ith position of the run.  Nothing is allocated except when the
+ *  order of rotors changes.
+ *
+ *  The conversion at each position is the rightmost rotor, the inner
+ *  segment, and the rightmost rotor again, as in a folding Machine
+ *  (see Machine), whose tables and cache it uses.  The inner segment's
+ *  values are computed only when needed, and kept for each position
+ *  while the settings of its rotors there stay the same, which they do
+ *  for most pairs of starts that differ only in the setting of the
+ *  rightmost rotor.
+ *  @author Ze Martinho
+ */
+class Scrambler {
+
+    /** A scrambler for the machines with configuration CONFIG, at
+     *  LENGTH positions of a message. */
+    Scrambler(CompiledConfig config, int length) {
+        _config = config;
+        _size = config.alphabet().size();
+        _at = new int[length][config.numRotors()];
+        _inner = new int[length * _size];
+        _innerStamps = new int[length * _size];
+        _innerSettings = new long[length];
+        _innerStamp = new int[length];
+    }
+
+    /** Return the number of positions in my run. */
+    int length() {
+        return _at.length;
+    }
+
+    /** Use the rotors named ORDER, from the reflector.  The settings of
+     *  the rotors must then be given by setStart. */
+    void setOrder(String[] order) {
+        _machine = _config.newMachine();
+        _machine.insertRotors(order);
+        _machine.setPlugboard(new Permutation("", _config.alphabet()));
+        Arrays.fill(_innerSettings, -1);
+    }
+
+    /** Make my run start OFFSET characters into a message whose first
+     *  character is converted after the rotors in each slot, set at
+     *  START, advance. */
+    void setStart(int[] start, long offset) {
+        int[] settings = _at[0];
+        System.arraycopy(start, 0, settings, 0, settings.length);
+        for (long i = 0; i <= offset; i += 1) {
+            _machine.advance(settings);
+        }
+        for (int i = 1; i < _at.length; i += 1) {
+            System.arraycopy(_at[i - 1], 0, _at[i], 0, settings.length);
+            _machine.advance(_at[i]);
+        }
+        for (int i = 0; i < _at.length; i += 1) {
+            long inner = 0;
+            for (int k = 1; k < _at[i].length - 1; k += 1) {
+                inner = inner * _size + _at[i][k];
+            }
+            if (inner != _innerSettings[i]) {
+                _innerSettings[i] = inner;
+                _stamp = Machine.nextStamp(_stamp, _innerStamps);
+                _innerStamp[i] = _stamp;
+            }
+        }
+    }
+
+    /** Return the conversion of X by the scrambler at position I of my
+     *  run. */
+    int convert(int i, int x) {
+        int[] settings = _at[i];
+        int s = settings[settings.length - 1];
+        int p = _machine.inner(_machine.outerIn(x, s), settings, _inner,
+                               _innerStamps, i * _size, _innerStamp[i]);
+        return _machine.outerOut(p, s);
+    }
+
+    /** My configuration. */
+    private final CompiledConfig _config;
+    /** The size of my configuration's alphabet. */
+    private final int _size;
+    /** A folding machine with the current order of rotors and no
+     *  plugboard. */
+    private Machine _machine;
+    /** _at[I] is the settings of each slot at position I of my run. */
+    private final int[][] _at;
+    /** _inner[I * _size + P] is the conversion of P by the inner
+     *  segment at position I of my run, if _innerStamps[I * _size + P]
+     *  is _innerStamp[I]. */
+    private final int[] _inner, _innerStamps;
+    /** The settings of the rotors of the inner segment at each position
+     *  of my run, as base-_size numbers, when _inner was last valid for
+     *  it. */
+    private final long[] _innerSettings;
+    /** The current stamp of the entries of _inner for each position of
+     *  my run. */
+    private final int[] _innerStamp;
+    /** The last stamp given out. */
+    private int _stamp;
+}
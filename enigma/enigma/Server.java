@@ -0,0 +1,505 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running enigma service, which loads its configurations once
+ *  and converts messages sent over a local socket, either TCP on the
+ *  loopback address or a Unix domain socket.  Each connection carries
+ *  a sequence of requests, each answered in order; a client may send
+ *  any number of requests without waiting for the responses
+ *  (pipelining), which are flushed only when no further request has
+ *  arrived.  A request is one of
+ *
+ *      CONVERT NAME LENGTH\n SETTINGS\n BODY
+ *      STATS\n
+ *
+ *  where NAME is the name of a configuration, SETTINGS a settings line
+ *  in the format read by Main, and BODY the message, LENGTH bytes of
+ *  UTF-8.  The response to CONVERT is the message as converted by
+ *  Machine.convert (characters not in the alphabet dropped); that to
+ *  STATS reports the number of requests, the requests per second since
+ *  the server started, and percentiles of the time taken to handle a
+ *  request, from reading its header to buffering its response.  A
+ *  response is
+ *
+ *      OK LENGTH\n BODY
+ *      ERROR MESSAGE\n
+ *
+ *  After an error in the framing of a request (an unknown command or a
+ *  bad length), the connection is closed.
+ *
+ *  The machines are pooled per configuration: a request takes an idle
+ *  machine of its configuration (or makes one), sets it up with its
+ *  settings line, and returns it when done, so that no machine is
+ *  used by two requests at once and none is made per request once the
+ *  server is warm.  Each connection is handled by its own thread, from
+ *  a pool that reuses the threads of closed connections.
+ *  @author Ze Martinho
+ */
+class Server implements Closeable {
+
+    /** The port listened on by default. */
+    static final int DEFAULT_PORT = 4961;
+
+    /** Largest message body accepted, in bytes. */
+    static final int MAX_BODY = 16 << 20;
+
+    /** Longest header or settings line accepted, in bytes. */
+    static final int MAX_LINE = 1 << 16;
+
+    /** Largest number of idle machines kept per configuration. */
+    static final int MAX_IDLE = 256;
+
+    /** Size of the input and output buffers of each connection, in
+     *  bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A server converting with the configurations CONFIGS, by name. */
+    Server(Map<String, CompiledConfig> configs) {
+        _pools = new HashMap<>();
+        for (Map.Entry<String, CompiledConfig> e : configs.entrySet()) {
+            _pools.put(e.getKey(), new MachinePool(e.getValue()));
+        }
+        _workers = Executors.newCachedThreadPool((task) -> {
+            Thread thread = new Thread(task, "enigma-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Accept connections on LISTENER and handle each on a thread of
+     *  its own, until LISTENER or I am closed. */
+    void serve(ServerSocketChannel listener) throws IOException {
+        _listeners.add(listener);
+        try {
+            while (true) {
+                SocketChannel channel = listener.accept();
+                _connections.add(channel);
+                _workers.execute(() -> handle(channel));
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } finally {
+            _listeners.remove(listener);
+        }
+    }
+
+    /** Stop accepting connections and close those open. */
+    @Override
+    public void close() throws IOException {
+        for (Closeable channel : _listeners) {
+            channel.close();
+        }
+        for (Closeable channel : _connections) {
+            channel.close();
+        }
+        _workers.shutdown();
+    }
+
+    /** Return the report made in response to STATS: one line for each
+     *  statistic, of the form "NAME VALUE". */
+    String stats() {
+        double seconds = (System.nanoTime() - _started) / 1e9;
+        long requests = _requests.sum();
+        return String.format("requests %d%n"
+                             + "errors %d%n"
+                             + "uptime_s %.3f%n"
+                             + "requests_per_s %.1f%n"
+                             + "p50_us %d%n"
+                             + "p99_us %d%n"
+                             + "max_us %d%n",
+                             requests, _errors.sum(), seconds,
+                             requests / seconds, _latencies.quantile(0.5),
+                             _latencies.quantile(0.99),
+                             _latencies.quantile(1));
+    }
+
+    /** Handle the requests on CHANNEL until it is closed, by either
+     *  end, or an error in framing. */
+    private void handle(SocketChannel channel) {
+        try (channel) {
+            InputStream in = new BufferedInputStream(
+                Channels.newInputStream(channel), BUFFER_SIZE);
+            OutputStream out = new BufferedOutputStream(
+                Channels.newOutputStream(channel), BUFFER_SIZE);
+            Connection connection = new Connection(in, out);
+            while (connection.next()) {
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            return;
+        } finally {
+            _connections.remove(channel);
+        }
+    }
+
+    /** The state of one connection: its streams and buffers reused from
+     *  one request to the next. */
+    private class Connection {
+
+        /** A connection reading requests from IN and writing responses
+         *  to OUT. */
+        Connection(InputStream in, OutputStream out) {
+            _in = in;
+            _out = out;
+        }
+
+        /** Read and answer the next request.  Returns false iff there is
+         *  none, or after answering one that was badly framed. */
+        boolean next() throws IOException {
+            String header = readLine();
+            if (header == null) {
+                return false;
+            }
+            long start = System.nanoTime();
+            String[] words = header.trim().split(" +");
+            boolean framed = true;
+            try {
+                if (words.length == 1 && words[0].equals("STATS")) {
+                    respond(stats());
+                } else if (words.length == 3 && words[0].equals("CONVERT")) {
+                    framed = false;
+                    int length = bodyLength(words[2]);
+                    String settings = readLine();
+                    if (settings == null) {
+                        throw new EOFException();
+                    }
+                    framed = true;
+                    String body = readBody(length);
+                    respond(convert(words[1], settings, body));
+                } else {
+                    framed = false;
+                    throw error("bad request: %s", header);
+                }
+            } catch (EnigmaException excp) {
+                _errors.increment();
+                _out.write(("ERROR " + excp.getMessage() + "\n")
+                           .getBytes(StandardCharsets.UTF_8));
+            }
+            _requests.increment();
+            _latencies.record(System.nanoTime() - start);
+            return framed;
+        }
+
+        /** Return MSG as converted by a machine of configuration NAME set
+         *  up with SETTINGS. */
+        private String convert(String name, String settings, String msg) {
+            MachinePool pool = _pools.get(name);
+            if (pool == null) {
+                throw error("no configuration named %s", name);
+            }
+            Machine machine = pool.take();
+            try {
+                Main.setUp(machine, settings);
+                if (_chars.length < msg.length()) {
+                    _chars = new char[msg.length()];
+                }
+                int n = machine.convert(msg, 0, msg.length(), _chars, 0);
+                return new String(_chars, 0, n);
+            } finally {
+                pool.release(machine);
+            }
+        }
+
+        /** Return the length of a body given by LENGTH, a decimal
+         *  number. */
+        private int bodyLength(String length) {
+            try {
+                int result = Integer.parseInt(length);
+                if (result >= 0 && result <= MAX_BODY) {
+                    return result;
+                }
+            } catch (NumberFormatException excp) {
+                /* Reported below. */
+            }
+            throw error("bad body length: %s", length);
+        }
+
+        /** Return the next LENGTH bytes of input, decoded as UTF-8. */
+        private String readBody(int length) throws IOException {
+            if (_body.length < length) {
+                _body = new byte[length];
+            }
+            int k = 0;
+            while (k < length) {
+                int n = _in.read(_body, k, length - k);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                k += n;
+            }
+            return new String(_body, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /** Return the next line of input, decoded as UTF-8, without its
+         *  terminating "\n" or "\r\n", or null at the end of input. */
+        private String readLine() throws IOException {
+            _line.reset();
+            int b;
+            while ((b = _in.read()) != '\n') {
+                if (b < 0) {
+                    if (_line.size() == 0) {
+                        return null;
+                    }
+                    throw new EOFException();
+                } else if (_line.size() == MAX_LINE) {
+                    throw new IOException("line too long");
+                }
+                _line.write(b);
+            }
+            String result = _line.toString(StandardCharsets.UTF_8);
+            if (result.endsWith("\r")) {
+                result = result.substring(0, result.length() - 1);
+            }
+            return result;
+        }
+
+        /** Write a successful response with body BODY. */
+        private void respond(String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            _out.write(("OK " + bytes.length + "\n")
+                       .getBytes(StandardCharsets.US_ASCII));
+            _out.write(bytes);
+        }
+
+        /** The streams of the connection. */
+        private final InputStream _in;
+        /** The streams of the connection. */
+        private final OutputStream _out;
+        /** Holds the line being read. */
+        private final ByteArrayOutputStream _line =
+            new ByteArrayOutputStream();
+        /** Holds the body of the current request. */
+        private byte[] _body = new byte[0];
+        /** Holds the converted body of the current request. */
+        private char[] _chars = new char[0];
+    }
+
+    /** The idle machines of one configuration. */
+    private static class MachinePool {
+
+        /** A pool of machines of configuration CONFIG. */
+        MachinePool(CompiledConfig config) {
+            _config = config;
+        }
+
+        /** Return an idle machine, or a new one if there is none.  Its
+         *  rotors and plugboard are as last set. */
+        Machine take() {
+            Machine result = _idle.pollFirst();
+            return result == null ? _config.newMachine() : result;
+        }
+
+        /** Return MACHINE, taken from me, to the idle machines, unless
+         *  there are too many already. */
+        void release(Machine machine) {
+            if (_idle.size() < MAX_IDLE) {
+                _idle.addFirst(machine);
+            }
+        }
+
+        /** The configuration of my machines. */
+        private final CompiledConfig _config;
+        /** My idle machines, most recently used first. */
+        private final ConcurrentLinkedDeque<Machine> _idle =
+            new ConcurrentLinkedDeque<>();
+    }
+
+    /** A histogram of durations, in microseconds, for percentiles.
+     *  Durations below 2**SUB_BITS us are counted exactly; above that,
+     *  each power of two is divided into 2**SUB_BITS equal buckets, so
+     *  that percentiles are reported to within 1 / 2**SUB_BITS of their
+     *  value, in constant space. */
+    private static class Latencies {
+
+        /** log2 of the number of buckets per power of two. */
+        static final int SUB_BITS = 4;
+
+        /** Record a duration of NANOS nanoseconds. */
+        void record(long nanos) {
+            _counts.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+        }
+
+        /** Return the upper bound, in microseconds, of the bucket
+         *  holding the Q quantile (0 < Q <= 1) of the recorded
+         *  durations, or 0 if there are none. */
+        long quantile(double q) {
+            long total = 0;
+            for (int i = 0; i < _counts.length(); i += 1) {
+                total += _counts.get(i);
+            }
+            long rank = (long) Math.ceil(q * total), seen = 0;
+            for (int i = 0; i < _counts.length() && total > 0; i += 1) {
+                seen += _counts.get(i);
+                if (seen >= rank) {
+                    return upper(i);
+                }
+            }
+            return 0;
+        }
+
+        /** Return the bucket of a duration of MICROS us. */
+        private static int bucket(long micros) {
+            if (micros < (1 << SUB_BITS)) {
+                return (int) micros;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exp - SUB_BITS));
+            return ((exp - SUB_BITS) << SUB_BITS) + sub;
+        }
+
+        /** Return the largest duration, in us, in bucket I. */
+        private static long upper(int i) {
+            if (i < (1 << SUB_BITS)) {
+                return i;
+            }
+            int exp = (i >> SUB_BITS) + SUB_BITS - 1;
+            long sub = i & ((1 << SUB_BITS) - 1);
+            return ((sub + 1 + (1L << SUB_BITS)) << (exp - SUB_BITS)) - 1;
+        }
+
+        /** The number of durations recorded in each bucket. */
+        private final AtomicLongArray _counts =
+            new AtomicLongArray(64 << SUB_BITS);
+    }
+
+    /** Run a server as specified by ARGS:
+     *
+     *      java enigma.Server [--port=N | --socket=PATH] [--cache]
+     *          CONFIG...
+     *
+     *  The server listens on port N of the loopback address (default:
+     *  4961), or on the Unix domain socket PATH (which is replaced if it
+     *  exists), and converts with the configurations in the files
+     *  CONFIG, each named by its file name without directory or
+     *  ".conf".  With --cache, configurations are read through their
+     *  binary caches, as by Main. */
+    public static void main(String... args) {
+        try {
+            SocketAddress address =
+                new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                      DEFAULT_PORT);
+            boolean cache = false;
+            ArrayList<String> files = new ArrayList<String>();
+            for (String arg : args) {
+                if (arg.startsWith("--port=")) {
+                    address = new InetSocketAddress(
+                        InetAddress.getLoopbackAddress(), port(arg));
+                } else if (arg.startsWith("--socket=")) {
+                    address = UnixDomainSocketAddress.of(arg.substring(9));
+                } else if (arg.equals("--cache")) {
+                    cache = true;
+                } else if (arg.startsWith("--")) {
+                    throw error("unknown option: %s", arg);
+                } else {
+                    files.add(arg);
+                }
+            }
+            if (files.isEmpty()) {
+                throw error("usage: java enigma.Server [--port=N |"
+                            + " --socket=PATH] [--cache] CONFIG...");
+            }
+            HashMap<String, CompiledConfig> configs = new HashMap<>();
+            for (String file : files) {
+                String name = Paths.get(file).getFileName().toString();
+                configs.put(name.replaceFirst("\\.conf$", ""),
+                            Main.loadConfig(file,
+                                            cache ? file + ".cache" : null));
+            }
+            try (Server server = new Server(configs);
+                 ServerSocketChannel listener = listen(address)) {
+                System.err.printf("serving %s on %s%n",
+                                  String.join(", ", configs.keySet()),
+                                  address);
+                server.serve(listener);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp);
+        }
+        System.exit(1);
+    }
+
+    /** Return a channel listening on ADDRESS, a TCP or Unix domain
+     *  socket address. */
+    static ServerSocketChannel listen(SocketAddress address)
+        throws IOException {
+        ServerSocketChannel result;
+        if (address instanceof UnixDomainSocketAddress) {
+            Path path = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(path);
+            result = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            result = ServerSocketChannel.open();
+        }
+        return result.bind(address);
+    }
+
+    /** Return the port number given by OPTION, of the form --port=N. */
+    private static int port(String option) {
+        try {
+            int result = Integer.parseInt(option.substring(7));
+            if (result >= 0 && result < (1 << 16)) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad port: %s", option);
+    }
+
+    /** The pool of idle machines of each configuration, by name. */
+    private final HashMap<String, MachinePool> _pools;
+    /** The threads handling connections. */
+    private final ExecutorService _workers;
+    /** The channels being listened on. */
+    private final Set<ServerSocketChannel> _listeners =
+        ConcurrentHashMap.newKeySet();
+    /** The open connections. */
+    private final Set<SocketChannel> _connections =
+        ConcurrentHashMap.newKeySet();
+    /** The value of System.nanoTime when I was created. */
+    private final long _started = System.nanoTime();
+    /** The numbers of requests handled and of those that failed. */
+    private final LongAdder _requests = new LongAdder(),
+        _errors = new LongAdder();
+    /** The times taken to handle requests. */
+    private final Latencies _latencies = new Latencies();
+}
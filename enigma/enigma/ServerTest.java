@@ -0,0 +1,212 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+
+/** Tests of Server, over TCP on the loopback address and over a Unix
+ *  domain socket.
+ *  @author Ze Martinho
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A settings line for the configuration of LanesTest. */
+    private static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Start a server on ADDRESS with the configuration of LanesTest,
+     *  named "naval", and return a client channel connected to it. */
+    private SocketChannel start(SocketAddress address) throws IOException {
+        HashMap<String, CompiledConfig> configs = new HashMap<>();
+        configs.put("naval", LanesTest.config());
+        _server = new Server(configs);
+        ServerSocketChannel listener = Server.listen(address);
+        SocketAddress bound = listener.getLocalAddress();
+        Thread thread = new Thread(() -> {
+            try {
+                _server.serve(listener);
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        SocketChannel result =
+            bound instanceof UnixDomainSocketAddress
+            ? SocketChannel.open(StandardProtocolFamily.UNIX)
+            : SocketChannel.open();
+        result.connect(bound);
+        return result;
+    }
+
+    /** Start a server on an ephemeral loopback port and return a client
+     *  channel connected to it. */
+    private SocketChannel start() throws IOException {
+        return start(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                           0));
+    }
+
+    @After
+    public void stop() throws IOException {
+        if (_server != null) {
+            _server.close();
+        }
+    }
+
+    /** Return a request to convert MSG with SETTINGS and configuration
+     *  NAME. */
+    private static byte[] convert(String name, String settings,
+                                  String msg) {
+        byte[] body = msg.getBytes(StandardCharsets.UTF_8);
+        byte[] head = String.format("CONVERT %s %d\n%s\n", name,
+                                    body.length, settings)
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[head.length + body.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(body, 0, result, head.length, body.length);
+        return result;
+    }
+
+    /** Read one response from IN, returning its body, or "ERROR" and its
+     *  message. */
+    private static String response(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            assertTrue("response ended", b >= 0);
+            line.write(b);
+        }
+        String status = line.toString(StandardCharsets.UTF_8);
+        if (status.startsWith("ERROR ")) {
+            return status;
+        }
+        assertTrue(status, status.startsWith("OK "));
+        byte[] body = in.readNBytes(Integer.parseInt(status.substring(3)));
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /** Return a machine set up with SETTINGS. */
+    private static Machine machine(String settings) {
+        Machine result = LanesTest.config().newMachine();
+        Main.setUp(result, settings);
+        return result;
+    }
+
+    /** Check that requests pipelined on CHANNEL, all sent before any
+     *  response is read, are answered in order. */
+    private static void checkPipelined(SocketChannel channel)
+        throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        InputStream in =
+            new BufferedInputStream(Channels.newInputStream(channel));
+        Random random = new Random(1);
+        String[] msgs = new String[50], settings = new String[50];
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        for (int i = 0; i < msgs.length; i += 1) {
+            StringBuilder msg = new StringBuilder();
+            for (int k = random.nextInt(500); k > 0; k -= 1) {
+                msg.append((char) ('A' + random.nextInt(26)));
+            }
+            msgs[i] = msg.append(" \u00E9!").toString();
+            StringBuilder setting = new StringBuilder();
+            for (int k = 0; k < 4; k += 1) {
+                setting.append((char) ('A' + random.nextInt(26)));
+            }
+            settings[i] = SETTINGS.replace("AXLE", setting);
+            requests.write(convert("naval", settings[i], msgs[i]));
+        }
+        out.write(requests.toByteArray());
+        for (int i = 0; i < msgs.length; i += 1) {
+            assertEquals(machine(settings[i]).convert(msgs[i]),
+                         response(in));
+        }
+    }
+
+    @Test
+    public void testPipelined() throws IOException {
+        checkPipelined(start());
+    }
+
+    @Test
+    public void testUnixDomainSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("server.sock");
+        try {
+            checkPipelined(start(UnixDomainSocketAddress.of(socket)));
+        } finally {
+            _server.close();
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        SocketChannel channel = start();
+        OutputStream out = Channels.newOutputStream(channel);
+        InputStream in =
+            new BufferedInputStream(Channels.newInputStream(channel));
+        out.write(convert("army", SETTINGS, "HELLO"));
+        out.write(convert("naval", "* B BETA III IV I", "HELLO"));
+        out.write(convert("naval", SETTINGS, "HELLO"));
+        out.write("CONVERT naval -3\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(response(in).startsWith("ERROR "));
+        assertTrue(response(in).startsWith("ERROR "));
+        assertEquals(machine(SETTINGS).convert("HELLO"), response(in));
+        assertTrue(response(in).startsWith("ERROR "));
+        assertEquals("connection not closed", -1, in.read());
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        SocketChannel channel = start();
+        OutputStream out = Channels.newOutputStream(channel);
+        InputStream in =
+            new BufferedInputStream(Channels.newInputStream(channel));
+        for (int i = 0; i < 10; i += 1) {
+            out.write(convert("naval", SETTINGS, "HELLO WORLD"));
+            response(in);
+        }
+        out.write("STATS\n".getBytes(StandardCharsets.UTF_8));
+        HashMap<String, String> stats = new HashMap<>();
+        for (String line : response(in).split("\\R")) {
+            String[] words = line.split(" ");
+            stats.put(words[0], words[1]);
+        }
+        assertEquals("10", stats.get("requests"));
+        assertEquals("0", stats.get("errors"));
+        long p50 = Long.parseLong(stats.get("p50_us")),
+            p99 = Long.parseLong(stats.get("p99_us")),
+            max = Long.parseLong(stats.get("max_us"));
+        assertTrue(p50 <= p99 && p99 <= max && max > 0);
+        assertTrue(stats.containsKey("requests_per_s"));
+    }
+
+    /** The server started by the current test. */
+    private Server _server;
+}
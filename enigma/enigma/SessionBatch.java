@@ -0,0 +1,196 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/** Converts input in the format read by Main as a batch of independent
+ *  sessions.  The input is split before each line that starts with '*'
+ *  into sessions, each a settings line and the message lines that
+ *  follow it.  Since each session starts by setting up its machine
+ *  completely, the sessions do not depend on each other: each is given
+ *  its own machine and converted by a MessagePipeline on a pool of
+ *  worker threads.  Their outputs are written in input order through a
+ *  reordering buffer that holds at most a few sessions per worker, so
+ *  the output is exactly that of converting the whole input with one
+ *  MessagePipeline (except that when a session fails, none of its own
+ *  output is written).
+ *
+ *  Each session is held in memory while it is converted, so this suits
+ *  inputs of many modest sessions rather than a few huge ones.
+ *  @author Ze Martinho
+ */
+class SessionBatch {
+
+    /** Size of the buffer for reading input, in bytes. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** Number of sessions per worker that may be in progress or waiting
+     *  to be written. */
+    static final int SESSIONS_PER_WORKER = 4;
+
+    /** A batch converting INPUT to OUTPUT on THREADS worker threads.
+     *  MACHINES supplies a new machine, whose alphabet is ALPHABET, for
+     *  each session, and SETUP sets up a machine from a settings line. */
+    SessionBatch(Supplier<Machine> machines, Alphabet alphabet,
+                 BiConsumer<Machine, String> setUp,
+                 ReadableByteChannel input, WritableByteChannel output,
+                 int threads) {
+        _machines = machines;
+        _alphabet = alphabet;
+        _setUp = setUp;
+        _input = input;
+        _output = output;
+        _threads = threads;
+    }
+
+    /** Add the time spent in each phase of converting each session, and
+     *  its counts, to STATS (if not null).  The times are those of the
+     *  worker threads, and so are summed over them. */
+    void setStats(PhaseStats stats) {
+        _stats = stats;
+    }
+
+    /** Convert my input, writing the results to my output, and return
+     *  the number of sessions.  If a session fails, the output of the
+     *  sessions before it is written before its exception is thrown. */
+    long run() throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        _pending = new ArrayDeque<>();
+        try {
+            ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] buf = in.array();
+            byte prev = '\n';
+            while (_input.read(in) >= 0) {
+                int n = in.position(), start = 0;
+                for (int i = 0; i < n; i += 1) {
+                    if (buf[i] == '*' && (prev == '\n' || prev == '\r')
+                        && (_length > 0 || i > start)) {
+                        append(buf, start, i);
+                        submit(pool);
+                        start = i;
+                    }
+                    prev = buf[i];
+                }
+                append(buf, start, n);
+                in.clear();
+            }
+            if (_length > 0) {
+                submit(pool);
+            }
+            while (!_pending.isEmpty()) {
+                writeNext();
+            }
+            return _sessions;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Add BUF[START .. END - 1] to the current session. */
+    private void append(byte[] buf, int start, int end) {
+        int n = end - start;
+        if (_length + n > _session.length) {
+            _session = Arrays.copyOf(_session,
+                                     Math.max(_length + n,
+                                              2 * _session.length));
+        }
+        System.arraycopy(buf, start, _session, _length, n);
+        _length += n;
+    }
+
+    /** Submit the current session to POOL and start a new one, first
+     *  writing the output of finished sessions, and waiting for the
+     *  oldest if too many are pending. */
+    private void submit(ExecutorService pool) throws IOException {
+        byte[] session = Arrays.copyOf(_session, _length);
+        _length = 0;
+        _sessions += 1;
+        _pending.add(pool.submit(() -> convert(session)));
+        while (!_pending.isEmpty()
+               && (_pending.peek().isDone()
+                   || _pending.size() > SESSIONS_PER_WORKER * _threads)) {
+            writeNext();
+        }
+    }
+
+    /** Wait for the oldest pending session and write its output. */
+    private void writeNext() throws IOException {
+        byte[] result;
+        try {
+            result = _pending.remove().get();
+        } catch (InterruptedException excp) {
+            throw new EnigmaException("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new EnigmaException(String.valueOf(cause));
+        }
+        ByteBuffer out = ByteBuffer.wrap(result);
+        while (out.hasRemaining()) {
+            _output.write(out);
+        }
+    }
+
+    /** Return the output of converting SESSION on a new machine. */
+    private byte[] convert(byte[] session) throws IOException {
+        Machine machine = _machines.get();
+        ByteArrayOutputStream out =
+            new ByteArrayOutputStream(session.length + session.length / 4);
+        int size = Math.min(MessagePipeline.BUFFER_SIZE, session.length + 64);
+        MessagePipeline pipeline =
+            new MessagePipeline(machine, _alphabet,
+                                (line) -> _setUp.accept(machine, line),
+                                Channels.newChannel(
+                                    new ByteArrayInputStream(session)),
+                                Channels.newChannel(out), size);
+        PhaseStats stats =
+            _stats == null ? null : new PhaseStats(PhaseStats.OTHER);
+        pipeline.setStats(stats);
+        pipeline.run();
+        if (stats != null) {
+            _stats.add(stats);
+        }
+        return out.toByteArray();
+    }
+
+    /** Supplies a new machine for each session. */
+    private final Supplier<Machine> _machines;
+    /** The machines' alphabet. */
+    private final Alphabet _alphabet;
+    /** Sets up a machine from a settings line. */
+    private final BiConsumer<Machine, String> _setUp;
+    /** Source of sessions. */
+    private final ReadableByteChannel _input;
+    /** Destination of converted sessions. */
+    private final WritableByteChannel _output;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** Where the times and counts of sessions are added, or null. */
+    private PhaseStats _stats;
+
+    /** The session being read is _session[0 .. _length - 1]. */
+    private byte[] _session = new byte[1 << 12];
+    /** See _session. */
+    private int _length;
+    /** The outputs of submitted sessions not yet written, in order. */
+    private ArrayDeque<Future<byte[]>> _pending;
+    /** The number of sessions submitted. */
+    private long _sessions;
+}
@@ -0,0 +1,116 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Tests of SessionBatch against a single MessagePipeline.
+ *  @author Ze Martinho
+ */
+public class SessionBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return the output of a single MessagePipeline on INPUT. */
+    private static String sequential(byte[] input) throws IOException {
+        Machine m = MessagePipelineTest.newMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MessagePipeline(m, UPPER,
+                            (line) -> MessagePipelineTest.setUp(m, line),
+                            Channels.newChannel(
+                                new ByteArrayInputStream(input)),
+                            Channels.newChannel(out)).run();
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    /** Return the output of a SessionBatch with THREADS threads on
+     *  INPUT, checking that it finds SESSIONS sessions. */
+    private static String batch(byte[] input, int threads, long sessions)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SessionBatch batch =
+            new SessionBatch(MessagePipelineTest::newMachine, UPPER,
+                             MessagePipelineTest::setUp,
+                             Channels.newChannel(
+                                 new ByteArrayInputStream(input)),
+                             Channels.newChannel(out), threads);
+        assertEquals(sessions, batch.run());
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testSmall() throws IOException {
+        byte[] input = ("* B BETA I III VIII AAAA (HJ)\nhello world\n"
+                        + "*  B BETA IV VI VIII QZZZ\r\nsecond\r\n\r"
+                        + "* B BETA I III VIII AAAA (HJ)\nhello world")
+            .getBytes(StandardCharsets.US_ASCII);
+        String expected = sequential(input);
+        for (int threads = 1; threads <= 4; threads += 1) {
+            assertEquals(expected, batch(input, threads, 3));
+        }
+    }
+
+    @Test
+    public void testManySessions() throws IOException {
+        Random random = new Random(38);
+        StringBuilder text = new StringBuilder();
+        String[] settings = {
+            " B BETA I III VIII AAAA (HJ) (OK)", " B BETA VI VIII IV AMZY",
+            " B BETA IV I VI QZZZ (AZ)",
+        };
+        int sessions = 500;
+        for (int s = 0; s < sessions; s += 1) {
+            text.append('*').append(settings[s % settings.length])
+                .append('\n');
+            int lines = random.nextInt(5);
+            for (int k = 0; k < lines; k += 1) {
+                int n = random.nextInt(40);
+                text.append('x');
+                for (int i = 0; i < n; i += 1) {
+                    text.append("abc de*FG".charAt(random.nextInt(9)));
+                }
+                text.append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+        }
+        byte[] input = text.toString().getBytes(StandardCharsets.US_ASCII);
+        String expected = sequential(input);
+        assertEquals(expected, batch(input, 1, sessions));
+        assertEquals(expected, batch(input, 3, sessions));
+    }
+
+    @Test
+    public void testFailedSession() throws IOException {
+        byte[] input = ("* B BETA I III VIII AAAA\nfirst\n"
+                        + "* B BETA I III NOSUCH AAAA\nsecond\n"
+                        + "* B BETA I III VIII AAAA\nthird\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SessionBatch batch =
+            new SessionBatch(MessagePipelineTest::newMachine, UPPER,
+                             MessagePipelineTest::setUp,
+                             Channels.newChannel(
+                                 new ByteArrayInputStream(input)),
+                             Channels.newChannel(out), 2);
+        try {
+            batch.run();
+            fail("expected an EnigmaException");
+        } catch (EnigmaException excp) {
+            String first = sequential("* B BETA I III VIII AAAA\nfirst\n"
+                                      .getBytes(StandardCharsets.US_ASCII));
+            assertEquals(first, out.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+}
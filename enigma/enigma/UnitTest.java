@@ -11,9 +11,14 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         textui.runClasses(
-                  PermutationTest.class, MovingRotorTest.class,
-                  FixedRotorTest.class, ReflectorTest.class,
-                  MachineTest.class);
+                  AlphabetTest.class, PermutationTest.class,
+                  MovingRotorTest.class, FixedRotorTest.class,
+                  ReflectorTest.class, MachineTest.class,
+                  MessagePipelineTest.class, SessionBatchTest.class,
+                  CompiledConfigTest.class, BombeTest.class,
+                  HillClimbTest.class, CatalogTest.class,
+                  LanesTest.class, EnigmaStreamTest.class,
+                  ServerTest.class);
     }
 }
 
@@ -0,0 +1,79 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the JMH benchmarks of the enigma package (all of the classes
+ *  named enigma.*Benchmark, unless ARGS selects others), with JMH's
+ *  allocation profiler, and then prints a summary of each: operations
+ *  per second, characters per second, and bytes allocated per
+ *  character.  An operation is one character, except for benchmarks
+ *  with a size parameter, whose operations are SIZE characters (or, for
+ *  MainBenchmark, bytes of input) each.
+ *
+ *  Usage: java -jar target/benchmarks.jar [JMH OPTIONS] [REGEXP...]
+ *  where the options are those of org.openjdk.jmh.Main (-h lists them).
+ *  @author Ze Martinho
+ */
+public class Benchmarks {
+
+    /** Run the benchmarks as specified by ARGS (see class comment). */
+    public static void main(String... args)
+        throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList()
+            || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+            || cmd.shouldListResultFormats()) {
+            try {
+                /* Not enigma.Main. */
+                org.openjdk.jmh.Main.main(args);
+            } catch (IOException excp) {
+                throw new RunnerException(excp);
+            }
+            return;
+        }
+        ChainedOptionsBuilder options =
+            new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class);
+        if (cmd.getIncludes().isEmpty()) {
+            options.include("enigma\\..*Benchmark");
+        }
+        summarize(new Runner(options.build()).run(), System.out);
+    }
+
+    /** Print a summary of RESULTS on OUT (see class comment). */
+    private static void summarize(Collection<RunResult> results,
+                                  PrintStream out) {
+        out.printf("%n%-40s %9s %14s %14s %9s%n", "Benchmark", "size",
+                   "ops/s", "chars/s", "B/char");
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            if (params.getMode() != Mode.Throughput) {
+                continue;
+            }
+            String size = params.getParam("size");
+            long chars = size == null ? 1 : Long.parseLong(size);
+            double ops = result.getPrimaryResult().getScore()
+                / params.getTimeUnit().toNanos(1) * 1e9;
+            Result alloc =
+                result.getSecondaryResults().get("gc.alloc.rate.norm");
+            out.printf("%-40s %9s %14.1f %14.1f %9s%n",
+                       params.getBenchmark().replaceFirst("^enigma\\.", ""),
+                       size == null ? "-" : size, ops, ops * chars,
+                       alloc == null ? "-"
+                       : String.format("%.3f", alloc.getScore() / chars));
+        }
+    }
+}
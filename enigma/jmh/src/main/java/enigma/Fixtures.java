@@ -0,0 +1,72 @@
+package enigma;
+
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** The configuration, settings, and inputs shared by the benchmarks.
+ *  The configuration is read from the file named by the system property
+ *  enigma.config (default: ../testing/correct/default.conf, that of the
+ *  integration tests, when run from the jmh directory), and the settings
+ *  are those of testing/correct/specInput.inp.
+ *  @author Ze Martinho
+ */
+final class Fixtures {
+
+    /** The name of the configuration file. */
+    static final String CONFIG =
+        System.getProperty("enigma.config",
+                           "../testing/correct/default.conf");
+
+    /** The settings line with which machines are set up. */
+    static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the configuration in CONFIG. */
+    static CompiledConfig config() {
+        return Main.loadConfig(CONFIG, null);
+    }
+
+    /** Return a machine of config() set up with SETTINGS. */
+    static Machine machine() {
+        Machine result = config().newMachine();
+        Main.setUp(result, SETTINGS);
+        return result;
+    }
+
+    /** Return the rotor of config() named NAME (in any case). */
+    static Rotor rotor(String name) {
+        for (Rotor rotor : config().rotors()) {
+            if (rotor.name().equalsIgnoreCase(name)) {
+                return rotor;
+            }
+        }
+        throw error("no rotor named %s in %s", name, CONFIG);
+    }
+
+    /** Return N indices of characters of ALPHA, chosen at random with
+     *  seed SEED. */
+    static int[] indices(Alphabet alpha, int n, long seed) {
+        Random random = new Random(seed);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = random.nextInt(alpha.size());
+        }
+        return result;
+    }
+
+    /** Return a message of N characters of ALPHA, chosen with a fixed
+     *  seed. */
+    static String message(Alphabet alpha, int n) {
+        char[] result = new char[n];
+        int[] chosen = indices(alpha, n, 42);
+        for (int i = 0; i < n; i += 1) {
+            result[i] = alpha.toChar(chosen[i]);
+        }
+        return new String(result);
+    }
+
+    /** Not instantiable. */
+    private Fixtures() {
+    }
+}
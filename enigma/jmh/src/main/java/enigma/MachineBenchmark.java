@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert, a character at a time (each operation
+ *  one character) and on whole messages of from 10 to 10 million
+ *  characters (each operation one message; see Benchmarks for the rate
+ *  per character), with a machine set up as by Fixtures.SETTINGS.  The
+ *  machine is not reset between operations, so that its rotors go on
+ *  stepping as they would over one long message.
+ *  @author Ze Martinho
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Number of characters per invocation of convertInt. */
+    static final int N = 1024;
+
+    /** A message to convert, of a given size. */
+    @State(Scope.Thread)
+    public static class Message {
+
+        /** The number of characters in the message. */
+        @Param({ "10", "1000", "100000", "10000000" })
+        public int size;
+
+        /** Make the message. */
+        @Setup
+        public void setUp() {
+            _text = Fixtures.message(Fixtures.config().alphabet(), size);
+        }
+
+        /** The message. */
+        private String _text;
+    }
+
+    /** Set up the machine and inputs. */
+    @Setup
+    public void setUp() {
+        _machine = Fixtures.machine();
+        _inputs = Fixtures.indices(Fixtures.config().alphabet(), N, 1);
+    }
+
+    /** Convert N characters, a character at a time. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _inputs) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert MSG as a whole. */
+    @Benchmark
+    public String convertString(Message msg) {
+        return _machine.convert(msg._text);
+    }
+
+    /** The machine benchmarked. */
+    private Machine _machine;
+    /** The inputs of convertInt, as indices. */
+    private int[] _inputs;
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Main processing a generated input file end to end:
+ *  reading the configuration Fixtures.CONFIG, converting, and writing
+ *  an output file.  The input has SIZE bytes (rounded up to a whole
+ *  line): the settings line Fixtures.SETTINGS followed by message
+ *  lines of 60 random letters, blanks, and punctuation, with another
+ *  settings line every 1000 lines.  Each operation is one run of Main
+ *  (see Benchmarks for the rate per byte).
+ *  @author Ze Martinho
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainBenchmark {
+
+    /** The number of bytes of input. */
+    @Param({ "10000", "1000000", "10000000" })
+    public int size;
+
+    /** Generate the input file and choose the output file. */
+    @Setup
+    public void setUp() throws IOException {
+        _input = Files.createTempFile("enigma", ".inp");
+        _output = Files.createTempFile("enigma", ".out");
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghij   .,";
+        Random random = new Random(42);
+        try (BufferedWriter out =
+             Files.newBufferedWriter(_input, StandardCharsets.US_ASCII)) {
+            long written = 0;
+            for (int line = 0; written < size; line += 1) {
+                StringBuilder text = new StringBuilder();
+                if (line % 1000 == 0) {
+                    text.append(Fixtures.SETTINGS);
+                } else {
+                    for (int i = 0; i < 60; i += 1) {
+                        text.append(chars.charAt(
+                                        random.nextInt(chars.length())));
+                    }
+                }
+                out.write(text.append('\n').toString());
+                written += text.length();
+            }
+        }
+    }
+
+    /** Remove the input and output files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_input);
+        Files.deleteIfExists(_output);
+    }
+
+    /** Run Main on the input file. */
+    @Benchmark
+    public void main() {
+        Main.main(Fixtures.CONFIG, _input.toString(), _output.toString());
+    }
+
+    /** The input and output files. */
+    private Path _input, _output;
+}
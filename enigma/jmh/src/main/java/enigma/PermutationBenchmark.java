@@ -0,0 +1,92 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Permutation.permute and invert, on indices and on
+ *  characters, with the permutation of rotor I.  Each operation is one
+ *  character.
+ *  @author Ze Martinho
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+
+    /** Number of characters per invocation. */
+    static final int N = 1024;
+
+    /** Set up the permutation and inputs. */
+    @Setup
+    public void setUp() {
+        _perm = Fixtures.rotor("I").permutation();
+        Alphabet alpha = _perm.alphabet();
+        _ints = Fixtures.indices(alpha, N, 1);
+        _chars = Fixtures.message(alpha, N).toCharArray();
+    }
+
+    /** Permute N indices. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int permuteInt() {
+        int sum = 0;
+        for (int p : _ints) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Invert N indices. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int invertInt() {
+        int sum = 0;
+        for (int c : _ints) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** Permute N characters. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int permuteChar() {
+        int sum = 0;
+        for (char p : _chars) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Invert N characters. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int invertChar() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** The permutation benchmarked. */
+    private Permutation _perm;
+    /** The inputs, as indices. */
+    private int[] _ints;
+    /** The inputs, as characters. */
+    private char[] _chars;
+}
@@ -0,0 +1,132 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Rotor.convertForward and convertBackward, at the
+ *  rotor's setting and at given settings, and of MovingRotor.advance
+ *  and atNotch, with rotor VI (which has two notches).  Each operation
+ *  is one character or one step.
+ *  @author Ze Martinho
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBenchmark {
+
+    /** Number of characters or steps per invocation. */
+    static final int N = 1024;
+
+    /** Set up the rotor and inputs. */
+    @Setup
+    public void setUp() {
+        _rotor = Fixtures.rotor("VI");
+        _rotor.set('Q');
+        _inputs = Fixtures.indices(_rotor.alphabet(), N, 1);
+        _settings = Fixtures.indices(_rotor.alphabet(), N, 2);
+    }
+
+    /** Convert N characters forward at the rotor's setting. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int convertForward() {
+        int sum = 0;
+        for (int p : _inputs) {
+            sum += _rotor.convertForward(p);
+        }
+        return sum;
+    }
+
+    /** Convert N characters backward at the rotor's setting. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int convertBackward() {
+        int sum = 0;
+        for (int e : _inputs) {
+            sum += _rotor.convertBackward(e);
+        }
+        return sum;
+    }
+
+    /** Convert N characters forward, each at its own setting, as
+     *  Machine does. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int convertForwardAt() {
+        int sum = 0;
+        for (int i = 0; i < N; i += 1) {
+            sum += _rotor.convertForward(_inputs[i], _settings[i]);
+        }
+        return sum;
+    }
+
+    /** Convert N characters backward, each at its own setting, as
+     *  Machine does. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int convertBackwardAt() {
+        int sum = 0;
+        for (int i = 0; i < N; i += 1) {
+            sum += _rotor.convertBackward(_inputs[i], _settings[i]);
+        }
+        return sum;
+    }
+
+    /** Advance the rotor N times. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int advance() {
+        for (int i = 0; i < N; i += 1) {
+            _rotor.advance();
+        }
+        return _rotor.setting();
+    }
+
+    /** Advance the rotor N times, testing for a notch at each step. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int advanceAtNotch() {
+        int notches = 0;
+        for (int i = 0; i < N; i += 1) {
+            _rotor.advance();
+            if (_rotor.atNotch()) {
+                notches += 1;
+            }
+        }
+        return notches;
+    }
+
+    /** Test N settings for notches, as Machine does. */
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public int atNotch() {
+        int notches = 0;
+        for (int i = 0; i < N; i += 1) {
+            if (_rotor.atNotch(_settings[i])) {
+                notches += 1;
+            }
+        }
+        return notches;
+    }
+
+    /** The rotor benchmarked. */
+    private Rotor _rotor;
+    /** The inputs, as indices. */
+    private int[] _inputs;
+    /** Settings, as indices. */
+    private int[] _settings;
+}
@@ -0,0 +1,144 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/** Lanes that convert several lanes at a time with the Vector API.
+ *  The lanes are taken in groups of as many as fit in a vector of the
+ *  preferred size, whose messages are converted in lockstep, with the
+ *  state of the group held in vectors.  At each step, the last two
+ *  rotors of each lane advance by masked adds after gathering their
+ *  notches (the lanes at which a rotor of the core may move advance one
+ *  by one, as in Lanes), and the characters are converted by gathering
+ *  from the plugboard, rotor, and core tables at the lanes' offsets.
+ *  Any lanes left over are converted by the scalar code of Lanes.  The
+ *  results are exactly those of Lanes.
+ *
+ *  This class needs the jdk.incubator.vector module, both to compile
+ *  (see the Makefile) and to run (java --add-modules
+ *  jdk.incubator.vector ...); Lanes.create uses it only if that module
+ *  is present.
+ *  @author Ze Martinho
+ */
+class VectorLanes extends Lanes {
+
+    /** The shape of the vectors used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Lanes for LANES machines with configuration CONFIG. */
+    VectorLanes(CompiledConfig config, int lanes) {
+        super(config, lanes);
+        _index = new int[SPECIES.length()];
+    }
+
+    @Override
+    String engine() {
+        return String.format("vector (%d x %d bits)", SPECIES.length(),
+                             SPECIES.elementSize());
+    }
+
+    @Override
+    void convert(int[] text, int length, int[] lengths) {
+        check(text, length, lengths);
+        int bound = SPECIES.loopBound(_lanes);
+        for (int lane = 0; lane < bound; lane += SPECIES.length()) {
+            convert(text, lengths, lane);
+        }
+        convert(text, lengths, bound, _lanes);
+    }
+
+    /** Convert the messages of the lanes starting at LANE that fit in a
+     *  vector, in TEXT (held as for convert(TEXT, LENGTH, LENGTHS)), in
+     *  lockstep. */
+    private void convert(int[] text, int[] lengths, int lane) {
+        int n = _size, last = _slots - 1, mid = last - 1;
+        boolean middle = _coreSlots < last;
+        int[] setting = _setting[last], offset = _offset[last];
+        int[] midSetting = _setting[mid], midOffset = _offset[mid];
+        IntVector length = IntVector.fromArray(SPECIES, lengths, lane);
+        IntVector base = IntVector.fromArray(SPECIES, _laneBase, lane);
+        IntVector lastNotches =
+            IntVector.fromArray(SPECIES, _notchBase[last], lane);
+        IntVector midNotches =
+            IntVector.fromArray(SPECIES, _notchBase[mid], lane);
+        VectorMask<Integer> rotLast =
+            VectorMask.fromArray(SPECIES, _rotates[last], lane);
+        VectorMask<Integer> rotMid =
+            VectorMask.fromArray(SPECIES, _rotates[mid], lane);
+        VectorMask<Integer> rotLeft =
+            VectorMask.fromArray(SPECIES, _rotates[_coreSlots - 1], lane);
+        VectorMask<Integer> coreNotched =
+            VectorMask.fromArray(SPECIES, _coreNotched, lane);
+        IntVector s = IntVector.fromArray(SPECIES, setting, lane);
+        IntVector o = IntVector.fromArray(SPECIES, offset, lane);
+        IntVector sm = IntVector.fromArray(SPECIES, midSetting, lane);
+        IntVector m = IntVector.fromArray(SPECIES, midOffset, lane);
+        int end = length.reduceLanes(MAX);
+        for (int i = 0, k = lane; i < end; i += 1, k += _lanes) {
+            VectorMask<Integer> active = length.compare(GT, i);
+            VectorMask<Integer> slow = active.and(coreNotched.or(
+                rotLeft.and(notched(midNotches, sm))));
+            VectorMask<Integer> quiet = active.andNot(slow);
+            VectorMask<Integer> move =
+                quiet.and(rotMid).and(notched(lastNotches, s));
+            VectorMask<Integer> wrap = move.and(sm.compare(EQ, n - 1));
+            sm = sm.add(1, move).blend(0, wrap);
+            m = m.add(n, move).sub(n * n, wrap);
+            move = quiet.and(rotLast);
+            wrap = move.and(s.compare(EQ, n - 1));
+            s = s.add(1, move).blend(0, wrap);
+            o = o.add(n, move).sub(n * n, wrap);
+            if (slow.anyTrue()) {
+                s.intoArray(setting, lane);
+                o.intoArray(offset, lane);
+                sm.intoArray(midSetting, lane);
+                m.intoArray(midOffset, lane);
+                for (long bits = slow.toLong(); bits != 0;
+                     bits &= bits - 1) {
+                    advance(lane + Long.numberOfTrailingZeros(bits));
+                }
+                coreNotched =
+                    VectorMask.fromArray(SPECIES, _coreNotched, lane);
+                s = IntVector.fromArray(SPECIES, setting, lane);
+                o = IntVector.fromArray(SPECIES, offset, lane);
+                sm = IntVector.fromArray(SPECIES, midSetting, lane);
+                m = IntVector.fromArray(SPECIES, midOffset, lane);
+            }
+            IntVector x =
+                IntVector.fromArray(SPECIES, text, k).blend(0, active.not());
+            x = gather(_forward, o.add(gather(_plug, base.add(x))));
+            if (middle) {
+                x = gather(_forward, m.add(x));
+                x = gather(_backward, m.add(gather(_core, base.add(x))));
+            } else {
+                x = gather(_core, base.add(x));
+            }
+            x = gather(_plug, base.add(gather(_backward, o.add(x))));
+            x.intoArray(text, k, active);
+        }
+        s.intoArray(setting, lane);
+        o.intoArray(offset, lane);
+        sm.intoArray(midSetting, lane);
+        m.intoArray(midOffset, lane);
+    }
+
+    /** Return a mask of the lanes whose rotors, whose entries in _notch
+     *  start at NOTCHES, are at a notch at SETTINGS. */
+    private VectorMask<Integer> notched(IntVector notches,
+                                        IntVector settings) {
+        return gather(_notch, notches.add(settings)).compare(NE, 0);
+    }
+
+    /** Return the elements of TABLE at the indices in INDEX. */
+    private IntVector gather(int[] table, IntVector index) {
+        index.intoArray(_index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, _index, 0);
+    }
+
+    /** Holds the indices of a gather. */
+    private final int[] _index;
+}